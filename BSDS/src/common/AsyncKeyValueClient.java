@@ -0,0 +1,168 @@
+package common;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Class that represents a non-blocking client of a remote key-value store. Every
+ * operation returns at once with a future of its result. The remote calls
+ * themselves block, so they run on an executor that starts a thread per call,
+ * virtual when the JVM has them, and at most a fixed number of calls are in
+ * flight at a time; the others wait in a queue without holding a thread.
+ *
+ * Safe to use from many threads.
+ */
+public class AsyncKeyValueClient implements Closeable {
+
+	// System property to configure the maximum number of calls in flight.
+	public static final String MAX_IN_FLIGHT_PROPERTY = "kv.client.maxInFlight";
+
+	public static final int DEFAULT_MAX_IN_FLIGHT = 256;
+
+	private final KeyValueService service;
+
+	private final ExecutorService executor;
+
+	// One permit per call that may be in flight.
+	private final Semaphore inFlight;
+
+	// Calls waiting for a permit, in the order they were made.
+	private final Queue<Call> pending = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Constructor to create a client with the maximum number of calls in flight
+	 * given by the kv.client.maxInFlight system property.
+	 *
+	 * @param service remote store, or any local implementation of it.
+	 */
+	public AsyncKeyValueClient(KeyValueService service) {
+		this(service, Integer.getInteger(MAX_IN_FLIGHT_PROPERTY, DEFAULT_MAX_IN_FLIGHT));
+	}
+
+	/**
+	 * Constructor to create a client.
+	 *
+	 * @param service     remote store, or any local implementation of it.
+	 * @param maxInFlight maximum number of calls in flight at a time.
+	 */
+	public AsyncKeyValueClient(KeyValueService service, int maxInFlight) {
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException("At least one call must be allowed in flight");
+		}
+		this.service = service;
+		this.executor = ThreadPools.newPerTaskExecutor("kv-client");
+		this.inFlight = new Semaphore(maxInFlight);
+	}
+
+	public CompletableFuture<Result> put(String key, String value) {
+		return submit(store -> store.put(key, value));
+	}
+
+	public CompletableFuture<Result> get(String key) {
+		return submit(store -> store.get(key));
+	}
+
+	public CompletableFuture<Result> delete(String key) {
+		return submit(store -> store.delete(key));
+	}
+
+	/**
+	 * Look up many keys concurrently.
+	 *
+	 * @param keys keys to be looked up.
+	 * @return future of the results by key, in the order of the keys, failed if
+	 *         any lookup failed.
+	 */
+	public CompletableFuture<Map<String, Result>> getAll(Collection<String> keys) {
+		Map<String, CompletableFuture<Result>> lookups = new LinkedHashMap<>();
+		for (String key : keys) {
+			lookups.computeIfAbsent(key, this::get);
+		}
+		return CompletableFuture.allOf(lookups.values().toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+			Map<String, Result> results = new LinkedHashMap<>();
+			lookups.forEach((key, lookup) -> results.put(key, lookup.join()));
+			return results;
+		});
+	}
+
+	/**
+	 * Stop accepting calls. Calls in flight still complete, queued calls fail.
+	 */
+	@Override
+	public void close() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Private method to queue a call and start as many queued calls as there are
+	 * free permits.
+	 */
+	private CompletableFuture<Result> submit(RemoteCall remoteCall) {
+		Call call = new Call(remoteCall);
+		pending.add(call);
+		dispatch();
+		return call.future;
+	}
+
+	/**
+	 * Private method to start queued calls while permits are free. Called again by
+	 * every call that completes, so a call queued while all permits were taken is
+	 * started by the first one to free its permit.
+	 */
+	private void dispatch() {
+		while (!pending.isEmpty() && inFlight.tryAcquire()) {
+			Call call = pending.poll();
+			if (call == null) {
+				// Another thread took the last queued call.
+				inFlight.release();
+				continue;
+			}
+			try {
+				executor.execute(() -> {
+					try {
+						call.future.complete(call.remoteCall.call(service));
+					} catch (Exception e) {
+						call.future.completeExceptionally(e);
+					} finally {
+						inFlight.release();
+						dispatch();
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				// The client was closed.
+				inFlight.release();
+				call.future.completeExceptionally(e);
+			}
+		}
+	}
+
+	/**
+	 * Interface that represents a single blocking call on the remote store.
+	 */
+	private interface RemoteCall {
+		Result call(KeyValueService service) throws IOException;
+	}
+
+	/**
+	 * Class that represents a call and the future of its result.
+	 */
+	private static final class Call {
+
+		private final RemoteCall remoteCall;
+
+		private final CompletableFuture<Result> future = new CompletableFuture<>();
+
+		Call(RemoteCall remoteCall) {
+			this.remoteCall = remoteCall;
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package common;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class AsyncKeyValueClientTest {
+
+	@Test
+	void testFanOutStaysWithinMaxInFlight() throws Exception {
+		SlowStore store = new SlowStore();
+		List<String> keys = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			store.map.put("key" + i, "value" + i);
+			keys.add("key" + i);
+		}
+		keys.add("missing");
+
+		try (AsyncKeyValueClient client = new AsyncKeyValueClient(store, 16)) {
+			long start = System.nanoTime();
+			Map<String, Result> results = client.getAll(keys).get(10, TimeUnit.SECONDS);
+			long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+			assertEquals(201, results.size());
+			assertEquals("value7", results.get("key7").getValue());
+			assertEquals(Result.Status.NOT_FOUND, results.get("missing").getStatus());
+			assertTrue(store.maxConcurrent.get() <= 16);
+			// 201 calls of 5 ms each take a second one at a time.
+			assertTrue(elapsedMillis < 500, "took " + elapsedMillis + " ms");
+		}
+	}
+
+	@Test
+	void testFailedCallCompletesExceptionally() throws Exception {
+		try (AsyncKeyValueClient client = new AsyncKeyValueClient(new SlowStore(), 1)) {
+			CompletableFuture<Result> failed = client.put(null, "value");
+			CompletableFuture<Result> next = client.put("A", "Apple");
+			assertThrows(ExecutionException.class, () -> failed.get(1, TimeUnit.SECONDS));
+			assertTrue(next.get(1, TimeUnit.SECONDS).isOk());
+		}
+	}
+
+	/**
+	 * Local store that takes a few milliseconds per call, like a remote one, and
+	 * counts how many calls run at once.
+	 */
+	private static class SlowStore implements KeyValueService {
+
+		final Map<String, String> map = new ConcurrentHashMap<>();
+		final AtomicInteger concurrent = new AtomicInteger();
+		final AtomicInteger maxConcurrent = new AtomicInteger();
+
+		@Override
+		public Result put(String key, String value) {
+			enter();
+			try {
+				map.put(key, value);
+				return Result.ok();
+			} finally {
+				concurrent.decrementAndGet();
+			}
+		}
+
+		@Override
+		public Result get(String key) {
+			enter();
+			try {
+				return Result.of(map.get(key));
+			} finally {
+				concurrent.decrementAndGet();
+			}
+		}
+
+		@Override
+		public Result delete(String key) {
+			enter();
+			try {
+				return map.remove(key) != null ? Result.ok() : Result.notFound();
+			} finally {
+				concurrent.decrementAndGet();
+			}
+		}
+
+		@Override
+		public int getMapSize() {
+			return map.size();
+		}
+
+		private void enter() {
+			maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+			try {
+				Thread.sleep(5);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,266 @@
+package common;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Class that represents a server log written in the background. Request threads
+ * only put a record, the time and the message, into a lock-free ring buffer. A
+ * single writer thread formats the records and writes them to the file in large
+ * batches, forcing them to the disk as the {@link DurabilityPolicy} asks, so no
+ * request waits on a system call per log line.
+ *
+ * Records of one thread are written in the order they were logged. When the ring
+ * buffer is full, logging waits for the writer rather than dropping records.
+ * Once the file cannot be written, records are dropped instead, so requests never
+ * wait on a writer that stopped.
+ */
+public class AsyncLogWriter implements Closeable {
+
+	// Number of records the ring buffer holds, a power of two.
+	private static final int CAPACITY = 1 << 16;
+	private static final int MASK = CAPACITY - 1;
+
+	// Size of the buffer the records are formatted into before being written.
+	private static final int WRITE_BUFFER_SIZE = 256 * 1024;
+
+	// Interval of the periodic policy.
+	private static final long SYNC_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	// Time the writer sleeps when there is nothing to write.
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	// Ring buffer slots. The sequence of a slot tells whether it may be written
+	// (equal to the claiming position) or read (one past the reading position).
+	private final AtomicLongArray sequences;
+	private final long[] timestamps;
+	private final String[] messages;
+
+	// Next position to be claimed by a request thread.
+	private final AtomicLong tail;
+
+	// Next position to be read by the writer thread, only used by it.
+	private long head;
+
+	private final DurabilityPolicy policy;
+
+	private final FileChannel channel;
+
+	private final Writer writer;
+
+	private final Thread writerThread;
+
+	private volatile boolean closed;
+
+	// Set when the writer stopped on an I/O error.
+	private volatile boolean failed;
+
+	/**
+	 * Constructor to create a log appending to the given file.
+	 *
+	 * @param file   log file, created if it does not exist.
+	 * @param policy durability policy.
+	 * @throws IOException if unable to open the file.
+	 */
+	public AsyncLogWriter(File file, DurabilityPolicy policy) throws IOException {
+		this(new FileOutputStream(file, true), policy, file.getName());
+	}
+
+	/**
+	 * Private constructor to create a log on an open stream.
+	 */
+	private AsyncLogWriter(FileOutputStream stream, DurabilityPolicy policy, String name) {
+		this(new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE),
+				stream.getChannel(), policy, name);
+	}
+
+	/**
+	 * Constructor to create a log writing to the given writer, and forcing the given
+	 * channel to the disk.
+	 *
+	 * @param writer  writer of the formatted records.
+	 * @param channel channel of the log file.
+	 * @param policy  durability policy.
+	 * @param name    name of the log, for the writer thread.
+	 */
+	AsyncLogWriter(Writer writer, FileChannel channel, DurabilityPolicy policy, String name) {
+		this.sequences = new AtomicLongArray(CAPACITY);
+		for (int i = 0; i < CAPACITY; i++) {
+			sequences.set(i, i);
+		}
+		this.timestamps = new long[CAPACITY];
+		this.messages = new String[CAPACITY];
+		this.tail = new AtomicLong(0);
+		this.head = 0;
+		this.policy = policy;
+
+		this.channel = channel;
+		this.writer = writer;
+
+		this.writerThread = new Thread(this::writeRecords, "log-writer-" + name);
+		this.writerThread.setDaemon(true);
+		this.writerThread.start();
+	}
+
+	/**
+	 * Create, or open the existing, log file in the current directory, with the
+	 * durability policy chosen by the kv.log.durability system property.
+	 *
+	 * @param fileName    name of the log file.
+	 * @param description description of the log, for the console.
+	 * @return the log, or null if unable to create the file.
+	 */
+	public static AsyncLogWriter open(String fileName, String description) {
+		try {
+			// Get the current directory where the Java file is located
+			String currentDirectory = System.getProperty("user.dir");
+
+			File logFile = new File(currentDirectory, fileName);
+			if (!logFile.exists()) {
+				logFile.createNewFile();
+				System.out.println(description + " log file created: " + logFile);
+			} else {
+				System.out.println("Using " + description + " log file already exists at : " + logFile);
+			}
+			return new AsyncLogWriter(logFile, DurabilityPolicy.fromSystemProperty());
+
+		} catch (IOException e) {
+			System.err.println("Error creating " + description + " log file!");
+			return null;
+		}
+	}
+
+	/**
+	 * Log a message, prefixed with the current time when written. Never blocks on
+	 * the disk, only waits if the writer has fallen a whole ring buffer behind.
+	 * Drops the message if the log is closed or failed.
+	 *
+	 * @param message message to be logged.
+	 */
+	public void log(String message) {
+		if (failed) {
+			return;
+		}
+		long timestamp = System.currentTimeMillis();
+
+		// Claim a position, waiting while its slot still holds an unwritten record.
+		long position;
+		int index;
+		while (true) {
+			position = tail.get();
+			index = (int) (position & MASK);
+			long sequence = sequences.get(index);
+			if (sequence == position) {
+				if (tail.compareAndSet(position, position + 1)) {
+					break;
+				}
+			} else if (sequence < position) {
+				if (closed || failed) {
+					return;
+				}
+				LockSupport.parkNanos(IDLE_PARK_NANOS);
+			}
+		}
+
+		timestamps[index] = timestamp;
+		messages[index] = message;
+
+		// Publish the slot to the writer.
+		sequences.set(index, position + 1);
+	}
+
+	/**
+	 * Write every record logged so far, force the file to the disk and stop the
+	 * writer.
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		LockSupport.unpark(writerThread);
+		try {
+			writerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		writer.close();
+	}
+
+	/**
+	 * Private method run by the writer thread.
+	 */
+	private void writeRecords() {
+		long lastSync = System.nanoTime();
+		boolean unsynced = false;
+		try {
+			while (true) {
+				int written = writeBatch();
+
+				if (written > 0) {
+					writer.flush();
+					unsynced = true;
+					if (policy == DurabilityPolicy.FSYNC_ON_BATCH) {
+						channel.force(false);
+						unsynced = false;
+					}
+				} else if (closed) {
+					break;
+				} else {
+					LockSupport.parkNanos(IDLE_PARK_NANOS);
+				}
+
+				if (unsynced && policy == DurabilityPolicy.PERIODIC
+						&& System.nanoTime() - lastSync > SYNC_INTERVAL_NANOS) {
+					channel.force(false);
+					lastSync = System.nanoTime();
+					unsynced = false;
+				}
+			}
+			if (unsynced && policy != DurabilityPolicy.NONE) {
+				channel.force(false);
+			}
+		} catch (IOException e) {
+			// Stop taking records, rather than let the ring buffer fill and every
+			// logging thread wait for good.
+			failed = true;
+			System.err.println("Error writing server log, dropping further records : " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Private method to format and write every published record.
+	 *
+	 * @return number of records written.
+	 * @throws IOException if unable to write the file.
+	 */
+	private int writeBatch() throws IOException {
+		int written = 0;
+		while (written < CAPACITY) {
+			int index = (int) (head & MASK);
+			if (sequences.get(index) != head + 1) {
+				break;
+			}
+			writer.write(new Timestamp(timestamps[index]).toString());
+			writer.write(messages[index]);
+			writer.write('\n');
+			messages[index] = null;
+
+			// Hand the slot back to the request threads.
+			sequences.set(index, head + CAPACITY);
+			head++;
+			written++;
+		}
+		return written;
+	}
+}
@@ -0,0 +1,37 @@
+package common;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AsyncLogWriterTest {
+
+	@TempDir
+	File directory;
+
+	@Test
+	void testFailedChannelDoesNotBlockLogging() throws Exception {
+		// A closed channel fails to force, as a failing disk would.
+		FileChannel channel = FileChannel.open(new File(directory, "log.txt").toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE);
+		channel.close();
+		AsyncLogWriter log = new AsyncLogWriter(new StringWriter(), channel, DurabilityPolicy.FSYNC_ON_BATCH,
+				"failing");
+
+		// Far more records than the ring buffer holds, which would wait for good on a
+		// stopped writer.
+		assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+			for (int i = 0; i < 1_000_000; i++) {
+				log.log("record " + i);
+			}
+		});
+		log.close();
+	}
+}
@@ -0,0 +1,249 @@
+package common;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.net.ProtocolException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Utility class that encodes the arguments and return values of remote calls
+ * for the binary transport. Every value is a type tag followed by its bytes, so
+ * no class descriptors are sent, and only the types the store interfaces use are
+ * supported.
+ */
+public final class BinaryCodec {
+
+	// Type tags.
+	private static final byte TAG_NULL = 0;
+	private static final byte TAG_STRING = 1;
+	private static final byte TAG_INT = 2;
+	private static final byte TAG_LONG = 3;
+	private static final byte TAG_BOOLEAN = 4;
+	private static final byte TAG_RESULT = 5;
+	private static final byte TAG_STRING_MAP = 6;
+	private static final byte TAG_STRING_COLLECTION = 7;
+	private static final byte TAG_ENCODABLE = 8;
+	private static final byte TAG_BOOLEAN_ARRAY = 9;
+	private static final byte TAG_RESULT_ARRAY = 10;
+
+	private BinaryCodec() {
+	}
+
+	/**
+	 * Get the ID of a remote method, the same for the method of an interface and
+	 * of any interface overriding it.
+	 *
+	 * @param method remote method.
+	 * @return hash of the method name and parameter types.
+	 */
+	public static int methodId(Method method) {
+		StringBuilder sb = new StringBuilder(method.getName()).append('(');
+		for (Class<?> type : method.getParameterTypes()) {
+			sb.append(type.getName()).append(';');
+		}
+		return sb.append(')').toString().hashCode();
+	}
+
+	/**
+	 * Write a value with its type tag.
+	 *
+	 * @param out   output to write to.
+	 * @param value value of one of the supported types, or null.
+	 * @throws IOException if unable to write or the type is not supported.
+	 */
+	public static void writeValue(DataOutput out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(TAG_NULL);
+		} else if (value instanceof String) {
+			out.writeByte(TAG_STRING);
+			writeString(out, (String) value);
+		} else if (value instanceof Integer) {
+			out.writeByte(TAG_INT);
+			out.writeInt((Integer) value);
+		} else if (value instanceof Long) {
+			out.writeByte(TAG_LONG);
+			out.writeLong((Long) value);
+		} else if (value instanceof Boolean) {
+			out.writeByte(TAG_BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		} else if (value instanceof Result) {
+			out.writeByte(TAG_RESULT);
+			((Result) value).writeTo(out);
+		} else if (value instanceof Map) {
+			out.writeByte(TAG_STRING_MAP);
+			Map<?, ?> map = (Map<?, ?>) value;
+			out.writeInt(map.size());
+			for (Map.Entry<?, ?> entry : map.entrySet()) {
+				writeString(out, (String) entry.getKey());
+				writeString(out, (String) entry.getValue());
+			}
+		} else if (value instanceof Collection) {
+			out.writeByte(TAG_STRING_COLLECTION);
+			Collection<?> collection = (Collection<?>) value;
+			out.writeInt(collection.size());
+			for (Object element : collection) {
+				writeString(out, (String) element);
+			}
+		} else if (value instanceof boolean[]) {
+			out.writeByte(TAG_BOOLEAN_ARRAY);
+			boolean[] array = (boolean[]) value;
+			out.writeInt(array.length);
+			for (boolean element : array) {
+				out.writeBoolean(element);
+			}
+		} else if (value instanceof Result[]) {
+			out.writeByte(TAG_RESULT_ARRAY);
+			Result[] array = (Result[]) value;
+			out.writeInt(array.length);
+			for (Result element : array) {
+				element.writeTo(out);
+			}
+		} else if (value instanceof BinaryEncodable) {
+			out.writeByte(TAG_ENCODABLE);
+			writeString(out, value.getClass().getName());
+			((BinaryEncodable) value).writeTo(out);
+		} else {
+			throw new ProtocolException("Type not supported by the binary transport : " + value.getClass());
+		}
+	}
+
+	/**
+	 * Read a value written by {@link #writeValue(DataOutput, Object)}.
+	 *
+	 * @param in           input to read from.
+	 * @param declaredType type the value is declared as, which decides whether a
+	 *                     collection is read as a set or a list.
+	 * @return value, or null.
+	 * @throws IOException if unable to read or the bytes are not a valid value.
+	 */
+	public static Object readValue(DataInput in, Class<?> declaredType) throws IOException {
+		byte tag = in.readByte();
+		switch (tag) {
+		case TAG_NULL:
+			return null;
+		case TAG_STRING:
+			return readString(in);
+		case TAG_INT:
+			return in.readInt();
+		case TAG_LONG:
+			return in.readLong();
+		case TAG_BOOLEAN:
+			return in.readBoolean();
+		case TAG_RESULT:
+			Result result = new Result();
+			result.readFrom(in);
+			return result;
+		case TAG_STRING_MAP: {
+			int size = readSize(in);
+			Map<String, String> map = new LinkedHashMap<>();
+			for (int i = 0; i < size; i++) {
+				map.put(readString(in), readString(in));
+			}
+			return map;
+		}
+		case TAG_STRING_COLLECTION: {
+			int size = readSize(in);
+			Collection<String> collection = Set.class.isAssignableFrom(declaredType) ? new LinkedHashSet<>()
+					: new ArrayList<>();
+			for (int i = 0; i < size; i++) {
+				collection.add(readString(in));
+			}
+			return collection;
+		}
+		case TAG_BOOLEAN_ARRAY: {
+			boolean[] array = new boolean[readSize(in)];
+			for (int i = 0; i < array.length; i++) {
+				array[i] = in.readBoolean();
+			}
+			return array;
+		}
+		case TAG_RESULT_ARRAY: {
+			Result[] array = new Result[readSize(in)];
+			for (int i = 0; i < array.length; i++) {
+				array[i] = new Result();
+				array[i].readFrom(in);
+			}
+			return array;
+		}
+		case TAG_ENCODABLE:
+			return readEncodable(in, declaredType);
+		default:
+			throw new ProtocolException("Unknown type tag " + tag);
+		}
+	}
+
+	/**
+	 * Write a string that may be null, as its length, or -1, and UTF-8 bytes.
+	 *
+	 * @param out    output to write to.
+	 * @param string string, or null.
+	 * @throws IOException if unable to write.
+	 */
+	public static void writeString(DataOutput out, String string) throws IOException {
+		if (string == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Read a string written by {@link #writeString(DataOutput, String)}.
+	 *
+	 * @param in input to read from.
+	 * @return string, or null.
+	 * @throws IOException if unable to read.
+	 */
+	public static String readString(DataInput in) throws IOException {
+		int length = in.readInt();
+		if (length == -1) {
+			return null;
+		}
+		if (length < 0) {
+			throw new ProtocolException("Invalid string length " + length);
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Private method to read the size of a collection.
+	 */
+	private static int readSize(DataInput in) throws IOException {
+		int size = in.readInt();
+		if (size < 0) {
+			throw new ProtocolException("Invalid collection size " + size);
+		}
+		return size;
+	}
+
+	/**
+	 * Private method to read an object of a class implementing
+	 * {@link BinaryEncodable}, which must be the declared type or a subtype of it.
+	 */
+	private static Object readEncodable(DataInput in, Class<?> declaredType) throws IOException {
+		String className = readString(in);
+		try {
+			Class<?> type = Class.forName(className, false, declaredType.getClassLoader());
+			if (!BinaryEncodable.class.isAssignableFrom(type) || !declaredType.isAssignableFrom(type)) {
+				throw new ProtocolException("Unexpected type " + className + " for " + declaredType.getName());
+			}
+			Constructor<?> constructor = type.getConstructor(DataInput.class);
+			return constructor.newInstance(in);
+		} catch (ReflectiveOperationException e) {
+			throw new ProtocolException("Unable to decode " + className + " : " + e);
+		}
+	}
+}
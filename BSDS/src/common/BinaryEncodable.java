@@ -0,0 +1,21 @@
+package common;
+
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Interface of the objects, other than strings, numbers, results and string
+ * collections, that can be passed through the binary transport. An implementing
+ * class must also have a public constructor taking a {@link java.io.DataInput},
+ * which reads back what {@link #writeTo(DataOutput)} wrote.
+ */
+public interface BinaryEncodable {
+
+	/**
+	 * Write the object in its wire format.
+	 *
+	 * @param out output to write to.
+	 * @throws IOException if unable to write.
+	 */
+	void writeTo(DataOutput out) throws IOException;
+}
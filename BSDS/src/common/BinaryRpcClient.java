@@ -0,0 +1,156 @@
+package common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.rmi.ConnectException;
+import java.rmi.RemoteException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class that represents a client of the binary transport, calling the methods of
+ * a remote interface served by a {@link BinaryRpcServer}. Each call takes an idle
+ * connection, or opens one when all are busy, so concurrent callers do not wait
+ * on each other, and gives it back once answered.
+ *
+ * Failures are reported as the {@link RemoteException} every remote method
+ * declares, a {@link ConnectException} when the server could not be reached.
+ */
+public final class BinaryRpcClient implements InvocationHandler {
+
+	private final InetSocketAddress address;
+
+	// Open connections not used by any call.
+	private final Queue<SocketChannel> idle = new ConcurrentLinkedQueue<>();
+
+	private final AtomicInteger nextCallId = new AtomicInteger();
+
+	private BinaryRpcClient(InetSocketAddress address) {
+		this.address = address;
+	}
+
+	/**
+	 * Connect to a server and get a proxy calling the methods of a remote
+	 * interface on it.
+	 *
+	 * @param host host of the server.
+	 * @param port port of the server.
+	 * @param type remote interface.
+	 * @return proxy implementing the interface.
+	 * @throws RemoteException if unable to connect to the server.
+	 */
+	public static <T> T connect(String host, int port, Class<T> type) throws RemoteException {
+		BinaryRpcClient client = new BinaryRpcClient(new InetSocketAddress(host, port));
+		// Open the first connection at once, so an unreachable server fails here.
+		client.idle.add(client.openConnection());
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, client));
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		if (method.getDeclaringClass() == Object.class) {
+			switch (method.getName()) {
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			default:
+				return "BinaryRpcClient proxy for " + address;
+			}
+		}
+
+		// Step 1 : Encode the call.
+		int callId = nextCallId.incrementAndGet();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(0);
+		out.writeInt(callId);
+		out.writeInt(BinaryCodec.methodId(method));
+		Class<?>[] parameterTypes = method.getParameterTypes();
+		for (int i = 0; i < parameterTypes.length; i++) {
+			BinaryCodec.writeValue(out, args[i]);
+		}
+		ByteBuffer request = ByteBuffer.wrap(bytes.toByteArray());
+		request.putInt(0, request.capacity() - 4);
+
+		// Step 2 : Send it on an idle connection and wait for the response.
+		SocketChannel channel = idle.poll();
+		if (channel == null) {
+			channel = openConnection();
+		}
+		DataInputStream in;
+		try {
+			while (request.hasRemaining()) {
+				channel.write(request);
+			}
+			in = new DataInputStream(new ByteArrayInputStream(readFrame(channel)));
+			if (in.readInt() != callId) {
+				throw new ProtocolException("Response does not match the call");
+			}
+		} catch (IOException e) {
+			channel.close();
+			throw new RemoteException("Binary RPC call to " + address + " failed", e);
+		}
+		idle.add(channel);
+
+		// Step 3 : Decode the return value, or the exception that failed the call.
+		if (in.readByte() == BinaryRpcServer.STATUS_OK) {
+			return BinaryCodec.readValue(in, method.getReturnType());
+		}
+		String exceptionClass = BinaryCodec.readString(in);
+		String message = BinaryCodec.readString(in);
+		throw new RemoteException("Server failed the call with " + exceptionClass + " : " + message);
+	}
+
+	/**
+	 * Private method to open a new connection to the server.
+	 */
+	private SocketChannel openConnection() throws ConnectException {
+		try {
+			SocketChannel channel = SocketChannel.open();
+			channel.socket().setTcpNoDelay(true);
+			channel.connect(address);
+			return channel;
+		} catch (IOException e) {
+			throw new ConnectException("Unable to connect to " + address, e);
+		}
+	}
+
+	/**
+	 * Private method to read a complete response frame, past its length.
+	 */
+	private static byte[] readFrame(SocketChannel channel) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(4);
+		readFully(channel, header);
+		int length = header.getInt(0);
+		if (length < 5 || length > BinaryRpcServer.MAX_FRAME_SIZE) {
+			throw new ProtocolException("Invalid frame length " + length);
+		}
+		ByteBuffer frame = ByteBuffer.allocate(length);
+		readFully(channel, frame);
+		return frame.array();
+	}
+
+	/**
+	 * Private method to fill a buffer from a blocking channel.
+	 */
+	private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) == -1) {
+				throw new EOFException("Connection closed by the server");
+			}
+		}
+	}
+}
@@ -0,0 +1,326 @@
+package common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Class that represents a server of the binary transport, an alternative to RMI
+ * that serves the methods of remote interfaces over plain NIO sockets with
+ * {@link BinaryCodec}. A single selector thread reads the calls of every
+ * connection and writes their responses; the calls themselves run on an
+ * executor, so a slow call does not hold up the others, even on the same
+ * connection.
+ *
+ * Call frame : length (int) of the rest, call ID (int), method ID (int) and the
+ * arguments.
+ *
+ * Response frame : length (int) of the rest, call ID (int), status byte and
+ * either the return value or, on failure, the exception class and message.
+ */
+public class BinaryRpcServer implements Closeable {
+
+	// Response statuses.
+	static final byte STATUS_OK = 0;
+	static final byte STATUS_ERROR = 1;
+
+	// A single frame may not grow beyond this size.
+	static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+	// Initial size of the per connection read buffer.
+	private static final int BUFFER_SIZE = 8 * 1024;
+
+	private final ServerSocketChannel serverChannel;
+
+	private final Selector selector;
+
+	// Exported methods by method ID.
+	private final Map<Integer, Target> targets = new ConcurrentHashMap<>();
+
+	private final ExecutorService executor;
+
+	// Connections with responses queued by the executor since the last select.
+	private final Queue<SelectionKey> pendingWrites = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Constructor to create a server listening on a port. No call is served until
+	 * it is started.
+	 *
+	 * @param port port to listen on, or 0 for any free port.
+	 * @throws IOException if unable to listen on the port.
+	 */
+	public BinaryRpcServer(int port) throws IOException {
+		this.selector = Selector.open();
+		this.serverChannel = ServerSocketChannel.open();
+		this.serverChannel.bind(new InetSocketAddress(port));
+		this.serverChannel.configureBlocking(false);
+		this.serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		this.executor = ThreadPools.newPerTaskExecutor("binary-rpc");
+	}
+
+	/**
+	 * Serve the methods of a remote interface on an object. Many interfaces may be
+	 * exported on the same server, as long as their methods differ.
+	 *
+	 * @param type           remote interface.
+	 * @param implementation object the calls are made on.
+	 */
+	public <T> void export(Class<T> type, T implementation) {
+		for (Method method : type.getMethods()) {
+			Target previous = targets.putIfAbsent(BinaryCodec.methodId(method), new Target(method, implementation));
+			if (previous != null && previous.implementation != implementation) {
+				throw new IllegalStateException(
+						"Method " + method.getName() + " is already exported on another object");
+			}
+		}
+	}
+
+	/**
+	 * Start serving the calls in a new thread, which keeps the JVM alive until the
+	 * server is closed.
+	 */
+	public void start() {
+		new Thread(this::run, "binary-rpc-" + getPort()).start();
+	}
+
+	public int getPort() {
+		return serverChannel.socket().getLocalPort();
+	}
+
+	/**
+	 * Stop serving and close every connection.
+	 */
+	@Override
+	public void close() {
+		try {
+			for (SelectionKey key : selector.keys()) {
+				key.channel().close();
+			}
+			selector.close();
+		} catch (IOException e) {
+			System.err.println("Error while closing the binary RPC server: " + e.getMessage());
+		}
+		executor.shutdown();
+	}
+
+	/**
+	 * Private method that runs the selector loop.
+	 */
+	private void run() {
+		try {
+			while (selector.isOpen()) {
+
+				// Step 1 : Wait for any of the connections to be ready.
+				selector.select();
+
+				// Step 2 : Write the responses completed in the meantime.
+				SelectionKey pending;
+				while ((pending = pendingWrites.poll()) != null) {
+					if (pending.isValid()) {
+						write(pending);
+					}
+				}
+
+				// Step 3 : Serve the ready connections.
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					try {
+						if (key.isValid() && key.isAcceptable()) {
+							accept();
+						}
+						if (key.isValid() && key.isReadable()) {
+							read(key);
+						}
+						if (key.isValid() && key.isWritable()) {
+							write(key);
+						}
+					} catch (IOException e) {
+						closeConnection(key);
+					}
+				}
+			}
+		} catch (ClosedSelectorException e) {
+			// Server was closed.
+		} catch (IOException e) {
+			System.err.println("Error in binary RPC server : " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Private method to accept a new connection.
+	 */
+	private void accept() throws IOException {
+		SocketChannel channel = serverChannel.accept();
+		if (channel != null) {
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			channel.register(selector, SelectionKey.OP_READ, new Connection());
+		}
+	}
+
+	/**
+	 * Private method to read whatever the client has sent and hand every complete
+	 * call to the executor.
+	 */
+	private void read(SelectionKey key) throws IOException {
+		Connection connection = (Connection) key.attachment();
+		if (((SocketChannel) key.channel()).read(connection.input) == -1) {
+			closeConnection(key);
+			return;
+		}
+
+		ByteBuffer input = connection.input;
+		input.flip();
+		while (input.remaining() >= 4) {
+			int length = input.getInt(input.position());
+			if (length < 8 || length > MAX_FRAME_SIZE) {
+				throw new IOException("Invalid frame length " + length);
+			}
+			if (input.remaining() < 4 + length) {
+				break;
+			}
+			input.getInt();
+			byte[] frame = new byte[length];
+			input.get(frame);
+			executor.execute(() -> serveCall(key, frame));
+		}
+		input.compact();
+
+		// A partial call filled the whole buffer, make room for the rest of it.
+		if (!input.hasRemaining()) {
+			ByteBuffer larger = ByteBuffer.allocate(Math.min(input.capacity() * 2, MAX_FRAME_SIZE + 4));
+			input.flip();
+			larger.put(input);
+			connection.input = larger;
+		}
+	}
+
+	/**
+	 * Private method to write the queued responses of a connection and update its
+	 * interest depending on what remains.
+	 */
+	private void write(SelectionKey key) throws IOException {
+		Connection connection = (Connection) key.attachment();
+		SocketChannel channel = (SocketChannel) key.channel();
+		ByteBuffer output;
+		while ((output = connection.output.peek()) != null) {
+			channel.write(output);
+			if (output.hasRemaining()) {
+				key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+				return;
+			}
+			connection.output.poll();
+		}
+		key.interestOps(SelectionKey.OP_READ);
+	}
+
+	/**
+	 * Private method, run by the executor, to decode a call, make it and queue its
+	 * response.
+	 */
+	private void serveCall(SelectionKey key, byte[] frame) {
+		int callId = 0;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			// Step 1 : Decode the call.
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+			callId = in.readInt();
+			Target target = targets.get(in.readInt());
+			if (target == null) {
+				throw new NoSuchMethodException("Unknown method");
+			}
+			Class<?>[] parameterTypes = target.method.getParameterTypes();
+			Object[] args = new Object[parameterTypes.length];
+			for (int i = 0; i < args.length; i++) {
+				args[i] = BinaryCodec.readValue(in, parameterTypes[i]);
+			}
+
+			// Step 2 : Make the call and encode its return value.
+			Object value = target.method.invoke(target.implementation, args);
+			out.writeInt(0);
+			out.writeInt(callId);
+			out.writeByte(STATUS_OK);
+			BinaryCodec.writeValue(out, value);
+		} catch (Exception e) {
+			// Step 3 : Or encode the exception that failed the call.
+			Throwable cause = e instanceof InvocationTargetException ? e.getCause() : e;
+			bytes.reset();
+			try {
+				out.writeInt(0);
+				out.writeInt(callId);
+				out.writeByte(STATUS_ERROR);
+				BinaryCodec.writeString(out, cause.getClass().getName());
+				BinaryCodec.writeString(out, cause.getMessage());
+			} catch (IOException ignored) {
+				// Writing to memory does not fail.
+			}
+		}
+
+		// Step 4 : Fill in the length and queue the response for the selector thread.
+		ByteBuffer response = ByteBuffer.wrap(bytes.toByteArray());
+		response.putInt(0, response.capacity() - 4);
+		((Connection) key.attachment()).output.add(response);
+		pendingWrites.add(key);
+		selector.wakeup();
+	}
+
+	/**
+	 * Private method to close a connection.
+	 */
+	private void closeConnection(SelectionKey key) {
+		key.cancel();
+		try {
+			key.channel().close();
+		} catch (IOException e) {
+			System.err.println("Error while closing binary RPC connection: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Class that holds an exported method and the object it is called on.
+	 */
+	private static final class Target {
+
+		private final Method method;
+
+		private final Object implementation;
+
+		private Target(Method method, Object implementation) {
+			this.method = method;
+			this.implementation = implementation;
+		}
+	}
+
+	/**
+	 * Class that holds the state of a single client connection.
+	 */
+	private static final class Connection {
+
+		// Bytes read from the client that are not yet a complete call.
+		private ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+
+		// Responses that are not yet written to the client, filled by the executor.
+		private final Queue<ByteBuffer> output = new ConcurrentLinkedQueue<>();
+	}
+}
@@ -0,0 +1,132 @@
+package common;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.rmi.ConnectException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.Test;
+
+class BinaryRpcTest {
+
+	@Test
+	void testCallsRoundTrip() throws Exception {
+		MapStore store = new MapStore();
+		try (BinaryRpcServer server = new BinaryRpcServer(0)) {
+			server.export(KeyValueService.class, store);
+			server.export(BulkService.class, store);
+			server.start();
+
+			KeyValueService client = BinaryRpcClient.connect("127.0.0.1", server.getPort(), KeyValueService.class);
+			assertTrue(client.put("A", "Apple").isOk());
+			assertEquals("Apple", client.get("A").getValue());
+			assertEquals(Result.Status.NOT_FOUND, client.get("B").getStatus());
+			assertEquals(1, client.getMapSize());
+
+			BulkService bulk = BinaryRpcClient.connect("127.0.0.1", server.getPort(), BulkService.class);
+			Map<String, String> entries = new LinkedHashMap<>();
+			entries.put("B", "Ball");
+			entries.put("C", null);
+			assertEquals(2, bulk.putAll(entries));
+			assertNull(store.map.get("C"));
+			assertEquals(Set.of("A", "B"), bulk.deleteAll(Arrays.asList("A", "B", "Z")));
+		}
+	}
+
+	@Test
+	void testServerExceptionIsReported() throws Exception {
+		try (BinaryRpcServer server = new BinaryRpcServer(0)) {
+			server.export(KeyValueService.class, new MapStore());
+			server.start();
+
+			KeyValueService client = BinaryRpcClient.connect("127.0.0.1", server.getPort(), KeyValueService.class);
+			RemoteException e = assertThrows(RemoteException.class, () -> client.put(null, "Apple"));
+			assertTrue(e.getMessage().contains("IllegalArgumentException"));
+
+			// The connection is still usable after a failed call.
+			assertTrue(client.put("A", "Apple").isOk());
+		}
+	}
+
+	@Test
+	void testUnreachableServer() throws Exception {
+		int port;
+		try (BinaryRpcServer server = new BinaryRpcServer(0)) {
+			port = server.getPort();
+		}
+		assertThrows(ConnectException.class, () -> BinaryRpcClient.connect("127.0.0.1", port, KeyValueService.class));
+	}
+
+	/**
+	 * Remote interface passing collections.
+	 */
+	interface BulkService extends Remote {
+
+		int putAll(Map<String, String> entries) throws RemoteException;
+
+		Set<String> deleteAll(Collection<String> keys) throws RemoteException;
+	}
+
+	/**
+	 * Minimal store served by the test.
+	 */
+	private static class MapStore implements KeyValueService, BulkService {
+
+		final Map<String, String> map = new ConcurrentHashMap<>();
+
+		@Override
+		public Result put(String key, String value) {
+			if (key == null) {
+				throw new IllegalArgumentException("Key is required");
+			}
+			map.put(key, value);
+			return Result.ok();
+		}
+
+		@Override
+		public Result get(String key) {
+			return Result.of(map.get(key));
+		}
+
+		@Override
+		public Result delete(String key) {
+			return map.remove(key) != null ? Result.ok() : Result.notFound();
+		}
+
+		@Override
+		public int getMapSize() {
+			return map.size();
+		}
+
+		@Override
+		public int putAll(Map<String, String> entries) {
+			int count = 0;
+			for (Map.Entry<String, String> entry : entries.entrySet()) {
+				if (entry.getValue() != null) {
+					map.put(entry.getKey(), entry.getValue());
+				}
+				count++;
+			}
+			return count;
+		}
+
+		@Override
+		public Set<String> deleteAll(Collection<String> keys) {
+			Set<String> deleted = new LinkedHashSet<>();
+			for (String key : keys) {
+				if (map.remove(key) != null) {
+					deleted.add(key);
+				}
+			}
+			return deleted;
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package common;
+
+/**
+ * Enum that represents how hard the {@link AsyncLogWriter} tries to get the log
+ * records onto the disk.
+ */
+public enum DurabilityPolicy {
+
+	// Hand every batch to the operating system, never force it to the disk.
+	NONE,
+
+	// Hand every batch to the operating system and force it to the disk once per
+	// interval.
+	PERIODIC,
+
+	// Force every batch to the disk before writing the next one.
+	FSYNC_ON_BATCH;
+
+	// System property to choose the policy of the server logs.
+	public static final String PROPERTY = "kv.log.durability";
+
+	/**
+	 * Get the policy chosen with the kv.log.durability system property, one of
+	 * none, periodic or fsync. Defaults to periodic.
+	 *
+	 * @return durability policy.
+	 */
+	public static DurabilityPolicy fromSystemProperty() {
+		String policy = System.getProperty(PROPERTY, "periodic");
+		if ("none".equalsIgnoreCase(policy)) {
+			return NONE;
+		}
+		if ("fsync".equalsIgnoreCase(policy)) {
+			return FSYNC_ON_BATCH;
+		}
+		return PERIODIC;
+	}
+}
@@ -0,0 +1,330 @@
+package common;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class that represents a binary server log, the alternative to the text log
+ * for servers under sustained load. Every event is a fixed layout record
+ * appended into a pre-allocated, memory-mapped segment file, so logging is a few
+ * memory writes with no formatting, no allocation and no system call. When a
+ * segment is full the log rolls over to a new one and deletes the oldest beyond
+ * a fixed count, which keeps the disk usage bounded.
+ *
+ * Segment file : a {@link #HEADER_SIZE} byte header (magic, version, record
+ * size) followed by {@link #RECORD_SIZE} byte records, in little endian.
+ *
+ * Record : timestamp in nanoseconds since the epoch (long), latency in
+ * nanoseconds (long), node ID (int), key hash (int), event type (short), unused
+ * (short), and a marker (int) written last, so a reader can tell complete
+ * records from the unused, zeroed, end of the segment.
+ *
+ * Safe to use from many threads. Use {@link EventLogReader} to decode the
+ * segments.
+ */
+public class EventLog implements Closeable {
+
+	// Event types.
+	public static final short EVENT_GET = 1;
+	public static final short EVENT_PUT = 2;
+	public static final short EVENT_DELETE = 3;
+	public static final short EVENT_INVALID = 4;
+	public static final short EVENT_VOTE = 5;
+	public static final short EVENT_COMMIT = 6;
+	public static final short EVENT_ABORT = 7;
+	public static final short EVENT_PROPOSE = 8;
+	public static final short EVENT_ACCEPT = 9;
+	public static final short EVENT_LEARN = 10;
+
+	private static final String[] EVENT_NAMES = { "UNKNOWN", "GET", "PUT", "DELETE", "INVALID", "VOTE", "COMMIT",
+			"ABORT", "PROPOSE", "ACCEPT", "LEARN" };
+
+	// Segment layout.
+	static final int MAGIC = 0x4B564556;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 32;
+	static final int RECORD_SIZE = 32;
+	static final int RECORD_MARKER = 0x5EC0DE01;
+	static final String SEGMENT_SUFFIX = ".evlog";
+
+	// System properties to choose the binary log and configure it.
+	public static final String FORMAT_PROPERTY = "kv.log.format";
+	public static final String DIRECTORY_PROPERTY = "kv.eventlog.dir";
+	public static final String SEGMENT_SIZE_PROPERTY = "kv.eventlog.segmentMB";
+	public static final String MAX_SEGMENTS_PROPERTY = "kv.eventlog.segments";
+
+	private final File directory;
+
+	private final String name;
+
+	private final int recordsPerSegment;
+
+	private final int maxSegments;
+
+	// Segment files still on disk, oldest first.
+	private final Deque<File> segmentFiles;
+
+	private volatile Segment current;
+
+	private long nextSegmentNumber;
+
+	// Wall clock, in nanoseconds, of the nano time origin.
+	private final long epochNanosOrigin;
+	private final long nanoTimeOrigin;
+
+	/**
+	 * Constructor to create a log whose segments are named name-0.evlog,
+	 * name-1.evlog and so on. Numbering continues after the segments already in
+	 * the directory.
+	 *
+	 * @param directory   directory of the segment files.
+	 * @param name        name of the log.
+	 * @param segmentSize size of each segment file in bytes.
+	 * @param maxSegments number of segment files kept on disk.
+	 * @throws IOException if unable to create the first segment.
+	 */
+	public EventLog(File directory, String name, int segmentSize, int maxSegments) throws IOException {
+		this.directory = directory;
+		this.name = name;
+		this.recordsPerSegment = (segmentSize - HEADER_SIZE) / RECORD_SIZE;
+		this.maxSegments = Math.max(1, maxSegments);
+		this.segmentFiles = new ArrayDeque<>();
+		this.epochNanosOrigin = System.currentTimeMillis() * 1_000_000L;
+		this.nanoTimeOrigin = System.nanoTime();
+
+		if (recordsPerSegment < 1) {
+			throw new IllegalArgumentException("Segment size " + segmentSize + " cannot hold a record");
+		}
+		directory.mkdirs();
+		for (File file : listSegments(directory, name)) {
+			segmentFiles.add(file);
+			nextSegmentNumber = segmentNumber(file, name) + 1;
+		}
+		this.current = newSegment();
+	}
+
+	/**
+	 * Open the binary log if the kv.log.format system property is binary. Segments
+	 * go to the kv.eventlog.dir directory, the current directory by default, and
+	 * their size and count are set by kv.eventlog.segmentMB (64 by default) and
+	 * kv.eventlog.segments (8 by default).
+	 *
+	 * @param name name of the log.
+	 * @return the log, or null if the text log is chosen or the log cannot be
+	 *         created.
+	 */
+	public static EventLog open(String name) {
+		if (!"binary".equalsIgnoreCase(System.getProperty(FORMAT_PROPERTY))) {
+			return null;
+		}
+		File directory = new File(System.getProperty(DIRECTORY_PROPERTY, System.getProperty("user.dir")));
+		int segmentSize = Integer.getInteger(SEGMENT_SIZE_PROPERTY, 64) * 1024 * 1024;
+		int maxSegments = Integer.getInteger(MAX_SEGMENTS_PROPERTY, 8);
+		try {
+			EventLog eventLog = new EventLog(directory, name, segmentSize, maxSegments);
+			System.out.println("Binary event log " + name + " is written to " + directory);
+			return eventLog;
+		} catch (IOException e) {
+			System.err.println("Error creating binary event log " + name + " : " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Append an event.
+	 *
+	 * @param eventType    type of the event.
+	 * @param nodeId       ID of the node the event happened on.
+	 * @param keyHash      hash of the key the event is about.
+	 * @param latencyNanos time the event took in nanoseconds.
+	 */
+	public void record(short eventType, int nodeId, int keyHash, long latencyNanos) {
+		long timestamp = epochNanosOrigin + (System.nanoTime() - nanoTimeOrigin);
+		while (true) {
+			Segment segment = current;
+			int slot = segment.nextSlot.getAndIncrement();
+			if (slot < recordsPerSegment) {
+				int offset = HEADER_SIZE + slot * RECORD_SIZE;
+				MappedByteBuffer buffer = segment.buffer;
+				buffer.putLong(offset, timestamp);
+				buffer.putLong(offset + 8, latencyNanos);
+				buffer.putInt(offset + 16, nodeId);
+				buffer.putInt(offset + 20, keyHash);
+				buffer.putShort(offset + 24, eventType);
+				buffer.putInt(offset + 28, RECORD_MARKER);
+				return;
+			}
+			rollOver(segment);
+		}
+	}
+
+	/**
+	 * Force the current segment to the disk.
+	 */
+	@Override
+	public void close() {
+		current.buffer.force();
+	}
+
+	/**
+	 * Get the name of an event type.
+	 *
+	 * @param eventType type of the event.
+	 * @return name of the type.
+	 */
+	public static String eventName(short eventType) {
+		return eventType > 0 && eventType < EVENT_NAMES.length ? EVENT_NAMES[eventType] : EVENT_NAMES[0];
+	}
+
+	/**
+	 * Get the type of an event by its name.
+	 *
+	 * @param eventName name of the type, in any case.
+	 * @return type of the event, or -1 if there is no such type.
+	 */
+	public static short eventType(String eventName) {
+		for (short i = 1; i < EVENT_NAMES.length; i++) {
+			if (EVENT_NAMES[i].equalsIgnoreCase(eventName)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Get the event type of a command in the text format like PUT-Key-Value.
+	 *
+	 * @param userInput user command.
+	 * @return type of the event.
+	 */
+	public static short commandEventType(String userInput) {
+		if (userInput.regionMatches(true, 0, "PUT-", 0, 4)) {
+			return EVENT_PUT;
+		}
+		if (userInput.regionMatches(true, 0, "GET-", 0, 4)) {
+			return EVENT_GET;
+		}
+		if (userInput.regionMatches(true, 0, "DELETE-", 0, 7)) {
+			return EVENT_DELETE;
+		}
+		return EVENT_INVALID;
+	}
+
+	/**
+	 * Get the hash of the key of a command in the text format like PUT-Key-Value,
+	 * equal to the hash code of the key, without splitting the command.
+	 *
+	 * @param userInput user command.
+	 * @return hash of the key, or 0 if there is none.
+	 */
+	public static int commandKeyHash(String userInput) {
+		int start = userInput.indexOf('-') + 1;
+		if (start == 0) {
+			return 0;
+		}
+		int hash = 0;
+		for (int i = start; i < userInput.length() && userInput.charAt(i) != '-'; i++) {
+			hash = 31 * hash + userInput.charAt(i);
+		}
+		return hash;
+	}
+
+	/**
+	 * List the segment files of a log, oldest first.
+	 *
+	 * @param directory directory of the segment files.
+	 * @param name      name of the log.
+	 * @return segment files.
+	 */
+	static File[] listSegments(File directory, String name) {
+		File[] files = directory.listFiles(
+				(dir, fileName) -> fileName.startsWith(name + "-") && fileName.endsWith(SEGMENT_SUFFIX)
+						&& fileName.substring(name.length() + 1, fileName.length() - SEGMENT_SUFFIX.length())
+								.matches("[0-9]+"));
+		if (files == null) {
+			return new File[0];
+		}
+		Arrays.sort(files, (a, b) -> Long.compare(segmentNumber(a, name), segmentNumber(b, name)));
+		return files;
+	}
+
+	/**
+	 * Private method to get the number of a segment from its file name.
+	 */
+	private static long segmentNumber(File file, String name) {
+		String fileName = file.getName();
+		return Long.parseLong(fileName.substring(name.length() + 1, fileName.length() - SEGMENT_SUFFIX.length()));
+	}
+
+	/**
+	 * Private method to replace a full segment by a new one, unless another
+	 * thread already did.
+	 *
+	 * @param full segment found full.
+	 */
+	private synchronized void rollOver(Segment full) {
+		if (current != full) {
+			return;
+		}
+		try {
+			full.buffer.force();
+			current = newSegment();
+		} catch (IOException e) {
+			// Keep the log usable, overwriting the oldest records of the full segment.
+			System.err.println("Error rolling over binary event log " + name + " : " + e.getMessage());
+			full.nextSlot.set(0);
+		}
+	}
+
+	/**
+	 * Private method to create, pre-allocate and map the next segment file, and
+	 * delete the oldest ones beyond the maximum count.
+	 *
+	 * @return the new segment.
+	 * @throws IOException if unable to create the file.
+	 */
+	private Segment newSegment() throws IOException {
+		File file = new File(directory, name + "-" + nextSegmentNumber + SEGMENT_SUFFIX);
+		long size = HEADER_SIZE + (long) recordsPerSegment * RECORD_SIZE;
+
+		MappedByteBuffer buffer;
+		try (RandomAccessFile segmentFile = new RandomAccessFile(file, "rw")) {
+			segmentFile.setLength(size);
+			buffer = segmentFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		}
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, VERSION);
+		buffer.putInt(8, RECORD_SIZE);
+
+		nextSegmentNumber++;
+		segmentFiles.add(file);
+		while (segmentFiles.size() > maxSegments) {
+			segmentFiles.poll().delete();
+		}
+		return new Segment(buffer);
+	}
+
+	/**
+	 * Class that holds a mapped segment and its next free record slot.
+	 */
+	private static class Segment {
+
+		private final MappedByteBuffer buffer;
+
+		private final AtomicInteger nextSlot = new AtomicInteger(0);
+
+		private Segment(MappedByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+
+/**
+ * Command line tool that decodes the segments of a binary {@link EventLog} into
+ * one line per event, oldest segment first.
+ *
+ * Usage : EventLogReader <directory> <name> [type=PUT] [node=5000] [key=Apple]
+ * [minLatencyMicros=100]
+ */
+public class EventLogReader {
+
+	private short eventType = -1;
+
+	private Integer nodeId;
+
+	private Integer keyHash;
+
+	private long minLatencyNanos;
+
+	public static void main(String[] args) throws IOException {
+
+		// Step 1 : Get the log directory and name from user.
+		if (args.length < 2) {
+			System.out.println("Usage : EventLogReader <directory> <name> [type=PUT] [node=5000] [key=Apple]"
+					+ " [minLatencyMicros=100]");
+			return;
+		}
+		File directory = new File(args[0]);
+		String name = args[1];
+
+		// Step 2 : Get the filters from user.
+		EventLogReader reader = new EventLogReader();
+		for (int i = 2; i < args.length; i++) {
+			if (!reader.addFilter(args[i])) {
+				System.out.println("Invalid filter : " + args[i]);
+				return;
+			}
+		}
+
+		// Step 3 : Print the matching events of every segment.
+		File[] segments = EventLog.listSegments(directory, name);
+		if (segments.length == 0) {
+			System.out.println("No segments of " + name + " found in " + directory);
+		}
+		long matched = 0;
+		for (File segment : segments) {
+			matched += reader.printSegment(segment, System.out);
+		}
+		System.out.println(matched + " events");
+	}
+
+	/**
+	 * Add a filter in the form field=value.
+	 *
+	 * @param filter filter given by the user.
+	 * @return false if the filter is invalid.
+	 */
+	boolean addFilter(String filter) {
+		String[] parts = filter.split("=", 2);
+		if (parts.length != 2) {
+			return false;
+		}
+		try {
+			switch (parts[0]) {
+			case "type":
+				short type = EventLog.eventType(parts[1]);
+				if (type == -1) {
+					return false;
+				}
+				eventType = type;
+				return true;
+			case "node":
+				nodeId = Integer.parseInt(parts[1]);
+				return true;
+			case "key":
+				keyHash = parts[1].hashCode();
+				return true;
+			case "minLatencyMicros":
+				minLatencyNanos = Long.parseLong(parts[1]) * 1000;
+				return true;
+			default:
+				return false;
+			}
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Print the events of a segment that match the filters. Skips the records
+	 * without a marker, the end of the segment not written yet, or a slot taken by
+	 * a writer that had not finished it when the server stopped.
+	 *
+	 * @param segment segment file.
+	 * @param out     stream to print to.
+	 * @return number of events printed.
+	 * @throws IOException if unable to read the segment.
+	 */
+	long printSegment(File segment, PrintStream out) throws IOException {
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(segment.toPath(), StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.limit() < EventLog.HEADER_SIZE || buffer.getInt(0) != EventLog.MAGIC) {
+			System.err.println("Skipping " + segment + " : not an event log segment");
+			return 0;
+		}
+		int recordSize = buffer.getInt(8);
+
+		long matched = 0;
+		for (int offset = EventLog.HEADER_SIZE; offset + recordSize <= buffer.limit(); offset += recordSize) {
+			if (buffer.getInt(offset + 28) != EventLog.RECORD_MARKER) {
+				continue;
+			}
+			long timestamp = buffer.getLong(offset);
+			long latency = buffer.getLong(offset + 8);
+			int node = buffer.getInt(offset + 16);
+			int hash = buffer.getInt(offset + 20);
+			short type = buffer.getShort(offset + 24);
+
+			if ((eventType != -1 && type != eventType) || (nodeId != null && node != nodeId)
+					|| (keyHash != null && hash != keyHash) || latency < minLatencyNanos) {
+				continue;
+			}
+			Instant time = Instant.ofEpochSecond(0, timestamp);
+			out.println(time + " " + EventLog.eventName(type) + " node " + node + " key "
+					+ Integer.toHexString(hash) + " latency " + String.format("%.3f", latency / 1000.0) + "us");
+			matched++;
+		}
+		return matched;
+	}
+}
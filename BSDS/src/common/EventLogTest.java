@@ -0,0 +1,71 @@
+package common;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class EventLogTest {
+
+	// Segments of four records.
+	private static final int SEGMENT_SIZE = EventLog.HEADER_SIZE + 4 * EventLog.RECORD_SIZE;
+
+	@TempDir
+	File directory;
+
+	@Test
+	void testRecordsAreReadBackAcrossRollover() throws Exception {
+		EventLog eventLog = new EventLog(directory, "node", SEGMENT_SIZE, 2);
+		for (int i = 0; i < 10; i++) {
+			eventLog.record(i % 2 == 0 ? EventLog.EVENT_PUT : EventLog.EVENT_GET, i, "key".hashCode(), 1000);
+		}
+		eventLog.close();
+
+		// Three segments were written, and only the last two are kept.
+		File[] segments = EventLog.listSegments(directory, "node");
+		assertEquals(2, segments.length);
+		assertEquals("node-1" + EventLog.SEGMENT_SUFFIX, segments[0].getName());
+
+		EventLogReader reader = new EventLogReader();
+		assertTrue(reader.addFilter("type=PUT"));
+		assertTrue(reader.addFilter("key=key"));
+		assertFalse(reader.addFilter("type=SLEEP"));
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(output, true, StandardCharsets.UTF_8);
+		assertEquals(2, reader.printSegment(segments[0], out));
+		assertEquals(1, reader.printSegment(segments[1], out));
+		String lines = output.toString(StandardCharsets.UTF_8);
+		assertTrue(lines.contains(" PUT node 4 key "), lines);
+		assertTrue(lines.contains(" PUT node 8 key "), lines);
+		assertFalse(lines.contains(" GET "), lines);
+	}
+
+	@Test
+	void testRecordWithoutMarkerIsSkipped() throws Exception {
+		EventLog eventLog = new EventLog(directory, "node", SEGMENT_SIZE, 2);
+		for (int i = 0; i < 4; i++) {
+			eventLog.record(EventLog.EVENT_PUT, i, 0, 1000);
+		}
+		eventLog.close();
+
+		// The second record lost its marker, as if its writer never finished it.
+		File segment = EventLog.listSegments(directory, "node")[0];
+		try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+			file.seek(EventLog.HEADER_SIZE + EventLog.RECORD_SIZE + 28);
+			file.writeInt(0);
+		}
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(output, true, StandardCharsets.UTF_8);
+		assertEquals(3, new EventLogReader().printSegment(segment, out));
+		String lines = output.toString(StandardCharsets.UTF_8);
+		assertFalse(lines.contains(" node 1 "), lines);
+		assertTrue(lines.contains(" node 3 "), lines);
+	}
+}
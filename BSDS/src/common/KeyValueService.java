@@ -0,0 +1,56 @@
+package common;
+
+import java.io.IOException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * Interface that declares the operations every remote key-value store offers,
+ * whether it is a single server, a 2PC participant or a Paxos replica, so a
+ * client can be written once for all of them.
+ */
+public interface KeyValueService extends Remote {
+
+	/**
+	 * Method to insert key and value into the store.
+	 *
+	 * @param key   key to be inserted.
+	 * @param value value of the key to be inserted.
+	 * @return result of the operation.
+	 * @throws RemoteException for exceptions that may occur during the execution of
+	 *                         a remote method call
+	 * @throws IOException     if unable to write to the server log.
+	 */
+	public Result put(String key, String value) throws RemoteException, IOException;
+
+	/**
+	 * Method to get the value for the key from the store, if exists.
+	 *
+	 * @param key key to be looked up.
+	 * @return result of the operation, with the value if found.
+	 * @throws RemoteException for exceptions that may occur during the execution of
+	 *                         a remote method call
+	 * @throws IOException     if unable to write to the server log.
+	 */
+	public Result get(String key) throws RemoteException, IOException;
+
+	/**
+	 * Method to delete the key and value from the store, if exists.
+	 *
+	 * @param key key to be deleted.
+	 * @return result of the operation.
+	 * @throws RemoteException for exceptions that may occur during the execution of
+	 *                         a remote method call
+	 * @throws IOException     if unable to write to the server log.
+	 */
+	public Result delete(String key) throws RemoteException, IOException;
+
+	/**
+	 * Method to get the number of keys in the store.
+	 *
+	 * @return store size.
+	 * @throws RemoteException for exceptions that may occur during the execution of
+	 *                         a remote method call
+	 */
+	public int getMapSize() throws RemoteException;
+}
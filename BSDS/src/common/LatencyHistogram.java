@@ -0,0 +1,111 @@
+package common;
+
+/**
+ * Class that records latencies in log-linear buckets, in the manner of
+ * HdrHistogram: every power of two is split into 64 linear buckets, so any
+ * recorded value is known within 1.6%, from nanoseconds up to hours, in a fixed
+ * amount of memory.
+ *
+ * Not safe to use from many threads; give each thread its own histogram and
+ * {@link #add(LatencyHistogram)} them together.
+ */
+public class LatencyHistogram {
+
+	// Values below this are recorded exactly.
+	private static final int SUB_BUCKET_COUNT = 128;
+	private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+	private static final int SUB_BUCKET_HALF_BITS = 6;
+
+	private final long[] counts = new long[(Long.SIZE - SUB_BUCKET_HALF_BITS) * SUB_BUCKET_HALF_COUNT];
+
+	private long totalCount;
+	private long sum;
+	private long max;
+
+	/**
+	 * Record a value.
+	 *
+	 * @param value value, like a latency in nanoseconds.
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("Negative value " + value);
+		}
+		counts[indexOf(value)]++;
+		totalCount++;
+		sum += value;
+		max = Math.max(max, value);
+	}
+
+	/**
+	 * Add the values recorded by another histogram to this one.
+	 *
+	 * @param other histogram to add.
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] += other.counts[i];
+		}
+		totalCount += other.totalCount;
+		sum += other.sum;
+		max = Math.max(max, other.max);
+	}
+
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	public double getMean() {
+		return totalCount == 0 ? 0 : (double) sum / totalCount;
+	}
+
+	/**
+	 * Get the value at a percentile, the highest value of the bucket holding it.
+	 *
+	 * @param percentile percentile, between 0 and 100.
+	 * @return value at or above the given percentage of the recorded values, or 0
+	 *         if none was recorded.
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (totalCount == 0) {
+			return 0;
+		}
+		long countAtPercentile = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * totalCount));
+		long cumulative = 0;
+		for (int i = 0; i < counts.length; i++) {
+			cumulative += counts[i];
+			if (cumulative >= countAtPercentile) {
+				return Math.min(highestValueAt(i), max);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Private method to get the bucket of a value.
+	 */
+	private static int indexOf(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		// Shift the value down to the upper half of the sub buckets.
+		int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_HALF_BITS;
+		return exponent * SUB_BUCKET_HALF_COUNT + (int) (value >>> exponent);
+	}
+
+	/**
+	 * Private method to get the highest value that falls in a bucket.
+	 */
+	private static long highestValueAt(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int exponent = index / SUB_BUCKET_HALF_COUNT - 1;
+		long lowest = (long) (index - exponent * SUB_BUCKET_HALF_COUNT) << exponent;
+		return lowest + (1L << exponent) - 1;
+	}
+}
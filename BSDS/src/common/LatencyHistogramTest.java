@@ -0,0 +1,41 @@
+package common;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+	@Test
+	void testPercentilesWithinPrecision() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long value = 1; value <= 1000000; value++) {
+			histogram.record(value * 1000);
+		}
+		assertEquals(1000000, histogram.getTotalCount());
+		assertEquals(1000000000L, histogram.getMax());
+		assertEquals(500000500.0, histogram.getMean(), 1);
+		for (double percentile : new double[] { 50, 90, 99, 99.9 }) {
+			double expected = percentile * 10000000;
+			assertEquals(expected, histogram.getValueAtPercentile(percentile), expected * 0.016,
+					"Value at percentile " + percentile);
+		}
+		assertEquals(1000000000L, histogram.getValueAtPercentile(100));
+	}
+
+	@Test
+	void testAddMergesCounts() {
+		LatencyHistogram fast = new LatencyHistogram();
+		LatencyHistogram slow = new LatencyHistogram();
+		for (int i = 0; i < 99; i++) {
+			fast.record(100);
+		}
+		slow.record(5000000);
+		fast.add(slow);
+
+		assertEquals(100, fast.getTotalCount());
+		assertEquals(100, fast.getValueAtPercentile(99));
+		assertEquals(5000000, fast.getMax());
+		assertTrue(fast.getValueAtPercentile(99.9) >= 5000000 * 0.984);
+	}
+}
@@ -0,0 +1,44 @@
+package common;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Class that represents the default storage engine, a concurrent hash map of
+ * the key and value strings. Every operation synchronizes with the others on the
+ * same key only.
+ */
+public class MapStoreEngine implements StoreEngine {
+
+	private final ConcurrentHashMap<String, String> map = new ConcurrentHashMap<>();
+
+	@Override
+	public void put(String key, String value) {
+		map.put(key, value);
+	}
+
+	@Override
+	public String get(String key) {
+		return map.get(key);
+	}
+
+	@Override
+	public boolean remove(String key) {
+		return map.remove(key) != null;
+	}
+
+	@Override
+	public boolean containsKey(String key) {
+		return map.containsKey(key);
+	}
+
+	@Override
+	public int size() {
+		return map.size();
+	}
+
+	@Override
+	public void forEach(BiConsumer<String, String> action) {
+		map.forEach(action);
+	}
+}
@@ -0,0 +1,331 @@
+package common;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * Class that represents a compact storage engine. The keys and values are kept
+ * as UTF-8 bytes packed in large arrays instead of as strings in map nodes, so
+ * an entry costs its bytes plus 20 to 30 bytes, against more than 100 in a
+ * {@link java.util.concurrent.ConcurrentHashMap}, and the heap holds a few large
+ * arrays instead of millions of small objects for the garbage collector to trace.
+ *
+ * The keys are spread over segments, each locked on its own. A segment is an
+ * open addressing table with linear probing, whose slots point to records
+ * appended to an arena : key length (int), value length (int), key bytes and
+ * value bytes. A replaced or deleted record is left in place until the arena is
+ * compacted.
+ */
+public class PackedStoreEngine implements StoreEngine {
+
+	// Number of segments, a power of two.
+	private static final int SEGMENT_COUNT = 64;
+
+	// Initial number of slots of a segment, a power of two.
+	private static final int INITIAL_SLOTS = 256;
+
+	private final Segment[] segments;
+
+	private final int segmentShift;
+
+	/**
+	 * Constructor to create an empty engine.
+	 */
+	public PackedStoreEngine() {
+		this.segments = new Segment[SEGMENT_COUNT];
+		for (int i = 0; i < SEGMENT_COUNT; i++) {
+			segments[i] = new Segment();
+		}
+		this.segmentShift = Integer.SIZE - Integer.numberOfTrailingZeros(SEGMENT_COUNT);
+	}
+
+	@Override
+	public void put(String key, String value) {
+		if (value == null) {
+			throw new NullPointerException("Value is required");
+		}
+		int hash = hash(key);
+		segmentFor(hash).put(hash, encode(key), encode(value));
+	}
+
+	@Override
+	public String get(String key) {
+		int hash = hash(key);
+		return segmentFor(hash).get(hash, encode(key));
+	}
+
+	@Override
+	public boolean remove(String key) {
+		int hash = hash(key);
+		return segmentFor(hash).remove(hash, encode(key));
+	}
+
+	@Override
+	public boolean containsKey(String key) {
+		int hash = hash(key);
+		return segmentFor(hash).containsKey(hash, encode(key));
+	}
+
+	@Override
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			size += segment.size;
+		}
+		return size;
+	}
+
+	@Override
+	public void forEach(BiConsumer<String, String> action) {
+		for (Segment segment : segments) {
+			segment.forEach(action);
+		}
+	}
+
+	/**
+	 * Private method to get the segment of a hash, chosen by its upper bits, the
+	 * lower ones choosing the slot.
+	 */
+	private Segment segmentFor(int hash) {
+		return segments[hash >>> segmentShift];
+	}
+
+	/**
+	 * Private method to mix the bits of the hash code of a key.
+	 */
+	private static int hash(String key) {
+		int h = key.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private static byte[] encode(String string) {
+		return string.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Class that holds the keys of a segment. Every method is called with its lock
+	 * held.
+	 */
+	private static final class Segment {
+
+		// Header of a record, the key and value lengths.
+		private static final int HEADER_LENGTH = 2 * Integer.BYTES;
+
+		// Largest arena, the largest array the JVM allows.
+		private static final int MAX_ARENA_LENGTH = Integer.MAX_VALUE - 8;
+
+		// Slots, the hash in the upper 32 bits and the offset of the record plus one
+		// in the lower 32 bits, or 0 if empty.
+		private long[] slots = new long[INITIAL_SLOTS];
+
+		private byte[] arena = new byte[INITIAL_SLOTS * 32];
+
+		// Bytes of the arena in use, by live and dead records.
+		private int arenaUsed;
+
+		// Bytes of the arena in use by dead records.
+		private int garbage;
+
+		// Read without the lock by size().
+		private volatile int size;
+
+		synchronized void put(int hash, byte[] key, byte[] value) {
+			int slot = find(hash, key);
+			if (slot >= 0) {
+				int offset = offsetAt(slot);
+				int valueLength = readInt(offset + Integer.BYTES);
+				if (valueLength == value.length) {
+					// Same length, replace the value in place.
+					System.arraycopy(value, 0, arena, offset + HEADER_LENGTH + key.length, value.length);
+					return;
+				}
+				// Appending may compact the arena, which still counts the old record as live.
+				slots[slot] = slotOf(hash, append(key, value));
+				garbage += HEADER_LENGTH + key.length + valueLength;
+				return;
+			}
+
+			int offset = append(key, value);
+			insert(slotOf(hash, offset));
+			size++;
+			if (size > slots.length / 4 * 3) {
+				resize(slots.length * 2);
+			}
+		}
+
+		synchronized String get(int hash, byte[] key) {
+			int slot = find(hash, key);
+			if (slot < 0) {
+				return null;
+			}
+			int offset = offsetAt(slot);
+			int valueLength = readInt(offset + Integer.BYTES);
+			return new String(arena, offset + HEADER_LENGTH + key.length, valueLength, StandardCharsets.UTF_8);
+		}
+
+		synchronized boolean containsKey(int hash, byte[] key) {
+			return find(hash, key) >= 0;
+		}
+
+		synchronized void forEach(BiConsumer<String, String> action) {
+			for (int slot = 0; slot < slots.length; slot++) {
+				if (slots[slot] != 0) {
+					int offset = offsetAt(slot);
+					int keyLength = readInt(offset);
+					int keyStart = offset + HEADER_LENGTH;
+					action.accept(new String(arena, keyStart, keyLength, StandardCharsets.UTF_8), new String(arena,
+							keyStart + keyLength, readInt(offset + Integer.BYTES), StandardCharsets.UTF_8));
+				}
+			}
+		}
+
+		synchronized boolean remove(int hash, byte[] key) {
+			int slot = find(hash, key);
+			if (slot < 0) {
+				return false;
+			}
+			int offset = offsetAt(slot);
+			garbage += HEADER_LENGTH + key.length + readInt(offset + Integer.BYTES);
+			size--;
+
+			// Shift back the following entries that probed past the freed slot, so no
+			// lookup stops short of them.
+			int mask = slots.length - 1;
+			int free = slot;
+			int next = slot;
+			while (true) {
+				next = (next + 1) & mask;
+				long entry = slots[next];
+				if (entry == 0) {
+					break;
+				}
+				int home = (int) (entry >>> 32) & mask;
+				boolean inPlace = free <= next ? free < home && home <= next : free < home || home <= next;
+				if (!inPlace) {
+					slots[free] = entry;
+					free = next;
+				}
+			}
+			slots[free] = 0;
+			return true;
+		}
+
+		/**
+		 * Find the slot of a key.
+		 *
+		 * @return slot, or -1 if not found.
+		 */
+		private int find(int hash, byte[] key) {
+			int mask = slots.length - 1;
+			for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+				long entry = slots[slot];
+				if (entry == 0) {
+					return -1;
+				}
+				if ((int) (entry >>> 32) == hash) {
+					int offset = offsetAt(slot);
+					int keyLength = readInt(offset);
+					int keyStart = offset + HEADER_LENGTH;
+					if (keyLength == key.length
+							&& Arrays.equals(arena, keyStart, keyStart + keyLength, key, 0, key.length)) {
+						return slot;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Put an entry in the first empty slot from its home slot.
+		 */
+		private void insert(long entry) {
+			int mask = slots.length - 1;
+			int slot = (int) (entry >>> 32) & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = entry;
+		}
+
+		/**
+		 * Append a record to the arena, compacting or growing it if full.
+		 *
+		 * @return offset of the record.
+		 */
+		private int append(byte[] key, byte[] value) {
+			long length = (long) HEADER_LENGTH + key.length + value.length;
+			if (arenaUsed + length > arena.length) {
+				long live = arenaUsed - garbage;
+				// Reclaim the dead records, and grow unless half of the arena was dead.
+				long newLength = Math.max(garbage >= live ? arena.length : arena.length * 2L, live + length);
+				if (newLength > MAX_ARENA_LENGTH) {
+					if (live + length > MAX_ARENA_LENGTH) {
+						throw new IllegalStateException("Store segment is full");
+					}
+					newLength = MAX_ARENA_LENGTH;
+				}
+				compact((int) newLength);
+			}
+			int offset = arenaUsed;
+			writeInt(offset, key.length);
+			writeInt(offset + Integer.BYTES, value.length);
+			System.arraycopy(key, 0, arena, offset + HEADER_LENGTH, key.length);
+			System.arraycopy(value, 0, arena, offset + HEADER_LENGTH + key.length, value.length);
+			arenaUsed += (int) length;
+			return offset;
+		}
+
+		/**
+		 * Copy the live records to a new arena, dropping the dead ones.
+		 */
+		private void compact(int newLength) {
+			byte[] newArena = new byte[newLength];
+			int newUsed = 0;
+			for (int slot = 0; slot < slots.length; slot++) {
+				if (slots[slot] != 0) {
+					int offset = offsetAt(slot);
+					int length = HEADER_LENGTH + readInt(offset) + readInt(offset + Integer.BYTES);
+					System.arraycopy(arena, offset, newArena, newUsed, length);
+					slots[slot] = slotOf((int) (slots[slot] >>> 32), newUsed);
+					newUsed += length;
+				}
+			}
+			arena = newArena;
+			arenaUsed = newUsed;
+			garbage = 0;
+		}
+
+		/**
+		 * Move every entry to a new table of slots.
+		 */
+		private void resize(int newCapacity) {
+			long[] oldSlots = slots;
+			slots = new long[newCapacity];
+			for (long entry : oldSlots) {
+				if (entry != 0) {
+					insert(entry);
+				}
+			}
+		}
+
+		private int offsetAt(int slot) {
+			return (int) slots[slot] - 1;
+		}
+
+		private static long slotOf(int hash, int offset) {
+			return (long) hash << 32 | (offset + 1L);
+		}
+
+		private int readInt(int offset) {
+			return (arena[offset] & 0xFF) << 24 | (arena[offset + 1] & 0xFF) << 16 | (arena[offset + 2] & 0xFF) << 8
+					| (arena[offset + 3] & 0xFF);
+		}
+
+		private void writeInt(int offset, int value) {
+			arena[offset] = (byte) (value >>> 24);
+			arena[offset + 1] = (byte) (value >>> 16);
+			arena[offset + 2] = (byte) (value >>> 8);
+			arena[offset + 3] = (byte) value;
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package common;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class PackedStoreEngineTest {
+
+	@Test
+	void testMatchesHashMap() {
+		PackedStoreEngine engine = new PackedStoreEngine();
+		Map<String, String> expected = new HashMap<>();
+		Random random = new Random(7);
+		for (int i = 0; i < 500000; i++) {
+			String key = "key" + random.nextInt(50000);
+			switch (random.nextInt(4)) {
+			case 0:
+			case 1:
+				// Values of varying length, replaced in place or appended again.
+				String value = "v\u00e9".repeat(random.nextInt(20));
+				engine.put(key, value);
+				expected.put(key, value);
+				break;
+			case 2:
+				assertEquals(expected.remove(key) != null, engine.remove(key), key);
+				break;
+			default:
+				assertEquals(expected.get(key), engine.get(key), key);
+				assertEquals(expected.containsKey(key), engine.containsKey(key), key);
+			}
+		}
+		assertEquals(expected.size(), engine.size());
+		for (Map.Entry<String, String> entry : expected.entrySet()) {
+			assertEquals(entry.getValue(), engine.get(entry.getKey()));
+		}
+		Map<String, String> visited = new HashMap<>();
+		engine.forEach(visited::put);
+		assertEquals(expected, visited);
+	}
+
+	@Test
+	void testConcurrentDeleteReportedOnce() throws Exception {
+		PackedStoreEngine engine = new PackedStoreEngine();
+		for (int i = 0; i < 10000; i++) {
+			engine.put("key" + i, "value" + i);
+		}
+		AtomicInteger deleted = new AtomicInteger();
+		Thread[] workers = new Thread[4];
+		for (int t = 0; t < workers.length; t++) {
+			workers[t] = new Thread(() -> {
+				for (int i = 0; i < 10000; i++) {
+					if (engine.remove("key" + i)) {
+						deleted.incrementAndGet();
+					}
+				}
+			});
+			workers[t].start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		assertEquals(10000, deleted.get());
+		assertEquals(0, engine.size());
+	}
+}
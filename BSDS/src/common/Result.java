@@ -0,0 +1,211 @@
+package common;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Class that represents the outcome of an operation on a key-value store, as
+ * returned by the remote store interfaces: a status and, for a GET that found
+ * its key, the value. The servers no longer build a sentence for every request
+ * and the callers no longer parse one; the interactive clients render the text
+ * with {@link #render(String, String, String)}.
+ *
+ * Written on the wire as a status byte, its high bit set when there is a value,
+ * followed by the length and UTF-8 bytes of the value.
+ */
+public final class Result implements Externalizable {
+
+	private static final long serialVersionUID = 5209126413072094825L;
+
+	/**
+	 * Enum that represents the status of an operation.
+	 */
+	public enum Status {
+
+		// The operation was applied, and a GET found its key.
+		OK,
+
+		// A GET or a DELETE did not find its key.
+		NOT_FOUND,
+
+		// The operation was handed over to be applied, without waiting to know
+		// whether it found its key.
+		ACCEPTED,
+
+		// A transaction was aborted by one of the participants.
+		ABORTED,
+
+		// The operation could not be applied on every server.
+		FAILED
+	}
+
+	private static final Status[] STATUSES = Status.values();
+
+	// Bit of the status byte set when a value follows.
+	private static final int HAS_VALUE = 0x80;
+
+	private static final Result OK = new Result(Status.OK, null);
+	private static final Result NOT_FOUND = new Result(Status.NOT_FOUND, null);
+	private static final Result ACCEPTED = new Result(Status.ACCEPTED, null);
+	private static final Result ABORTED = new Result(Status.ABORTED, null);
+	private static final Result FAILED = new Result(Status.FAILED, null);
+
+	private Status status;
+
+	private byte[] value;
+
+	/**
+	 * Constructor used by deserialization only.
+	 */
+	public Result() {
+	}
+
+	private Result(Status status, byte[] value) {
+		this.status = status;
+		this.value = value;
+	}
+
+	public static Result ok() {
+		return OK;
+	}
+
+	/**
+	 * Get the result of a GET that found its key.
+	 *
+	 * @param value value of the key.
+	 * @return result with the value.
+	 */
+	public static Result ok(String value) {
+		return new Result(Status.OK, value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Get the result of a GET that may or may not have found its key.
+	 *
+	 * @param value value of the key, or null if it was not found.
+	 * @return result with the value, or a NOT_FOUND result.
+	 */
+	public static Result of(String value) {
+		return value == null ? NOT_FOUND : ok(value);
+	}
+
+	public static Result notFound() {
+		return NOT_FOUND;
+	}
+
+	public static Result accepted() {
+		return ACCEPTED;
+	}
+
+	public static Result aborted() {
+		return ABORTED;
+	}
+
+	public static Result failed() {
+		return FAILED;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public boolean isOk() {
+		return status == Status.OK;
+	}
+
+	/**
+	 * Get the value found by a GET.
+	 *
+	 * @return value, or null if there is none.
+	 */
+	public String getValue() {
+		return value == null ? null : new String(value, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Render the result in the words the servers used to answer with.
+	 *
+	 * @param command PUT, GET or DELETE, in any case.
+	 * @param key     key of the operation.
+	 * @param value   value of a PUT, ignored otherwise.
+	 * @return human-readable response.
+	 */
+	public String render(String command, String key, String value) {
+		switch (status) {
+		case ABORTED:
+			return "Aborting! - either key is already present for put, or key is absent for delete";
+		case FAILED:
+			return "Unable to commit to one or more servers! Try again!";
+		case ACCEPTED:
+			return command.toUpperCase() + " operation successful - please check using GET";
+		case NOT_FOUND:
+			if ("DELETE".equalsIgnoreCase(command)) {
+				return "Unnable to delete. Key-value store does not contain the given key";
+			}
+			return "Key-value store does not contain the given key";
+		default:
+			if ("PUT".equalsIgnoreCase(command)) {
+				return "Key " + key + " value " + value + " inserted";
+			}
+			if ("DELETE".equalsIgnoreCase(command)) {
+				return "Deleted key : " + key;
+			}
+			return "Value for key " + key + " is :" + getValue();
+		}
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		writeTo(out);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException {
+		readFrom(in);
+	}
+
+	/**
+	 * Write the result in its wire format, shared by Java serialization and the
+	 * binary transport.
+	 *
+	 * @param out output to write to.
+	 * @throws IOException if unable to write.
+	 */
+	void writeTo(DataOutput out) throws IOException {
+		out.writeByte(status.ordinal() | (value == null ? 0 : HAS_VALUE));
+		if (value != null) {
+			out.writeInt(value.length);
+			out.write(value);
+		}
+	}
+
+	/**
+	 * Read the result from its wire format.
+	 *
+	 * @param in input to read from.
+	 * @throws IOException if unable to read or the bytes are not a result.
+	 */
+	void readFrom(DataInput in) throws IOException {
+		int header = in.readUnsignedByte();
+		int ordinal = header & ~HAS_VALUE;
+		if (ordinal >= STATUSES.length) {
+			throw new InvalidObjectException("Unknown status " + ordinal);
+		}
+		status = STATUSES[ordinal];
+		if ((header & HAS_VALUE) != 0) {
+			value = new byte[in.readInt()];
+			in.readFully(value);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return value == null ? status.name() : status + " " + getValue();
+	}
+}
@@ -0,0 +1,51 @@
+package common;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+class ResultTest {
+
+	@Test
+	void testSerializationRoundTrip() throws Exception {
+		Result found = (Result) roundTrip(Result.ok("Apple \u00e4"));
+		assertEquals(Result.Status.OK, found.getStatus());
+		assertEquals("Apple \u00e4", found.getValue());
+
+		Result missing = (Result) roundTrip(Result.notFound());
+		assertEquals(Result.Status.NOT_FOUND, missing.getStatus());
+		assertNull(missing.getValue());
+	}
+
+	@Test
+	void testRenderMatchesServerResponses() {
+		assertEquals("Value for key A is :Apple", Result.ok("Apple").render("GET", "A", null));
+		assertEquals("Key A value Apple inserted", Result.ok().render("put", "A", "Apple"));
+		assertEquals("Deleted key : A", Result.ok().render("DELETE", "A", null));
+		assertEquals("Key-value store does not contain the given key", Result.notFound().render("GET", "A", null));
+		assertEquals("Unnable to delete. Key-value store does not contain the given key",
+				Result.notFound().render("delete", "A", null));
+		assertEquals("DELETE operation successful - please check using GET",
+				Result.accepted().render("delete", "A", null));
+	}
+
+	private static byte[] serialize(Object object) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(object);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static Object roundTrip(Object object) throws IOException, ClassNotFoundException {
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialize(object)))) {
+			return in.readObject();
+		}
+	}
+}
@@ -0,0 +1,288 @@
+package common;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class that benchmarks the in-process paths of a key-value store, with no
+ * transport in between, so the numbers before and after a change of the store
+ * can be compared. Every combination of thread count, key distribution and value
+ * size is measured in a few iterations after a warmup, in the spirit of JMH.
+ *
+ * The run is configured with system properties:
+ * <ul>
+ * <li>bench.threads : thread counts, default 1,2,4,8,16.</li>
+ * <li>bench.distributions : key distributions, default uniform,zipfian.</li>
+ * <li>bench.valueSizes : value sizes in bytes, default 16,256,4096.</li>
+ * <li>bench.keys : number of keys, default 100000.</li>
+ * <li>bench.readPercent : percentage of GET requests, default 90.</li>
+ * <li>bench.deletePercent : percentage of DELETE requests, default 5, the rest
+ * being PUT.</li>
+ * <li>bench.warmupMillis, bench.measureMillis : duration of the warmup and of
+ * each measured iteration, default 1000.</li>
+ * <li>bench.iterations : measured iterations, default 3.</li>
+ * </ul>
+ */
+public final class StoreBenchmark {
+
+	// Requests made between two checks of the clock.
+	private static final int BATCH_SIZE = 64;
+
+	// Sum of the result statuses, kept so the calls are not optimized away.
+	private static final AtomicLong SINK = new AtomicLong();
+
+	/**
+	 * Interface of the store operations under benchmark.
+	 */
+	public interface Store {
+
+		Result put(String key, String value) throws IOException;
+
+		Result get(String key) throws IOException;
+
+		Result delete(String key) throws IOException;
+	}
+
+	/**
+	 * Distribution of the keys the requests are made on.
+	 */
+	public enum Distribution {
+		// Every key is as likely.
+		UNIFORM,
+		// A few keys get most of the requests, with the skew of YCSB.
+		ZIPFIAN
+	}
+
+	private final int[] threadCounts;
+	private final List<Distribution> distributions;
+	private final int[] valueSizes;
+	private final int keyCount;
+	private final int readPercent;
+	private final int deletePercent;
+	private final long warmupMillis;
+	private final long measureMillis;
+	private final int iterations;
+
+	private final String[] keys;
+
+	private StoreBenchmark() {
+		this.threadCounts = intsProperty("bench.threads", "1,2,4,8,16");
+		this.distributions = new ArrayList<>();
+		for (String name : System.getProperty("bench.distributions", "uniform,zipfian").split(",")) {
+			distributions.add(Distribution.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+		}
+		this.valueSizes = intsProperty("bench.valueSizes", "16,256,4096");
+		this.keyCount = Integer.getInteger("bench.keys", 100000);
+		this.readPercent = Integer.getInteger("bench.readPercent", 90);
+		this.deletePercent = Integer.getInteger("bench.deletePercent", 5);
+		this.warmupMillis = Long.getLong("bench.warmupMillis", 1000);
+		this.measureMillis = Long.getLong("bench.measureMillis", 1000);
+		this.iterations = Integer.getInteger("bench.iterations", 3);
+		if (readPercent + deletePercent > 100) {
+			throw new IllegalArgumentException("GET and DELETE percentages add up to more than 100");
+		}
+
+		this.keys = new String[keyCount];
+		for (int i = 0; i < keyCount; i++) {
+			keys[i] = "key" + i;
+		}
+	}
+
+	/**
+	 * Run the benchmark configured by the system properties on a store and print
+	 * a line per combination.
+	 *
+	 * @param name  name of the store in the report.
+	 * @param store store under benchmark.
+	 * @throws IOException          if a request fails.
+	 * @throws InterruptedException if interrupted while waiting for the threads.
+	 */
+	public static void run(String name, Store store) throws IOException, InterruptedException {
+		StoreBenchmark benchmark = new StoreBenchmark();
+		System.out.println("Benchmark of " + name + " : " + benchmark.keyCount + " keys, " + benchmark.readPercent
+				+ "% GET, " + benchmark.deletePercent + "% DELETE, " + benchmark.iterations + " x "
+				+ benchmark.measureMillis + " ms");
+		for (Distribution distribution : benchmark.distributions) {
+			for (int valueSize : benchmark.valueSizes) {
+				for (int threads : benchmark.threadCounts) {
+					double[] throughputs = benchmark.measure(store, threads, distribution, valueSize);
+					System.out.println(benchmark.format(name, threads, distribution, valueSize, throughputs));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Private method to fill the store, warm it up and measure the throughput of
+	 * every iteration, in requests per second.
+	 */
+	private double[] measure(Store store, int threads, Distribution distribution, int valueSize)
+			throws IOException, InterruptedException {
+		char[] chars = new char[valueSize];
+		Arrays.fill(chars, 'v');
+		String value = new String(chars);
+		for (String key : keys) {
+			store.put(key, value);
+		}
+
+		KeyChooser zipfian = distribution == Distribution.ZIPFIAN ? new KeyChooser(keyCount) : null;
+		runLoad(store, threads, zipfian, value, warmupMillis);
+		double[] throughputs = new double[iterations];
+		for (int i = 0; i < iterations; i++) {
+			throughputs[i] = runLoad(store, threads, zipfian, value, measureMillis) * 1000.0 / measureMillis;
+		}
+		return throughputs;
+	}
+
+	/**
+	 * Private method to make requests from the given number of threads for a
+	 * duration and count them.
+	 */
+	private long runLoad(Store store, int threads, KeyChooser zipfian, String value, long millis)
+			throws InterruptedException {
+		AtomicLong completed = new AtomicLong();
+		AtomicLong failures = new AtomicLong();
+		CountDownLatch start = new CountDownLatch(1);
+		long[] end = new long[1];
+		Thread[] workers = new Thread[threads];
+		SplittableRandom seed = new SplittableRandom(threads);
+		for (int t = 0; t < threads; t++) {
+			SplittableRandom random = seed.split();
+			workers[t] = new Thread(() -> {
+				long count = 0;
+				long sink = 0;
+				try {
+					start.await();
+					long deadline = end[0];
+					while (System.nanoTime() < deadline) {
+						for (int i = 0; i < BATCH_SIZE; i++) {
+							String key = keys[zipfian != null ? zipfian.next(random) : random.nextInt(keyCount)];
+							int choice = random.nextInt(100);
+							Result result;
+							if (choice < readPercent) {
+								result = store.get(key);
+							} else if (choice < readPercent + deletePercent) {
+								result = store.delete(key);
+							} else {
+								result = store.put(key, value);
+							}
+							sink += result.getStatus().ordinal();
+						}
+						count += BATCH_SIZE;
+					}
+				} catch (IOException | InterruptedException e) {
+					failures.incrementAndGet();
+				}
+				completed.addAndGet(count);
+				SINK.addAndGet(sink);
+			});
+			workers[t].start();
+		}
+		end[0] = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+		start.countDown();
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		if (failures.get() > 0) {
+			throw new IllegalStateException(failures.get() + " benchmark threads failed");
+		}
+		return completed.get();
+	}
+
+	/**
+	 * Private method to format the result of a combination.
+	 */
+	private String format(String name, int threads, Distribution distribution, int valueSize,
+			double[] throughputs) {
+		double min = Double.MAX_VALUE;
+		double max = 0;
+		double sum = 0;
+		for (double throughput : throughputs) {
+			min = Math.min(min, throughput);
+			max = Math.max(max, throughput);
+			sum += throughput;
+		}
+		double mean = sum / throughputs.length;
+		// Average time of a request as seen by one thread.
+		double nanosPerRequest = threads * 1e9 / mean;
+		return String.format(Locale.ROOT,
+				"%-16s threads=%-3d %-8s value=%-6d %12.0f ops/s (min %.0f, max %.0f) %8.1f ns/op", name,
+				threads, distribution.name().toLowerCase(Locale.ROOT), valueSize, mean, min, max, nanosPerRequest);
+	}
+
+	/**
+	 * Private method to read a comma separated list of numbers.
+	 */
+	private static int[] intsProperty(String name, String defaultValue) {
+		String[] parts = System.getProperty(name, defaultValue).split(",");
+		int[] values = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			values[i] = Integer.parseInt(parts[i].trim());
+		}
+		return values;
+	}
+
+	/**
+	 * Class that chooses key indexes from a Zipfian distribution, with the
+	 * algorithm of Gray et al. used by YCSB. Index 0 is the most requested key.
+	 * It is immutable, so threads share it with their own random generators.
+	 */
+	public static final class KeyChooser {
+
+		// Skew of the distribution, as in YCSB.
+		static final double THETA = 0.99;
+
+		private final int count;
+		private final double alpha;
+		private final double zetaN;
+		private final double eta;
+		private final double threshold;
+
+		/**
+		 * Constructor to choose among the given number of keys.
+		 *
+		 * @param count number of keys.
+		 */
+		public KeyChooser(int count) {
+			this.count = count;
+			this.zetaN = zeta(count);
+			this.alpha = 1.0 / (1.0 - THETA);
+			this.eta = (1 - Math.pow(2.0 / count, 1 - THETA)) / (1 - zeta(2) / zetaN);
+			this.threshold = 1 + Math.pow(0.5, THETA);
+		}
+
+		/**
+		 * Choose the index of the next key.
+		 *
+		 * @param random random generator of the calling thread.
+		 * @return index between 0 and the number of keys, excluded.
+		 */
+		public int next(SplittableRandom random) {
+			double u = random.nextDouble();
+			double uz = u * zetaN;
+			if (uz < 1) {
+				return 0;
+			}
+			if (uz < threshold) {
+				return Math.min(1, count - 1);
+			}
+			int index = (int) (count * Math.pow(eta * u - eta + 1, alpha));
+			return Math.min(index, count - 1);
+		}
+
+		private static double zeta(int n) {
+			double sum = 0;
+			for (int i = 1; i <= n; i++) {
+				sum += 1 / Math.pow(i, THETA);
+			}
+			return sum;
+		}
+	}
+}
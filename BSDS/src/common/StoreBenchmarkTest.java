@@ -0,0 +1,27 @@
+package common;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+class StoreBenchmarkTest {
+
+	@Test
+	void testZipfianKeysAreSkewed() {
+		int keys = 1000;
+		int samples = 100000;
+		StoreBenchmark.KeyChooser chooser = new StoreBenchmark.KeyChooser(keys);
+		SplittableRandom random = new SplittableRandom(42);
+		int[] counts = new int[keys];
+		for (int i = 0; i < samples; i++) {
+			counts[chooser.next(random)]++;
+		}
+
+		// The hottest key gets far more than its uniform share, and the colder keys
+		// get less and less.
+		assertTrue(counts[0] > 50 * samples / keys, "Requests on the hottest key : " + counts[0]);
+		assertTrue(counts[0] > counts[1] && counts[1] > counts[10] && counts[10] > counts[keys - 1]);
+	}
+}
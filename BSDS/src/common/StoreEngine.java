@@ -0,0 +1,81 @@
+package common;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Interface of the storage engine holding the key-value pairs of a server. The
+ * engine is chosen at startup with the kv.store system property: map, the
+ * default, for a {@link java.util.concurrent.ConcurrentHashMap}, or packed for
+ * the compact {@link PackedStoreEngine}.
+ *
+ * Implementations are safe to use from many threads, and neither keys nor
+ * values may be null.
+ */
+public interface StoreEngine {
+
+	// System property to choose the engine, map or packed.
+	String PROPERTY = "kv.store";
+
+	/**
+	 * Insert or replace the value of a key.
+	 *
+	 * @param key   key.
+	 * @param value value of the key.
+	 */
+	void put(String key, String value);
+
+	/**
+	 * Get the value of a key.
+	 *
+	 * @param key key.
+	 * @return value of the key, or null if not found.
+	 */
+	String get(String key);
+
+	/**
+	 * Delete a key. Of many concurrent deletes of the same key, only one finds it.
+	 *
+	 * @param key key.
+	 * @return true if the key was found and deleted.
+	 */
+	boolean remove(String key);
+
+	/**
+	 * Check whether the store contains a key.
+	 *
+	 * @param key key.
+	 * @return true if found.
+	 */
+	boolean containsKey(String key);
+
+	/**
+	 * Get the number of keys.
+	 *
+	 * @return number of keys.
+	 */
+	int size();
+
+	/**
+	 * Call an action with every key and its value. Writes made meanwhile may or may
+	 * not be seen.
+	 *
+	 * @param action action taking a key and its value.
+	 */
+	void forEach(BiConsumer<String, String> action);
+
+	/**
+	 * Create the engine chosen with the kv.store system property.
+	 *
+	 * @return new empty engine.
+	 */
+	static StoreEngine fromSystemProperties() {
+		String name = System.getProperty(PROPERTY, "map");
+		if ("packed".equalsIgnoreCase(name)) {
+			return new PackedStoreEngine();
+		}
+		if (!"map".equalsIgnoreCase(name)) {
+			throw new IllegalArgumentException("Unknown store engine " + name + ", expected map or packed");
+		}
+		return new MapStoreEngine();
+	}
+}
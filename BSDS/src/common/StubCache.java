@@ -0,0 +1,150 @@
+package common;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.MalformedURLException;
+import java.rmi.ConnectException;
+import java.rmi.Naming;
+import java.rmi.NoSuchObjectException;
+import java.rmi.NotBoundException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Utility class that resolves the stubs of remote objects once per registry URL
+ * and shares them between the clients of a JVM, so only the first call to an
+ * endpoint pays the registry round trip.
+ *
+ * The clients are handed a proxy rather than the stub itself. When a call fails
+ * because the server could not be reached or no longer exports the object, as
+ * after a restart, the proxy looks the stub up again and retries the call once.
+ * Both failures happen before the server runs the call, so retrying it cannot
+ * apply an operation twice.
+ */
+public final class StubCache {
+
+	// Stubs by registry URL.
+	private static final ConcurrentHashMap<String, Remote> STUBS = new ConcurrentHashMap<>();
+
+	// Proxies handed out, by remote interface and registry URL.
+	private static final ConcurrentHashMap<String, Remote> PROXIES = new ConcurrentHashMap<>();
+
+	private StubCache() {
+	}
+
+	/**
+	 * Get a remote object by its registry URL, looking its stub up only if it is
+	 * not cached yet.
+	 *
+	 * @param url  registry URL like rmi://host:port/name.
+	 * @param type remote interface of the object.
+	 * @return proxy that calls the cached stub, refreshing it when the server was
+	 *         restarted.
+	 * @throws NotBoundException     if nothing is bound to the name.
+	 * @throws MalformedURLException if the URL is not valid.
+	 * @throws RemoteException       if the registry cannot be reached.
+	 */
+	public static <T extends Remote> T lookup(String url, Class<T> type)
+			throws NotBoundException, MalformedURLException, RemoteException {
+		String proxyKey = type.getName() + " " + url;
+		Remote proxy = PROXIES.get(proxyKey);
+		if (proxy == null) {
+			// Resolve the stub first, so a missing server fails here as it did with
+			// Naming.lookup.
+			stub(url);
+			proxy = (Remote) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+					new RefreshingHandler(url));
+			Remote previous = PROXIES.putIfAbsent(proxyKey, proxy);
+			if (previous != null) {
+				proxy = previous;
+			}
+		}
+		return type.cast(proxy);
+	}
+
+	/**
+	 * Drop the cached stub of a URL, so the next call looks it up again.
+	 *
+	 * @param url registry URL.
+	 */
+	public static void invalidate(String url) {
+		STUBS.remove(url);
+	}
+
+	/**
+	 * Private method to get the cached stub of a URL, looking it up if needed.
+	 */
+	private static Remote stub(String url) throws NotBoundException, MalformedURLException, RemoteException {
+		Remote stub = STUBS.get(url);
+		if (stub == null) {
+			stub = Naming.lookup(url);
+			Remote previous = STUBS.putIfAbsent(url, stub);
+			if (previous != null) {
+				stub = previous;
+			}
+		}
+		return stub;
+	}
+
+	/**
+	 * Class that forwards the calls of a proxy to the cached stub of its URL.
+	 */
+	private static final class RefreshingHandler implements InvocationHandler {
+
+		private final String url;
+
+		RefreshingHandler(String url) {
+			this.url = url;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (method.getDeclaringClass() == Object.class) {
+				return invokeObjectMethod(proxy, method, args);
+			}
+			Remote stub = currentStub();
+			try {
+				return method.invoke(stub, args);
+			} catch (InvocationTargetException e) {
+				Throwable cause = e.getCause();
+				if (!(cause instanceof ConnectException || cause instanceof NoSuchObjectException)) {
+					throw cause;
+				}
+			}
+			// The server was not reached. Drop the stub, unless another call already
+			// replaced it, and retry once with a fresh one.
+			STUBS.remove(url, stub);
+			try {
+				return method.invoke(currentStub(), args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+
+		/**
+		 * Private method to get the stub, turning a failed lookup into the
+		 * RemoteException every remote method declares.
+		 */
+		private Remote currentStub() throws RemoteException {
+			try {
+				return stub(url);
+			} catch (NotBoundException | MalformedURLException e) {
+				throw new RemoteException("Unable to look up " + url, e);
+			}
+		}
+
+		private Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+			switch (method.getName()) {
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			default:
+				return "StubCache proxy for " + url;
+			}
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package common;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.Test;
+
+class StubCacheTest {
+
+	@Test
+	void testRefreshesStubAfterServerRestart() throws Exception {
+		Registry registry = LocateRegistry.createRegistry(5871);
+		MapStore first = new MapStore();
+		MapStore second = new MapStore();
+		try {
+			registry.rebind("Store", UnicastRemoteObject.exportObject(first, 0));
+			String url = "rmi://127.0.0.1:5871/Store";
+
+			KeyValueService store = StubCache.lookup(url, KeyValueService.class);
+			assertSame(store, StubCache.lookup(url, KeyValueService.class));
+			assertTrue(store.put("A", "Apple").isOk());
+			assertEquals("Apple", first.map.get("A"));
+
+			// Restart the server: the old object is gone and a new one is bound.
+			UnicastRemoteObject.unexportObject(first, true);
+			registry.rebind("Store", UnicastRemoteObject.exportObject(second, 0));
+
+			assertEquals(Result.Status.NOT_FOUND, store.get("A").getStatus());
+			assertTrue(store.put("B", "Ball").isOk());
+			assertEquals("Ball", second.map.get("B"));
+		} finally {
+			UnicastRemoteObject.unexportObject(second, true);
+			UnicastRemoteObject.unexportObject(registry, true);
+		}
+	}
+
+	/**
+	 * Minimal store exported by the test.
+	 */
+	private static class MapStore implements KeyValueService {
+
+		final Map<String, String> map = new ConcurrentHashMap<>();
+
+		@Override
+		public Result put(String key, String value) {
+			map.put(key, value);
+			return Result.ok();
+		}
+
+		@Override
+		public Result get(String key) {
+			return Result.of(map.get(key));
+		}
+
+		@Override
+		public Result delete(String key) {
+			return map.remove(key) != null ? Result.ok() : Result.notFound();
+		}
+
+		@Override
+		public int getMapSize() {
+			return map.size();
+		}
+	}
+}
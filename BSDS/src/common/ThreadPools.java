@@ -0,0 +1,65 @@
+package common;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Utility class to create the executors shared by the servers and clients.
+ */
+public final class ThreadPools {
+
+	private ThreadPools() {
+	}
+
+	/**
+	 * Create an executor that starts a new thread for every task. Uses virtual
+	 * threads when the running JVM provides them, so thousands of mostly idle
+	 * tasks do not each hold a platform thread, and falls back to a cached pool of
+	 * platform threads otherwise.
+	 *
+	 * @param namePrefix prefix of the platform thread names.
+	 * @return executor that runs every task in its own thread.
+	 */
+	public static ExecutorService newPerTaskExecutor(String namePrefix) {
+		try {
+			// Looked up at runtime as the project is compiled for a release without them.
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException | UnsupportedOperationException e) {
+			return Executors.newCachedThreadPool(namedThreadFactory(namePrefix));
+		}
+	}
+
+	/**
+	 * Check whether {@link #newPerTaskExecutor(String)} uses virtual threads.
+	 *
+	 * @return true if virtual threads are available, false otherwise.
+	 */
+	public static boolean hasVirtualThreads() {
+		try {
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Create a thread factory for daemon threads named prefix-1, prefix-2 and so
+	 * on.
+	 *
+	 * @param namePrefix prefix of the thread names.
+	 * @return thread factory.
+	 */
+	public static ThreadFactory namedThreadFactory(String namePrefix) {
+		AtomicInteger counter = new AtomicInteger(0);
+		return runnable -> {
+			Thread thread = new Thread(runnable, namePrefix + "-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
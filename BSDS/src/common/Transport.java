@@ -0,0 +1,52 @@
+package common;
+
+import java.io.IOException;
+import java.rmi.NotBoundException;
+import java.rmi.Remote;
+
+/**
+ * Utility class to choose, at startup, how the servers and clients of projects 2
+ * to 4 talk to each other: Java RMI, the default, or the binary transport of
+ * {@link BinaryRpcServer} and {@link BinaryRpcClient}.
+ *
+ * With RMI, an object is bound to a name in the registry listening on the port.
+ * With the binary transport, the port is served directly and the name is not
+ * used.
+ */
+public final class Transport {
+
+	// System property to choose the transport, rmi or binary.
+	public static final String PROPERTY = "kv.transport";
+
+	private Transport() {
+	}
+
+	/**
+	 * Check whether the binary transport was chosen with the kv.transport system
+	 * property.
+	 *
+	 * @return true for the binary transport, false for RMI.
+	 */
+	public static boolean isBinary() {
+		return "binary".equalsIgnoreCase(System.getProperty(PROPERTY));
+	}
+
+	/**
+	 * Get a remote object over the chosen transport.
+	 *
+	 * @param host host of the server.
+	 * @param port port of the RMI registry or of the binary server.
+	 * @param name name the object is bound to in the RMI registry.
+	 * @param type remote interface of the object.
+	 * @return stub or proxy implementing the interface.
+	 * @throws NotBoundException if nothing is bound to the name.
+	 * @throws IOException       if unable to reach the server.
+	 */
+	public static <T extends Remote> T connect(String host, int port, String name, Class<T> type)
+			throws NotBoundException, IOException {
+		if (isBinary()) {
+			return BinaryRpcClient.connect(host, port, type);
+		}
+		return StubCache.lookup("rmi://" + host + ":" + port + "/" + name, type);
+	}
+}
@@ -0,0 +1,147 @@
+package common;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.rmi.server.RMIClientSocketFactory;
+import java.rmi.server.RMIServerSocketFactory;
+import java.util.Objects;
+
+/**
+ * Class that represents the sockets the remote objects are exported on, with
+ * the TCP options suited to small request and response messages. Nagle's
+ * algorithm is off by default, since it holds a small call back until the
+ * previous one is acknowledged, and the buffer sizes and keepalive can be set.
+ *
+ * The same instance serves as the client factory, which travels with the stubs,
+ * so the clients open their sockets with the options the server chose. RMI
+ * already keeps the client connections open and reuses them between calls.
+ */
+public class TunedSocketFactory implements RMIClientSocketFactory, RMIServerSocketFactory, Serializable {
+
+	private static final long serialVersionUID = -3408021722367290658L;
+
+	// System properties to configure the sockets. A buffer size of 0 keeps the
+	// operating system default.
+	public static final String NO_DELAY_PROPERTY = "kv.rmi.tcpNoDelay";
+	public static final String KEEP_ALIVE_PROPERTY = "kv.rmi.keepAlive";
+	public static final String SEND_BUFFER_PROPERTY = "kv.rmi.sendBufferKB";
+	public static final String RECEIVE_BUFFER_PROPERTY = "kv.rmi.receiveBufferKB";
+
+	private final boolean tcpNoDelay;
+
+	private final boolean keepAlive;
+
+	private final int sendBufferSize;
+
+	private final int receiveBufferSize;
+
+	/**
+	 * Constructor to create a factory.
+	 *
+	 * @param tcpNoDelay        true to send small messages at once.
+	 * @param keepAlive         true to detect dead connections.
+	 * @param sendBufferSize    send buffer size in bytes, or 0 for the default.
+	 * @param receiveBufferSize receive buffer size in bytes, or 0 for the default.
+	 */
+	public TunedSocketFactory(boolean tcpNoDelay, boolean keepAlive, int sendBufferSize, int receiveBufferSize) {
+		this.tcpNoDelay = tcpNoDelay;
+		this.keepAlive = keepAlive;
+		this.sendBufferSize = sendBufferSize;
+		this.receiveBufferSize = receiveBufferSize;
+	}
+
+	/**
+	 * Create a factory configured with the kv.rmi.tcpNoDelay (default true),
+	 * kv.rmi.keepAlive (default true), kv.rmi.sendBufferKB and
+	 * kv.rmi.receiveBufferKB (default 0, the operating system default) system
+	 * properties.
+	 *
+	 * @return socket factory.
+	 */
+	public static TunedSocketFactory fromSystemProperties() {
+		return new TunedSocketFactory(
+				Boolean.parseBoolean(System.getProperty(NO_DELAY_PROPERTY, "true")),
+				Boolean.parseBoolean(System.getProperty(KEEP_ALIVE_PROPERTY, "true")),
+				Integer.getInteger(SEND_BUFFER_PROPERTY, 0) * 1024,
+				Integer.getInteger(RECEIVE_BUFFER_PROPERTY, 0) * 1024);
+	}
+
+	/**
+	 * Get the factory configured with the system properties, shared by all the
+	 * exports of the JVM.
+	 *
+	 * @return socket factory.
+	 */
+	public static TunedSocketFactory getDefault() {
+		return DefaultHolder.INSTANCE;
+	}
+
+	@Override
+	public Socket createSocket(String host, int port) throws IOException {
+		Socket socket = new Socket();
+		// The buffer sizes must be set before connecting to take part in the
+		// window negotiation.
+		configure(socket);
+		socket.connect(new InetSocketAddress(host, port));
+		return socket;
+	}
+
+	@Override
+	public ServerSocket createServerSocket(int port) throws IOException {
+		ServerSocket serverSocket = new ServerSocket() {
+			@Override
+			public Socket accept() throws IOException {
+				Socket socket = super.accept();
+				configure(socket);
+				return socket;
+			}
+		};
+		// Accepted sockets inherit the receive buffer size of the server socket.
+		if (receiveBufferSize > 0) {
+			serverSocket.setReceiveBufferSize(receiveBufferSize);
+		}
+		serverSocket.bind(new InetSocketAddress(port));
+		return serverSocket;
+	}
+
+	/**
+	 * Private method to apply the options to a socket.
+	 */
+	private void configure(Socket socket) throws IOException {
+		socket.setTcpNoDelay(tcpNoDelay);
+		socket.setKeepAlive(keepAlive);
+		if (sendBufferSize > 0) {
+			socket.setSendBufferSize(sendBufferSize);
+		}
+		if (receiveBufferSize > 0) {
+			socket.setReceiveBufferSize(receiveBufferSize);
+		}
+	}
+
+	// RMI shares the server sockets and the client connections of exports whose
+	// factories are equal.
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof TunedSocketFactory)) {
+			return false;
+		}
+		TunedSocketFactory other = (TunedSocketFactory) obj;
+		return tcpNoDelay == other.tcpNoDelay && keepAlive == other.keepAlive
+				&& sendBufferSize == other.sendBufferSize && receiveBufferSize == other.receiveBufferSize;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(tcpNoDelay, keepAlive, sendBufferSize, receiveBufferSize);
+	}
+
+	/**
+	 * Class that holds the default factory, created on first use.
+	 */
+	private static final class DefaultHolder {
+		static final TunedSocketFactory INSTANCE = fromSystemProperties();
+	}
+}
@@ -0,0 +1,325 @@
+package common;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Class that represents a write-ahead log, the records a node must find again
+ * after a crash. Records are appended to a single file, each framed as its
+ * length (int), the CRC32C of its bytes (int) and its bytes, so a record torn
+ * by a crash is detected and dropped when the log is opened again.
+ *
+ * Appending only hands the record to the operating system. A caller that needs
+ * it on the disk then calls {@link #sync(long)}, and the callers syncing at the
+ * same time share a single fsync: one of them forces the file for all the
+ * records appended so far while the others wait for it.
+ *
+ * The log only grows, until its owner replaces its records with the fewer ones
+ * still needed, usually when recovering, with {@link #rewrite(Iterable)}.
+ *
+ * Safe to use from many threads.
+ */
+public class WriteAheadLog implements Closeable {
+
+	// System properties to disable the write-ahead logs, choose their directory
+	// and skip the fsync, to measure its cost only.
+	public static final String PROPERTY = "kv.wal";
+	public static final String DIRECTORY_PROPERTY = "kv.wal.dir";
+	public static final String SYNC_PROPERTY = "kv.wal.sync";
+
+	static final String SUFFIX = ".wal";
+
+	// Length and checksum before every record.
+	private static final int FRAME_HEADER_SIZE = 2 * Integer.BYTES;
+
+	// Largest record, to tell a torn length from a real one.
+	private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+	private final File file;
+
+	// Replaced by a rewrite, with both locks held.
+	private volatile FileChannel channel;
+
+	private final boolean fsync;
+
+	// Set once a torn record could not be cut off, to refuse records after it.
+	private boolean failed;
+
+	// Records found when opening the log, until read.
+	private List<byte[]> recoveredRecords;
+
+	// End of the records appended, and of those forced to the disk.
+	private long appendedPosition;
+	private volatile long durablePosition;
+
+	private final Object syncLock = new Object();
+
+	/**
+	 * Constructor to open, or create, a log. The records already in the file are
+	 * read back, and anything after the last complete one is cut off.
+	 *
+	 * @param file  log file.
+	 * @param fsync true to force the records to the disk on sync, false to only
+	 *              hand them to the operating system.
+	 * @throws IOException if unable to open or read the file.
+	 */
+	public WriteAheadLog(File file, boolean fsync) throws IOException {
+		this(file, FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE), fsync);
+	}
+
+	/**
+	 * Constructor to open a log on a channel, for tests.
+	 *
+	 * @param file    log file.
+	 * @param channel channel of the log file, open to read and write.
+	 * @param fsync   true to force the records to the disk on sync.
+	 * @throws IOException if unable to read the file.
+	 */
+	WriteAheadLog(File file, FileChannel channel, boolean fsync) throws IOException {
+		this.file = file;
+		this.channel = channel;
+		this.fsync = fsync;
+		this.recoveredRecords = readRecords();
+		if (channel.size() > appendedPosition) {
+			System.err.println("Dropping " + (channel.size() - appendedPosition) + " bytes of torn records from "
+					+ file);
+			channel.truncate(appendedPosition);
+			channel.force(false);
+		}
+		channel.position(appendedPosition);
+		this.durablePosition = appendedPosition;
+	}
+
+	/**
+	 * Open the log of a node, unless the kv.wal system property is off. The log
+	 * goes to the kv.wal.dir directory, the current directory by default, and is
+	 * forced to the disk unless kv.wal.sync is false.
+	 *
+	 * @param name name of the log.
+	 * @return the log, or null if disabled or unable to open it.
+	 */
+	public static WriteAheadLog open(String name) {
+		if ("off".equalsIgnoreCase(System.getProperty(PROPERTY))) {
+			return null;
+		}
+		File directory = new File(System.getProperty(DIRECTORY_PROPERTY, System.getProperty("user.dir")));
+		boolean fsync = !"false".equalsIgnoreCase(System.getProperty(SYNC_PROPERTY));
+		try {
+			directory.mkdirs();
+			WriteAheadLog log = new WriteAheadLog(new File(directory, name + SUFFIX), fsync);
+			System.out.println("Write-ahead log " + name + " is written to " + directory);
+			return log;
+		} catch (IOException e) {
+			System.err.println("Error opening write-ahead log " + name + " : " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Get the records that were in the log when it was opened, oldest first. Only
+	 * returns them once, so they can be garbage collected after recovery.
+	 *
+	 * @return recovered records.
+	 */
+	public synchronized List<byte[]> takeRecoveredRecords() {
+		List<byte[]> records = recoveredRecords;
+		recoveredRecords = new ArrayList<>();
+		return records;
+	}
+
+	/**
+	 * Append a record, without waiting for the disk. If the write fails, the part
+	 * of the record written is cut off again, so the next records are not lost
+	 * behind it on recovery. If that fails too, the log refuses any more records.
+	 *
+	 * @param record record bytes.
+	 * @return position to pass to {@link #sync(long)} to wait for the record to be
+	 *         on the disk.
+	 * @throws IOException if unable to write the file.
+	 */
+	public long append(byte[] record) throws IOException {
+		ByteBuffer frame = frame(record);
+		synchronized (this) {
+			if (failed) {
+				throw new IOException("Write-ahead log refuses records after a failed write");
+			}
+			try {
+				while (frame.hasRemaining()) {
+					channel.write(frame);
+				}
+			} catch (IOException e) {
+				try {
+					channel.truncate(appendedPosition);
+					channel.position(appendedPosition);
+				} catch (IOException truncateError) {
+					failed = true;
+					e.addSuppressed(truncateError);
+				}
+				throw e;
+			}
+			appendedPosition += frame.limit();
+			return appendedPosition;
+		}
+	}
+
+	/**
+	 * Get the end of the records appended so far.
+	 *
+	 * @return position to pass to {@link #sync(long)} to wait for all of them.
+	 */
+	public synchronized long appendedPosition() {
+		return appendedPosition;
+	}
+
+	/**
+	 * Wait until the records up to a position are on the disk, forcing the file
+	 * unless another thread already did.
+	 *
+	 * @param position position returned by {@link #append(byte[])}.
+	 * @throws IOException if unable to force the file.
+	 */
+	public void sync(long position) throws IOException {
+		if (!fsync || durablePosition >= position) {
+			return;
+		}
+		synchronized (syncLock) {
+			if (durablePosition >= position) {
+				return;
+			}
+			long target;
+			synchronized (this) {
+				target = appendedPosition;
+			}
+			channel.force(false);
+			durablePosition = target;
+		}
+	}
+
+	/**
+	 * Replace the records of the log, all appended and synced, with the given ones.
+	 * They are written to a new file, forced to the disk, and renamed over the log,
+	 * so a crash leaves either the old records or the new ones. Appends and syncs
+	 * wait until done.
+	 *
+	 * @param records records to keep, oldest first.
+	 * @throws IOException if unable to write the new file, the log being unchanged
+	 *                     then, or to open it once renamed.
+	 */
+	public void rewrite(Iterable<byte[]> records) throws IOException {
+		synchronized (syncLock) {
+			synchronized (this) {
+				if (failed) {
+					throw new IOException("Write-ahead log refuses records after a failed write");
+				}
+				// Step 1 : Write the records to a new file.
+				File rewritten = new File(file.getPath() + ".tmp");
+				long position = 0;
+				try (FileChannel out = FileChannel.open(rewritten.toPath(), StandardOpenOption.CREATE,
+						StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+					for (byte[] record : records) {
+						ByteBuffer frame = frame(record);
+						while (frame.hasRemaining()) {
+							out.write(frame);
+						}
+						position += frame.limit();
+					}
+					if (fsync) {
+						out.force(false);
+					}
+				}
+
+				// Step 2 : Rename it over the log and append after its records.
+				Files.move(rewritten.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+				channel.close();
+				channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+				channel.position(position);
+				appendedPosition = position;
+				durablePosition = position;
+			}
+		}
+	}
+
+	/**
+	 * Force every record to the disk and close the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			if (fsync) {
+				channel.force(false);
+			}
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Private method to frame a record with its length and checksum.
+	 *
+	 * @param record record bytes.
+	 * @return frame, ready to be written.
+	 */
+	private static ByteBuffer frame(byte[] record) {
+		CRC32C crc = new CRC32C();
+		crc.update(record);
+		ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_SIZE + record.length);
+		frame.putInt(record.length).putInt((int) crc.getValue()).put(record).flip();
+		return frame;
+	}
+
+	/**
+	 * Private method to read the complete records from the start of the file,
+	 * setting the appended position to the end of the last one.
+	 *
+	 * @return records read.
+	 * @throws IOException if unable to read the file.
+	 */
+	private List<byte[]> readRecords() throws IOException {
+		List<byte[]> records = new ArrayList<>();
+		long size = channel.size();
+		ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+		long position = 0;
+		while (size - position >= FRAME_HEADER_SIZE) {
+			header.clear();
+			readFully(header, position);
+			int length = header.getInt(0);
+			int checksum = header.getInt(Integer.BYTES);
+			if (length < 0 || length > MAX_RECORD_SIZE || size - position - FRAME_HEADER_SIZE < length) {
+				break;
+			}
+			ByteBuffer record = ByteBuffer.allocate(length);
+			readFully(record, position + FRAME_HEADER_SIZE);
+			CRC32C crc = new CRC32C();
+			crc.update(record.array());
+			if ((int) crc.getValue() != checksum) {
+				break;
+			}
+			records.add(record.array());
+			position += FRAME_HEADER_SIZE + length;
+		}
+		appendedPosition = position;
+		return records;
+	}
+
+	/**
+	 * Private method to fill a buffer from a position of the file.
+	 */
+	private void readFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of write-ahead log");
+			}
+		}
+	}
+}
@@ -0,0 +1,253 @@
+package common;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class WriteAheadLogTest {
+
+	@TempDir
+	File directory;
+
+	@Test
+	void testRecordsAreRecoveredAfterReopening() throws Exception {
+		File file = new File(directory, "node" + WriteAheadLog.SUFFIX);
+		try (WriteAheadLog log = new WriteAheadLog(file, true)) {
+			assertTrue(log.takeRecoveredRecords().isEmpty());
+			ExecutorService writers = Executors.newFixedThreadPool(8);
+			List<Future<?>> appends = new ArrayList<>();
+			for (int i = 0; i < 100; i++) {
+				byte[] record = ("record" + i).getBytes(StandardCharsets.UTF_8);
+				appends.add(writers.submit(() -> {
+					log.sync(log.append(record));
+					return null;
+				}));
+			}
+			for (Future<?> append : appends) {
+				append.get();
+			}
+			writers.shutdown();
+		}
+		try (WriteAheadLog log = new WriteAheadLog(file, true)) {
+			List<byte[]> records = log.takeRecoveredRecords();
+			assertEquals(100, records.size());
+			assertTrue(new String(records.get(0), StandardCharsets.UTF_8).startsWith("record"));
+		}
+	}
+
+	@Test
+	void testTornRecordIsDropped() throws Exception {
+		File file = new File(directory, "node" + WriteAheadLog.SUFFIX);
+		try (WriteAheadLog log = new WriteAheadLog(file, false)) {
+			log.append(new byte[] { 1, 2, 3 });
+			log.append(new byte[] { 4, 5, 6 });
+		}
+		// Corrupt the last byte of the second record, as a crash in the middle of a
+		// write would.
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.seek(raf.length() - 1);
+			raf.write(9);
+		}
+
+		try (WriteAheadLog log = new WriteAheadLog(file, false)) {
+			List<byte[]> records = log.takeRecoveredRecords();
+			assertEquals(1, records.size());
+			assertArrayEquals(new byte[] { 1, 2, 3 }, records.get(0));
+			// New records go after the last complete one.
+			log.append(new byte[] { 7 });
+		}
+		try (WriteAheadLog log = new WriteAheadLog(file, false)) {
+			List<byte[]> records = log.takeRecoveredRecords();
+			assertEquals(2, records.size());
+			assertArrayEquals(new byte[] { 7 }, records.get(1));
+		}
+	}
+
+	@Test
+	void testRewriteReplacesRecords() throws Exception {
+		File file = new File(directory, "node" + WriteAheadLog.SUFFIX);
+		try (WriteAheadLog log = new WriteAheadLog(file, true)) {
+			for (int i = 0; i < 100; i++) {
+				log.sync(log.append(new byte[1000]));
+			}
+			log.rewrite(List.of(new byte[] { 1 }, new byte[] { 2 }));
+			assertTrue(file.length() < 100, file.length() + " bytes");
+			log.sync(log.append(new byte[] { 3 }));
+		}
+		try (WriteAheadLog log = new WriteAheadLog(file, true)) {
+			List<byte[]> records = log.takeRecoveredRecords();
+			assertEquals(3, records.size());
+			assertArrayEquals(new byte[] { 1 }, records.get(0));
+			assertArrayEquals(new byte[] { 3 }, records.get(2));
+		}
+	}
+
+	@Test
+	void testRecordTornByFailedWriteIsCutOff() throws Exception {
+		File file = new File(directory, "node" + WriteAheadLog.SUFFIX);
+		FailingChannel channel = new FailingChannel(file);
+		try (WriteAheadLog log = new WriteAheadLog(file, channel, false)) {
+			log.append(new byte[] { 1, 2, 3 });
+			channel.failWrites = true;
+			assertThrows(IOException.class, () -> log.append(new byte[] { 4, 5, 6 }));
+			channel.failWrites = false;
+			log.append(new byte[] { 7 });
+		}
+
+		try (WriteAheadLog log = new WriteAheadLog(file, false)) {
+			List<byte[]> records = log.takeRecoveredRecords();
+			assertEquals(2, records.size());
+			assertArrayEquals(new byte[] { 1, 2, 3 }, records.get(0));
+			assertArrayEquals(new byte[] { 7 }, records.get(1));
+		}
+	}
+
+	@Test
+	void testLogRefusesRecordsWhenTornRecordStays() throws Exception {
+		File file = new File(directory, "node" + WriteAheadLog.SUFFIX);
+		FailingChannel channel = new FailingChannel(file);
+		try (WriteAheadLog log = new WriteAheadLog(file, channel, false)) {
+			channel.failWrites = true;
+			channel.failTruncates = true;
+			assertThrows(IOException.class, () -> log.append(new byte[] { 1, 2, 3 }));
+			channel.failWrites = false;
+			channel.failTruncates = false;
+			assertThrows(IOException.class, () -> log.append(new byte[] { 4 }));
+		}
+	}
+
+	/**
+	 * Channel that writes only a few bytes of a buffer and then fails, as a full
+	 * disk would, and optionally fails to truncate too.
+	 */
+	private static class FailingChannel extends FileChannel {
+
+		private final FileChannel channel;
+
+		volatile boolean failWrites;
+		volatile boolean failTruncates;
+
+		FailingChannel(File file) throws IOException {
+			this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+		}
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			if (!failWrites) {
+				return channel.write(src);
+			}
+			if (src.position() > 0) {
+				throw new IOException("No space left on device");
+			}
+			ByteBuffer part = src.duplicate();
+			part.limit(part.position() + Math.min(part.remaining(), 5));
+			int written = channel.write(part);
+			src.position(src.position() + written);
+			return written;
+		}
+
+		@Override
+		public FileChannel truncate(long size) throws IOException {
+			if (failTruncates) {
+				throw new IOException("Input/output error");
+			}
+			channel.truncate(size);
+			return this;
+		}
+
+		@Override
+		public int read(ByteBuffer dst) throws IOException {
+			return channel.read(dst);
+		}
+
+		@Override
+		public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+			return channel.read(dsts, offset, length);
+		}
+
+		@Override
+		public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+			return channel.write(srcs, offset, length);
+		}
+
+		@Override
+		public long position() throws IOException {
+			return channel.position();
+		}
+
+		@Override
+		public FileChannel position(long newPosition) throws IOException {
+			channel.position(newPosition);
+			return this;
+		}
+
+		@Override
+		public long size() throws IOException {
+			return channel.size();
+		}
+
+		@Override
+		public void force(boolean metaData) throws IOException {
+			channel.force(metaData);
+		}
+
+		@Override
+		public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+			return channel.transferTo(position, count, target);
+		}
+
+		@Override
+		public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+			return channel.transferFrom(src, position, count);
+		}
+
+		@Override
+		public int read(ByteBuffer dst, long position) throws IOException {
+			return channel.read(dst, position);
+		}
+
+		@Override
+		public int write(ByteBuffer src, long position) throws IOException {
+			return channel.write(src, position);
+		}
+
+		@Override
+		public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+			return channel.map(mode, position, size);
+		}
+
+		@Override
+		public FileLock lock(long position, long size, boolean shared) throws IOException {
+			return channel.lock(position, size, shared);
+		}
+
+		@Override
+		public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+			return channel.tryLock(position, size, shared);
+		}
+
+		@Override
+		protected void implCloseChannel() throws IOException {
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,409 @@
+package loadtest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.rmi.NotBoundException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import common.KeyValueService;
+import common.LatencyHistogram;
+import common.StoreBenchmark;
+import common.Transport;
+import project1.PipelinedTCPClient;
+import project1.UDPClient;
+
+/**
+ * Load generator that drives any of the five servers, TCP, UDP, RMI, 2PC or
+ * Paxos, with the same workload, so their saturation points can be found and
+ * compared.
+ *
+ * Each thread holds its own connection. With an arrival rate, the load is open
+ * loop: every thread sends its share of the requests on a fixed schedule, and a
+ * latency is measured from the time the request was due, not the time it was
+ * sent, so a stalled server is not hidden by the requests that were never sent
+ * meanwhile (coordinated omission). With no rate, every thread sends its next
+ * request as soon as the previous one is answered.
+ *
+ * Usage : LoadGenerator tcp|udp|rmi|2pc|paxos host port
+ *
+ * The workload is configured with system properties:
+ * <ul>
+ * <li>load.threads : concurrent connections, default 16.</li>
+ * <li>load.rates : total arrival rates in requests per second, run one after
+ * the other, or 0 for closed loop, default 0.</li>
+ * <li>load.warmupSeconds, load.durationSeconds : duration of the warmup and of
+ * the measure at each rate, default 2 and 10.</li>
+ * <li>load.keys : number of keys, default 1000.</li>
+ * <li>load.distribution : uniform or zipfian, default uniform.</li>
+ * <li>load.valueSize : value size in bytes, default 16.</li>
+ * <li>load.readPercent : percentage of GET requests, default 90.</li>
+ * <li>load.deletePercent : percentage of DELETE requests, default 0, the rest
+ * being PUT.</li>
+ * </ul>
+ * The RMI, 2PC and Paxos clients also follow kv.transport.
+ */
+public class LoadGenerator {
+
+	// Below this share of the target rate, the server is reported as saturated.
+	private static final double SATURATION_RATIO = 0.95;
+
+	/**
+	 * Interface of a connection to one of the servers.
+	 */
+	interface Connection extends Closeable {
+
+		void put(String key, String value) throws IOException;
+
+		void get(String key) throws IOException;
+
+		void delete(String key) throws IOException;
+	}
+
+	/**
+	 * Interface opening the connections of the threads.
+	 */
+	interface ConnectionFactory {
+
+		Connection open() throws IOException;
+	}
+
+	private final ConnectionFactory factory;
+	private final int threads;
+	private final long warmupNanos;
+	private final long durationNanos;
+	private final int readPercent;
+	private final int deletePercent;
+	private final String[] keys;
+	private final StoreBenchmark.KeyChooser zipfian;
+	private final String value;
+
+	/**
+	 * Constructor to create a load generator configured by the system properties.
+	 *
+	 * @param factory opens the connections to the server.
+	 */
+	LoadGenerator(ConnectionFactory factory) {
+		this.factory = factory;
+		this.threads = Integer.getInteger("load.threads", 16);
+		this.warmupNanos = TimeUnit.SECONDS.toNanos(Long.getLong("load.warmupSeconds", 2));
+		this.durationNanos = TimeUnit.SECONDS.toNanos(Long.getLong("load.durationSeconds", 10));
+		this.readPercent = Integer.getInteger("load.readPercent", 90);
+		this.deletePercent = Integer.getInteger("load.deletePercent", 0);
+		if (readPercent + deletePercent > 100) {
+			throw new IllegalArgumentException("GET and DELETE percentages add up to more than 100");
+		}
+
+		int keyCount = Integer.getInteger("load.keys", 1000);
+		this.keys = new String[keyCount];
+		for (int i = 0; i < keyCount; i++) {
+			keys[i] = "key" + i;
+		}
+		this.zipfian = "zipfian".equalsIgnoreCase(System.getProperty("load.distribution", "uniform"))
+				? new StoreBenchmark.KeyChooser(keyCount)
+				: null;
+		char[] chars = new char[Integer.getInteger("load.valueSize", 16)];
+		Arrays.fill(chars, 'v');
+		this.value = new String(chars);
+	}
+
+	public static void main(String[] args) throws Exception {
+
+		// Step 1 : Get the server type, IP and port from the program arguments.
+		if (args.length < 3 || !args[2].matches("[0-9]+")) {
+			System.out.println("Please enter the server type (tcp, udp, rmi, 2pc or paxos), IP address and port");
+			System.exit(0);
+		}
+		String host = args[1];
+		int port = Integer.parseInt(args[2]);
+
+		// Step 2 : Choose the client of the server type.
+		ConnectionFactory factory;
+		switch (args[0].toLowerCase(Locale.ROOT)) {
+		case "tcp":
+			factory = () -> tcpConnection(host, port);
+			break;
+		case "udp":
+			factory = () -> udpConnection(host, port);
+			break;
+		case "rmi":
+		case "2pc":
+			factory = () -> remoteConnection(host, port, "MyKeyValueMap");
+			break;
+		case "paxos":
+			factory = () -> remoteConnection(host, port, "MyKeyValueMap" + port);
+			break;
+		default:
+			System.out.println("Unknown server type " + args[0] + ". Please enter tcp, udp, rmi, 2pc or paxos");
+			System.exit(0);
+			return;
+		}
+
+		// Step 3 : Fill the store, then run the load at every rate.
+		LoadGenerator generator = new LoadGenerator(factory);
+		generator.prepopulate();
+		for (String rate : System.getProperty("load.rates", "0").split(",")) {
+			System.out.println(generator.run(args[0], Double.parseDouble(rate.trim())));
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Put every key once, spread over the threads, so the GET requests find their
+	 * keys.
+	 *
+	 * @throws IOException          if unable to reach the server.
+	 * @throws InterruptedException if interrupted while waiting for the threads.
+	 */
+	void prepopulate() throws IOException, InterruptedException {
+		AtomicLong failures = new AtomicLong();
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			int first = t;
+			workers[t] = new Thread(() -> {
+				try (Connection connection = factory.open()) {
+					for (int i = first; i < keys.length; i += threads) {
+						connection.put(keys[i], value);
+					}
+				} catch (IOException e) {
+					failures.incrementAndGet();
+				}
+			});
+			workers[t].start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		if (failures.get() > 0) {
+			throw new IOException("Unable to fill the store from " + failures.get() + " connections");
+		}
+	}
+
+	/**
+	 * Run the load at an arrival rate and describe the throughput and latencies.
+	 *
+	 * @param name name of the server type in the report.
+	 * @param rate total arrival rate in requests per second, or 0 for closed loop.
+	 * @return report line.
+	 * @throws IOException          if unable to connect to the server.
+	 * @throws InterruptedException if interrupted while waiting for the threads.
+	 */
+	String run(String name, double rate) throws IOException, InterruptedException {
+		Connection[] connections = new Connection[threads];
+		for (int t = 0; t < threads; t++) {
+			connections[t] = factory.open();
+		}
+
+		LatencyHistogram[] histograms = new LatencyHistogram[threads];
+		AtomicLong errors = new AtomicLong();
+		// Every thread sends a request at this interval, in turn with the others.
+		long intervalNanos = rate > 0 ? (long) (threads * 1e9 / rate) : 0;
+		long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+		long measureStart = start + warmupNanos;
+		long end = measureStart + durationNanos;
+
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			Connection connection = connections[t];
+			LatencyHistogram histogram = new LatencyHistogram();
+			histograms[t] = histogram;
+			SplittableRandom random = new SplittableRandom(t);
+			long offset = intervalNanos * t / threads;
+			workers[t] = new Thread(() -> {
+				long due = start + offset;
+				while (true) {
+					// Step 1 : Wait until the request is due, if it is not late already.
+					long now = System.nanoTime();
+					if (intervalNanos == 0) {
+						due = Math.max(now, start);
+					}
+					while (now < due) {
+						LockSupport.parkNanos(due - now);
+						now = System.nanoTime();
+					}
+					// A saturated server leaves requests overdue at the end, they are not sent.
+					if (due >= end || now >= end) {
+						break;
+					}
+
+					// Step 2 : Send the request and, if answered during the measure, record its
+					// latency from when it was due.
+					boolean failed = false;
+					try {
+						send(connection, random);
+					} catch (IOException e) {
+						failed = true;
+					}
+					long completed = System.nanoTime();
+					if (completed >= measureStart && completed < end) {
+						if (failed) {
+							errors.incrementAndGet();
+						} else {
+							histogram.record(completed - due);
+						}
+					}
+					due += intervalNanos;
+				}
+			});
+			workers[t].start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		for (Connection connection : connections) {
+			connection.close();
+		}
+
+		LatencyHistogram total = new LatencyHistogram();
+		for (LatencyHistogram histogram : histograms) {
+			total.add(histogram);
+		}
+		return describe(name, rate, total, errors.get());
+	}
+
+	/**
+	 * Private method to send a request chosen by the workload.
+	 */
+	private void send(Connection connection, SplittableRandom random) throws IOException {
+		String key = keys[zipfian != null ? zipfian.next(random) : random.nextInt(keys.length)];
+		int choice = random.nextInt(100);
+		if (choice < readPercent) {
+			connection.get(key);
+		} else if (choice < readPercent + deletePercent) {
+			connection.delete(key);
+		} else {
+			connection.put(key, value);
+		}
+	}
+
+	/**
+	 * Private method to describe the result of a run.
+	 */
+	private String describe(String name, double rate, LatencyHistogram latencies, long errors) {
+		double seconds = durationNanos / 1e9;
+		double throughput = latencies.getTotalCount() / seconds;
+		String target = rate > 0 ? String.format(Locale.ROOT, "%.0f req/s", rate) : "closed loop";
+		String saturated = rate > 0 && throughput < rate * SATURATION_RATIO ? " SATURATED" : "";
+		return String.format(Locale.ROOT,
+				"%-6s threads=%d target=%s : %.0f req/s, %d errors, latency ms p50=%.3f p90=%.3f p99=%.3f"
+						+ " p99.9=%.3f max=%.3f mean=%.3f%s",
+				name, threads, target, throughput, errors, millis(latencies.getValueAtPercentile(50)),
+				millis(latencies.getValueAtPercentile(90)), millis(latencies.getValueAtPercentile(99)),
+				millis(latencies.getValueAtPercentile(99.9)), millis(latencies.getMax()), latencies.getMean() / 1e6,
+				saturated);
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1e6;
+	}
+
+	/**
+	 * Private method to open a connection to the TCP server, in the text protocol.
+	 */
+	private static Connection tcpConnection(String host, int port) throws IOException {
+		PipelinedTCPClient client = new PipelinedTCPClient(host, port, false, 1);
+		return new Connection() {
+
+			@Override
+			public void put(String key, String value) throws IOException {
+				send("PUT-" + key + "-" + value);
+			}
+
+			@Override
+			public void get(String key) throws IOException {
+				send("GET-" + key);
+			}
+
+			@Override
+			public void delete(String key) throws IOException {
+				send("DELETE-" + key);
+			}
+
+			@Override
+			public void close() throws IOException {
+				client.close();
+			}
+
+			private void send(String command) throws IOException {
+				try {
+					client.send(command).get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while waiting for the response", e);
+				} catch (ExecutionException e) {
+					throw new IOException("Request failed", e.getCause());
+				}
+			}
+		};
+	}
+
+	/**
+	 * Private method to open a connection to the UDP server, in the reliable binary
+	 * protocol.
+	 */
+	private static Connection udpConnection(String host, int port) throws IOException {
+		UDPClient client = new UDPClient(host, port);
+		return new Connection() {
+
+			@Override
+			public void put(String key, String value) throws IOException {
+				client.send("PUT-" + key + "-" + value);
+			}
+
+			@Override
+			public void get(String key) throws IOException {
+				client.send("GET-" + key);
+			}
+
+			@Override
+			public void delete(String key) throws IOException {
+				client.send("DELETE-" + key);
+			}
+
+			@Override
+			public void close() {
+				client.close();
+			}
+		};
+	}
+
+	/**
+	 * Private method to connect to the RMI, 2PC or Paxos server, all reached
+	 * through their key-value interface.
+	 */
+	private static Connection remoteConnection(String host, int port, String name) throws IOException {
+		KeyValueService service;
+		try {
+			service = Transport.connect(host, port, name, KeyValueService.class);
+		} catch (NotBoundException e) {
+			throw new IOException("Nothing bound to " + name, e);
+		}
+		return new Connection() {
+
+			@Override
+			public void put(String key, String value) throws IOException {
+				service.put(key, value);
+			}
+
+			@Override
+			public void get(String key) throws IOException {
+				service.get(key);
+			}
+
+			@Override
+			public void delete(String key) throws IOException {
+				service.delete(key);
+			}
+
+			@Override
+			public void close() {
+				// Stubs and proxies are shared, nothing to close.
+			}
+		};
+	}
+}
@@ -0,0 +1,363 @@
+package project1;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class that represents a request on many keys at once, and its response, of
+ * the binary key-value protocol. An MGET, MPUT or MDELETE carries the keys, and
+ * the values of an MPUT, of many single requests in one datagram, and the
+ * response packs their single responses in the same order.
+ *
+ * Request : batch opcode byte, varint number of items and, for every item,
+ * varint key length, key bytes and, for MPUT only, varint value length and value
+ * bytes.
+ *
+ * Response : status byte, varint number of items and, for every item, its
+ * single response as in {@link BinaryRequest}. When the responses of all the
+ * items would not fit in the reply, the server executes and answers only the
+ * first ones, at least one, and the number of items tells how many. The client
+ * sends the others again.
+ *
+ * The text protocol has the same operations as MGET-Key1-Key2,
+ * MPUT-Key1-Value1-Key2-Value2 and MDELETE-Key1-Key2, answered with one line per
+ * key. There too, only the first items whose lines fit in a datagram are
+ * executed, possibly none, and a last line tells how many were not.
+ *
+ * An instance is meant to be reused for request after request by a single
+ * thread.
+ */
+public class BatchRequest {
+
+	private byte opcode;
+
+	// Items of the batch. Only the first size ones are in use, the others are kept
+	// to be reused.
+	private final List<BinaryRequest> items = new ArrayList<>();
+	private int size;
+
+	private byte status;
+
+	/**
+	 * Check whether an opcode is one of a batch.
+	 *
+	 * @param opcode operation.
+	 * @return true for MGET, MPUT and MDELETE.
+	 */
+	public static boolean isBatchOpcode(byte opcode) {
+		return opcode == BinaryRequest.OP_MGET || opcode == BinaryRequest.OP_MPUT
+				|| opcode == BinaryRequest.OP_MDELETE;
+	}
+
+	/**
+	 * Set up a request to be sent, from a user command in the text format like
+	 * MPUT-Key1-Value1-Key2-Value2.
+	 *
+	 * @param userInput user command.
+	 * @return true if the command is a valid MGET, MPUT or MDELETE, false
+	 *         otherwise.
+	 */
+	public boolean parseCommand(String userInput) {
+		String[] commands = userInput.split("-");
+
+		if ("MPUT".equalsIgnoreCase(commands[0]) && commands.length >= 3 && commands.length % 2 == 1) {
+			clear(BinaryRequest.OP_MPUT);
+			for (int i = 1; i < commands.length; i += 2) {
+				add(commands[i], commands[i + 1]);
+			}
+			return true;
+		}
+		byte opcode = "MGET".equalsIgnoreCase(commands[0]) ? BinaryRequest.OP_MGET
+				: "MDELETE".equalsIgnoreCase(commands[0]) ? BinaryRequest.OP_MDELETE : 0;
+		if (opcode != 0 && commands.length >= 2) {
+			clear(opcode);
+			for (int i = 1; i < commands.length; i++) {
+				add(commands[i], null);
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Start setting up a new request with no items.
+	 *
+	 * @param opcode batch operation.
+	 */
+	public void clear(byte opcode) {
+		this.opcode = opcode;
+		this.size = 0;
+		this.status = BinaryRequest.STATUS_OK;
+	}
+
+	/**
+	 * Add an item to the request.
+	 *
+	 * @param key   key of the item.
+	 * @param value value for MPUT, ignored otherwise.
+	 */
+	public void add(String key, String value) {
+		if (size == items.size()) {
+			items.add(new BinaryRequest());
+		}
+		items.get(size++).set(itemOpcode(), key, value);
+	}
+
+	/**
+	 * Remove the last item added to the request.
+	 */
+	public void removeLast() {
+		size--;
+	}
+
+	/**
+	 * Decode a request from the buffer, past its batch opcode. Unlike a single
+	 * request, a batch is always decoded from a complete datagram.
+	 *
+	 * @param opcode batch operation.
+	 * @param buffer buffer in read mode holding the complete request.
+	 * @throws ProtocolException if the bytes are not a valid request.
+	 */
+	public void decodeRequest(byte opcode, ByteBuffer buffer) throws ProtocolException {
+		if (!isBatchOpcode(opcode)) {
+			throw new ProtocolException("Unknown batch opcode " + opcode);
+		}
+		clear(opcode);
+		int count = BinaryRequest.readVarInt(buffer);
+		// Every item takes at least one byte.
+		if (count == -1 || count > buffer.remaining()) {
+			throw new ProtocolException("Invalid number of items");
+		}
+		for (int i = 0; i < count; i++) {
+			if (size == items.size()) {
+				items.add(new BinaryRequest());
+			}
+			if (!items.get(size).decodeOperands(itemOpcode(), buffer)) {
+				throw new ProtocolException("Truncated item " + i);
+			}
+			size++;
+		}
+	}
+
+	/**
+	 * Execute every item on the key-value store, in order.
+	 *
+	 * @param keyValueMap key-value store.
+	 */
+	public void execute(Map<String, String> keyValueMap) {
+		for (int i = 0; i < size; i++) {
+			items.get(i).execute(keyValueMap);
+		}
+	}
+
+	/**
+	 * Execute the first items on the key-value store, in order, as many as have
+	 * responses fitting in the given length, and at least one. The items left out
+	 * are not executed and no longer part of the request.
+	 *
+	 * @param keyValueMap       key-value store.
+	 * @param maxResponseLength largest response length.
+	 */
+	public void execute(Map<String, String> keyValueMap, int maxResponseLength) {
+		int length = 1 + BinaryRequest.varIntLength(size);
+		for (int i = 0; i < size; i++) {
+			BinaryRequest item = items.get(i);
+			// Only a GET has a response longer than its status, known once executed,
+			// and executing a GET changes nothing.
+			if (i > 0 && length + 1 > maxResponseLength) {
+				size = i;
+				return;
+			}
+			item.execute(keyValueMap);
+			length += item.responseLength();
+			if (i > 0 && length > maxResponseLength) {
+				size = i;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Execute the first items on the key-value store, in order, as many as have
+	 * text responses fitting in the given length, possibly none. A write is only
+	 * executed if its line fits whatever it finds in the store. The items left out
+	 * are not executed and no longer part of the request.
+	 *
+	 * @param keyValueMap        key-value store.
+	 * @param maxDescribedLength largest text response length, in UTF-8.
+	 */
+	public void executeDescribed(Map<String, String> keyValueMap, int maxDescribedLength) {
+		int length = 0;
+		for (int i = 0; i < size; i++) {
+			BinaryRequest item = items.get(i);
+			int separatorLength = i > 0 ? 1 : 0;
+			// Executing a GET changes nothing, so it is dropped once executed if too long.
+			if (opcode != BinaryRequest.OP_MGET
+					&& length + separatorLength + item.maxDescribedLength() > maxDescribedLength) {
+				size = i;
+				return;
+			}
+			item.execute(keyValueMap);
+			length += separatorLength + item.maxDescribedLength();
+			if (length > maxDescribedLength) {
+				size = i;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Get the number of bytes the response takes on the wire.
+	 *
+	 * @return response length.
+	 */
+	public int responseLength() {
+		int length = 1 + BinaryRequest.varIntLength(size);
+		for (int i = 0; i < size; i++) {
+			length += items.get(i).responseLength();
+		}
+		return length;
+	}
+
+	/**
+	 * Encode the response into the buffer.
+	 *
+	 * @param buffer buffer in write mode, with at least {@link #responseLength()}
+	 *               bytes remaining.
+	 */
+	public void encodeResponse(ByteBuffer buffer) {
+		buffer.put(status);
+		BinaryRequest.writeVarInt(buffer, size);
+		for (int i = 0; i < size; i++) {
+			items.get(i).encodeResponse(buffer);
+		}
+	}
+
+	/**
+	 * Get the number of bytes the request takes on the wire.
+	 *
+	 * @return request length.
+	 */
+	public int requestLength() {
+		int length = 1 + BinaryRequest.varIntLength(size);
+		for (int i = 0; i < size; i++) {
+			length += items.get(i).operandsLength();
+		}
+		return length;
+	}
+
+	/**
+	 * Encode the request into the buffer.
+	 *
+	 * @param buffer buffer in write mode, with at least {@link #requestLength()}
+	 *               bytes remaining.
+	 */
+	public void encodeRequest(ByteBuffer buffer) {
+		buffer.put(opcode);
+		BinaryRequest.writeVarInt(buffer, size);
+		for (int i = 0; i < size; i++) {
+			items.get(i).encodeOperands(buffer);
+		}
+	}
+
+	/**
+	 * Decode the response to this request from the buffer. If only the first items
+	 * were answered, the others are removed from the request.
+	 *
+	 * @param buffer buffer in read mode holding the complete response.
+	 * @throws ProtocolException if the bytes are not a valid response.
+	 */
+	public void decodeResponse(ByteBuffer buffer) throws ProtocolException {
+		if (!buffer.hasRemaining()) {
+			throw new ProtocolException("Empty response");
+		}
+		status = buffer.get();
+		if (status != BinaryRequest.STATUS_OK) {
+			return;
+		}
+		int count = BinaryRequest.readVarInt(buffer);
+		if (count > size || count < Math.min(size, 1)) {
+			throw new ProtocolException("Response does not match the number of items");
+		}
+		size = count;
+		for (int i = 0; i < size; i++) {
+			items.get(i).decodeResponse(buffer);
+		}
+	}
+
+	/**
+	 * Render the response in the same words as the text protocol, one line per
+	 * item.
+	 *
+	 * @return human-readable response.
+	 */
+	public String describeResponse() {
+		if (status == BinaryRequest.STATUS_INVALID) {
+			return "Invalid command. Server could not decode the request";
+		}
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				sb.append('\n');
+			}
+			sb.append(items.get(i).describeResponse());
+		}
+		return sb.toString();
+	}
+
+	public byte getOpcode() {
+		return opcode;
+	}
+
+	public byte getStatus() {
+		return status;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Get an item of the batch, with its response once executed or decoded.
+	 *
+	 * @param index index of the item.
+	 * @return the item.
+	 */
+	public BinaryRequest get(int index) {
+		if (index >= size) {
+			throw new IndexOutOfBoundsException(index);
+		}
+		return items.get(index);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(opcode == BinaryRequest.OP_MPUT ? "MPUT" : opcode == BinaryRequest.OP_MGET ? "MGET" : "MDELETE");
+		for (int i = 0; i < size; i++) {
+			BinaryRequest item = items.get(i);
+			sb.append(' ').append(item.getKey());
+			if (opcode == BinaryRequest.OP_MPUT) {
+				sb.append(' ').append(item.getValue());
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Private method to get the single operation of the items.
+	 */
+	private byte itemOpcode() {
+		switch (opcode) {
+		case BinaryRequest.OP_MPUT:
+			return BinaryRequest.OP_PUT;
+		case BinaryRequest.OP_MGET:
+			return BinaryRequest.OP_GET;
+		default:
+			return BinaryRequest.OP_DELETE;
+		}
+	}
+}
@@ -0,0 +1,230 @@
+package project1;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.Test;
+
+import common.AsyncLogWriter;
+import common.DurabilityPolicy;
+
+class BatchRequestTest {
+
+	@Test
+	void testTextCommandRoundTrip() throws Exception {
+		Map<String, String> keyValueMap = new ConcurrentHashMap<>();
+
+		BatchRequest client = new BatchRequest();
+		assertTrue(client.parseCommand("MPUT-A-Apple-B-Ball"));
+		serve(client, keyValueMap);
+		assertEquals("Apple", keyValueMap.get("A"));
+		assertEquals("Ball", keyValueMap.get("B"));
+
+		assertTrue(client.parseCommand("MGET-A-C-B"));
+		serve(client, keyValueMap);
+		assertEquals("Value for key A is :Apple\nKey-value store does not contain the given key\n"
+				+ "Value for key B is :Ball", client.describeResponse());
+
+		assertTrue(client.parseCommand("MDELETE-A-C"));
+		serve(client, keyValueMap);
+		assertEquals(BinaryRequest.STATUS_OK, client.get(0).getStatus());
+		assertEquals(BinaryRequest.STATUS_NOT_FOUND, client.get(1).getStatus());
+
+		assertFalse(client.parseCommand("MPUT-A-Apple-B"));
+		assertFalse(client.parseCommand("MGET"));
+	}
+
+	@Test
+	void testClientSplitsBatchesAtMtu() throws IOException, InterruptedException {
+		File logFile = File.createTempFile("UDPServerLog", ".txt");
+		AsyncLogWriter serverLog = new AsyncLogWriter(logFile, DurabilityPolicy.NONE);
+		Map<String, String> keyValueMap = new ConcurrentHashMap<>();
+		DatagramChannel channel = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+		Thread server = startServer(channel, keyValueMap, serverLog);
+
+		Map<String, String> entries = new LinkedHashMap<>();
+		List<String> keys = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			entries.put("key" + i, "value" + i);
+			keys.add("key" + i);
+		}
+		keys.add("missing");
+
+		try (UDPClient client = new UDPClient("127.0.0.1",
+				((InetSocketAddress) channel.getLocalAddress()).getPort())) {
+			client.putAll(entries);
+			assertEquals(500, keyValueMap.size());
+			assertEquals(entries, client.getAll(keys));
+			assertEquals(500, client.deleteAll(keys));
+			assertTrue(keyValueMap.isEmpty());
+		} finally {
+			channel.close();
+			server.join();
+			serverLog.close();
+			logFile.delete();
+		}
+	}
+
+	@Test
+	void testRepliesWithLargeValuesStayWithinMtu() throws IOException, InterruptedException {
+		File logFile = File.createTempFile("UDPServerLog", ".txt");
+		AsyncLogWriter serverLog = new AsyncLogWriter(logFile, DurabilityPolicy.NONE);
+		Map<String, String> keyValueMap = new ConcurrentHashMap<>();
+		DatagramChannel channel = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+		Thread server = startServer(channel, keyValueMap, serverLog);
+
+		// Far more than a datagram of replies, from keys that fit in one request.
+		Map<String, String> entries = new LinkedHashMap<>();
+		for (int i = 0; i < 100; i++) {
+			entries.put("key" + i, String.valueOf(i % 10).repeat(2000));
+		}
+		keyValueMap.putAll(entries);
+
+		try (DatagramChannel rawClient = DatagramChannel.open()) {
+			rawClient.connect(channel.getLocalAddress());
+			BatchRequest request = new BatchRequest();
+			request.clear(BinaryRequest.OP_MGET);
+			for (int i = 0; i < 10; i++) {
+				request.add("key" + i, null);
+			}
+			request.add("missing", null);
+			ByteBuffer datagram = ByteBuffer.allocate(65535);
+			datagram.put(BinaryRequest.MAGIC);
+			request.encodeRequest(datagram);
+			datagram.flip();
+			rawClient.write(datagram);
+
+			// The first value alone goes beyond the MTU, so only it is answered.
+			datagram.clear();
+			rawClient.read(datagram);
+			datagram.flip();
+			assertEquals(BinaryRequest.MAGIC, datagram.get());
+			request.decodeResponse(datagram);
+			assertEquals(1, request.size());
+			assertEquals(entries.get("key0"), request.get(0).getResult());
+
+			// A text reply too large for a datagram answers the first keys, and tells how
+			// many were left out.
+			StringBuilder command = new StringBuilder("MGET");
+			for (String key : entries.keySet()) {
+				command.append('-').append(key);
+			}
+			String[] lines = sendText(rawClient, command.toString());
+			assertEquals("Value for key key0 is :" + entries.get("key0"), lines[0]);
+			assertEquals("Not executed : the last " + (entries.size() - lines.length + 1)
+					+ " keys, too many for a datagram. Please send them again", lines[lines.length - 1]);
+		}
+
+		try (UDPClient client = new UDPClient("127.0.0.1",
+				((InetSocketAddress) channel.getLocalAddress()).getPort())) {
+			assertEquals(entries, client.getAll(entries.keySet()));
+			String lines = client.send("MGET-key1-key2-missing");
+			assertEquals(3, lines.split("\n").length);
+		} finally {
+			channel.close();
+			server.join();
+			serverLog.close();
+			logFile.delete();
+		}
+	}
+
+	@Test
+	void testTextWritesTooLargeForDatagramAreNotExecuted() throws IOException, InterruptedException {
+		File logFile = File.createTempFile("UDPServerLog", ".txt");
+		AsyncLogWriter serverLog = new AsyncLogWriter(logFile, DurabilityPolicy.NONE);
+		Map<String, String> keyValueMap = new ConcurrentHashMap<>();
+		DatagramChannel channel = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+		Thread server = startServer(channel, keyValueMap, serverLog);
+
+		// Both commands fit in a datagram, but their replies do not.
+		StringBuilder put = new StringBuilder("MPUT");
+		StringBuilder delete = new StringBuilder("MDELETE");
+		for (int i = 0; i < 2000; i++) {
+			String key = String.format("k%04d", i);
+			put.append('-').append(key).append('-').append("v".repeat(20));
+			delete.append('-').append(key);
+		}
+
+		try (DatagramChannel rawClient = DatagramChannel.open()) {
+			rawClient.connect(channel.getLocalAddress());
+
+			// Only the keys answered are written, and the others are left for a retry.
+			String[] lines = sendText(rawClient, put.toString());
+			int inserted = lines.length - 1;
+			assertTrue(inserted > 0 && inserted < 2000, inserted + " inserted");
+			assertEquals("Key k0000 value " + "v".repeat(20) + " inserted", lines[0]);
+			assertTrue(lines[inserted].startsWith("Not executed : the last " + (2000 - inserted) + " keys"));
+			assertEquals(inserted, keyValueMap.size());
+			assertFalse(keyValueMap.containsKey(String.format("k%04d", inserted)));
+
+			lines = sendText(rawClient, delete.toString());
+			int deleted = lines.length - 1;
+			assertTrue(deleted > 0 && deleted < inserted, deleted + " deleted");
+			assertTrue(lines[deleted].startsWith("Not executed : the last " + (2000 - deleted) + " keys"));
+			assertEquals(inserted - deleted, keyValueMap.size());
+		} finally {
+			channel.close();
+			server.join();
+			serverLog.close();
+			logFile.delete();
+		}
+	}
+
+	/**
+	 * Send a text command and split its response into lines.
+	 */
+	private static String[] sendText(DatagramChannel client, String command) throws IOException {
+		client.write(ByteBuffer.wrap(command.getBytes(StandardCharsets.UTF_8)));
+		ByteBuffer datagram = ByteBuffer.allocate(65535);
+		client.read(datagram);
+		return new String(datagram.array(), 0, datagram.position(), StandardCharsets.UTF_8).split("\n");
+	}
+
+	/**
+	 * Serve the requests of a channel on a new thread, until it is closed.
+	 */
+	private static Thread startServer(DatagramChannel channel, Map<String, String> keyValueMap,
+			AsyncLogWriter serverLog) {
+		Thread server = new Thread(() -> {
+			try {
+				UDPServer.serveRequests(channel, keyValueMap, new ReplyCache(1024, 1024 * 1024), serverLog, null);
+			} catch (IOException e) {
+				// Channel was closed.
+			}
+		});
+		server.start();
+		return server;
+	}
+
+	/**
+	 * Encode the request, decode and execute it on the server side, and decode its
+	 * response back into the request.
+	 */
+	private static void serve(BatchRequest client, Map<String, String> keyValueMap) throws Exception {
+		ByteBuffer request = ByteBuffer.allocate(client.requestLength());
+		client.encodeRequest(request);
+		request.flip();
+
+		BatchRequest server = new BatchRequest();
+		server.decodeRequest(request.get(), request);
+		assertFalse(request.hasRemaining());
+		server.execute(keyValueMap);
+
+		ByteBuffer response = ByteBuffer.allocate(server.responseLength());
+		server.encodeResponse(response);
+		assertFalse(response.hasRemaining());
+		response.flip();
+		client.decodeResponse(response);
+	}
+}
@@ -0,0 +1,570 @@
+package project1;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import common.EventLog;
+
+/**
+ * Class that represents a single request, and its response, of the binary
+ * key-value protocol. It is the compact alternative to the dash delimited text
+ * commands, so keys and values may contain any character.
+ *
+ * A TCP client selects the binary protocol by sending {@link #MAGIC} as the very
+ * first byte of the connection, a UDP client by starting every datagram with it.
+ * Text commands never start with that byte, so both protocols are served on the
+ * same port.
+ *
+ * A UDP client may instead start a datagram with {@link #RELIABLE_MAGIC} and an
+ * 8 byte request ID, echoed in the response, so it can retransmit a request
+ * that got no response and the server answers it again without executing it
+ * twice.
+ *
+ * Request : opcode byte, varint key length, key bytes and, for PUT only, varint
+ * value length and value bytes.
+ *
+ * Response : status byte and, for a successful GET only, varint value length and
+ * value bytes.
+ *
+ * An instance is meant to be reused for request after request by a single
+ * thread.
+ */
+public class BinaryRequest {
+
+	// First byte sent by the clients that speak the binary protocol.
+	public static final byte MAGIC = (byte) 0xB1;
+
+	// First byte of a UDP datagram carrying a request ID.
+	public static final byte RELIABLE_MAGIC = (byte) 0xB2;
+
+	// Operations.
+	public static final byte OP_GET = 1;
+	public static final byte OP_PUT = 2;
+	public static final byte OP_DELETE = 3;
+
+	// Operations on many keys at once, see BatchRequest.
+	public static final byte OP_MGET = 4;
+	public static final byte OP_MPUT = 5;
+	public static final byte OP_MDELETE = 6;
+
+	// Response status.
+	public static final byte STATUS_OK = 0;
+	public static final byte STATUS_NOT_FOUND = 1;
+	public static final byte STATUS_INVALID = 2;
+
+	// Keys and values may not be longer than this.
+	public static final int MAX_LENGTH = 1024 * 1024;
+
+	// Text response to a DELETE of a key not found.
+	private static final String DELETE_NOT_FOUND = "Unnable to delete. Key-value store does not contain the given key";
+
+	private byte opcode;
+	private String key;
+	private String value;
+
+	private byte status;
+	private String result;
+
+	// Scratch space to decode strings out of direct buffers.
+	private byte[] scratch = new byte[256];
+
+	/**
+	 * Set up a request to be sent, from a user command in the text format like
+	 * PUT-Key-Value.
+	 *
+	 * @param userInput user command.
+	 * @return true if the command is a valid PUT, GET or DELETE, false otherwise.
+	 */
+	public boolean parseCommand(String userInput) {
+		String[] commands = userInput.split("-");
+
+		if ("PUT".equalsIgnoreCase(commands[0]) && commands.length == 3) {
+			set(OP_PUT, commands[1], commands[2]);
+			return true;
+		}
+		if ("GET".equalsIgnoreCase(commands[0]) && commands.length == 2) {
+			set(OP_GET, commands[1], null);
+			return true;
+		}
+		if ("DELETE".equalsIgnoreCase(commands[0]) && commands.length == 2) {
+			set(OP_DELETE, commands[1], null);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Set up a request to be sent.
+	 *
+	 * @param opcode operation.
+	 * @param key    key of the operation.
+	 * @param value  value for PUT, ignored otherwise.
+	 */
+	public void set(byte opcode, String key, String value) {
+		this.opcode = opcode;
+		this.key = key;
+		this.value = opcode == OP_PUT ? value : null;
+		this.status = STATUS_OK;
+		this.result = null;
+	}
+
+	/**
+	 * Decode a request at the position of the buffer. If the buffer does not yet
+	 * hold the complete request, the position is left unchanged.
+	 *
+	 * @param buffer buffer in read mode.
+	 * @return true if a complete request was decoded, false otherwise.
+	 * @throws ProtocolException if the bytes are not a valid request.
+	 */
+	public boolean decodeRequest(ByteBuffer buffer) throws ProtocolException {
+		int start = buffer.position();
+		if (!buffer.hasRemaining()) {
+			return false;
+		}
+		byte opcode = buffer.get();
+		if (opcode != OP_GET && opcode != OP_PUT && opcode != OP_DELETE) {
+			throw new ProtocolException("Unknown opcode " + opcode);
+		}
+		if (!decodeOperands(opcode, buffer)) {
+			buffer.position(start);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Decode the key, and the value of a PUT, of a request whose opcode is already
+	 * known. Used on its own for the items of a batch.
+	 *
+	 * @param opcode operation.
+	 * @param buffer buffer in read mode.
+	 * @return true if the operands were complete, false otherwise.
+	 * @throws ProtocolException if a length is invalid.
+	 */
+	boolean decodeOperands(byte opcode, ByteBuffer buffer) throws ProtocolException {
+		String key = readString(buffer);
+		String value = null;
+		if (key != null && opcode == OP_PUT) {
+			value = readString(buffer);
+		}
+		if (key == null || (opcode == OP_PUT && value == null)) {
+			return false;
+		}
+		set(opcode, key, value);
+		return true;
+	}
+
+	/**
+	 * Read a request from a blocking stream.
+	 *
+	 * @param in input stream.
+	 * @return true if a request was read, false if the stream ended before it.
+	 * @throws IOException if unable to read or the bytes are not a valid request.
+	 */
+	public boolean readRequest(InputStream in) throws IOException {
+		int opcode = in.read();
+		if (opcode == -1) {
+			return false;
+		}
+		if (opcode != OP_GET && opcode != OP_PUT && opcode != OP_DELETE) {
+			throw new ProtocolException("Unknown opcode " + opcode);
+		}
+		String key = readString(in);
+		String value = opcode == OP_PUT ? readString(in) : null;
+		set((byte) opcode, key, value);
+		return true;
+	}
+
+	/**
+	 * Execute the request on the key-value store and keep its outcome as the
+	 * response.
+	 *
+	 * @param keyValueMap key-value store.
+	 */
+	public void execute(Map<String, String> keyValueMap) {
+		result = null;
+		switch (opcode) {
+		case OP_PUT:
+			keyValueMap.put(key, value);
+			status = STATUS_OK;
+			break;
+		case OP_GET:
+			result = keyValueMap.get(key);
+			status = result != null ? STATUS_OK : STATUS_NOT_FOUND;
+			break;
+		case OP_DELETE:
+			status = keyValueMap.remove(key) != null ? STATUS_OK : STATUS_NOT_FOUND;
+			break;
+		default:
+			status = STATUS_INVALID;
+		}
+	}
+
+	/**
+	 * Get the number of bytes the response takes on the wire.
+	 *
+	 * @return response length.
+	 */
+	public int responseLength() {
+		if (result == null) {
+			return 1;
+		}
+		int length = utf8Length(result);
+		return 1 + varIntLength(length) + length;
+	}
+
+	/**
+	 * Encode the response into the buffer.
+	 *
+	 * @param buffer buffer in write mode, with at least {@link #responseLength()}
+	 *               bytes remaining.
+	 */
+	public void encodeResponse(ByteBuffer buffer) {
+		buffer.put(status);
+		if (result != null) {
+			writeString(buffer, result);
+		}
+	}
+
+	/**
+	 * Encode the response of a request that could not be decoded.
+	 *
+	 * @param buffer buffer in write mode.
+	 */
+	public static void encodeInvalidResponse(ByteBuffer buffer) {
+		buffer.put(STATUS_INVALID);
+	}
+
+	/**
+	 * Get the number of bytes the request takes on the wire.
+	 *
+	 * @return request length.
+	 */
+	public int requestLength() {
+		return 1 + operandsLength();
+	}
+
+	/**
+	 * Get the number of bytes the key, and the value of a PUT, take on the wire.
+	 *
+	 * @return operands length.
+	 */
+	int operandsLength() {
+		int keyLength = utf8Length(key);
+		int length = varIntLength(keyLength) + keyLength;
+		if (opcode == OP_PUT) {
+			int valueLength = utf8Length(value);
+			length += varIntLength(valueLength) + valueLength;
+		}
+		return length;
+	}
+
+	/**
+	 * Encode the request into the buffer.
+	 *
+	 * @param buffer buffer in write mode, with at least {@link #requestLength()}
+	 *               bytes remaining.
+	 */
+	public void encodeRequest(ByteBuffer buffer) {
+		buffer.put(opcode);
+		encodeOperands(buffer);
+	}
+
+	/**
+	 * Encode the key, and the value of a PUT, into the buffer.
+	 *
+	 * @param buffer buffer in write mode, with at least {@link #operandsLength()}
+	 *               bytes remaining.
+	 */
+	void encodeOperands(ByteBuffer buffer) {
+		writeString(buffer, key);
+		if (opcode == OP_PUT) {
+			writeString(buffer, value);
+		}
+	}
+
+	/**
+	 * Decode the response to this request from the buffer.
+	 *
+	 * @param buffer buffer in read mode holding the complete response.
+	 * @throws ProtocolException if the bytes are not a valid response.
+	 */
+	public void decodeResponse(ByteBuffer buffer) throws ProtocolException {
+		if (!buffer.hasRemaining()) {
+			throw new ProtocolException("Empty response");
+		}
+		status = buffer.get();
+		result = null;
+		if (status == STATUS_OK && opcode == OP_GET) {
+			result = readString(buffer);
+			if (result == null) {
+				throw new ProtocolException("Truncated response");
+			}
+		}
+	}
+
+	/**
+	 * Read the response to this request from a blocking stream.
+	 *
+	 * @param in input stream.
+	 * @throws IOException if unable to read or the bytes are not a valid response.
+	 */
+	public void readResponse(InputStream in) throws IOException {
+		int status = in.read();
+		if (status == -1) {
+			throw new EOFException("Connection closed by server");
+		}
+		this.status = (byte) status;
+		this.result = null;
+		if (status == STATUS_OK && opcode == OP_GET) {
+			result = readString(in);
+		}
+	}
+
+	/**
+	 * Render the response in the same words as the text protocol.
+	 *
+	 * @return human-readable response.
+	 */
+	public String describeResponse() {
+		if (status == STATUS_INVALID) {
+			return "Invalid command. Server could not decode the request";
+		}
+		switch (opcode) {
+		case OP_PUT:
+			return "Key " + key + " value " + value + " inserted";
+		case OP_GET:
+			return status == STATUS_OK ? "Value for key " + key + " is :" + result
+					: "Key-value store does not contain the given key";
+		case OP_DELETE:
+			return status == STATUS_OK ? "Deleted key : " + key : DELETE_NOT_FOUND;
+		default:
+			return "Received unsolicited response acknowledging unknown PUT/GET/DELETE with an invalid KEY";
+		}
+	}
+
+	/**
+	 * Get the most bytes the text response takes in UTF-8. For a PUT or DELETE it
+	 * is known before executing, whatever the key-value store holds, and for a GET
+	 * only once executed.
+	 *
+	 * @return largest text response length.
+	 */
+	public int maxDescribedLength() {
+		if (opcode == OP_DELETE && status != STATUS_INVALID) {
+			return Math.max(utf8Length("Deleted key : " + key), utf8Length(DELETE_NOT_FOUND));
+		}
+		return utf8Length(describeResponse());
+	}
+
+	/**
+	 * Get the type of the request as a binary server log event.
+	 *
+	 * @return event type.
+	 */
+	public short eventType() {
+		switch (opcode) {
+		case OP_PUT:
+			return EventLog.EVENT_PUT;
+		case OP_GET:
+			return EventLog.EVENT_GET;
+		case OP_DELETE:
+			return EventLog.EVENT_DELETE;
+		default:
+			return EventLog.EVENT_INVALID;
+		}
+	}
+
+	public byte getOpcode() {
+		return opcode;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public String getValue() {
+		return value;
+	}
+
+	public byte getStatus() {
+		return status;
+	}
+
+	public String getResult() {
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		switch (opcode) {
+		case OP_PUT:
+			return "PUT " + key + " " + value;
+		case OP_GET:
+			return "GET " + key;
+		case OP_DELETE:
+			return "DELETE " + key;
+		default:
+			return "UNKNOWN";
+		}
+	}
+
+	/**
+	 * Private method to read a length prefixed string from the buffer.
+	 *
+	 * @param buffer buffer in read mode.
+	 * @return the string, or null if the buffer does not hold all of it.
+	 * @throws ProtocolException if the length is invalid.
+	 */
+	private String readString(ByteBuffer buffer) throws ProtocolException {
+		int length = readVarInt(buffer);
+		if (length == -1 || buffer.remaining() < length) {
+			return null;
+		}
+		if (buffer.hasArray()) {
+			String string = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+					StandardCharsets.UTF_8);
+			buffer.position(buffer.position() + length);
+			return string;
+		}
+		if (scratch.length < length) {
+			scratch = new byte[Math.max(length, scratch.length * 2)];
+		}
+		buffer.get(scratch, 0, length);
+		return new String(scratch, 0, length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Private method to read a length prefixed string from a blocking stream.
+	 *
+	 * @param in input stream.
+	 * @return the string.
+	 * @throws IOException if unable to read or the length is invalid.
+	 */
+	private String readString(InputStream in) throws IOException {
+		int length = 0;
+		for (int shift = 0;; shift += 7) {
+			int b = in.read();
+			if (b == -1) {
+				throw new EOFException("Connection closed in the middle of a message");
+			}
+			if (shift > 28) {
+				throw new ProtocolException("Malformed length");
+			}
+			length |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				break;
+			}
+		}
+		if (length < 0 || length > MAX_LENGTH) {
+			throw new ProtocolException("Length " + length + " exceeds " + MAX_LENGTH);
+		}
+		if (scratch.length < length) {
+			scratch = new byte[Math.max(length, scratch.length * 2)];
+		}
+		int read = in.readNBytes(scratch, 0, length);
+		if (read < length) {
+			throw new EOFException("Connection closed in the middle of a message");
+		}
+		return new String(scratch, 0, length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Read an unsigned varint from the buffer.
+	 *
+	 * @param buffer buffer in read mode.
+	 * @return the value, or -1 if the buffer does not hold all of it.
+	 * @throws ProtocolException if the value is larger than {@link #MAX_LENGTH}.
+	 */
+	public static int readVarInt(ByteBuffer buffer) throws ProtocolException {
+		int value = 0;
+		for (int shift = 0;; shift += 7) {
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			if (shift > 28) {
+				throw new ProtocolException("Malformed length");
+			}
+			byte b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				break;
+			}
+		}
+		if (value < 0 || value > MAX_LENGTH) {
+			throw new ProtocolException("Length " + value + " exceeds " + MAX_LENGTH);
+		}
+		return value;
+	}
+
+	/**
+	 * Write an unsigned varint into the buffer.
+	 *
+	 * @param buffer buffer in write mode.
+	 * @param value  non-negative value.
+	 */
+	public static void writeVarInt(ByteBuffer buffer, int value) {
+		while ((value & ~0x7F) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	/**
+	 * Get the number of bytes a varint takes on the wire.
+	 *
+	 * @param value non-negative value.
+	 * @return varint length.
+	 */
+	public static int varIntLength(int value) {
+		int length = 1;
+		while ((value & ~0x7F) != 0) {
+			length++;
+			value >>>= 7;
+		}
+		return length;
+	}
+
+	/**
+	 * Write a length prefixed string into the buffer.
+	 *
+	 * @param buffer buffer in write mode.
+	 * @param string string to be written.
+	 */
+	public static void writeString(ByteBuffer buffer, String string) {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(buffer, bytes.length);
+		buffer.put(bytes);
+	}
+
+	/**
+	 * Get the number of bytes a string takes in UTF-8, without encoding it.
+	 *
+	 * @param string string to be measured.
+	 * @return UTF-8 length.
+	 */
+	public static int utf8Length(String string) {
+		int length = 0;
+		for (int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			if (c < 0x80) {
+				length += 1;
+			} else if (c < 0x800) {
+				length += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < string.length()
+					&& Character.isLowSurrogate(string.charAt(i + 1))) {
+				length += 4;
+				i++;
+			} else {
+				length += 3;
+			}
+		}
+		return length;
+	}
+}
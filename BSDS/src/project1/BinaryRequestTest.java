@@ -0,0 +1,94 @@
+package project1;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class BinaryRequestTest {
+
+	@Test
+	void testRoundTripWithDashesInKeyAndValue() throws ProtocolException {
+		Map<String, String> keyValueMap = new HashMap<>();
+
+		BinaryRequest client = new BinaryRequest();
+		client.set(BinaryRequest.OP_PUT, "key-with-dash", "v\u00e4lue-\u00fc");
+		assertEquals("key-with-dash", serve(client, keyValueMap).getKey());
+		assertEquals("v\u00e4lue-\u00fc", keyValueMap.get("key-with-dash"));
+
+		client.set(BinaryRequest.OP_GET, "key-with-dash", null);
+		serve(client, keyValueMap);
+		assertEquals(BinaryRequest.STATUS_OK, client.getStatus());
+		assertEquals("v\u00e4lue-\u00fc", client.getResult());
+
+		client.set(BinaryRequest.OP_DELETE, "key-with-dash", null);
+		serve(client, keyValueMap);
+		assertEquals(BinaryRequest.STATUS_OK, client.getStatus());
+
+		client.set(BinaryRequest.OP_GET, "key-with-dash", null);
+		serve(client, keyValueMap);
+		assertEquals(BinaryRequest.STATUS_NOT_FOUND, client.getStatus());
+		assertNull(client.getResult());
+	}
+
+	@Test
+	void testPartialRequestIsNotConsumed() throws ProtocolException {
+		BinaryRequest client = new BinaryRequest();
+		client.set(BinaryRequest.OP_PUT, "A", "Apple");
+		ByteBuffer request = ByteBuffer.allocate(client.requestLength());
+		client.encodeRequest(request);
+
+		BinaryRequest server = new BinaryRequest();
+		for (int length = 0; length < request.capacity(); length++) {
+			ByteBuffer partial = ByteBuffer.wrap(request.array(), 0, length);
+			assertFalse(server.decodeRequest(partial));
+			assertEquals(0, partial.position());
+		}
+		assertTrue(server.decodeRequest(ByteBuffer.wrap(request.array())));
+		assertEquals("Apple", server.getValue());
+	}
+
+	@Test
+	void testUnknownOpcodeIsRejected() {
+		BinaryRequest server = new BinaryRequest();
+		assertThrows(ProtocolException.class, () -> server.decodeRequest(ByteBuffer.wrap(new byte[] { 9, 1, 'A' })));
+	}
+
+	@Test
+	void testVarInt() throws ProtocolException {
+		ByteBuffer buffer = ByteBuffer.allocate(16);
+		for (int value : new int[] { 0, 1, 127, 128, 16383, 16384, BinaryRequest.MAX_LENGTH }) {
+			buffer.clear();
+			BinaryRequest.writeVarInt(buffer, value);
+			assertEquals(BinaryRequest.varIntLength(value), buffer.position());
+			buffer.flip();
+			assertEquals(value, BinaryRequest.readVarInt(buffer));
+		}
+	}
+
+	/**
+	 * Send the request through a server side instance and decode its response.
+	 */
+	private static BinaryRequest serve(BinaryRequest client, Map<String, String> keyValueMap)
+			throws ProtocolException {
+		ByteBuffer request = ByteBuffer.allocate(client.requestLength());
+		client.encodeRequest(request);
+		request.flip();
+
+		BinaryRequest server = new BinaryRequest();
+		assertTrue(server.decodeRequest(request));
+		assertFalse(request.hasRemaining());
+		server.execute(keyValueMap);
+
+		ByteBuffer response = ByteBuffer.allocate(server.responseLength());
+		server.encodeResponse(response);
+		assertFalse(response.hasRemaining());
+		response.flip();
+		client.decodeResponse(response);
+		return server;
+	}
+}
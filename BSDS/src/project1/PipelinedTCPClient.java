@@ -0,0 +1,224 @@
+package project1;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Class that represents a TCP client connection to the key-value server with
+ * many requests in flight at once. Requests are written without waiting for the
+ * previous responses, and the server answers them in order, so each response is
+ * matched to the oldest pending request. Speaks either the text or the binary
+ * protocol.
+ *
+ * Safe to use from many threads.
+ */
+public class PipelinedTCPClient implements Closeable {
+
+	final Socket socket;
+
+	private final boolean binary;
+
+	private final OutputStream out;
+
+	// Requests sent and waiting for their response, oldest first.
+	private final Queue<PendingRequest> pendingRequests;
+
+	// Bounds the number of requests in flight.
+	private final Semaphore inFlight;
+
+	private final Thread reader;
+
+	private volatile boolean closed;
+
+	/**
+	 * Constructor to connect to the server.
+	 *
+	 * @param host        IP address or host name of the server.
+	 * @param port        port of the server.
+	 * @param binary      true to speak the binary protocol, false for text.
+	 * @param maxInFlight maximum number of requests awaiting a response.
+	 * @throws IOException if unable to connect to the server.
+	 */
+	public PipelinedTCPClient(String host, int port, boolean binary, int maxInFlight) throws IOException {
+		this.socket = new Socket(host, port);
+		this.socket.setTcpNoDelay(true);
+		this.binary = binary;
+		this.out = new BufferedOutputStream(socket.getOutputStream());
+		this.pendingRequests = new ConcurrentLinkedQueue<>();
+		this.inFlight = new Semaphore(maxInFlight);
+
+		if (binary) {
+			out.write(BinaryRequest.MAGIC);
+		}
+
+		this.reader = new Thread(this::readResponses, "tcp-client-reader");
+		this.reader.setDaemon(true);
+		this.reader.start();
+	}
+
+	/**
+	 * Send a command, like PUT-Key-Value, without waiting for its response. Blocks
+	 * only while the maximum number of requests are in flight. Once a write fails,
+	 * the client is closed and the requests in flight fail.
+	 *
+	 * @param userInput user command.
+	 * @return future completed with the response of the server.
+	 */
+	public CompletableFuture<String> send(String userInput) {
+		PendingRequest pending = new PendingRequest();
+
+		byte[] encoded;
+		if (binary) {
+			pending.binaryRequest = new BinaryRequest();
+			if (!pending.binaryRequest.parseCommand(userInput)) {
+				pending.response.complete(
+						"Invalid command. It must be in the format PUT-Key-Value, GET-Key or DELETE-Key");
+				return pending.response;
+			}
+			ByteBuffer buffer = ByteBuffer.allocate(pending.binaryRequest.requestLength());
+			pending.binaryRequest.encodeRequest(buffer);
+			encoded = buffer.array();
+		} else {
+			encoded = (userInput + "\n").getBytes(StandardCharsets.UTF_8);
+		}
+
+		try {
+			inFlight.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			pending.response.completeExceptionally(e);
+			return pending.response;
+		}
+
+		// The order of the pending requests must match the order on the wire.
+		synchronized (out) {
+			if (closed) {
+				inFlight.release();
+				pending.response.completeExceptionally(new IOException("Client is closed"));
+				return pending.response;
+			}
+			pendingRequests.add(pending);
+			try {
+				out.write(encoded);
+				out.flush();
+			} catch (IOException e) {
+				// Part of a request may be on the wire, so no later response can be matched.
+				closed = true;
+				failPendingRequests(e);
+			}
+		}
+		return pending.response;
+	}
+
+	/**
+	 * Get the address of the server.
+	 *
+	 * @return server address.
+	 */
+	public InetAddress getInetAddress() {
+		return socket.getInetAddress();
+	}
+
+	/**
+	 * Get the port of the server.
+	 *
+	 * @return server port.
+	 */
+	public int getPort() {
+		return socket.getPort();
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (out) {
+			closed = true;
+		}
+		socket.close();
+	}
+
+	/**
+	 * Private method run by the reader thread, completing the pending requests as
+	 * their responses arrive.
+	 */
+	private void readResponses() {
+		try {
+			InputStream in = new BufferedInputStream(socket.getInputStream());
+			BufferedReader lineReader = binary ? null
+					: new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+
+			while (true) {
+				String response;
+				PendingRequest pending;
+				if (binary) {
+					// Peek, so a closed connection is not mistaken for a response.
+					in.mark(1);
+					if (in.read() == -1) {
+						throw new EOFException("Connection closed by server");
+					}
+					in.reset();
+					pending = pendingRequests.poll();
+					if (pending == null) {
+						throw new IOException("Response received without a request");
+					}
+					pending.binaryRequest.readResponse(in);
+					response = pending.binaryRequest.describeResponse();
+				} else {
+					response = lineReader.readLine();
+					if (response == null) {
+						throw new EOFException("Connection closed by server");
+					}
+					pending = pendingRequests.poll();
+					if (pending == null) {
+						throw new IOException("Response received without a request");
+					}
+				}
+				inFlight.release();
+				pending.response.complete(response);
+			}
+		} catch (IOException e) {
+			synchronized (out) {
+				closed = true;
+				failPendingRequests(e);
+			}
+		}
+	}
+
+	/**
+	 * Private method to fail every request still waiting for a response.
+	 *
+	 * @param cause reason of the failure.
+	 */
+	private void failPendingRequests(IOException cause) {
+		PendingRequest pending;
+		while ((pending = pendingRequests.poll()) != null) {
+			inFlight.release();
+			pending.response.completeExceptionally(cause);
+		}
+	}
+
+	/**
+	 * Class that holds a request waiting for its response.
+	 */
+	private static class PendingRequest {
+
+		private final CompletableFuture<String> response = new CompletableFuture<>();
+
+		// Only set in the binary protocol, to decode the response.
+		private BinaryRequest binaryRequest;
+	}
+}
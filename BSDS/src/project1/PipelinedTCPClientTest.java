@@ -0,0 +1,99 @@
+package project1;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import common.AsyncLogWriter;
+import common.DurabilityPolicy;
+import common.ThreadPools;
+
+class PipelinedTCPClientTest {
+
+	private File logFile;
+	private AsyncLogWriter serverLog;
+	private ServerSocket serverSocket;
+	private Thread acceptor;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		logFile = File.createTempFile("TCPServerLog", ".txt");
+		serverLog = new AsyncLogWriter(logFile, DurabilityPolicy.NONE);
+		serverSocket = new ServerSocket(0);
+		acceptor = new Thread(() -> TCPServer.acceptConnections(serverSocket,
+				ThreadPools.newPerTaskExecutor("tcp-connection"), new ConcurrentHashMap<>(), serverLog, null));
+		acceptor.start();
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		serverSocket.close();
+		acceptor.join();
+		serverLog.close();
+		logFile.delete();
+	}
+
+	@Test
+	void testTextResponsesMatchRequestsInOrder() throws Exception {
+		pipelineRequests(false);
+	}
+
+	@Test
+	void testBinaryResponsesMatchRequestsInOrder() throws Exception {
+		pipelineRequests(true);
+	}
+
+	@Test
+	void testFailedWriteClosesClient() throws Exception {
+		// A server that never answers nor closes, so only the write can fail.
+		try (ServerSocket silentServer = new ServerSocket(0);
+				PipelinedTCPClient client = new PipelinedTCPClient("127.0.0.1", silentServer.getLocalPort(), false,
+						4);
+				Socket accepted = silentServer.accept()) {
+			CompletableFuture<String> pending = client.send("GET-A");
+			client.socket.shutdownOutput();
+			CompletableFuture<String> failed = client.send("GET-B");
+
+			ExecutionException e = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+			assertTrue(e.getCause() instanceof IOException);
+			assertTrue(pending.isCompletedExceptionally());
+			e = assertThrows(ExecutionException.class, () -> client.send("GET-C").get(5, TimeUnit.SECONDS));
+			assertEquals("Client is closed", e.getCause().getMessage());
+		}
+	}
+
+	/**
+	 * Send requests on one connection without waiting, fewer in flight than sent,
+	 * and check every response is the one of its own request.
+	 */
+	private void pipelineRequests(boolean binary) throws Exception {
+		try (PipelinedTCPClient client = new PipelinedTCPClient("127.0.0.1", serverSocket.getLocalPort(), binary,
+				8)) {
+			List<CompletableFuture<String>> puts = new ArrayList<>();
+			List<CompletableFuture<String>> gets = new ArrayList<>();
+			for (int i = 0; i < 200; i++) {
+				puts.add(client.send("PUT-key" + i + "-value" + i));
+				gets.add(client.send("GET-key" + i));
+			}
+			CompletableFuture<String> missing = client.send("GET-missing");
+			for (int i = 0; i < 200; i++) {
+				assertEquals("Key key" + i + " value value" + i + " inserted", puts.get(i).get(5, TimeUnit.SECONDS));
+				assertEquals("Value for key key" + i + " is :value" + i, gets.get(i).get(5, TimeUnit.SECONDS));
+			}
+			assertEquals("Key-value store does not contain the given key", missing.get(5, TimeUnit.SECONDS));
+		}
+	}
+}
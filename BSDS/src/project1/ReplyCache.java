@@ -0,0 +1,125 @@
+package project1;
+
+import java.net.InetSocketAddress;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Class that represents the replies the UDP server most recently sent to
+ * reliable requests, so a retransmitted request is answered again without being
+ * executed twice. Bounded both in number of replies and in bytes, evicting the
+ * oldest first.
+ *
+ * Safe to use from many threads.
+ */
+class ReplyCache {
+
+	// Marks a request being executed, whose reply is not known yet.
+	static final byte[] IN_PROGRESS = new byte[0];
+
+	private final int maxReplies;
+
+	private final long maxBytes;
+
+	// Replies in the order the requests arrived.
+	private final LinkedHashMap<Key, byte[]> replies;
+
+	private long bytes;
+
+	/**
+	 * Constructor to create an empty cache.
+	 *
+	 * @param maxReplies maximum number of replies kept.
+	 * @param maxBytes   maximum number of reply bytes kept.
+	 */
+	ReplyCache(int maxReplies, long maxBytes) {
+		this.maxReplies = maxReplies;
+		this.maxBytes = maxBytes;
+		this.replies = new LinkedHashMap<>();
+	}
+
+	/**
+	 * Look up the reply to a request, marking it in progress if it was not seen
+	 * before.
+	 *
+	 * @param key client and ID of the request.
+	 * @return null if the request is new and must be executed,
+	 *         {@link #IN_PROGRESS} if it is still being executed, or else the
+	 *         reply sent for it.
+	 */
+	synchronized byte[] begin(Key key) {
+		byte[] reply = replies.get(key);
+		if (reply == null) {
+			replies.put(key, IN_PROGRESS);
+			evict();
+		}
+		return reply;
+	}
+
+	/**
+	 * Keep the reply sent to a request.
+	 *
+	 * @param key   client and ID of the request.
+	 * @param reply complete reply datagram.
+	 */
+	synchronized void complete(Key key, byte[] reply) {
+		byte[] previous = replies.put(key, reply);
+		if (previous != null) {
+			bytes -= previous.length;
+		}
+		bytes += reply.length;
+		evict();
+	}
+
+	/**
+	 * Forget a request that failed before its reply was known, so a
+	 * retransmission of it is executed again instead of ignored.
+	 *
+	 * @param key client and ID of the request.
+	 */
+	synchronized void abort(Key key) {
+		replies.remove(key, IN_PROGRESS);
+	}
+
+	/**
+	 * Private method to drop the oldest replies beyond the bounds.
+	 */
+	private void evict() {
+		Iterator<Map.Entry<Key, byte[]>> oldest = replies.entrySet().iterator();
+		while ((replies.size() > maxReplies || bytes > maxBytes) && oldest.hasNext()) {
+			bytes -= oldest.next().getValue().length;
+			oldest.remove();
+		}
+	}
+
+	/**
+	 * Class that identifies a request by its client and the ID the client gave
+	 * it.
+	 */
+	static final class Key {
+
+		private final InetSocketAddress client;
+
+		private final long requestId;
+
+		Key(InetSocketAddress client, long requestId) {
+			this.client = client;
+			this.requestId = requestId;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return requestId == other.requestId && client.equals(other.client);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * client.hashCode() + Long.hashCode(requestId);
+		}
+	}
+}
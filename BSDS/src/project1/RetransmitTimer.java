@@ -0,0 +1,71 @@
+package project1;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class that represents the retransmission timeout of a UDP client, estimated
+ * from the measured round trip times as TCP does (RFC 6298). Only requests
+ * answered on their first attempt are measured, since the response to a
+ * retransmitted request cannot be told apart from the response to the original
+ * (Karn's algorithm), and every timeout doubles the timeout until the next
+ * measurement.
+ *
+ * Not safe to use from many threads.
+ */
+class RetransmitTimer {
+
+	// Timeout before the first measurement.
+	static final long INITIAL_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+	// Bounds of the timeout. The lower bound is far below the one second of TCP,
+	// since the server answers from memory.
+	static final long MIN_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+	static final long MAX_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+	// Smoothed round trip time and its mean deviation, negative before the first
+	// measurement.
+	private long smoothedRtt = -1;
+	private long rttVariation;
+
+	private long timeout = INITIAL_TIMEOUT_NANOS;
+
+	/**
+	 * Update the estimate with the round trip time of a request answered on its
+	 * first attempt.
+	 *
+	 * @param rttNanos measured round trip time in nanoseconds.
+	 */
+	void onResponse(long rttNanos) {
+		if (smoothedRtt < 0) {
+			smoothedRtt = rttNanos;
+			rttVariation = rttNanos / 2;
+		} else {
+			rttVariation = (3 * rttVariation + Math.abs(smoothedRtt - rttNanos)) / 4;
+			smoothedRtt = (7 * smoothedRtt + rttNanos) / 8;
+		}
+		timeout = clamp(smoothedRtt + 4 * rttVariation);
+	}
+
+	/**
+	 * Back off after a request was not answered in time.
+	 */
+	void onTimeout() {
+		timeout = clamp(timeout * 2);
+	}
+
+	/**
+	 * Get the time to wait for a response before retransmitting.
+	 *
+	 * @return timeout in nanoseconds.
+	 */
+	long getTimeoutNanos() {
+		return timeout;
+	}
+
+	/**
+	 * Private method to keep a timeout within the bounds.
+	 */
+	private static long clamp(long timeoutNanos) {
+		return Math.max(MIN_TIMEOUT_NANOS, Math.min(MAX_TIMEOUT_NANOS, timeoutNanos));
+	}
+}
@@ -5,14 +5,24 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.Socket;
 import java.net.SocketException;
-import java.net.SocketTimeoutException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class TCPClient {
+
+	// Maximum number of commands sent and awaiting a response.
+	private static final int MAX_IN_FLIGHT = 128;
+
+	// Time to wait for each response.
+	private static final long RESPONSE_TIMEOUT_MS = 1000;
+
 	public static void main(String[] args) throws IOException {
 
 		FileWriter fileWriter = null;
@@ -22,7 +32,7 @@ public class TCPClient {
 
 			// Step 2 : Get the server IP and port from the program arguments.
 			if (args.length < 2) {
-				System.out.println("Please enter IP address of server followed by port number");
+				System.out.println("Please enter IP address of server followed by port number, and optionally binary");
 			}
 			String inputIPAddress = args[0];
 			String inputPort = args[1];
@@ -35,26 +45,25 @@ public class TCPClient {
 				System.exit(0);
 			}
 
-			// Step 3 : Create new socket for the input IP address and port
-			Socket socket = new Socket(inputIPAddress, serverPort);
-
-			// Step 4 : Create new print writer for the socket output stream
-			PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+			// Step 3 : Connect to the server, in the binary protocol if asked to.
+			boolean binary = args.length > 2 && "binary".equalsIgnoreCase(args[2]);
+			PipelinedTCPClient client = new PipelinedTCPClient(inputIPAddress, serverPort, binary, MAX_IN_FLIGHT);
 			BufferedReader stdIn = new BufferedReader(new InputStreamReader(System.in));
 
-			// Step 5 : Set the timeout in milliseconds.
-			socket.setSoTimeout(1000);
-
-			// Step 6: Pre populate data
+			// Step 4: Pre populate data, sending every command without waiting for the
+			// previous response.
 			String prepopulatedInput = prepopulate();
 			Scanner scanner = new Scanner(prepopulatedInput);
+			List<CompletableFuture<String>> responses = new ArrayList<>();
 			while (scanner.hasNextLine()) {
-				sendDataToServer(out, scanner.nextLine(), in, socket, fileWriter);
+				responses.add(client.send(scanner.nextLine()));
 			}
 			scanner.close();
+			for (CompletableFuture<String> response : responses) {
+				printResponse(response, client, fileWriter);
+			}
 
-			// Step 6 : Get the input commands from the user, until "quit" or "q".
+			// Step 5 : Get the input commands from the user, until "quit" or "q".
 			while (true) {
 
 				System.out.println("Enter the command :");
@@ -66,9 +75,10 @@ public class TCPClient {
 					break;
 				}
 
-				sendDataToServer(out, userInput, in, socket, fileWriter);
+				printResponse(client.send(userInput), client, fileWriter);
 
 			}
+			client.close();
 
 		} catch (SocketException e1) {
 
@@ -118,39 +128,35 @@ public class TCPClient {
 	}
 
 	/**
-	 * A utility function to create packet and send the data to the server and
-	 * getting the data back from server.
+	 * A utility function to wait for the response of a command sent to the server
+	 * and log it.
 	 * 
-	 * @param out        output stream.
-	 * @param userInput  user input.
-	 * @param in         buffered reader.
-	 * @param socket     socket
+	 * @param response   future response of the command.
+	 * @param client     client connection.
 	 * @param fileWriter file writer
-	 * @throws IOException if unable to send the packet in socket.
+	 * @throws IOException if unable to write to client log file.
 	 */
-	private static void sendDataToServer(PrintWriter out, String userInput, BufferedReader in, Socket socket,
+	private static void printResponse(CompletableFuture<String> response, PipelinedTCPClient client,
 			FileWriter fileWriter) throws IOException {
 		try {
 
-			out.println(userInput);
-
-			// Step 7 : Get the response from server.
-			String serverResponse = in.readLine();
+			// Step 1 : Get the response from server.
+			String serverResponse = response.get(RESPONSE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
 
 			Timestamp timestamp = new Timestamp(System.currentTimeMillis());
-			String responseFromServer = timestamp + ": Recieved from " + socket.getInetAddress() + ", port: "
-					+ socket.getPort() + ": " + serverResponse;
+			String responseFromServer = timestamp + ": Recieved from " + client.getInetAddress() + ", port: "
+					+ client.getPort() + ": " + serverResponse;
 
-			// Step 8 : Write the server response to client log file.
+			// Step 2 : Write the server response to client log file.
 			fileWriter.write(responseFromServer + "\n");
 			fileWriter.flush();
 
-			// Step 9 : Also print the server response.
+			// Step 3 : Also print the server response.
 			System.out.println(responseFromServer);
 
-		} catch (SocketTimeoutException e) {
+		} catch (TimeoutException e) {
 
-			// Step 15 : Also capture any server timeout error.
+			// Step 4 : Also capture any server timeout error.
 			Timestamp timestamp = new Timestamp(System.currentTimeMillis());
 			String timeoutError = timestamp + ": Server timeout! Please try again";
 
@@ -158,6 +164,16 @@ public class TCPClient {
 			fileWriter.flush();
 
 			System.err.println(timeoutError);
+
+		} catch (InterruptedException | ExecutionException e) {
+
+			Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+			String error = timestamp + ": Request failed : " + e.getMessage();
+
+			fileWriter.write(error + "\n");
+			fileWriter.flush();
+
+			System.err.println(error);
 		}
 	}
 
@@ -0,0 +1,364 @@
+package project1;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import common.AsyncLogWriter;
+import common.EventLog;
+
+/**
+ * Class that represents one non-blocking event loop of the TCP server. Each loop
+ * owns a selector and serves every client connection registered with it, so a
+ * handful of loops can serve thousands of clients against the shared key-value
+ * map.
+ */
+class TCPEventLoop implements Runnable {
+
+	// Initial size of the per connection read and write buffers.
+	private static final int BUFFER_SIZE = 8 * 1024;
+
+	// A single request may not grow beyond this size.
+	private static final int MAX_REQUEST_SIZE = 2 * BinaryRequest.MAX_LENGTH + 16;
+
+	// Protocols a connection may speak, decided by its first byte.
+	private static final int PROTOCOL_UNKNOWN = 0;
+	private static final int PROTOCOL_TEXT = 1;
+	private static final int PROTOCOL_BINARY = 2;
+
+	// Stop reading from a client that does not read its responses.
+	private static final int MAX_PENDING_OUTPUT = 4 * 1024 * 1024;
+
+	private final Selector selector;
+
+	// Connections accepted by the acceptor thread, waiting to be registered.
+	private final Queue<SocketChannel> pendingChannels;
+
+	private final Map<String, String> keyValueMap;
+
+	private final AsyncLogWriter serverLog;
+
+	// Binary log of the requests, or null to log them as text.
+	private final EventLog eventLog;
+
+	private final int localPort;
+
+	// Reused for every binary request served by this loop.
+	private final BinaryRequest binaryRequest;
+
+	/**
+	 * Constructor to create an event loop.
+	 *
+	 * @param keyValueMap key-value store shared by all the loops.
+	 * @param serverLog   server log.
+	 * @param eventLog    binary log of the requests, or null to log them as text.
+	 * @param localPort   port the server is listening at.
+	 * @throws IOException if unable to open the selector.
+	 */
+	TCPEventLoop(Map<String, String> keyValueMap, AsyncLogWriter serverLog, EventLog eventLog, int localPort)
+			throws IOException {
+		this.selector = Selector.open();
+		this.pendingChannels = new ConcurrentLinkedQueue<>();
+		this.keyValueMap = keyValueMap;
+		this.serverLog = serverLog;
+		this.eventLog = eventLog;
+		this.localPort = localPort;
+		this.binaryRequest = new BinaryRequest();
+	}
+
+	/**
+	 * Hand over a newly accepted client connection to this loop. Safe to call from
+	 * any thread.
+	 *
+	 * @param channel accepted client channel.
+	 */
+	void register(SocketChannel channel) {
+		pendingChannels.add(channel);
+		selector.wakeup();
+	}
+
+	/**
+	 * Stop the loop and close all of its client connections.
+	 */
+	void close() {
+		try {
+			for (SelectionKey key : selector.keys()) {
+				key.channel().close();
+			}
+			selector.close();
+		} catch (IOException e) {
+			System.err.println("Error while closing the TCP event loop: " + e.getMessage());
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (selector.isOpen()) {
+
+				// Step 1 : Wait for any of the connections to be ready.
+				selector.select();
+
+				// Step 2 : Register the connections accepted in the meantime.
+				registerPendingChannels();
+
+				// Step 3 : Serve the ready connections.
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+
+					Connection connection = (Connection) key.attachment();
+					try {
+						if (key.isValid() && key.isReadable()) {
+							read(key, connection);
+						}
+						if (key.isValid() && key.isWritable()) {
+							write(key, connection);
+						}
+					} catch (IOException e) {
+						serverLog.log(": Closing connection from " + connection.address + " : " + e.getMessage());
+						closeConnection(key);
+					}
+				}
+			}
+		} catch (ClosedSelectorException e) {
+			// Loop was closed.
+		} catch (IOException e) {
+			System.err.println("Error in TCP event loop : " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Private method to register the pending connections with the selector.
+	 *
+	 * @throws IOException if unable to configure the channel.
+	 */
+	private void registerPendingChannels() throws IOException {
+		SocketChannel channel;
+		while ((channel = pendingChannels.poll()) != null) {
+			channel.configureBlocking(false);
+			Connection connection = new Connection(channel.socket().getInetAddress());
+			channel.register(selector, SelectionKey.OP_READ, connection);
+		}
+	}
+
+	/**
+	 * Private method to read whatever the client has sent, serve every complete
+	 * request and queue the responses.
+	 *
+	 * @param key        selection key of the connection.
+	 * @param connection state of the connection.
+	 * @throws IOException if unable to read from the client.
+	 */
+	private void read(SelectionKey key, Connection connection) throws IOException {
+		SocketChannel channel = (SocketChannel) key.channel();
+
+		int read = channel.read(connection.input);
+		if (read == -1) {
+			closeConnection(key);
+			return;
+		}
+
+		ByteBuffer input = connection.input;
+		input.flip();
+
+		// The first byte of the connection tells the protocol of the client.
+		if (connection.protocol == PROTOCOL_UNKNOWN && input.hasRemaining()) {
+			if (input.get(input.position()) == BinaryRequest.MAGIC) {
+				input.get();
+				connection.protocol = PROTOCOL_BINARY;
+			} else {
+				connection.protocol = PROTOCOL_TEXT;
+			}
+		}
+
+		if (connection.protocol == PROTOCOL_BINARY) {
+			serveBinaryRequests(connection);
+		} else {
+			serveTextRequests(connection);
+		}
+		input.compact();
+
+		// A partial request filled the whole buffer, make room for the rest of it.
+		if (!input.hasRemaining()) {
+			if (input.capacity() >= MAX_REQUEST_SIZE) {
+				throw new IOException("Request exceeds " + MAX_REQUEST_SIZE + " bytes");
+			}
+			connection.input = grow(input, input.capacity() * 2);
+		}
+
+		write(key, connection);
+	}
+
+	/**
+	 * Private method to write the queued responses and update the interest of the
+	 * connection depending on what remains.
+	 *
+	 * @param key        selection key of the connection.
+	 * @param connection state of the connection.
+	 * @throws IOException if unable to write to the client.
+	 */
+	private void write(SelectionKey key, Connection connection) throws IOException {
+		SocketChannel channel = (SocketChannel) key.channel();
+
+		ByteBuffer output = connection.output;
+		output.flip();
+		channel.write(output);
+		output.compact();
+
+		if (output.position() == 0) {
+			key.interestOps(SelectionKey.OP_READ);
+		} else if (output.position() > MAX_PENDING_OUTPUT) {
+			key.interestOps(SelectionKey.OP_WRITE);
+		} else {
+			key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		}
+	}
+
+	/**
+	 * Private method to serve every complete command line in the input buffer.
+	 *
+	 * @param connection state of the connection, with its input in read mode.
+	 * @throws IOException if unable to write to server log.
+	 */
+	private void serveTextRequests(Connection connection) throws IOException {
+		ByteBuffer input = connection.input;
+		byte[] bytes = input.array();
+		int lineStart = input.position();
+		for (int i = lineStart; i < input.limit(); i++) {
+			if (bytes[i] == '\n') {
+				int lineEnd = (i > lineStart && bytes[i - 1] == '\r') ? i - 1 : i;
+				String userInput = new String(bytes, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+
+				// Step 1 : Print and log the client request.
+				long start = System.nanoTime();
+				if (eventLog == null) {
+					serverLog.log(": Recieved from " + connection.address + ", port: " + localPort + ": " + userInput);
+				}
+
+				// Step 2 : Update the key value store based on the user command.
+				String sendString = TCPServer.updateKeyValueMap(keyValueMap, userInput);
+
+				// Step 3 : Queue the response to client.
+				byte[] response = (sendString + "\n").getBytes(StandardCharsets.UTF_8);
+				ensureOutputCapacity(connection, response.length);
+				connection.output.put(response);
+
+				// Step 4 : Print and log the response.
+				if (eventLog == null) {
+					serverLog.log(": Sending to client at port: " + localPort + ": " + sendString);
+				} else {
+					eventLog.record(EventLog.commandEventType(userInput), localPort, EventLog.commandKeyHash(userInput),
+							System.nanoTime() - start);
+				}
+
+				lineStart = i + 1;
+			}
+		}
+		input.position(lineStart);
+	}
+
+	/**
+	 * Private method to serve every complete binary request in the input buffer.
+	 *
+	 * @param connection state of the connection, with its input in read mode.
+	 * @throws IOException if the client sent an invalid request or unable to write
+	 *                     to server log.
+	 */
+	private void serveBinaryRequests(Connection connection) throws IOException {
+		while (binaryRequest.decodeRequest(connection.input)) {
+
+			// Step 1 : Print and log the client request.
+			long start = System.nanoTime();
+			if (eventLog == null) {
+				serverLog.log(": Recieved from " + connection.address + ", port: " + localPort + ": " + binaryRequest);
+			}
+
+			// Step 2 : Update the key value store.
+			binaryRequest.execute(keyValueMap);
+
+			// Step 3 : Queue the response to client.
+			ensureOutputCapacity(connection, binaryRequest.responseLength());
+			binaryRequest.encodeResponse(connection.output);
+
+			// Step 4 : Print and log the response.
+			if (eventLog == null) {
+				serverLog.log(": Sending to client at port: " + localPort + ": " + binaryRequest.describeResponse());
+			} else {
+				eventLog.record(binaryRequest.eventType(), localPort, binaryRequest.getKey().hashCode(),
+						System.nanoTime() - start);
+			}
+		}
+	}
+
+	/**
+	 * Private method to make room for a response in the output buffer.
+	 *
+	 * @param connection state of the connection.
+	 * @param length     length of the response.
+	 */
+	private static void ensureOutputCapacity(Connection connection, int length) {
+		if (connection.output.remaining() < length) {
+			connection.output = grow(connection.output,
+					Math.max(connection.output.capacity() * 2, connection.output.position() + length));
+		}
+	}
+
+	/**
+	 * Private method to close a client connection.
+	 *
+	 * @param key selection key of the connection.
+	 */
+	private void closeConnection(SelectionKey key) {
+		key.cancel();
+		try {
+			key.channel().close();
+		} catch (IOException e) {
+			System.err.println("Error while closing client connection: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Private method to copy a buffer, in write mode, into a larger one.
+	 *
+	 * @param buffer   buffer to be copied.
+	 * @param capacity capacity of the new buffer.
+	 * @return new buffer in write mode.
+	 */
+	private static ByteBuffer grow(ByteBuffer buffer, int capacity) {
+		ByteBuffer larger = ByteBuffer.allocate(capacity);
+		buffer.flip();
+		larger.put(buffer);
+		return larger;
+	}
+
+	/**
+	 * Class that holds the state of a single client connection.
+	 */
+	private static class Connection {
+
+		private final InetAddress address;
+
+		private int protocol = PROTOCOL_UNKNOWN;
+
+		// Bytes read from the client that are not yet a complete request.
+		private ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+
+		// Responses that are not yet written to the client.
+		private ByteBuffer output = ByteBuffer.allocate(BUFFER_SIZE);
+
+		private Connection(InetAddress address) {
+			this.address = address;
+		}
+	}
+}
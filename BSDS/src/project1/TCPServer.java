@@ -1,28 +1,50 @@
 package project1;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.sql.Timestamp;
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import common.AsyncLogWriter;
+import common.EventLog;
+import common.ThreadPools;
 
 public class TCPServer {
 
+	// Maximum number of connections waiting to be accepted.
+	private static final int ACCEPT_BACKLOG = 1024;
+
+	// Modes of serving the client connections.
+	private static final String MODE_EVENT_LOOP = "nio";
+	private static final String MODE_THREAD_PER_CONNECTION = "thread";
+	private static final String MODE_THREAD_POOL = "pool";
+
 	public static void main(String[] args) throws IOException {
 
-		FileWriter fileWriter = null;
+		AsyncLogWriter serverLog = null;
+		EventLog eventLog = null;
 		try {
-			// Step 1 : Create new file or use the existing client log file.
-			fileWriter = createFileWriter();
+			// Step 1 : Create new file or use the existing server log file, and the binary
+			// log of the requests if chosen.
+			serverLog = AsyncLogWriter.open("TCPServerLog.txt", "TCP server");
+			eventLog = EventLog.open("TCPServerEvents");
 
-			// Step 2 : Create a hashmap to store the key value.
-			Map<String, String> keyValueMap = new HashMap<>();
+			// Step 2 : Create a hashmap, shared by all the connections, to store the key value.
+			Map<String, String> keyValueMap = new ConcurrentHashMap<>();
 
 			// Step 3 : Get the port number from user.
 			if (args.length < 1) {
@@ -34,60 +56,244 @@ public class TCPServer {
 				serverPort = Integer.parseInt(inputPort);
 			}
 
-			// Step 3 : Create new socket for the port and accept the connection.
-			ServerSocket socket = new ServerSocket(serverPort);
-			Socket clientSocket = socket.accept();
-
-			// Step 4 : Create new print writer for the socket output stream
-			PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true);
-			BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
+			// Step 4 : Get the connection handling mode and its number of threads.
+			String mode = args.length > 1 ? args[1] : MODE_EVENT_LOOP;
+			int numThreads = Runtime.getRuntime().availableProcessors();
+			if (args.length > 2 && args[2].matches("[0-9]+")) {
+				numThreads = Integer.parseInt(args[2]);
+			}
 
-			while (true) {
+			// Step 5 : Serve the clients until the server is stopped.
+			if (MODE_THREAD_PER_CONNECTION.equalsIgnoreCase(mode)) {
 
-				String userInput = in.readLine();
+				ServerSocket socket = new ServerSocket(serverPort, ACCEPT_BACKLOG);
+				System.out.println("TCP server is ready with a thread per connection"
+						+ (ThreadPools.hasVirtualThreads() ? " (virtual)" : "") + " at port " + serverPort);
+				acceptConnections(socket, ThreadPools.newPerTaskExecutor("tcp-connection"), keyValueMap, serverLog,
+						eventLog);
 
-				// Step 5 : Print and log the client request.
-				Timestamp timestamp = new Timestamp(System.currentTimeMillis());
-				String requestFromClient = timestamp + ": Recieved from " + clientSocket.getInetAddress() + ", port: "
-						+ socket.getLocalPort() + ": " + userInput;
-				fileWriter.write(requestFromClient + "\n");
-				fileWriter.flush();
+			} else if (MODE_THREAD_POOL.equalsIgnoreCase(mode)) {
 
-				// Step 6 : Update the key value store based on the user command.
-				String sendString = updateKeyValueMap(keyValueMap, userInput);
+				ServerSocket socket = new ServerSocket(serverPort, ACCEPT_BACKLOG);
+				System.out.println("TCP server is ready with " + numThreads + " pooled threads at port " + serverPort);
+				acceptConnections(socket, Executors.newFixedThreadPool(numThreads), keyValueMap, serverLog, eventLog);
 
-				// Step 7 : Send the response to client.
-				out.println(sendString);
+			} else {
+				serveWithEventLoops(serverPort, numThreads, keyValueMap, serverLog, eventLog);
+			}
 
-				// Step 8 : Print and log the response.
-				String responseToClient = timestamp + ": Sending to client at port: " + socket.getLocalPort() + ": "
-						+ sendString;
-				fileWriter.write(responseToClient + "\n");
-				fileWriter.flush();
+		} catch (Exception e) {
 
+			serverLog.log(": Error in TCP Server : " + e.getMessage());
+		} finally {
+			// Close the server log, writing whatever is still queued.
+			serverLog.close();
+			if (eventLog != null) {
+				eventLog.close();
 			}
+		}
 
-		} catch (Exception e) {
+	}
+
+	/**
+	 * A utility method to serve all the clients from non-blocking event loops.
+	 * 
+	 * @param serverPort  port to listen at.
+	 * @param numLoops    number of event loops.
+	 * @param keyValueMap key-value store shared by all the loops.
+	 * @param serverLog   server log.
+	 * @param eventLog    binary log of the requests, or null to log them as text.
+	 * @throws IOException if unable to listen at the port.
+	 */
+	private static void serveWithEventLoops(int serverPort, int numLoops, Map<String, String> keyValueMap,
+			AsyncLogWriter serverLog, EventLog eventLog) throws IOException {
+
+		// Step 1 : Create new server channel for the port.
+		ServerSocketChannel serverChannel = ServerSocketChannel.open();
+		serverChannel.bind(new InetSocketAddress(serverPort), ACCEPT_BACKLOG);
+
+		// Step 2 : Start the event loops.
+		TCPEventLoop[] eventLoops = new TCPEventLoop[numLoops];
+		for (int i = 0; i < numLoops; i++) {
+			eventLoops[i] = new TCPEventLoop(keyValueMap, serverLog, eventLog, serverPort);
+			new Thread(eventLoops[i], "tcp-event-loop-" + i).start();
+		}
+		System.out.println("TCP server is ready with " + numLoops + " event loops at port " + serverPort);
+
+		// Step 3 : Accept the connections and hand them over to the loops in turn.
+		int next = 0;
+		while (true) {
+			SocketChannel clientChannel = serverChannel.accept();
+			eventLoops[next].register(clientChannel);
+			next = (next + 1) % numLoops;
+		}
+	}
 
-			Timestamp timestamp = new Timestamp(System.currentTimeMillis());
-			String error = timestamp + ": Error in TCP Server : " + e.getMessage();
-			fileWriter.write(error + "\n");
-			fileWriter.flush();
+	/**
+	 * A utility method to accept the connections and serve each one of them with
+	 * the blocking request loop on the given executor. Returns once the server
+	 * socket is closed.
+	 * 
+	 * @param socket      server socket to accept the connections from.
+	 * @param executor    executor that runs the request loop of each connection.
+	 * @param keyValueMap key-value store shared by all the connections.
+	 * @param serverLog   server log.
+	 * @param eventLog    binary log of the requests, or null to log them as text.
+	 */
+	static void acceptConnections(ServerSocket socket, ExecutorService executor, Map<String, String> keyValueMap,
+			AsyncLogWriter serverLog, EventLog eventLog) {
+		try {
+			while (true) {
+				Socket clientSocket = socket.accept();
+				executor.execute(() -> serveClient(clientSocket, keyValueMap, serverLog, eventLog));
+			}
+		} catch (IOException e) {
+			// Server socket was closed.
 		} finally {
-			// Close the file writer.
-			fileWriter.close();
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * A utility method to serve a single client connection until it is closed.
+	 * 
+	 * @param clientSocket client connection.
+	 * @param keyValueMap  key-value store shared by all the connections.
+	 * @param serverLog    server log.
+	 * @param eventLog     binary log of the requests, or null to log them as text.
+	 */
+	private static void serveClient(Socket clientSocket, Map<String, String> keyValueMap, AsyncLogWriter serverLog,
+			EventLog eventLog) {
+		try (Socket socket = clientSocket) {
+
+			// Step 1 : Peek at the first byte to tell the protocol of the client.
+			BufferedInputStream in = new BufferedInputStream(socket.getInputStream());
+			in.mark(1);
+			boolean binary = (byte) in.read() == BinaryRequest.MAGIC;
+			if (!binary) {
+				in.reset();
+			}
+
+			if (binary) {
+				serveBinaryClient(socket, in, keyValueMap, serverLog, eventLog);
+			} else {
+				serveTextClient(socket, in, keyValueMap, serverLog, eventLog);
+			}
+
+		} catch (IOException e) {
+			System.err.println("Closing connection from " + clientSocket.getInetAddress() + " : " + e.getMessage());
+		}
+	}
+
+	/**
+	 * A utility method to serve text commands from a client until it closes the
+	 * connection.
+	 * 
+	 * @param socket      client connection.
+	 * @param input       input stream of the connection.
+	 * @param keyValueMap key-value store shared by all the connections.
+	 * @param serverLog   server log.
+	 * @param eventLog    binary log of the requests, or null to log them as text.
+	 * @throws IOException if unable to read from or write to the client.
+	 */
+	private static void serveTextClient(Socket socket, InputStream input, Map<String, String> keyValueMap,
+			AsyncLogWriter serverLog, EventLog eventLog) throws IOException {
+
+		// Step 1 : Create new print writer for the socket output stream. It is flushed
+		// only once every pipelined command read so far is answered.
+		PrintWriter out = new PrintWriter(new BufferedOutputStream(socket.getOutputStream()), false);
+		BufferedReader in = new BufferedReader(new InputStreamReader(input));
+
+		String userInput;
+		while ((userInput = in.readLine()) != null) {
+
+			// Step 2 : Print and log the client request.
+			long start = System.nanoTime();
+			if (eventLog == null) {
+				serverLog.log(": Recieved from " + socket.getInetAddress() + ", port: "
+						+ socket.getLocalPort() + ": " + userInput);
+			}
+
+			// Step 3 : Update the key value store based on the user command.
+			String sendString = updateKeyValueMap(keyValueMap, userInput);
+
+			// Step 4 : Send the response to client.
+			out.println(sendString);
+			if (!in.ready()) {
+				out.flush();
+			}
+
+			// Step 5 : Print and log the response.
+			if (eventLog == null) {
+				serverLog.log(": Sending to client at port: " + socket.getLocalPort() + ": " + sendString);
+			} else {
+				eventLog.record(EventLog.commandEventType(userInput), socket.getLocalPort(),
+						EventLog.commandKeyHash(userInput), System.nanoTime() - start);
+			}
 		}
+	}
+
+	/**
+	 * A utility method to serve binary requests from a client until it closes the
+	 * connection.
+	 * 
+	 * @param socket      client connection.
+	 * @param in          input stream of the connection, past the protocol byte.
+	 * @param keyValueMap key-value store shared by all the connections.
+	 * @param serverLog   server log.
+	 * @param eventLog    binary log of the requests, or null to log them as text.
+	 * @throws IOException if unable to read from or write to the client.
+	 */
+	private static void serveBinaryClient(Socket socket, InputStream in, Map<String, String> keyValueMap,
+			AsyncLogWriter serverLog, EventLog eventLog) throws IOException {
+
+		OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+		BinaryRequest request = new BinaryRequest();
+		ByteBuffer response = ByteBuffer.allocate(64);
+
+		while (request.readRequest(in)) {
+
+			// Step 1 : Print and log the client request.
+			long start = System.nanoTime();
+			if (eventLog == null) {
+				serverLog.log(": Recieved from " + socket.getInetAddress() + ", port: "
+						+ socket.getLocalPort() + ": " + request);
+			}
+
+			// Step 2 : Update the key value store.
+			request.execute(keyValueMap);
+
+			// Step 3 : Send the response to client.
+			if (response.capacity() < request.responseLength()) {
+				response = ByteBuffer.allocate(request.responseLength());
+			}
+			response.clear();
+			request.encodeResponse(response);
+			out.write(response.array(), 0, response.position());
+			if (in.available() == 0) {
+				out.flush();
+			}
 
+			// Step 4 : Print and log the response.
+			if (eventLog == null) {
+				serverLog.log(": Sending to client at port: " + socket.getLocalPort() + ": "
+						+ request.describeResponse());
+			} else {
+				eventLog.record(request.eventType(), socket.getLocalPort(), request.getKey().hashCode(),
+						System.nanoTime() - start);
+			}
+		}
 	}
 
 	/**
-	 * A utility method to perform various operation on the key-value store.
+	 * A utility method to perform various operation on the key-value store. Safe to
+	 * call concurrently as long as the map is a concurrent one.
 	 * 
 	 * @param keyValueMap hashmap representation of the key-value store.
 	 * @param userInput   input commands from the user.
 	 * @return server response for the user input.
 	 */
-	private static String updateKeyValueMap(Map<String, String> keyValueMap, String userInput) {
+	static String updateKeyValueMap(Map<String, String> keyValueMap, String userInput) {
 
 		String[] commands = userInput.split("-");
 
@@ -104,8 +310,9 @@ public class TCPServer {
 		}
 		if ("GET".equalsIgnoreCase(commands[0])) {
 			try {
-				if (keyValueMap != null && !keyValueMap.isEmpty() && keyValueMap.containsKey(commands[1])) {
-					return "Value for key " + commands[1] + " is :" + keyValueMap.get(commands[1]);
+				String value = keyValueMap.get(commands[1]);
+				if (value != null) {
+					return "Value for key " + commands[1] + " is :" + value;
 				} else {
 					return "Key-value store does not contain the given key";
 				}
@@ -115,9 +322,7 @@ public class TCPServer {
 		}
 		if ("DELETE".equalsIgnoreCase(commands[0])) {
 			try {
-				if (keyValueMap != null && !keyValueMap.isEmpty() && keyValueMap.containsKey(commands[1])) {
-
-					keyValueMap.remove(commands[1]);
+				if (keyValueMap.remove(commands[1]) != null) {
 					return "Deleted key : " + commands[1];
 
 				} else {
@@ -132,33 +337,4 @@ public class TCPServer {
 		return "Received unsolicited response acknowledging unknown PUT/GET/DELETE with an invalid KEY";
 	}
 
-	/**
-	 * A utility method to create log file and provide the ability to write into it.
-	 * Created new file if not present, uses existing file if present.
-	 * 
-	 * @return file write of client log file.
-	 */
-	private static FileWriter createFileWriter() {
-		FileWriter fileWriter = null;
-		try {
-			// Get the current directory where the Java file is located
-			String currentDirectory = System.getProperty("user.dir");
-
-			// Define the file name and content to write
-			String fileName = currentDirectory + "\\TCPServerLog.txt";
-			File serverLogFile = new File(fileName);
-			if (!serverLogFile.exists()) {
-				serverLogFile.createNewFile();
-				System.out.println("TCP server log file created: " + fileName);
-			} else {
-				System.out.println("Using TCP Server log file already exists at : " + fileName);
-			}
-			fileWriter = new FileWriter(serverLogFile, true);
-
-		} catch (IOException e) {
-			System.err.println("Error creating TCP server log file!");
-		}
-		return fileWriter;
-	}
-
 }
@@ -0,0 +1,154 @@
+package project1;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import common.AsyncLogWriter;
+import common.DurabilityPolicy;
+import common.ThreadPools;
+
+class TCPServerLoadTest {
+
+	private static final int ACTIVE_CLIENTS = 8;
+	private static final int REQUESTS_PER_CLIENT = 500;
+
+	private File logFile;
+	private AsyncLogWriter serverLog;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		logFile = File.createTempFile("TCPServerLog", ".txt");
+		serverLog = new AsyncLogWriter(logFile, DurabilityPolicy.NONE);
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		serverLog.close();
+		logFile.delete();
+	}
+
+	@Test
+	void testThreadPerConnection() throws Exception {
+		double throughput = runLoad(ThreadPools.newPerTaskExecutor("tcp-connection"), 1000);
+		System.out.println("Thread per connection"
+				+ (ThreadPools.hasVirtualThreads() ? " (virtual)" : "") + " with 1000 idle clients : "
+				+ (long) throughput + " requests/s");
+	}
+
+	@Test
+	void testFixedThreadPool() throws Exception {
+		double throughput = runLoad(Executors.newFixedThreadPool(64), 32);
+		System.out.println("Fixed pool of 64 threads with 32 idle clients : " + (long) throughput + " requests/s");
+	}
+
+	@Test
+	void testFixedThreadPoolStarvedByIdleClients() throws Exception {
+		Map<String, String> keyValueMap = new ConcurrentHashMap<>();
+		ServerSocket serverSocket = new ServerSocket(0);
+		Thread acceptor = startServer(serverSocket, Executors.newFixedThreadPool(16), keyValueMap);
+
+		List<Socket> idleClients = openIdleClients(serverSocket.getLocalPort(), 16);
+		try (Socket socket = new Socket("127.0.0.1", serverSocket.getLocalPort())) {
+			socket.setSoTimeout(500);
+			PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+			out.println("GET-A");
+			assertThrows(SocketTimeoutException.class, in::readLine);
+		} finally {
+			close(idleClients);
+			serverSocket.close();
+			acceptor.join();
+		}
+	}
+
+	/**
+	 * Hold the given number of idle connections open while the active clients run
+	 * their requests, and check every request was answered.
+	 *
+	 * @return requests per second served to the active clients.
+	 */
+	private double runLoad(ExecutorService executor, int numIdleClients) throws Exception {
+		Map<String, String> keyValueMap = new ConcurrentHashMap<>();
+		ServerSocket serverSocket = new ServerSocket(0, 2048);
+		Thread acceptor = startServer(serverSocket, executor, keyValueMap);
+
+		List<Socket> idleClients = openIdleClients(serverSocket.getLocalPort(), numIdleClients);
+		AtomicInteger answered = new AtomicInteger(0);
+		Thread[] activeClients = new Thread[ACTIVE_CLIENTS];
+		try {
+			long start = System.nanoTime();
+			for (int i = 0; i < ACTIVE_CLIENTS; i++) {
+				int clientId = i;
+				activeClients[i] = new Thread(() -> {
+					try (Socket socket = new Socket("127.0.0.1", serverSocket.getLocalPort())) {
+						socket.setSoTimeout(5000);
+						PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+						BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+						for (int j = 0; j < REQUESTS_PER_CLIENT; j++) {
+							out.println("PUT-key" + clientId + "_" + j + "-value");
+							if (in.readLine().endsWith("inserted")) {
+								answered.incrementAndGet();
+							}
+						}
+					} catch (IOException e) {
+						System.err.println(e.getMessage());
+					}
+				});
+				activeClients[i].start();
+			}
+			for (Thread client : activeClients) {
+				client.join();
+			}
+			long elapsed = System.nanoTime() - start;
+
+			assertEquals(ACTIVE_CLIENTS * REQUESTS_PER_CLIENT, answered.get());
+			assertEquals(ACTIVE_CLIENTS * REQUESTS_PER_CLIENT, keyValueMap.size());
+			return answered.get() * 1e9 / elapsed;
+
+		} finally {
+			close(idleClients);
+			serverSocket.close();
+			acceptor.join();
+		}
+	}
+
+	private Thread startServer(ServerSocket serverSocket, ExecutorService executor, Map<String, String> keyValueMap) {
+		Thread acceptor = new Thread(
+				() -> TCPServer.acceptConnections(serverSocket, executor, keyValueMap, serverLog, null));
+		acceptor.start();
+		return acceptor;
+	}
+
+	private static List<Socket> openIdleClients(int port, int numClients) throws IOException {
+		List<Socket> clients = new ArrayList<>();
+		for (int i = 0; i < numClients; i++) {
+			clients.add(new Socket("127.0.0.1", port));
+		}
+		return clients;
+	}
+
+	private static void close(List<Socket> sockets) throws IOException {
+		for (Socket socket : sockets) {
+			socket.close();
+		}
+	}
+}
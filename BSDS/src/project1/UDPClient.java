@@ -1,17 +1,285 @@
 package project1;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.ProtocolException;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
-public class UDPClient {
+/**
+ * Class that represents the UDP client of the key-value server. Run on its own,
+ * it sends the commands typed by the user. As an instance, it sends reliable
+ * binary requests, retransmitting any request not answered within a timeout
+ * estimated from the round trip times, and offers operations on many keys at
+ * once, packed into as few datagrams as fit the network MTU.
+ *
+ * An instance is not safe to use from many threads.
+ */
+public class UDPClient implements Closeable {
+
+	// Largest datagram payload that fits an Ethernet MTU of 1500 bytes without
+	// fragmentation, after the IP and UDP headers. Bounds the batch requests, and
+	// the server bounds their replies the same way.
+	static final int MAX_BATCH_PAYLOAD = 1500 - 20 - 8;
+
+	// Length of the header of a reliable datagram, the protocol byte and request ID.
+	private static final int RELIABLE_HEADER_LENGTH = 1 + Long.BYTES;
+
+	// Number of times a request is sent before giving up.
+	static final int MAX_ATTEMPTS = 8;
+
+	private final DatagramSocket socket;
+
+	private final RetransmitTimer retransmitTimer;
+
+	// ID of the next request. Starts at random, so a new client on a reused port
+	// is not answered from the replies to an old one.
+	private long nextRequestId;
+
+	private final BinaryRequest binaryRequest;
+
+	private final BatchRequest batchRequest;
+
+	private final ByteBuffer sendBuffer;
+
+	private final byte[] receive;
+
+	/**
+	 * Constructor to create a client of the server, in the binary protocol.
+	 *
+	 * @param host IP address or host name of the server.
+	 * @param port port of the server.
+	 * @throws IOException if unable to open the socket.
+	 */
+	public UDPClient(String host, int port) throws IOException {
+		this.socket = new DatagramSocket();
+		this.socket.connect(InetAddress.getByName(host), port);
+		this.retransmitTimer = new RetransmitTimer();
+		this.nextRequestId = new Random().nextLong();
+		this.binaryRequest = new BinaryRequest();
+		this.batchRequest = new BatchRequest();
+		this.sendBuffer = ByteBuffer.allocate(65535);
+		this.receive = new byte[65535];
+	}
+
+	/**
+	 * Send a command, like PUT-Key-Value or MGET-Key1-Key2, and wait for its
+	 * response.
+	 *
+	 * @param userInput user command.
+	 * @return response of the server, in the same words as the text protocol.
+	 * @throws IOException if unable to reach the server.
+	 */
+	public String send(String userInput) throws IOException {
+		if (binaryRequest.parseCommand(userInput)) {
+			binaryRequest.decodeResponse(exchange(binaryRequest::encodeRequest));
+			return binaryRequest.describeResponse();
+		}
+		if (batchRequest.parseCommand(userInput)) {
+			List<String> keys = new ArrayList<>();
+			List<String> values = new ArrayList<>();
+			for (int i = 0; i < batchRequest.size(); i++) {
+				keys.add(batchRequest.get(i).getKey());
+				values.add(batchRequest.get(i).getValue());
+			}
+			StringBuilder sb = new StringBuilder();
+			executeBatches(batchRequest.getOpcode(), keys, values, item -> {
+				sb.append(sb.length() > 0 ? "\n" : "").append(item.describeResponse());
+			});
+			return sb.toString();
+		}
+		return "Invalid command. It must be in the format PUT-Key-Value, GET-Key, DELETE-Key, "
+				+ "MPUT-Key1-Value1-Key2-Value2, MGET-Key1-Key2 or MDELETE-Key1-Key2";
+	}
+
+	/**
+	 * Get the values of many keys.
+	 *
+	 * @param keys keys to look up.
+	 * @return values of the keys the store contains.
+	 * @throws IOException if unable to reach the server or it rejects a request.
+	 */
+	public Map<String, String> getAll(Collection<String> keys) throws IOException {
+		Map<String, String> values = new HashMap<>();
+		executeBatches(BinaryRequest.OP_MGET, new ArrayList<>(keys), null, item -> {
+			if (item.getStatus() == BinaryRequest.STATUS_OK) {
+				values.put(item.getKey(), item.getResult());
+			}
+		});
+		return values;
+	}
+
+	/**
+	 * Insert or replace many key-value pairs.
+	 *
+	 * @param entries key-value pairs.
+	 * @throws IOException if unable to reach the server or it rejects a request.
+	 */
+	public void putAll(Map<String, String> entries) throws IOException {
+		List<String> keys = new ArrayList<>(entries.size());
+		List<String> values = new ArrayList<>(entries.size());
+		for (Map.Entry<String, String> entry : entries.entrySet()) {
+			keys.add(entry.getKey());
+			values.add(entry.getValue());
+		}
+		executeBatches(BinaryRequest.OP_MPUT, keys, values, item -> {
+		});
+	}
+
+	/**
+	 * Delete many keys.
+	 *
+	 * @param keys keys to delete.
+	 * @return number of keys the store contained.
+	 * @throws IOException if unable to reach the server or it rejects a request.
+	 */
+	public int deleteAll(Collection<String> keys) throws IOException {
+		int[] deleted = { 0 };
+		executeBatches(BinaryRequest.OP_MDELETE, new ArrayList<>(keys), null, item -> {
+			if (item.getStatus() == BinaryRequest.STATUS_OK) {
+				deleted[0]++;
+			}
+		});
+		return deleted[0];
+	}
+
+	@Override
+	public void close() {
+		socket.close();
+	}
+
+	/**
+	 * Private method to send the items in as few batches as fit in a datagram of
+	 * {@link #MAX_BATCH_PAYLOAD} bytes, one after the other. An item too large to
+	 * share a datagram is sent in a batch of its own. The items the server left
+	 * out of a reply, to keep it within a datagram too, go in the next batch.
+	 *
+	 * @param opcode   batch operation.
+	 * @param keys     keys of the items.
+	 * @param values   values of the items for MPUT, null otherwise.
+	 * @param response called with every item once its response is decoded.
+	 * @throws IOException if unable to reach the server or it rejects a request.
+	 */
+	private void executeBatches(byte opcode, List<String> keys, List<String> values, Consumer<BinaryRequest> response)
+			throws IOException {
+		int next = 0;
+		while (next < keys.size()) {
+			batchRequest.clear(opcode);
+			while (next < keys.size()) {
+				batchRequest.add(keys.get(next), values == null ? null : values.get(next));
+				if (batchRequest.size() > 1
+						&& RELIABLE_HEADER_LENGTH + batchRequest.requestLength() > MAX_BATCH_PAYLOAD) {
+					batchRequest.removeLast();
+					break;
+				}
+				next++;
+			}
+			int sent = batchRequest.size();
+			executeBatch(response);
+			next -= sent - batchRequest.size();
+		}
+	}
+
+	/**
+	 * Private method to send the batch set up so far and wait for its response.
+	 *
+	 * @param response called with every item once its response is decoded.
+	 * @throws IOException if unable to reach the server or it rejects the request.
+	 */
+	private void executeBatch(Consumer<BinaryRequest> response) throws IOException {
+		batchRequest.decodeResponse(exchange(batchRequest::encodeRequest));
+		if (batchRequest.getStatus() != BinaryRequest.STATUS_OK) {
+			throw new ProtocolException(batchRequest.describeResponse());
+		}
+		for (int i = 0; i < batchRequest.size(); i++) {
+			response.accept(batchRequest.get(i));
+		}
+	}
+
+	/**
+	 * Private method to send a reliable request until it is answered. The request
+	 * keeps its ID across retransmissions, so the server executes it only once.
+	 *
+	 * @param request encodes the request into the buffer, after the header.
+	 * @return the response, positioned past its header.
+	 * @throws IOException if unable to send, or no response came after
+	 *                     {@link #MAX_ATTEMPTS} attempts.
+	 */
+	private ByteBuffer exchange(Consumer<ByteBuffer> request) throws IOException {
+		long requestId = nextRequestId++;
+		sendBuffer.clear();
+		sendBuffer.put(BinaryRequest.RELIABLE_MAGIC);
+		sendBuffer.putLong(requestId);
+		request.accept(sendBuffer);
+		DatagramPacket sendPacket = new DatagramPacket(sendBuffer.array(), sendBuffer.position());
+
+		for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+			long sentAt = System.nanoTime();
+			socket.send(sendPacket);
+
+			ByteBuffer received = receiveResponse(requestId, sentAt + retransmitTimer.getTimeoutNanos());
+			if (received != null) {
+				// Only a response to the first attempt is surely to that attempt.
+				if (attempt == 0) {
+					retransmitTimer.onResponse(System.nanoTime() - sentAt);
+				}
+				return received;
+			}
+			retransmitTimer.onTimeout();
+		}
+		throw new SocketTimeoutException("No response after " + MAX_ATTEMPTS + " attempts");
+	}
+
+	/**
+	 * Private method to wait for the response to a request, skipping the late
+	 * responses to earlier ones.
+	 *
+	 * @param requestId ID of the request.
+	 * @param deadline  time to stop waiting at, in nanoseconds.
+	 * @return the response, positioned past its header, or null if it did not
+	 *         come in time.
+	 * @throws IOException if unable to receive or the response is not in the
+	 *                     binary protocol.
+	 */
+	private ByteBuffer receiveResponse(long requestId, long deadline) throws IOException {
+		DatagramPacket packet = new DatagramPacket(receive, receive.length);
+		while (true) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				return null;
+			}
+			socket.setSoTimeout((int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+			try {
+				socket.receive(packet);
+			} catch (SocketTimeoutException e) {
+				return null;
+			}
+
+			ByteBuffer received = ByteBuffer.wrap(receive, 0, packet.getLength());
+			if (received.remaining() < RELIABLE_HEADER_LENGTH || received.get() != BinaryRequest.RELIABLE_MAGIC) {
+				throw new ProtocolException("Response is not in the binary protocol");
+			}
+			if (received.getLong() == requestId) {
+				return received;
+			}
+		}
+	}
 
 	public static void main(String[] args) throws IOException, InterruptedException {
 
@@ -22,7 +290,7 @@ public class UDPClient {
 
 			// Step 2 : Get the server IP and port from the command line arguments.
 			if (args.length < 2) {
-				System.out.println("Please enter IP address of server followed by port number");
+				System.out.println("Please enter IP address of server followed by port number, and optionally binary");
 			}
 			String inputIPAddress = args[0];
 			String inputPort = args[1];
@@ -44,15 +312,25 @@ public class UDPClient {
 			// Step 4 : Create InetAddress for the given IP address.
 			InetAddress ip = InetAddress.getByName(inputIPAddress);
 
-			// Step 5: Pre populate data
+			// Step 5 : Speak the reliable binary protocol if asked to.
+			UDPClient binaryClient = null;
+			if (args.length > 2 && "binary".equalsIgnoreCase(args[2])) {
+				binaryClient = new UDPClient(inputIPAddress, serverPort);
+			}
+
+			// Step 6: Pre populate data
 			String prepopulatedInput = prepopulate();
 			Scanner scanner = new Scanner(prepopulatedInput);
 			while (scanner.hasNextLine()) {
-				sendDataToServer(scanner.nextLine(), ip, serverPort, datagramSocket, fileWriter);
+				if (binaryClient != null) {
+					sendBinaryToServer(binaryClient, scanner.nextLine(), fileWriter);
+				} else {
+					sendDataToServer(scanner.nextLine(), ip, serverPort, datagramSocket, fileWriter);
+				}
 			}
 			scanner.close();
 
-			// Step 5 : Get the input commands from the user, until "quit" or "q".
+			// Step 7 : Get the input commands from the user, until "quit" or "q".
 			while (true) {
 
 				System.out.println("Enter the command :");
@@ -64,11 +342,18 @@ public class UDPClient {
 					break;
 				}
 
-				sendDataToServer(input, ip, serverPort, datagramSocket, fileWriter);
+				if (binaryClient != null) {
+					sendBinaryToServer(binaryClient, input, fileWriter);
+				} else {
+					sendDataToServer(input, ip, serverPort, datagramSocket, fileWriter);
+				}
 			}
 
 			// Step 17: Close the socket in client.
 			datagramSocket.close();
+			if (binaryClient != null) {
+				binaryClient.close();
+			}
 
 		} catch (SocketException e1) {
 
@@ -150,6 +435,46 @@ public class UDPClient {
 		fileWriter.flush();
 	}
 
+	/**
+	 * A utility function to send a command to the server in the reliable binary
+	 * protocol and getting the response back from server.
+	 * 
+	 * @param client     client of the server.
+	 * @param input      user input from console.
+	 * @param fileWriter file writer
+	 * @throws IOException if unable to send the packet in socket.
+	 */
+	private static void sendBinaryToServer(UDPClient client, String input, FileWriter fileWriter)
+			throws IOException {
+
+		try {
+			// Step 1 : Send the request, retransmitting it until it is answered.
+			String response = client.send(input);
+
+			Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+			String responseFromServer = timestamp + ": Recieved from " + client.socket.getInetAddress() + ", port: "
+					+ client.socket.getPort() + ": " + response;
+
+			// Step 2 : Write the server response to client log file.
+			fileWriter.write(responseFromServer + "\n");
+			fileWriter.flush();
+
+			// Step 3 : Also print the server response.
+			System.out.println(responseFromServer);
+
+		} catch (SocketTimeoutException e) {
+
+			// Step 4 : Also capture any server timeout error.
+			Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+			String timeoutError = timestamp + ": Server timeout! Please try again";
+
+			fileWriter.write(timeoutError + "\n");
+			fileWriter.flush();
+
+			System.err.println(timeoutError);
+		}
+	}
+
 	/**
 	 * A utility method to create log file and provide the ability to write into it.
 	 * Created new file if not present, uses existing file if present.
@@ -0,0 +1,157 @@
+package project1;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import common.AsyncLogWriter;
+import common.DurabilityPolicy;
+
+class UDPReliabilityTest {
+
+	private File logFile;
+	private AsyncLogWriter serverLog;
+	private Map<String, String> keyValueMap;
+	private DatagramChannel serverChannel;
+	private Thread server;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		logFile = File.createTempFile("UDPServerLog", ".txt");
+		serverLog = new AsyncLogWriter(logFile, DurabilityPolicy.NONE);
+		keyValueMap = new ConcurrentHashMap<>();
+		serverChannel = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+		server = new Thread(() -> {
+			try {
+				UDPServer.serveRequests(serverChannel, keyValueMap, new ReplyCache(1024, 1024 * 1024), serverLog,
+						null);
+			} catch (IOException e) {
+				// Channel was closed.
+			}
+		});
+		server.start();
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		serverChannel.close();
+		server.join();
+		serverLog.close();
+		logFile.delete();
+	}
+
+	@Test
+	void testRetransmittedRequestIsNotExecutedTwice() throws IOException {
+		keyValueMap.put("A", "Apple");
+
+		BinaryRequest request = new BinaryRequest();
+		request.set(BinaryRequest.OP_DELETE, "A", null);
+		ByteBuffer datagram = ByteBuffer.allocate(9 + request.requestLength());
+		datagram.put(BinaryRequest.RELIABLE_MAGIC);
+		datagram.putLong(42);
+		request.encodeRequest(datagram);
+
+		try (DatagramSocket socket = new DatagramSocket()) {
+			socket.setSoTimeout(1000);
+			socket.connect(serverChannel.getLocalAddress());
+			byte[] first = exchange(socket, datagram.array());
+			byte[] second = exchange(socket, datagram.array());
+
+			// The second DELETE would not find the key if it were executed again.
+			assertArrayEquals(first, second);
+			ByteBuffer response = ByteBuffer.wrap(first, 9, first.length - 9);
+			request.decodeResponse(response);
+			assertEquals(BinaryRequest.STATUS_OK, request.getStatus());
+			assertEquals(42, ByteBuffer.wrap(first).getLong(1));
+		}
+	}
+
+	@Test
+	void testClientRetransmitsLostRequests() throws Exception {
+		DatagramChannel proxy = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+		Thread lossyProxy = new Thread(() -> forwardDroppingEveryOther(proxy, serverChannel));
+		lossyProxy.start();
+
+		try (UDPClient client = new UDPClient("127.0.0.1",
+				((InetSocketAddress) proxy.getLocalAddress()).getPort())) {
+			assertEquals("Key A value Apple inserted", client.send("PUT-A-Apple"));
+			assertEquals("Deleted key : A", client.send("DELETE-A"));
+			assertEquals("Key-value store does not contain the given key", client.send("GET-A"));
+			client.putAll(Map.of("B", "Ball", "C", "Cat"));
+			assertEquals(Map.of("B", "Ball", "C", "Cat"), client.getAll(Arrays.asList("B", "C", "D")));
+		} finally {
+			proxy.close();
+			lossyProxy.join();
+		}
+	}
+
+	@Test
+	void testTimerFollowsRoundTripAndBacksOff() {
+		RetransmitTimer timer = new RetransmitTimer();
+		assertEquals(RetransmitTimer.INITIAL_TIMEOUT_NANOS, timer.getTimeoutNanos());
+
+		for (int i = 0; i < 50; i++) {
+			timer.onResponse(TimeUnit.MILLISECONDS.toNanos(20));
+		}
+		long settled = timer.getTimeoutNanos();
+		assertTrue(settled >= TimeUnit.MILLISECONDS.toNanos(20) && settled < TimeUnit.MILLISECONDS.toNanos(25));
+
+		timer.onTimeout();
+		assertEquals(2 * settled, timer.getTimeoutNanos());
+		for (int i = 0; i < 20; i++) {
+			timer.onTimeout();
+		}
+		assertEquals(RetransmitTimer.MAX_TIMEOUT_NANOS, timer.getTimeoutNanos());
+	}
+
+	private static byte[] exchange(DatagramSocket socket, byte[] request) throws IOException {
+		socket.send(new DatagramPacket(request, request.length));
+		DatagramPacket response = new DatagramPacket(new byte[1500], 1500);
+		socket.receive(response);
+		return Arrays.copyOf(response.getData(), response.getLength());
+	}
+
+	/**
+	 * Relay the datagrams between a single client and the server, dropping every
+	 * other datagram of the client, until the proxy is closed.
+	 */
+	private static void forwardDroppingEveryOther(DatagramChannel proxy, DatagramChannel serverChannel) {
+		ByteBuffer buffer = ByteBuffer.allocate(65535);
+		SocketAddress client = null;
+		boolean drop = true;
+		try {
+			SocketAddress server = serverChannel.getLocalAddress();
+			while (true) {
+				buffer.clear();
+				SocketAddress from = proxy.receive(buffer);
+				buffer.flip();
+				if (from.equals(server)) {
+					proxy.send(buffer, client);
+				} else {
+					client = from;
+					if (!drop) {
+						proxy.send(buffer, server);
+					}
+					drop = !drop;
+				}
+			}
+		} catch (IOException e) {
+			// Proxy was closed.
+		}
+	}
+}
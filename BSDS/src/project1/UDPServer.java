@@ -1,25 +1,48 @@
 package project1;
 
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.sql.Timestamp;
-import java.util.HashMap;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.StandardSocketOptions;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import common.AsyncLogWriter;
+import common.EventLog;
 
 public class UDPServer {
 
+	// Largest payload of a UDP datagram.
+	private static final int MAX_DATAGRAM_SIZE = 65535;
+
+	// Largest text response, what a datagram carries over IPv4.
+	private static final int MAX_TEXT_RESPONSE_SIZE = MAX_DATAGRAM_SIZE - 20 - 8;
+
+	// Bounds of the replies kept to answer retransmitted reliable requests.
+	private static final int REPLY_CACHE_ENTRIES = 65536;
+	private static final long REPLY_CACHE_BYTES = 64L * 1024 * 1024;
+
+	// Length of the header of a reliable datagram, the protocol byte and request ID.
+	private static final int RELIABLE_HEADER_LENGTH = 1 + Long.BYTES;
+
 	public static void main(String[] args) throws IOException {
 
-		FileWriter fileWriter = null;
+		AsyncLogWriter serverLog = null;
+		EventLog eventLog = null;
 		try {
-			// Step 1 : Create new file or use the existing client log file.
-			fileWriter = createFileWriter();
+			// Step 1 : Create new file or use the existing server log file, and the binary
+			// log of the requests if chosen.
+			serverLog = AsyncLogWriter.open("UDPServerLog.txt", "UDP Server");
+			eventLog = EventLog.open("UDPServerEvents");
 
-			// Step 2 : Create a hashmap to store the key value.
-			Map<String, String> keyValueMap = new HashMap<>();
+			// Step 2 : Create a hashmap, shared by all the workers, to store the key value.
+			Map<String, String> keyValueMap = new ConcurrentHashMap<>();
 
 			// Step 3 : Get the port number from user.
 			if (args.length < 1) {
@@ -31,101 +54,201 @@ public class UDPServer {
 				serverPort = Integer.parseInt(inputPort);
 			}
 
-			// Step 4 : Create a datagram socket to listen at port
-			DatagramSocket datagramSocket = new DatagramSocket(serverPort);
-
-			byte[] receive = new byte[65535];
-			DatagramPacket DpReceive = null;
-
-			while (true) {
-
-				// Step 5 : create a Datagram Packet to receive the data.
-				DpReceive = new DatagramPacket(receive, receive.length);
+			// Step 4 : Get the number of worker threads.
+			int numWorkers = Runtime.getRuntime().availableProcessors();
+			if (args.length > 1 && args[1].matches("[0-9]+")) {
+				numWorkers = Math.max(1, Integer.parseInt(args[1]));
+			}
 
-				String userInput = null;
-				try {
-					// Step 3 : revieve the data in byte buffer.
-					datagramSocket.receive(DpReceive);
+			// Step 5 : Create a datagram channel per worker, all listening at the port, so
+			// the kernel spreads the clients over them. Without SO_REUSEPORT the workers
+			// take turns receiving from a single channel.
+			DatagramChannel[] channels = openChannels(serverPort, numWorkers);
+			System.out.println("UDP server is ready with " + numWorkers + " workers on "
+					+ (channels.length > 1 ? channels.length + " reuse port channels" : "a shared channel")
+					+ " at port " + serverPort);
+
+			// Step 6 : Serve the requests until the server is stopped, with the replies to
+			// reliable requests shared by all the workers.
+			ReplyCache replyCache = new ReplyCache(REPLY_CACHE_ENTRIES, REPLY_CACHE_BYTES);
+			Thread[] workers = new Thread[numWorkers];
+			for (int i = 0; i < numWorkers; i++) {
+				DatagramChannel channel = channels[i % channels.length];
+				AsyncLogWriter log = serverLog;
+				EventLog events = eventLog;
+				workers[i] = new Thread(() -> {
+					try {
+						serveRequests(channel, keyValueMap, replyCache, log, events);
+					} catch (IOException e) {
+						log.log(": Error in UDP Server : " + e.getMessage());
+					}
+				}, "udp-worker-" + i);
+				workers[i].start();
+			}
+			for (Thread worker : workers) {
+				worker.join();
+			}
 
-					// Step 4 : Convert data in byte buffer to string
-					userInput = byteDataToString(receive);
+		} catch (Exception e) {
 
-				} catch (IllegalArgumentException e) {
-					// Handle malformed packet exception
-					Timestamp timestamp = new Timestamp(System.currentTimeMillis());
-					String malformedDg = timestamp + ": Malformed datagram packet received from "
-							+ DpReceive.getAddress() + ", port: " + DpReceive.getPort() + ": " + userInput;
-					fileWriter.write(malformedDg + "\n");
-					fileWriter.flush();
-				}
+			serverLog.log(": Error in UDP Server : " + e.getMessage());
+		} finally {
+			// Close the server log, writing whatever is still queued.
+			serverLog.close();
+			if (eventLog != null) {
+				eventLog.close();
+			}
+		}
 
-				// Step 5 : Print and log the client request.
-				Timestamp timestamp = new Timestamp(System.currentTimeMillis());
-				String requestFromClient = timestamp + ": Recieved from " + DpReceive.getAddress() + ", port: "
-						+ DpReceive.getPort() + ": " + userInput;
-				fileWriter.write(requestFromClient + "\n");
-				fileWriter.flush();
+	}
 
-				// Step 6 : Update the key value store based on the user command.
-				String sendString = updateKeyValueMap(keyValueMap, userInput);
+	/**
+	 * A utility method to open the channels of the workers. Opens one channel per
+	 * worker bound with SO_REUSEPORT where the platform supports it, or else a
+	 * single channel for all of them.
+	 * 
+	 * @param serverPort port to listen at.
+	 * @param numWorkers number of worker threads.
+	 * @return bound channels.
+	 * @throws IOException if unable to listen at the port.
+	 */
+	private static DatagramChannel[] openChannels(int serverPort, int numWorkers) throws IOException {
+		DatagramChannel first = DatagramChannel.open();
+		if (numWorkers == 1 || !first.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+			first.bind(new InetSocketAddress(serverPort));
+			return new DatagramChannel[] { first };
+		}
 
-				// Step 7 : Send the response to client.
-				byte[] sendData = sendString.getBytes("UTF-8");
+		DatagramChannel[] channels = new DatagramChannel[numWorkers];
+		channels[0] = first;
+		for (int i = 0; i < numWorkers; i++) {
+			if (i > 0) {
+				channels[i] = DatagramChannel.open();
+			}
+			channels[i].setOption(StandardSocketOptions.SO_REUSEPORT, true);
+			channels[i].bind(new InetSocketAddress(serverPort));
+		}
+		return channels;
+	}
 
-				DatagramPacket sendPacket = new DatagramPacket(sendData, sendData.length, DpReceive.getAddress(),
-						DpReceive.getPort());
+	/**
+	 * A utility method to receive the requests from a datagram channel and send
+	 * their responses, until the channel is closed. The datagrams are received into
+	 * and sent from the same two direct buffers, and decoded in place, so serving a
+	 * request allocates nothing but its strings.
+	 * 
+	 * Safe to run on many threads at once, each with its own or a shared channel,
+	 * as long as the map is a concurrent one.
+	 * 
+	 * @param channel     datagram channel bound to the server port.
+	 * @param keyValueMap key-value store.
+	 * @param replyCache  replies to the reliable requests.
+	 * @param serverLog   server log.
+	 * @param eventLog    binary log of the requests, or null to log them as text.
+	 * @throws IOException if unable to receive or send a datagram.
+	 */
+	static void serveRequests(DatagramChannel channel, Map<String, String> keyValueMap, ReplyCache replyCache,
+			AsyncLogWriter serverLog, EventLog eventLog) throws IOException {
+
+		ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+		ByteBuffer sendBuffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+		byte[] textBytes = new byte[MAX_DATAGRAM_SIZE];
+		CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+		BinaryRequest binaryRequest = new BinaryRequest();
+		BatchRequest batchRequest = new BatchRequest();
+		int localPort = ((InetSocketAddress) channel.getLocalAddress()).getPort();
+
+		while (true) {
+
+			// Step 1 : Receive the next datagram, only as long as it actually is.
+			receiveBuffer.clear();
+			InetSocketAddress client = (InetSocketAddress) channel.receive(receiveBuffer);
+			receiveBuffer.flip();
+			sendBuffer.clear();
+
+			// Binary requests start with a protocol byte and are served on their own.
+			byte protocol = receiveBuffer.hasRemaining() ? receiveBuffer.get(0) : 0;
+			if (protocol == BinaryRequest.RELIABLE_MAGIC) {
+				serveReliableRequest(channel, client, receiveBuffer, sendBuffer, binaryRequest, batchRequest,
+						keyValueMap, replyCache, serverLog, eventLog, localPort);
+				continue;
+			}
+			if (protocol == BinaryRequest.MAGIC) {
+				receiveBuffer.position(1);
+				sendBuffer.put(BinaryRequest.MAGIC);
+				serveBinaryRequest(channel, client, receiveBuffer, sendBuffer, binaryRequest, batchRequest,
+						keyValueMap, serverLog, eventLog, localPort);
+				continue;
+			}
 
-				datagramSocket.send(sendPacket);
+			// Step 2 : Decode the command from the received bytes.
+			int length = receiveBuffer.remaining();
+			receiveBuffer.get(textBytes, 0, length);
+			String userInput = new String(textBytes, 0, length, StandardCharsets.UTF_8);
 
-				// Step 8 : Print and log the response.
-				String responseToClient = timestamp + ": Sending to " + sendPacket.getAddress() + ", port: "
-						+ sendPacket.getPort() + ": " + sendString;
-				fileWriter.write(responseToClient + "\n");
-				fileWriter.flush();
+			// Step 3 : Print and log the client request.
+			long start = System.nanoTime();
+			if (eventLog == null) {
+				serverLog.log(": Recieved from " + client.getAddress() + ", port: " + client.getPort() + ": "
+						+ userInput);
+			}
 
-				// Step 9 : Clear the buffer after every message.
-				receive = new byte[65535];
+			// Step 4 : Update the key value store based on the user command, answering a
+			// command on many keys with a line per key. Only the keys whose lines fit in
+			// the response are executed, and a last line tells how many were not.
+			boolean batch = userInput.regionMatches(true, 0, "M", 0, 1) && batchRequest.parseCommand(userInput);
+			String sendString;
+			if (batch) {
+				int requested = batchRequest.size();
+				String notExecuted = describeNotExecuted(requested);
+				batchRequest.executeDescribed(keyValueMap,
+						MAX_TEXT_RESPONSE_SIZE - 1 - BinaryRequest.utf8Length(notExecuted));
+				sendString = batchRequest.describeResponse();
+				if (batchRequest.size() < requested) {
+					notExecuted = describeNotExecuted(requested - batchRequest.size());
+					sendString = batchRequest.size() == 0 ? notExecuted : sendString + "\n" + notExecuted;
+				}
+			} else {
+				sendString = updateKeyValueMap(keyValueMap, userInput);
 			}
 
-		} catch (Exception e) {
-			
-			Timestamp timestamp = new Timestamp(System.currentTimeMillis());
-			String error = timestamp + ": Error in UDP Server : " + e.getMessage();
-			fileWriter.write(error + "\n");
-			fileWriter.flush();		
-		}  finally {
-			// Close the file writer.
-			fileWriter.close();
+			// Step 5 : Send the response to client, or an error if it does not fit in a
+			// datagram rather than the part of it that does.
+			sendBuffer.limit(MAX_TEXT_RESPONSE_SIZE);
+			encoder.reset();
+			if (encoder.encode(CharBuffer.wrap(sendString), sendBuffer, true).isOverflow()) {
+				serverLog.log(": Response too large for a datagram to " + client.getAddress() + ", port: "
+						+ client.getPort() + ": " + userInput);
+				sendString = "Response too large for a datagram. Please request fewer keys";
+				sendBuffer.clear().limit(MAX_TEXT_RESPONSE_SIZE);
+				encoder.reset();
+				encoder.encode(CharBuffer.wrap(sendString), sendBuffer, true);
+			}
+			sendBuffer.flip();
+			channel.send(sendBuffer, client);
+
+			// Step 6 : Print and log the response.
+			if (eventLog == null) {
+				serverLog.log(": Sending to " + client.getAddress() + ", port: " + client.getPort() + ": "
+						+ sendString);
+			} else if (batch) {
+				recordBatch(eventLog, batchRequest, localPort, start);
+			} else {
+				eventLog.record(EventLog.commandEventType(userInput), localPort, EventLog.commandKeyHash(userInput),
+						System.nanoTime() - start);
+			}
 		}
-
 	}
 
 	/**
-	 * A utility method to create log file and provide the ability to write into it.
-	 * Created new file if not present, uses existing file if present.
-	 * 
-	 * @return file write of client log file.
+	 * Private method to describe the last keys of a text command on many keys that
+	 * were left out of its response, and not executed.
+	 *
+	 * @param count number of keys left out.
+	 * @return last line of the response.
 	 */
-	private static FileWriter createFileWriter() {
-		FileWriter fileWriter = null;
-		try {
-			// Get the current directory where the Java file is located
-			String currentDirectory = System.getProperty("user.dir");
-
-			// Define the file name and content to write
-			String fileName = currentDirectory + "\\UDPServerLog.txt";
-			File serverLogFile = new File(fileName);
-			if (!serverLogFile.exists()) {
-				serverLogFile.createNewFile();
-				System.out.println("UDP Server log file created: " + fileName);
-			} else {
-				System.out.println("Using UDP Server log file already exists at : " + fileName);
-			}
-			fileWriter = new FileWriter(serverLogFile, true);
-		} catch (IOException e) {
-			System.err.println("Error creating UDP server log file!");
-		}
-		return fileWriter;
+	private static String describeNotExecuted(int count) {
+		return "Not executed : the last " + count + " keys, too many for a datagram. Please send them again";
 	}
 
 	/**
@@ -152,8 +275,9 @@ public class UDPServer {
 		}
 		if ("GET".equalsIgnoreCase(commands[0])) {
 			try {
-				if (keyValueMap != null && !keyValueMap.isEmpty() && keyValueMap.containsKey(commands[1])) {
-					return "Value for key " + commands[1] + " is :" + keyValueMap.get(commands[1]);
+				String value = keyValueMap.get(commands[1]);
+				if (value != null) {
+					return "Value for key " + commands[1] + " is :" + value;
 				} else {
 					return "Key-value store does not contain the given key";
 				}
@@ -163,9 +287,7 @@ public class UDPServer {
 		}
 		if ("DELETE".equalsIgnoreCase(commands[0])) {
 			try {
-				if (keyValueMap != null && !keyValueMap.isEmpty() && keyValueMap.containsKey(commands[1])) {
-
-					keyValueMap.remove(commands[1]);
+				if (keyValueMap.remove(commands[1]) != null) {
 					return "Deleted key : " + commands[1];
 
 				} else {
@@ -181,22 +303,270 @@ public class UDPServer {
 	}
 
 	/**
-	 * A utility method to convert the byte array data into a string representation.
+	 * A utility method to serve a reliable request, identified by its client and
+	 * request ID. A request seen before is not executed again, its reply is sent
+	 * again, or nothing if it is still being executed.
+	 * 
+	 * @param channel       datagram channel.
+	 * @param client        address of the client.
+	 * @param received      received datagram, starting with the protocol byte.
+	 * @param sendBuffer    buffer to encode the response into, cleared.
+	 * @param binaryRequest binary request, reused for every datagram.
+	 * @param batchRequest  batch request, reused for every datagram.
+	 * @param keyValueMap   hashmap representation of the key-value store.
+	 * @param replyCache    replies to the reliable requests.
+	 * @param serverLog     server log.
+	 * @param eventLog      binary log of the requests, or null to log them as text.
+	 * @param localPort     port the server is listening at.
+	 * @throws IOException if unable to send the response.
+	 */
+	private static void serveReliableRequest(DatagramChannel channel, InetSocketAddress client, ByteBuffer received,
+			ByteBuffer sendBuffer, BinaryRequest binaryRequest, BatchRequest batchRequest,
+			Map<String, String> keyValueMap, ReplyCache replyCache, AsyncLogWriter serverLog, EventLog eventLog,
+			int localPort) throws IOException {
+
+		// Step 1 : Get the request ID, without which there is no one to answer.
+		if (received.remaining() < RELIABLE_HEADER_LENGTH) {
+			serverLog.log(": Malformed datagram packet received from " + client.getAddress() + ", port: "
+					+ client.getPort() + ": Truncated request ID");
+			return;
+		}
+		long requestId = received.getLong(1);
+
+		// Step 2 : Answer a retransmitted request from the cache.
+		ReplyCache.Key key = new ReplyCache.Key(client, requestId);
+		byte[] reply = replyCache.begin(key);
+		if (reply == ReplyCache.IN_PROGRESS) {
+			return;
+		}
+		if (reply != null) {
+			channel.send(ByteBuffer.wrap(reply), client);
+			serverLog.log(": Resending to " + client.getAddress() + ", port: " + client.getPort()
+					+ ": reply to request " + requestId);
+			return;
+		}
+
+		// Step 3 : Serve a new request and keep its reply, even if sending it failed,
+		// so the retransmissions are answered. An I/O error only comes from sending,
+		// once the reply is encoded. Forget a request that failed otherwise.
+		received.position(RELIABLE_HEADER_LENGTH);
+		sendBuffer.put(BinaryRequest.RELIABLE_MAGIC);
+		sendBuffer.putLong(requestId);
+		boolean encoded = false;
+		try {
+			serveBinaryRequest(channel, client, received, sendBuffer, binaryRequest, batchRequest, keyValueMap,
+					serverLog, eventLog, localPort);
+			encoded = true;
+		} catch (IOException e) {
+			encoded = true;
+			throw e;
+		} finally {
+			if (encoded) {
+				reply = new byte[sendBuffer.limit()];
+				sendBuffer.get(0, reply);
+				replyCache.complete(key, reply);
+			} else {
+				replyCache.abort(key);
+			}
+		}
+	}
+
+	/**
+	 * A utility method to serve a single or batch request in the binary protocol,
+	 * after its header.
+	 * 
+	 * @param channel       datagram channel.
+	 * @param client        address of the client.
+	 * @param received      received datagram, positioned past its header.
+	 * @param sendBuffer    buffer holding the response header, to encode the
+	 *                      response after.
+	 * @param binaryRequest binary request, reused for every datagram.
+	 * @param batchRequest  batch request, reused for every datagram.
+	 * @param keyValueMap   hashmap representation of the key-value store.
+	 * @param serverLog     server log.
+	 * @param eventLog      binary log of the requests, or null to log them as text.
+	 * @param localPort     port the server is listening at.
+	 * @throws IOException if unable to send the response.
+	 */
+	private static void serveBinaryRequest(DatagramChannel channel, InetSocketAddress client, ByteBuffer received,
+			ByteBuffer sendBuffer, BinaryRequest binaryRequest, BatchRequest batchRequest,
+			Map<String, String> keyValueMap, AsyncLogWriter serverLog, EventLog eventLog, int localPort)
+			throws IOException {
+		if (received.hasRemaining() && BatchRequest.isBatchOpcode(received.get(received.position()))) {
+			serveBatchRequest(channel, client, received, sendBuffer, batchRequest, keyValueMap, serverLog, eventLog,
+					localPort);
+		} else {
+			serveSingleRequest(channel, client, received, sendBuffer, binaryRequest, keyValueMap, serverLog,
+					eventLog, localPort);
+		}
+	}
+
+	/**
+	 * A utility method to serve a request in the binary protocol and send its
+	 * response, or an invalid status if the request cannot be decoded.
 	 * 
-	 * @param array byte array.
-	 * @return string representation of the byte array.
+	 * @param channel     datagram channel.
+	 * @param client      address of the client.
+	 * @param received    received datagram, positioned past its header.
+	 * @param sendBuffer  buffer holding the response header, to encode the
+	 *                    response after.
+	 * @param request     binary request, reused for every datagram.
+	 * @param keyValueMap hashmap representation of the key-value store.
+	 * @param serverLog   server log.
+	 * @param eventLog    binary log of the requests, or null to log them as text.
+	 * @param localPort   port the server is listening at.
+	 * @throws IOException if unable to send the response.
 	 */
-	public static String byteDataToString(byte[] array) {
-		if (array == null)
-			return null;
+	private static void serveSingleRequest(DatagramChannel channel, InetSocketAddress client, ByteBuffer received,
+			ByteBuffer sendBuffer, BinaryRequest request, Map<String, String> keyValueMap, AsyncLogWriter serverLog,
+			EventLog eventLog, int localPort) throws IOException {
+
+		long start = System.nanoTime();
+		int headerLength = sendBuffer.position();
+		String sendString;
+		short eventType = EventLog.EVENT_INVALID;
+		int keyHash = 0;
+		try {
+			if (!request.decodeRequest(received)) {
+				throw new ProtocolException("Truncated request");
+			}
+
+			// Step 1 : Print and log the client request.
+			if (eventLog == null) {
+				serverLog.log(": Recieved from " + client.getAddress() + ", port: " + client.getPort() + ": "
+						+ request);
+			}
+
+			// Step 2 : Update the key value store.
+			request.execute(keyValueMap);
 
-		StringBuilder returnString = new StringBuilder();
-		int i = 0;
-		while (array[i] != 0) {
-			returnString.append((char) array[i++]);
+			request.encodeResponse(sendBuffer);
+			sendString = request.describeResponse();
+			eventType = request.eventType();
+			keyHash = request.getKey().hashCode();
+
+		} catch (ProtocolException e) {
+			serverLog.log(": Malformed datagram packet received from " + client.getAddress() + ", port: "
+					+ client.getPort() + ": " + e.getMessage());
+			sendString = encodeInvalidResponse(sendBuffer, headerLength);
+
+		} catch (BufferOverflowException e) {
+			serverLog.log(": Response too large for a datagram to " + client.getAddress() + ", port: "
+					+ client.getPort() + ": " + request);
+			sendString = encodeInvalidResponse(sendBuffer, headerLength);
+		}
+
+		// Step 3 : Send the response to client.
+		sendBuffer.flip();
+		channel.send(sendBuffer, client);
+
+		// Step 4 : Print and log the response.
+		if (eventLog == null) {
+			serverLog.log(": Sending to " + client.getAddress() + ", port: " + client.getPort() + ": " + sendString);
+		} else {
+			eventLog.record(eventType, localPort, keyHash, System.nanoTime() - start);
 		}
+	}
 
-		return returnString.toString();
+	/**
+	 * A utility method to serve a request on many keys in the binary protocol and
+	 * send its packed response, answering only the first items if the responses of
+	 * all would not fit in a datagram that is not fragmented. Sends an invalid
+	 * status if the request cannot be decoded or the response to its first item
+	 * alone does not fit in a datagram.
+	 * 
+	 * @param channel     datagram channel.
+	 * @param client      address of the client.
+	 * @param received    received datagram, positioned past its header.
+	 * @param sendBuffer  buffer holding the response header, to encode the
+	 *                    response after.
+	 * @param request     batch request, reused for every datagram.
+	 * @param keyValueMap hashmap representation of the key-value store.
+	 * @param serverLog   server log.
+	 * @param eventLog    binary log of the requests, or null to log them as text.
+	 * @param localPort   port the server is listening at.
+	 * @throws IOException if unable to send the response.
+	 */
+	private static void serveBatchRequest(DatagramChannel channel, InetSocketAddress client, ByteBuffer received,
+			ByteBuffer sendBuffer, BatchRequest request, Map<String, String> keyValueMap, AsyncLogWriter serverLog,
+			EventLog eventLog, int localPort) throws IOException {
+
+		long start = System.nanoTime();
+		int headerLength = sendBuffer.position();
+		String sendString;
+		boolean executed = false;
+		try {
+			request.decodeRequest(received.get(), received);
+
+			// Step 1 : Print and log the client request.
+			if (eventLog == null) {
+				serverLog.log(": Recieved from " + client.getAddress() + ", port: " + client.getPort() + ": "
+						+ request);
+			}
+
+			// Step 2 : Update the key value store, with as many items as have responses
+			// fitting in a datagram that is not fragmented.
+			request.execute(keyValueMap, UDPClient.MAX_BATCH_PAYLOAD - headerLength);
+			executed = true;
+
+			request.encodeResponse(sendBuffer);
+			sendString = request.describeResponse();
+
+		} catch (ProtocolException e) {
+			serverLog.log(": Malformed datagram packet received from " + client.getAddress() + ", port: "
+					+ client.getPort() + ": " + e.getMessage());
+			sendString = encodeInvalidResponse(sendBuffer, headerLength);
+
+		} catch (BufferOverflowException e) {
+			serverLog.log(": Response too large for a datagram to " + client.getAddress() + ", port: "
+					+ client.getPort() + ": " + request);
+			sendString = encodeInvalidResponse(sendBuffer, headerLength);
+		}
+
+		// Step 3 : Send the response to client.
+		sendBuffer.flip();
+		channel.send(sendBuffer, client);
+
+		// Step 4 : Print and log the response.
+		if (eventLog == null) {
+			serverLog.log(": Sending to " + client.getAddress() + ", port: " + client.getPort() + ": " + sendString);
+		} else if (executed) {
+			recordBatch(eventLog, request, localPort, start);
+		} else {
+			eventLog.record(EventLog.EVENT_INVALID, localPort, 0, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * A utility method to append an event per item of a batch to the binary log,
+	 * each with the latency of the whole batch.
+	 * 
+	 * @param eventLog  binary log of the requests.
+	 * @param request   executed batch request.
+	 * @param localPort port the server is listening at.
+	 * @param start     time the batch started at, in nanoseconds.
+	 */
+	private static void recordBatch(EventLog eventLog, BatchRequest request, int localPort, long start) {
+		long latency = System.nanoTime() - start;
+		for (int i = 0; i < request.size(); i++) {
+			BinaryRequest item = request.get(i);
+			eventLog.record(item.eventType(), localPort, item.getKey().hashCode(), latency);
+		}
+	}
+
+	/**
+	 * A utility method to replace whatever is in the send buffer after the header
+	 * by an invalid status response in the binary protocol.
+	 * 
+	 * @param sendBuffer   buffer to encode the response into.
+	 * @param headerLength length of the response header.
+	 * @return description of the response, for the server log.
+	 */
+	private static String encodeInvalidResponse(ByteBuffer sendBuffer, int headerLength) {
+		sendBuffer.limit(sendBuffer.capacity());
+		sendBuffer.position(headerLength);
+		BinaryRequest.encodeInvalidResponse(sendBuffer);
+		return "Invalid request";
 	}
 
 }
@@ -10,16 +10,28 @@ import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.rmi.ConnectException;
-import java.rmi.Naming;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
+
+import common.Result;
+import common.Transport;
 
 public class RMIClient {
 
 	private static RMIInterface rmiInterface;
 
+	// Maximum number of commands sent to the server in a single call.
+	private static final int MAX_GROUP_SIZE = 1000;
+
 	public static void main(String[] args) throws NotBoundException, IOException {
 
 		FileWriter fileWriter = null;
@@ -43,19 +55,22 @@ public class RMIClient {
 			}
 
 			
-			rmiInterface = (RMIInterface) Naming.lookup("rmi://"+inputIPAddress+":"+serverPort+"/MyKeyValueMap");
+			rmiInterface = Transport.connect(inputIPAddress, serverPort, "MyKeyValueMap", RMIInterface.class);
 
 			// Step 4: Pre populate data
 			String prepopulatedInput = prepopulate();
 			Scanner scanner = new Scanner(prepopulatedInput);
+			List<String> prepopulatedCommands = new ArrayList<>();
 			while (scanner.hasNextLine()) {
-				sendDataToServer(scanner.nextLine(), fileWriter);
+				prepopulatedCommands.add(scanner.nextLine());
 			}
 			scanner.close();
+			sendCommandsToServer(prepopulatedCommands, fileWriter);
 
 			Scanner in = new Scanner(System.in);
 
-			// Step 5 : Get the input commands from the user, until "quit" or "q".
+			// Step 5 : Get the input commands from the user, until "quit" or "q". Many
+			// commands may be entered on one line, separated by ";".
 			while (true) {
 				System.out.println("Enter the command :");
 				String userInput = in.nextLine();
@@ -66,7 +81,7 @@ public class RMIClient {
 					break;
 				}
 
-				sendDataToServer(userInput, fileWriter);
+				sendCommandsToServer(Arrays.asList(userInput.split(";")), fileWriter);
 			}
 		} catch (ConnectException e1) {
 
@@ -136,33 +151,126 @@ public class RMIClient {
 			
 			if ("PUT".equalsIgnoreCase(commands[0])) {
 
-				serverResponse = rmiInterface.put(commands[1], commands[2]);
+				serverResponse = rmiInterface.put(commands[1], commands[2]).render("PUT", commands[1], commands[2]);
 				
 			} else if ("GET".equalsIgnoreCase(commands[0])) {
 				
-				serverResponse = rmiInterface.get(commands[1]);
+				serverResponse = rmiInterface.get(commands[1]).render("GET", commands[1], null);
 
 			} else if ("DELETE".equalsIgnoreCase(commands[0])) {
 				
-				serverResponse = rmiInterface.delete(commands[1]);
+				serverResponse = rmiInterface.delete(commands[1]).render("DELETE", commands[1], null);
 
 			} else {
 				serverResponse = "Received unsolicited response acknowledging unknown PUT/GET/DELETE with an invalid KEY";
 			}
 
+			writeResponse(serverResponse, fileWriter);
+
+		} catch (Exception e) {
+
+			// Step 9 : Also capture any server timeout error.
 			Timestamp timestamp = new Timestamp(System.currentTimeMillis());
-			String responseFromServer = timestamp + ": Recieved from server : " + serverResponse;
+			String timeoutError = timestamp + ": Server timeout! Please try again";
 
-			// Step 7 : Write the server response to client log file.
-			fileWriter.write(responseFromServer + "\n");
+			fileWriter.write(timeoutError + "\n");
 			fileWriter.flush();
 
-			// Step 8 : Also print the server response.
-			System.out.println(responseFromServer);
+			System.err.println(timeoutError);
+		}
+	}
+
+	/**
+	 * A utility function to send many commands to the server, grouping consecutive
+	 * commands of the same type on different keys into a single call of putAll,
+	 * getAll or deleteAll, and logging one response per command as if each was
+	 * sent alone.
+	 * 
+	 * @param userInputs user commands, in order.
+	 * @param fileWriter file writer
+	 * @throws IOException if unable to write the client log file.
+	 */
+	private static void sendCommandsToServer(List<String> userInputs, FileWriter fileWriter)
+			throws IOException {
+		int start = 0;
+		while (start < userInputs.size()) {
+			String[] commands = userInputs.get(start).split("-");
+			String type = groupType(commands);
+			int end = start + 1;
+
+			// A repeated key ends the group, so that a DELETE after a DELETE of the
+			// same key still finds it missing.
+			if (type != null) {
+				Set<String> keys = new HashSet<>();
+				keys.add(commands[1]);
+				while (end < userInputs.size() && end - start < MAX_GROUP_SIZE) {
+					String[] next = userInputs.get(end).split("-");
+					if (!type.equals(groupType(next)) || !keys.add(next[1])) {
+						break;
+					}
+					end++;
+				}
+			}
+
+			if (end - start == 1) {
+				sendDataToServer(userInputs.get(start), fileWriter);
+			} else {
+				sendGroupToServer(type, userInputs.subList(start, end), fileWriter);
+			}
+			start = end;
+		}
+	}
+
+	/**
+	 * A utility function to send commands of the same type on different keys to
+	 * the server in a single call.
+	 * 
+	 * @param type       PUT, GET or DELETE.
+	 * @param userInputs user commands of that type.
+	 * @param fileWriter file writer
+	 * @throws IOException if unable to write the client log file.
+	 */
+	private static void sendGroupToServer(String type, List<String> userInputs, FileWriter fileWriter)
+			throws IOException {
+		try {
+
+			Map<String, String> entries = new LinkedHashMap<>();
+			for (String userInput : userInputs) {
+				String[] commands = userInput.split("-");
+				entries.put(commands[1], "PUT".equals(type) ? commands[2] : null);
+			}
+
+			List<String> serverResponses = new ArrayList<>();
+			if ("PUT".equals(type)) {
+
+				rmiInterface.putAll(entries);
+				for (Map.Entry<String, String> entry : entries.entrySet()) {
+					serverResponses.add(Result.ok().render(type, entry.getKey(), entry.getValue()));
+				}
+
+			} else if ("GET".equals(type)) {
+
+				Map<String, String> values = rmiInterface.getAll(new ArrayList<>(entries.keySet()));
+				for (String key : entries.keySet()) {
+					serverResponses.add(Result.of(values.get(key)).render(type, key, null));
+				}
+
+			} else {
+
+				Set<String> deleted = rmiInterface.deleteAll(new ArrayList<>(entries.keySet()));
+				for (String key : entries.keySet()) {
+					Result result = deleted.contains(key) ? Result.ok() : Result.notFound();
+					serverResponses.add(result.render(type, key, null));
+				}
+			}
+
+			for (String serverResponse : serverResponses) {
+				writeResponse(serverResponse, fileWriter);
+			}
 
 		} catch (Exception e) {
 
-			// Step 9 : Also capture any server timeout error.
+			// Also capture any server timeout error, once for the whole group.
 			Timestamp timestamp = new Timestamp(System.currentTimeMillis());
 			String timeoutError = timestamp + ": Server timeout! Please try again";
 
@@ -173,6 +281,42 @@ public class RMIClient {
 		}
 	}
 
+	/**
+	 * A utility function to get the type of a command that can be sent as part of
+	 * a group.
+	 * 
+	 * @param commands user command split on "-".
+	 * @return PUT, GET or DELETE, or null if the command must be sent alone.
+	 */
+	private static String groupType(String[] commands) {
+		if ("PUT".equalsIgnoreCase(commands[0]) && commands.length == 3) {
+			return "PUT";
+		}
+		if (("GET".equalsIgnoreCase(commands[0]) || "DELETE".equalsIgnoreCase(commands[0])) && commands.length == 2) {
+			return commands[0].toUpperCase();
+		}
+		return null;
+	}
+
+	/**
+	 * A utility function to log and print a response from the server.
+	 * 
+	 * @param serverResponse response from the server.
+	 * @param fileWriter     file writer
+	 * @throws IOException if unable to write the client log file.
+	 */
+	private static void writeResponse(String serverResponse, FileWriter fileWriter) throws IOException {
+		Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+		String responseFromServer = timestamp + ": Recieved from server : " + serverResponse;
+
+		// Step 7 : Write the server response to client log file.
+		fileWriter.write(responseFromServer + "\n");
+		fileWriter.flush();
+
+		// Step 8 : Also print the server response.
+		System.out.println(responseFromServer);
+	}
+
 	/**
 	 * A utility function to execute put, get and delete
 	 * 
@@ -1,45 +1,80 @@
 package project2;
 
-import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+import common.KeyValueService;
+import common.Result;
 
 /**
  * Interface class that declares a set of methods that may be invoked from a
  * remote client. Contains methods to put, get and delete from the key value
  * map.
  */
-public interface RMIInterface extends Remote {
+public interface RMIInterface extends KeyValueService {
 
 	/**
 	 * Method to insert key and value into the hash map.
 	 * 
 	 * @param key   key to be inserted.
 	 * @param value value of the key to be inserted.
-	 * @return response from the server.
+	 * @return result of the operation.
 	 * @throws RemoteException for exceptions that may occur during the execution of
 	 *                         a remote method call
 	 */
-	public String put(String key, String value) throws RemoteException;
+	public Result put(String key, String value) throws RemoteException;
 
 	/**
 	 * Method to get the value for the key from the hash map, if exists.
 	 * 
 	 * @param key key to be inserted.
-	 * @return response from the server.
+	 * @return result of the operation.
 	 * @throws RemoteException for exceptions that may occur during the execution of
 	 *                         a remote method call
 	 */
-	public String get(String key) throws RemoteException;
+	public Result get(String key) throws RemoteException;
 
 	/**
 	 * Method to delete the key and value from the hash map, if exists.
 	 * 
 	 * @param key key to be inserted.
-	 * @return response from the server.
+	 * @return result of the operation.
+	 * @throws RemoteException for exceptions that may occur during the execution of
+	 *                         a remote method call
+	 */
+	public Result delete(String key) throws RemoteException;
+
+	/**
+	 * Method to insert many keys and values into the hash map in one call.
+	 * 
+	 * @param entries keys and values to be inserted.
+	 * @return number of keys inserted.
+	 * @throws RemoteException for exceptions that may occur during the execution of
+	 *                         a remote method call
+	 */
+	public int putAll(Map<String, String> entries) throws RemoteException;
+
+	/**
+	 * Method to get the values of many keys from the hash map in one call.
+	 * 
+	 * @param keys keys to be looked up.
+	 * @return values of the keys that exist, by key.
+	 * @throws RemoteException for exceptions that may occur during the execution of
+	 *                         a remote method call
+	 */
+	public Map<String, String> getAll(Collection<String> keys) throws RemoteException;
+
+	/**
+	 * Method to delete many keys and their values from the hash map in one call.
+	 * 
+	 * @param keys keys to be deleted.
+	 * @return keys that existed and were deleted.
 	 * @throws RemoteException for exceptions that may occur during the execution of
 	 *                         a remote method call
 	 */
-	public String delete(String key) throws RemoteException;
+	public Set<String> deleteAll(Collection<String> keys) throws RemoteException;
 
 	/**
 	 * Method to get the size of the hash map.
@@ -1,23 +1,25 @@
 package project2;
 
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.rmi.Naming;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
-import java.sql.Timestamp;
+
+import common.AsyncLogWriter;
+import common.BinaryRpcServer;
+import common.EventLog;
+import common.Transport;
 
 
 public class RMIServer {
 
 	public static void main(String[] args) throws IOException {
 
-		FileWriter fileWriter = null;
+		AsyncLogWriter serverLog = null;
 
 		try {
 			// Step 1 : Create new file or use the existing server log file.
-			fileWriter = createFileWriter();
+			serverLog = AsyncLogWriter.open("RMIServerLog.txt", "RMI Server");
 
 			// Step 2 : Get the port number from user.
 			if (args.length < 1) {
@@ -29,57 +31,33 @@ public class RMIServer {
 				serverPort = Integer.parseInt(inputPort);
 			}
 
-			// Step 3: Create an instance of the remote object.
-			RMIInterface remoteObject = new RemoteObject();
+			// Step 3: Create an instance of the remote object, logging the requests to the
+			// binary log if chosen.
+			RMIInterface remoteObject = new RemoteObject(EventLog.open("RMIServerEvents"), serverPort);
 			
-			// Step 4: Create an RMI registry on user entered port.
-            Registry registry = LocateRegistry.createRegistry(serverPort);
-            
-            // Step 5: Bind the remote object to the RMI registry
-            registry.rebind("MyKeyValueMap", remoteObject);
+			if (Transport.isBinary()) {
+				// Step 4: Serve the remote object on the binary transport instead of RMI.
+				BinaryRpcServer binaryServer = new BinaryRpcServer(serverPort);
+				binaryServer.export(RMIInterface.class, remoteObject);
+				binaryServer.start();
+			} else {
+				// Step 4: Create an RMI registry on user entered port.
+				Registry registry = LocateRegistry.createRegistry(serverPort);
+
+				// Step 5: Bind the remote object to the RMI registry
+				registry.rebind("MyKeyValueMap", remoteObject);
+			}
 
 			System.out.println("Server is ready!");
 			
 		} catch (Exception e) {
 
-			Timestamp timestamp = new Timestamp(System.currentTimeMillis());
-			String error = timestamp + ": Error in TCP Server : " + e.getMessage();
-			fileWriter.write(error + "\n");
-			fileWriter.flush();
+			serverLog.log(": Error in RMI Server : " + e.getMessage());
 			
 		} finally {
-			// Close the file writer.
-			fileWriter.close();
-		}
-	}
-
-	/**
-	 * A utility method to create log file and provide the ability to write into it.
-	 * Created new file if not present, uses existing file if present.
-	 * 
-	 * @return file write of client log file.
-	 */
-	private static FileWriter createFileWriter() {
-		FileWriter fileWriter = null;
-		try {
-			// Get the current directory where the Java file is located
-			String currentDirectory = System.getProperty("user.dir");
-
-			// Define the file name and content to write
-			String fileName = currentDirectory + "\\RMIServerLog.txt";
-			File serverLogFile = new File(fileName);
-			if (!serverLogFile.exists()) {
-				serverLogFile.createNewFile();
-				System.out.println("RMI server log file created: " + fileName);
-			} else {
-				System.out.println("Using RMI Server log file already exists at : " + fileName);
-			}
-			fileWriter = new FileWriter(serverLogFile, true);
-
-		} catch (IOException e) {
-			System.err.println("Error creating RMI server log file!");
+			// Close the server log, writing whatever is still queued.
+			serverLog.close();
 		}
-		return fileWriter;
 	}
 
 }
@@ -2,13 +2,17 @@ package project2;
 
 import static org.junit.jupiter.api.Assertions.*;
 
-import java.rmi.Naming;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.jupiter.api.Test;
 
+import common.Result;
+import common.StubCache;
+
 class RMITest {
 
+	private static final String URL = "rmi://127.0.0.1:5800/MyKeyValueMap";
+
 	@Test
 	void testThreadPutJoinDelete() throws InterruptedException {
 		int numThreads = 100;
@@ -21,7 +25,7 @@ class RMITest {
 
 		Runnable addTask = () -> {
 			try {
-				RMIInterface rmiInterface = (RMIInterface) Naming.lookup("rmi://127.0.0.1:5800/MyKeyValueMap");
+				RMIInterface rmiInterface = StubCache.lookup(URL, RMIInterface.class);
 				rmiInterface.put("key" + adds.incrementAndGet(), "value");
 			} catch (Exception e) {
 				System.err.println(e.getMessage());
@@ -30,7 +34,7 @@ class RMITest {
 		Runnable deleteTask = () -> {
 			try {
 
-				RMIInterface rmiInterface = (RMIInterface) Naming.lookup("rmi://127.0.0.1:5800/MyKeyValueMap");
+				RMIInterface rmiInterface = StubCache.lookup(URL, RMIInterface.class);
 				rmiInterface.delete("key" + deletes.incrementAndGet());
 
 			} catch (Exception e) {
@@ -58,7 +62,7 @@ class RMITest {
 
 		try {
 
-			RMIInterface rmiInterface = (RMIInterface) Naming.lookup("rmi://127.0.0.1:5800/MyKeyValueMap");
+			RMIInterface rmiInterface = StubCache.lookup(URL, RMIInterface.class);
 			int expectedSize = adds.get() - deletes.get();
 			int actualSize = rmiInterface.getMapSize();
 			assertEquals(expectedSize, actualSize);
@@ -82,7 +86,7 @@ class RMITest {
 
 		Runnable addTask = () -> {
 			try {
-				RMIInterface rmiInterface = (RMIInterface) Naming.lookup("rmi://127.0.0.1:5800/MyKeyValueMap");
+				RMIInterface rmiInterface = StubCache.lookup(URL, RMIInterface.class);
 				rmiInterface.put("key" + adds.incrementAndGet(), "value");
 			} catch (Exception e) {
 				System.err.println(e.getMessage());
@@ -91,9 +95,9 @@ class RMITest {
 		Runnable deleteTask = () -> {
 			try {
 
-				RMIInterface rmiInterface = (RMIInterface) Naming.lookup("rmi://127.0.0.1:5800/MyKeyValueMap");
-				String msg = rmiInterface.delete("key" + deletes.incrementAndGet());
-				if("Deleted Key:".contains(msg)) {
+				RMIInterface rmiInterface = StubCache.lookup(URL, RMIInterface.class);
+				Result result = rmiInterface.delete("key" + deletes.incrementAndGet());
+				if (result.isOk()) {
 					deleteCtr.incrementAndGet();
 				}
 
@@ -104,7 +108,7 @@ class RMITest {
 
 		try {
 
-			RMIInterface rmiInterface = (RMIInterface) Naming.lookup("rmi://127.0.0.1:5800/MyKeyValueMap");
+			RMIInterface rmiInterface = StubCache.lookup(URL, RMIInterface.class);
 			int expectedSize = adds.get() - deleteCtr.get();
 			int actualSize = rmiInterface.getMapSize();
 			assertEquals(expectedSize, actualSize);
@@ -2,106 +2,134 @@ package project2;
 
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.Set;
 
-public class RemoteObject extends UnicastRemoteObject implements RMIInterface {
+import common.EventLog;
+import common.Result;
+import common.StoreEngine;
+import common.TunedSocketFactory;
 
-	// Step 1: Initialize 2 types of lock. Write and Read reentrant lock - provides
-	// synchronization to methods while accessing shared resources
-	ReadWriteLock lock;
+public class RemoteObject extends UnicastRemoteObject implements RMIInterface {
 
-	// If no threads are reading or writing, only one thread can acquire the write
-	// lock
-	Lock writeLock;
+	// Step 1 : Create a store engine to store the key value. Every request is a
+	// single operation on the engine, which synchronizes it with the other requests
+	// on the same key only, so no lock is held around it and writes to different
+	// keys proceed in parallel.
+	StoreEngine keyValueMap;
 
-	// If no thread acquired the write lock or requested for it, multiple threads
-	// can acquire the read lock
-	Lock readLock;
+	// Binary log of the requests, or null if not logged.
+	EventLog eventLog;
 
-	// Step 2 : Create a hashmap to store the key value.
-	ConcurrentHashMap<String, String> keyValueMap;
+	// Node ID of the requests in the binary log.
+	int nodeId;
 
 	protected RemoteObject() throws RemoteException {
-		super();
-		this.keyValueMap = new ConcurrentHashMap<>();
+		this(null, 0);
+	}
 
-		this.lock = new ReentrantReadWriteLock();
-		this.writeLock = lock.writeLock();
-		this.readLock = lock.readLock();
+	/**
+	 * Constructor to create a remote object that logs every request.
+	 *
+	 * @param eventLog binary log of the requests, or null if not logged.
+	 * @param nodeId   node ID of the requests in the binary log.
+	 * @throws RemoteException if unable to export the object.
+	 */
+	protected RemoteObject(EventLog eventLog, int nodeId) throws RemoteException {
+		super(0, TunedSocketFactory.getDefault(), TunedSocketFactory.getDefault());
+		this.keyValueMap = StoreEngine.fromSystemProperties();
+		this.eventLog = eventLog;
+		this.nodeId = nodeId;
 	}
 
 	@Override
-	public String put(String key, String value) throws RemoteException {
+	public Result put(String key, String value) throws RemoteException {
 
-		writeLock.lock();
-
-		StringBuffer sb = new StringBuffer();
-		try {
+		long start = System.nanoTime();
+		keyValueMap.put(key, value);
+		recordEvent(EventLog.EVENT_PUT, key, start);
+		return Result.ok();
+	}
 
-			keyValueMap.put(key, value);
-			sb.append("Key " + key + " value " + value + " inserted");
+	@Override
+	public Result get(String key) throws RemoteException {
 
-		} catch (ArrayIndexOutOfBoundsException ae) {
-			sb.append("Invalid PUT command. It must be in the format PUT-Key-Value");
-		} finally {
-			writeLock.unlock();
-		}
-		return sb.toString();
+		long start = System.nanoTime();
+		// A single lookup, so the key cannot be deleted between checking and reading it.
+		String value = keyValueMap.get(key);
+		recordEvent(EventLog.EVENT_GET, key, start);
+		return Result.of(value);
 	}
 
 	@Override
-	public String get(String key) throws RemoteException {
+	public Result delete(String key) throws RemoteException {
+
+		long start = System.nanoTime();
+		// Of many concurrent deletes of the same key, only the one that removed it
+		// reports it deleted.
+		boolean deleted = keyValueMap.remove(key);
+		recordEvent(EventLog.EVENT_DELETE, key, start);
+		return deleted ? Result.ok() : Result.notFound();
+	}
 
-		readLock.lock();
+	@Override
+	public int putAll(Map<String, String> entries) throws RemoteException {
 
-		StringBuffer sb = new StringBuffer();
-		try {
+		long start = System.nanoTime();
+		for (Map.Entry<String, String> entry : entries.entrySet()) {
+			keyValueMap.put(entry.getKey(), entry.getValue());
+			recordEvent(EventLog.EVENT_PUT, entry.getKey(), start);
+		}
+		return entries.size();
+	}
 
-			if (keyValueMap != null && !keyValueMap.isEmpty() && keyValueMap.containsKey(key)) {
-				sb.append("Value for key " + key + " is :" + keyValueMap.get(key));
-			} else {
-				sb.append("Key-value store does not contain the given key");
+	@Override
+	public Map<String, String> getAll(Collection<String> keys) throws RemoteException {
+
+		long start = System.nanoTime();
+		Map<String, String> values = new HashMap<>();
+		for (String key : keys) {
+			String value = keyValueMap.get(key);
+			if (value != null) {
+				values.put(key, value);
 			}
-		} catch (ArrayIndexOutOfBoundsException ae) {
-			sb.append("Invalid GET command. It must be in the format GET-Key");
-		} finally {
-			readLock.unlock();
+			recordEvent(EventLog.EVENT_GET, key, start);
 		}
-		return sb.toString();
+		return values;
 	}
 
 	@Override
-	public String delete(String key) throws RemoteException {
-
-		writeLock.lock();
-
-		StringBuffer sb = new StringBuffer();
-		try {
-
-			if (keyValueMap != null && !keyValueMap.isEmpty() && keyValueMap.containsKey(key)) {
+	public Set<String> deleteAll(Collection<String> keys) throws RemoteException {
 
-				keyValueMap.remove(key);
-				sb.append("Deleted key : " + key);
-
-			} else {
-				sb.append("Unnable to delete. Key-value store does not contain the given key");
+		long start = System.nanoTime();
+		Set<String> deleted = new HashSet<>();
+		for (String key : keys) {
+			if (keyValueMap.remove(key)) {
+				deleted.add(key);
 			}
-		} catch (ArrayIndexOutOfBoundsException ae) {
-			sb.append("Invalid DELETE command. It must be in the format DELETE-Key");
-		} finally {
-			writeLock.unlock();
+			recordEvent(EventLog.EVENT_DELETE, key, start);
 		}
-		return sb.toString();
+		return deleted;
 	}
 
 	@Override
 	public int getMapSize() {
 		return keyValueMap.size();
 	}
+
+	/**
+	 * Private method to append a request to the binary log, if any.
+	 *
+	 * @param eventType type of the request.
+	 * @param key       key of the request.
+	 * @param start     time the request started at, in nanoseconds.
+	 */
+	private void recordEvent(short eventType, String key, long start) {
+		if (eventLog != null) {
+			eventLog.record(eventType, nodeId, key.hashCode(), System.nanoTime() - start);
+		}
+	}
 }
@@ -0,0 +1,39 @@
+package project2;
+
+import java.io.IOException;
+import java.rmi.server.UnicastRemoteObject;
+
+import common.Result;
+import common.StoreBenchmark;
+
+/**
+ * Benchmark of the RMI store, calling the remote object directly. See
+ * {@link StoreBenchmark} for the system properties configuring the run.
+ */
+public class RemoteObjectBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		RemoteObject remoteObject = new RemoteObject();
+		try {
+			StoreBenchmark.run("RemoteObject", new StoreBenchmark.Store() {
+
+				@Override
+				public Result put(String key, String value) throws IOException {
+					return remoteObject.put(key, value);
+				}
+
+				@Override
+				public Result get(String key) throws IOException {
+					return remoteObject.get(key);
+				}
+
+				@Override
+				public Result delete(String key) throws IOException {
+					return remoteObject.delete(key);
+				}
+			});
+		} finally {
+			UnicastRemoteObject.unexportObject(remoteObject, true);
+		}
+	}
+}
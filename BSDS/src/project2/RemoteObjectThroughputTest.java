@@ -0,0 +1,130 @@
+package project2;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.rmi.server.UnicastRemoteObject;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Measures the throughput of the store itself, calling the remote object
+ * directly so the RMI transport does not hide the contention between the
+ * requests.
+ */
+class RemoteObjectThroughputTest {
+
+	private static final int[] THREAD_COUNTS = { 1, 2, 4, 8, 16 };
+	private static final int KEYS_PER_THREAD = 1024;
+	private static final long WARMUP_MILLIS = 200;
+	private static final long MEASURE_MILLIS = 500;
+
+	private RemoteObject remoteObject;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		remoteObject = new RemoteObject();
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		UnicastRemoteObject.unexportObject(remoteObject, true);
+	}
+
+	@Test
+	void testWriteThroughput() throws Exception {
+		for (int threads : THREAD_COUNTS) {
+			double throughput = runLoad(threads, 0);
+			System.out.println("PUT with " + threads + " threads : " + (long) throughput + " requests/s");
+		}
+		assertEquals(THREAD_COUNTS[THREAD_COUNTS.length - 1] * KEYS_PER_THREAD, remoteObject.getMapSize());
+	}
+
+	@Test
+	void testMixedThroughput() throws Exception {
+		for (int threads : THREAD_COUNTS) {
+			double throughput = runLoad(threads, 90);
+			System.out.println("90% GET, 10% PUT with " + threads + " threads : " + (long) throughput
+					+ " requests/s");
+		}
+	}
+
+	@Test
+	void testConcurrentDeleteReportedOnce() throws Exception {
+		int threads = 8;
+		for (int round = 0; round < 100; round++) {
+			remoteObject.put("A", "Apple");
+			AtomicLong deleted = new AtomicLong();
+			CountDownLatch start = new CountDownLatch(1);
+			Thread[] workers = new Thread[threads];
+			for (int i = 0; i < threads; i++) {
+				workers[i] = new Thread(() -> {
+					try {
+						start.await();
+						if (remoteObject.delete("A").isOk()) {
+							deleted.incrementAndGet();
+						}
+					} catch (Exception e) {
+						throw new IllegalStateException(e);
+					}
+				});
+				workers[i].start();
+			}
+			start.countDown();
+			for (Thread worker : workers) {
+				worker.join();
+			}
+			assertEquals(1, deleted.get());
+		}
+	}
+
+	/**
+	 * Run requests from the given number of threads, each on its own keys, and
+	 * measure the number of requests completed per second after a warmup.
+	 *
+	 * @param threads    number of threads.
+	 * @param getPercent percentage of GET requests, the rest being PUT.
+	 * @return requests per second.
+	 */
+	private double runLoad(int threads, int getPercent) throws InterruptedException {
+		AtomicLong completed = new AtomicLong();
+		long warmupEnd = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WARMUP_MILLIS);
+		long measureEnd = warmupEnd + TimeUnit.MILLISECONDS.toNanos(MEASURE_MILLIS);
+
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			String[] keys = new String[KEYS_PER_THREAD];
+			for (int k = 0; k < KEYS_PER_THREAD; k++) {
+				keys[k] = "key" + t + "-" + k;
+			}
+			workers[t] = new Thread(() -> {
+				try {
+					long count = 0;
+					for (int i = 0; System.nanoTime() < measureEnd; i++) {
+						String key = keys[i % KEYS_PER_THREAD];
+						if (i % 100 < getPercent) {
+							remoteObject.get(key);
+						} else {
+							remoteObject.put(key, "value");
+						}
+						if (System.nanoTime() > warmupEnd) {
+							count++;
+						}
+					}
+					completed.addAndGet(count);
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			});
+			workers[t].start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		return completed.get() * 1000.0 / MEASURE_MILLIS;
+	}
+}
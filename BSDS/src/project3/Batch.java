@@ -0,0 +1,80 @@
+package project3;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import common.BinaryCodec;
+import common.BinaryEncodable;
+
+/**
+ * Class that represents the writes the coordinator groups into one round of
+ * the two phase commit. Each write is its own transaction, with the ID of the
+ * batch plus its index, so every write commits or aborts on its own.
+ */
+public class Batch implements Serializable, BinaryEncodable {
+
+	private static final long serialVersionUID = 6042388519201787344L;
+
+	private final List<String> commands = new ArrayList<>();
+	private final List<String> keys = new ArrayList<>();
+	private final List<String> values = new ArrayList<>();
+
+	public Batch() {
+	}
+
+	/**
+	 * Constructor to read a batch sent through the binary transport.
+	 *
+	 * @param in input to read from.
+	 * @throws IOException if unable to read.
+	 */
+	public Batch(DataInput in) throws IOException {
+		int size = in.readInt();
+		for (int i = 0; i < size; i++) {
+			add(BinaryCodec.readString(in), BinaryCodec.readString(in), BinaryCodec.readString(in));
+		}
+	}
+
+	@Override
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeInt(size());
+		for (int i = 0; i < size(); i++) {
+			BinaryCodec.writeString(out, commands.get(i));
+			BinaryCodec.writeString(out, keys.get(i));
+			BinaryCodec.writeString(out, values.get(i));
+		}
+	}
+
+	/**
+	 * Add a write to the batch.
+	 *
+	 * @param command PUT or DELETE.
+	 * @param key     key to write.
+	 * @param value   value to put, or null.
+	 */
+	public void add(String command, String key, String value) {
+		commands.add(command);
+		keys.add(key);
+		values.add(value);
+	}
+
+	public int size() {
+		return commands.size();
+	}
+
+	public String getCommand(int index) {
+		return commands.get(index);
+	}
+
+	public String getKey(int index) {
+		return keys.get(index);
+	}
+
+	public String getValue(int index) {
+		return values.get(index);
+	}
+}
@@ -3,11 +3,12 @@ package project3;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.rmi.Naming;
 import java.rmi.NotBoundException;
 import java.sql.Timestamp;
 import java.util.Scanner;
 
+import common.Transport;
+
 public class Client {
 
 	private static RMIInterface2 rmiInterface;
@@ -34,7 +35,7 @@ public class Client {
 				System.exit(0);
 			}
 
-			rmiInterface = (RMIInterface2) Naming.lookup("rmi://" + inputIPAddress + ":" + serverPort + "/MyKeyValueMap");
+			rmiInterface = Transport.connect(inputIPAddress, serverPort, "MyKeyValueMap", RMIInterface2.class);
 
 			// Step 4: Pre populate data
 			String prepopulatedInput = prepopulate();
@@ -90,16 +91,17 @@ public class Client {
 				if(commands.length != 3) {
 					serverResponse = "Please enter key and value for PUT";
 				} else {
-					serverResponse = rmiInterface.put(commands[1], commands[2]);
+					serverResponse = rmiInterface.put(commands[1], commands[2]).render(commands[0], commands[1],
+							commands[2]);
 				}
 				
 			} else if ("GET".equalsIgnoreCase(commands[0])) {
 				
-				serverResponse = rmiInterface.get(commands[1]);
+				serverResponse = rmiInterface.get(commands[1]).render(commands[0], commands[1], null);
 
 			} else if ("DELETE".equalsIgnoreCase(commands[0])) {
 				
-				serverResponse = rmiInterface.delete(commands[1]);
+				serverResponse = rmiInterface.delete(commands[1]).render(commands[0], commands[1], null);
 
 			} else {
 				serverResponse = "Received unsolicited response acknowledging unknown PUT/GET/DELETE with an invalid KEY";
@@ -4,6 +4,8 @@ import java.io.IOException;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
 
+import common.Result;
+
 /**
  * Interface that represents operations on a server that acts a coordinator.
  */
@@ -19,11 +21,40 @@ public interface Coordinator extends Remote {
 	 * @param command operation on the key-value map requested by the user.
 	 * @param key     key to be inserted.
 	 * @param value   value to be inserted.
-	 * @return response from all the participants.
+	 * @return result of the operation, or ABORTED if a participant voted against
+	 *         it.
 	 * @throws RemoteException for exceptions that may occur during the execution of
 	 *                         a remote method call.
 	 * @throws IOException     for exceptions that may occur during writing to
 	 *                         server log.
 	 */
-	String prepareTransaction(String command, String key, String value) throws RemoteException, IOException;
+	Result prepareTransaction(String command, String key, String value) throws RemoteException, IOException;
+
+	/**
+	 * Method that reads a key from a quorum of the participants, without a
+	 * transaction. The value returned by the most participants of the quorum wins,
+	 * so a participant that missed a commit is outvoted.
+	 * 
+	 * @param key key to be read.
+	 * @return result of the GET, or FAILED if not enough participants answered.
+	 * @throws RemoteException for exceptions that may occur during the execution of
+	 *                         a remote method call.
+	 * @throws IOException     for exceptions that may occur during writing to
+	 *                         server log.
+	 */
+	Result read(String key) throws RemoteException, IOException;
+
+	/**
+	 * Method that tells a participant recovering from a crash whether a
+	 * transaction was committed, in this run of the coordinator or an earlier one.
+	 * Only commit decisions are logged, so any other transaction is presumed
+	 * aborted. A transaction still running is aborted by the question, and one
+	 * whose commit is being logged is answered once it is on the disk.
+	 * 
+	 * @param transactionId ID of the transaction.
+	 * @return true if committed, false if aborted.
+	 * @throws RemoteException for exceptions that may occur during the execution of
+	 *                         a remote method call.
+	 */
+	boolean isCommitted(long transactionId) throws RemoteException;
 }
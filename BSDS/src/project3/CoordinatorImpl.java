@@ -1,33 +1,125 @@
 package project3;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import common.Result;
+import common.ThreadPools;
+import common.Transport;
+import common.TunedSocketFactory;
+import common.WriteAheadLog;
 
 /**
- * Class that represents a coordinator.
+ * Class that represents a coordinator. Both phases of a transaction call all
+ * the participants at once, so a transaction takes about two round trips
+ * whatever the number of participants.
+ *
+ * Writes are group committed: the writes that arrive while a round is running
+ * wait for the next one, and run together in a single prepare and commit
+ * round. Each write still commits or aborts on its own.
+ *
+ * With a write-ahead log, every commit decision is on the disk before any
+ * participant is told to commit, and participants recovering from a crash ask
+ * about their transactions in doubt. Aborts are not logged: a transaction with no
+ * logged decision is presumed aborted. A participant asking about a transaction
+ * still running has it aborted, so the coordinator never commits a write that a
+ * participant was told to abort. A commit is forgotten once every participant
+ * acknowledged it, having it on their disk, and on restart the log is rewritten
+ * with only the commits a participant may still ask about.
  */
 public class CoordinatorImpl extends UnicastRemoteObject implements Coordinator {
 
 	private static final long serialVersionUID = 3916385668266522359L;
 
+	// System properties to change how long each phase waits for the participants.
+	public static final String PREPARE_TIMEOUT_PROPERTY = "kv.2pc.prepareTimeoutMillis";
+	public static final String COMMIT_TIMEOUT_PROPERTY = "kv.2pc.commitTimeoutMillis";
+
+	// System property to change the number of participants a quorum read waits for,
+	// a majority by default.
+	public static final String READ_QUORUM_PROPERTY = "kv.read.quorum";
+
+	// System properties to change the group commit : the most writes in one round,
+	// 1 for a round per write, and how long the first write of a round waits for
+	// others, 0 to only take those already waiting.
+	public static final String BATCH_SIZE_PROPERTY = "kv.2pc.batchSize";
+	public static final String BATCH_WINDOW_PROPERTY = "kv.2pc.batchWindowMicros";
+
+	// Types of the write-ahead log records : the decisions of a round, or its
+	// commits acknowledged by every participant. Each is followed by the ID of the
+	// first transaction, the number of transactions and a flag for each.
+	private static final byte WAL_DECISIONS = 1;
+	private static final byte WAL_ENDED = 2;
+
 	// Step 1. Coordinator consists of a list of all the participants.
 	private List<Participant> participants;
 
-	public CoordinatorImpl(List<String> participantHosts, List<Integer> participantPorts) throws RemoteException {
-		super();
+	// Calls the participants in parallel.
+	private final transient ExecutorService executor = ThreadPools.newPerTaskExecutor("2pc-coordinator");
+
+	private final long prepareTimeoutMillis = Long.getLong(PREPARE_TIMEOUT_PROPERTY, 1000);
+	private final long commitTimeoutMillis = Long.getLong(COMMIT_TIMEOUT_PROPERTY, 1000);
+
+	private final int batchSize = Math.max(1, Integer.getInteger(BATCH_SIZE_PROPERTY, 64));
+	private final long batchWindowMicros = Long.getLong(BATCH_WINDOW_PROPERTY, 0);
+
+	// Writes waiting for the next round.
+	private final transient BlockingQueue<PendingWrite> pendingWrites = new LinkedBlockingQueue<>();
+
+	// Log of the commit decisions, or null to keep nothing.
+	private final transient WriteAheadLog writeAheadLog;
+
+	// Transactions committed but not yet acknowledged by every participant, in this
+	// run and the earlier ones, and the writes of this run not decided yet, both
+	// guarded by the decision lock, notified once a commit being logged is decided.
+	private final transient Object decisionLock = new Object();
+	private final transient Set<Long> commits = new HashSet<>();
+	private final transient Map<Long, Decision> undecided = new HashMap<>();
+
+	// ID of the next transaction. Starts from the clock, so the IDs of a restarted
+	// coordinator do not collide with transactions the participants still hold.
+	private final AtomicLong nextTransactionId = new AtomicLong(System.currentTimeMillis() << 20);
+
+	public CoordinatorImpl(List<String> participantHosts, List<Integer> participantPorts,
+			WriteAheadLog writeAheadLog) throws RemoteException {
+		super(0, TunedSocketFactory.getDefault(), TunedSocketFactory.getDefault());
 		participants = new ArrayList<>();
+		this.writeAheadLog = writeAheadLog;
+		recover();
 
 		for (int i = 0; i < participantHosts.size(); i++) {
 			try {
 
-				// Step 2: Get the RMI registry of all the participants and add to the list of participants.
-				Registry registry = LocateRegistry.getRegistry(participantHosts.get(i), participantPorts.get(i));
-				Participant participant = (Participant) registry.lookup("MyKeyValueMap");
+				// Step 2: Get all the participants over the chosen transport and add to the list of
+				// participants.
+				Participant participant = Transport.connect(participantHosts.get(i), participantPorts.get(i),
+						"MyKeyValueMap", Participant.class);
 
 				participants.add(participant);
 
@@ -35,30 +127,621 @@ public class CoordinatorImpl extends UnicastRemoteObject implements Coordinator
 				throw new RemoteException("Unable to connect to participant", e);
 			}
 		}
+		startBatcher();
+
+	}
+
+	/**
+	 * Constructor to create a coordinator of participants already connected to.
+	 *
+	 * @param participants participants of every transaction.
+	 * @throws RemoteException if unable to export the coordinator.
+	 */
+	CoordinatorImpl(List<Participant> participants) throws RemoteException {
+		this(participants, null);
+	}
 
+	/**
+	 * Constructor to create a coordinator of participants already connected to,
+	 * recovering from and appending to a write-ahead log.
+	 *
+	 * @param participants  participants of every transaction.
+	 * @param writeAheadLog log of the commit decisions, or null to keep nothing.
+	 * @throws RemoteException if unable to export the coordinator or read the log.
+	 */
+	CoordinatorImpl(List<Participant> participants, WriteAheadLog writeAheadLog) throws RemoteException {
+		super(0, TunedSocketFactory.getDefault(), TunedSocketFactory.getDefault());
+		this.participants = new ArrayList<>(participants);
+		this.writeAheadLog = writeAheadLog;
+		recover();
+		startBatcher();
 	}
 
 	@Override
-	public String prepareTransaction(String command, String key, String value) throws IOException {
+	public Result prepareTransaction(String command, String key, String value) throws IOException {
+		boolean write = "PUT".equalsIgnoreCase(command) || "DELETE".equalsIgnoreCase(command);
+		if (!write || batchSize == 1) {
+			return runTransaction(command, key, value);
+		}
 
-		// Step 3: For each participant check if is its okay/ready to commit. If not, abort!
+		PendingWrite pendingWrite = new PendingWrite(command, key, value);
+		pendingWrites.add(pendingWrite);
+		try {
+			return pendingWrite.result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the batch");
+		} catch (ExecutionException e) {
+			return Result.failed();
+		}
+	}
+
+	/**
+	 * Private method to run a transaction of its own.
+	 *
+	 * @param command user input command.
+	 * @param key     user input key.
+	 * @param value   user input value.
+	 * @return result of the transaction.
+	 * @throws IOException if interrupted.
+	 */
+	private Result runTransaction(String command, String key, String value) throws IOException {
+
+		long transactionId = nextTransactionId.incrementAndGet();
+		boolean write = !"GET".equalsIgnoreCase(command);
+		if (write) {
+			startDecisions(transactionId, 1);
+		}
+
+		// Step 3: Ask every participant at once if it is okay/ready to commit. Abort as
+		// soon as one is not, fails or does not answer in time.
+		CompletionService<Boolean> votes = new ExecutorCompletionService<>(executor);
+		List<Future<Boolean>> pendingVotes = new ArrayList<>();
+		for (Participant participant : participants) {
+			pendingVotes.add(votes.submit(() -> participant.vote(transactionId, command, key, value)));
+		}
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(prepareTimeoutMillis);
+		try {
+			for (int i = 0; i < participants.size(); i++) {
+				Future<Boolean> vote = votes.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+				if (vote == null || !getQuietly(vote)) {
+					abort(transactionId, pendingVotes);
+					return Result.aborted();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			abort(transactionId, pendingVotes);
+			throw new InterruptedIOException("Interrupted while waiting for the votes");
+		}
+
+		// Step 4: If okay, log the decision, then commit to all the participants at
+		// once. A GET changes nothing and needs no decision logged.
+		if (write && logCommits(transactionId, new boolean[] { true }) == 0) {
+			abort(transactionId, pendingVotes);
+			return Result.aborted();
+		}
+		List<Future<Result>> commits = new ArrayList<>();
 		for (Participant participant : participants) {
-			if (!participant.vote(command, key, value)) {
-				return "Aborting! - either key is already present for put, or key is absent for delete";
+			Callable<Result> commit = () -> participant.commit(transactionId);
+			commits.add(executor.submit(commit));
+		}
+
+		// Step 5: If all the participants gave a response then all were committed.
+		deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(commitTimeoutMillis);
+		List<Result> commitMessages = new ArrayList<>();
+		try {
+			for (Future<Result> commit : commits) {
+				commitMessages.add(commit.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the commits");
+		} catch (ExecutionException | TimeoutException e) {
+			return Result.failed();
+		}
+		if (write) {
+			endCommits(transactionId, new boolean[] { true });
+		}
+		return commitMessages.get(0);
+
+	}
+
+	@Override
+	public Result read(String key) throws IOException {
+
+		int quorum = Math.min(participants.size(), Integer.getInteger(READ_QUORUM_PROPERTY,
+				participants.size() / 2 + 1));
+
+		// Step 1: Ask every participant at once, and wait for the quorum.
+		CompletionService<Result> reads = new ExecutorCompletionService<>(executor);
+		List<Future<Result>> pendingReads = new ArrayList<>();
+		for (Participant participant : participants) {
+			pendingReads.add(reads.submit(() -> participant.read(key)));
+		}
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(prepareTimeoutMillis);
+		List<Result> answers = new ArrayList<>();
+		try {
+			for (int i = 0; i < participants.size() && answers.size() < quorum; i++) {
+				Future<Result> read = reads.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+				if (read == null) {
+					break;
+				}
+				try {
+					answers.add(read.get());
+				} catch (ExecutionException e) {
+					// A failed participant is not part of the quorum.
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the reads");
+		} finally {
+			for (Future<Result> read : pendingReads) {
+				read.cancel(true);
+			}
+		}
+		if (answers.size() < quorum) {
+			return Result.failed();
+		}
+
+		// Step 2: Return the answer given by the most participants of the quorum.
+		Result best = null;
+		int bestCount = 0;
+		for (Result answer : answers) {
+			int count = 0;
+			for (Result other : answers) {
+				if (other.getStatus() == answer.getStatus() && Objects.equals(other.getValue(), answer.getValue())) {
+					count++;
+				}
+			}
+			if (count > bestCount) {
+				best = answer;
+				bestCount = count;
+			}
+		}
+		return best;
+	}
+
+	@Override
+	public boolean isCommitted(long transactionId) throws RemoteException {
+		synchronized (decisionLock) {
+			// A commit being logged may still fail, so wait for it.
+			while (undecided.get(transactionId) == Decision.COMMITTING) {
+				try {
+					decisionLock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RemoteException("Interrupted while waiting for the decision");
+				}
+			}
+			if (commits.contains(transactionId)) {
+				return true;
+			}
+			// A write still voting is aborted now, so it can no longer commit.
+			if (undecided.containsKey(transactionId)) {
+				undecided.put(transactionId, Decision.ABORTED);
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Private method to read the commits of the earlier runs not acknowledged by
+	 * every participant from the write-ahead log, and rewrite it with only those.
+	 *
+	 * @throws RemoteException if a record cannot be decoded, or the log rewritten.
+	 */
+	private void recover() throws RemoteException {
+		if (writeAheadLog == null) {
+			return;
+		}
+		try {
+			List<byte[]> records = writeAheadLog.takeRecoveredRecords();
+			for (byte[] record : records) {
+				DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+				byte type = in.readByte();
+				long firstTransactionId = in.readLong();
+				int size = in.readInt();
+				for (int i = 0; i < size; i++) {
+					boolean flag = in.readBoolean();
+					if (flag && type == WAL_DECISIONS) {
+						commits.add(firstTransactionId + i);
+					} else if (flag && type == WAL_ENDED) {
+						commits.remove(firstTransactionId + i);
+					}
+				}
+			}
+			if (records.size() > commits.size()) {
+				List<byte[]> checkpoint = new ArrayList<>();
+				for (long transactionId : commits) {
+					checkpoint.add(walRecord(WAL_DECISIONS, transactionId, new boolean[] { true }));
+				}
+				writeAheadLog.rewrite(checkpoint);
+			}
+		} catch (IOException e) {
+			throw new RemoteException("Unable to recover from the write-ahead log", e);
+		}
+	}
+
+	/**
+	 * Private method to start tracking the writes of a round until decided.
+	 *
+	 * @param firstTransactionId ID of the first transaction of the round.
+	 * @param size               number of transactions.
+	 */
+	private void startDecisions(long firstTransactionId, int size) {
+		synchronized (decisionLock) {
+			for (int i = 0; i < size; i++) {
+				undecided.put(firstTransactionId + i, Decision.VOTING);
 			}
 		}
-		// Step 4: If okay, then commit to all the participants.
-		List<String> commitMessages = new ArrayList<>();
+	}
+
+	/**
+	 * Private method to decide the writes of a round: those to commit that no
+	 * participant had aborted are logged, and the others turned into aborts.
+	 *
+	 * @param firstTransactionId ID of the first transaction of the round.
+	 * @param decisions          true for each transaction to commit, cleared for
+	 *                           each one aborted instead.
+	 * @return number of transactions committed.
+	 */
+	private int logCommits(long firstTransactionId, boolean[] decisions) {
+		int committing = 0;
+		synchronized (decisionLock) {
+			for (int i = 0; i < decisions.length; i++) {
+				if (decisions[i] && undecided.get(firstTransactionId + i) == Decision.ABORTED) {
+					decisions[i] = false;
+				} else if (decisions[i]) {
+					undecided.put(firstTransactionId + i, Decision.COMMITTING);
+					committing++;
+				}
+			}
+		}
+		boolean logged = false;
+		try {
+			if (committing > 0) {
+				logDecision(firstTransactionId, decisions);
+			}
+			logged = true;
+		} catch (IOException e) {
+			System.err.println("Unable to log the commit decisions : " + e.getMessage());
+		} finally {
+			if (!logged) {
+				Arrays.fill(decisions, false);
+				committing = 0;
+			}
+			settleDecisions(firstTransactionId, decisions);
+		}
+		return committing;
+	}
+
+	/**
+	 * Private method to record the decisions of a round and wake the participants
+	 * waiting for them.
+	 *
+	 * @param firstTransactionId ID of the first transaction of the round.
+	 * @param decisions          true for each transaction committed.
+	 */
+	private void settleDecisions(long firstTransactionId, boolean[] decisions) {
+		synchronized (decisionLock) {
+			for (int i = 0; i < decisions.length; i++) {
+				undecided.remove(firstTransactionId + i);
+				if (decisions[i]) {
+					commits.add(firstTransactionId + i);
+				}
+			}
+			decisionLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Private method to forget the commits of a round once every participant
+	 * acknowledged them, logging it without waiting for the disk: a participant
+	 * acknowledges a commit once it is on its own disk, so never asks about it.
+	 *
+	 * @param firstTransactionId ID of the first transaction of the round.
+	 * @param decisions          true for each transaction committed.
+	 */
+	private void endCommits(long firstTransactionId, boolean[] decisions) {
+		synchronized (decisionLock) {
+			for (int i = 0; i < decisions.length; i++) {
+				if (decisions[i]) {
+					commits.remove(firstTransactionId + i);
+				}
+			}
+		}
+		if (writeAheadLog != null) {
+			try {
+				writeAheadLog.append(walRecord(WAL_ENDED, firstTransactionId, decisions));
+			} catch (IOException e) {
+				// The commits are only kept again on restart.
+				System.err.println("Unable to log the acknowledged commits : " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Private method to log the commit decisions of a round and wait for them to be
+	 * on the disk.
+	 *
+	 * @param firstTransactionId ID of the first transaction of the round.
+	 * @param decisions          true for each transaction to commit.
+	 * @throws IOException if unable to write the write-ahead log.
+	 */
+	private void logDecision(long firstTransactionId, boolean[] decisions) throws IOException {
+		if (writeAheadLog != null) {
+			writeAheadLog.sync(writeAheadLog.append(walRecord(WAL_DECISIONS, firstTransactionId, decisions)));
+		}
+	}
+
+	/**
+	 * Private method to encode a write-ahead log record.
+	 *
+	 * @param type               WAL_DECISIONS or WAL_ENDED.
+	 * @param firstTransactionId ID of the first transaction of the round.
+	 * @param flags              flag of each transaction.
+	 * @return record bytes.
+	 * @throws IOException never, written to memory.
+	 */
+	private static byte[] walRecord(byte type, long firstTransactionId, boolean[] flags) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(type);
+		out.writeLong(firstTransactionId);
+		out.writeInt(flags.length);
+		for (boolean flag : flags) {
+			out.writeBoolean(flag);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Private method to start the thread that runs the rounds of the group commit.
+	 */
+	private void startBatcher() {
+		if (batchSize > 1) {
+			ThreadPools.namedThreadFactory("2pc-batcher").newThread(this::runBatches).start();
+		}
+	}
+
+	/**
+	 * Private method to run rounds one after the other, each with the writes that
+	 * arrived during the previous one.
+	 */
+	private void runBatches() {
+		List<PendingWrite> deferred = new ArrayList<>();
+		try {
+			while (true) {
+				List<PendingWrite> batch = nextBatch(deferred);
+				try {
+					runBatch(batch);
+				} catch (RuntimeException e) {
+					// Keep running the next rounds.
+					for (PendingWrite write : batch) {
+						write.result.completeExceptionally(e);
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Private method to wait for the writes of the next round. A write on a key
+	 * already in the round is deferred to the following one, as it would only fail
+	 * to lock the key.
+	 *
+	 * @param deferred writes deferred from the previous round, replaced with those
+	 *                 deferred from this one.
+	 * @return writes of the round, at least one.
+	 * @throws InterruptedException if interrupted while waiting.
+	 */
+	private List<PendingWrite> nextBatch(List<PendingWrite> deferred) throws InterruptedException {
+		List<PendingWrite> candidates = new ArrayList<>(deferred);
+		deferred.clear();
+		if (candidates.isEmpty()) {
+			candidates.add(pendingWrites.take());
+		}
+		long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(batchWindowMicros);
+		List<PendingWrite> batch = new ArrayList<>();
+		Set<String> keys = new HashSet<>();
+		while (true) {
+			for (PendingWrite candidate : candidates) {
+				if (batch.size() < batchSize && keys.add(candidate.key)) {
+					batch.add(candidate);
+				} else {
+					deferred.add(candidate);
+				}
+			}
+			candidates.clear();
+			if (batch.size() == batchSize) {
+				return batch;
+			}
+			PendingWrite next = pendingWrites.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+			if (next == null) {
+				return batch;
+			}
+			candidates.add(next);
+		}
+	}
+
+	/**
+	 * Private method to run one prepare and commit round for a batch of writes,
+	 * completing the result of each.
+	 *
+	 * @param writes writes of the round, on different keys.
+	 */
+	private void runBatch(List<PendingWrite> writes) {
+
+		int size = writes.size();
+		long firstTransactionId = nextTransactionId.getAndAdd(size) + 1;
+		startDecisions(firstTransactionId, size);
+		Batch batch = new Batch();
+		for (PendingWrite write : writes) {
+			batch.add(write.command, write.key, write.value);
+		}
+
+		// Step 1: Ask every participant at once to vote on every write. A write is
+		// committed only if all the participants vote yes to it, so stop waiting once
+		// none is left, or a participant fails or does not answer in time.
+		boolean[] decisions = new boolean[size];
+		Arrays.fill(decisions, true);
+		int committing = size;
+		CompletionService<boolean[]> votes = new ExecutorCompletionService<>(executor);
+		List<Future<boolean[]>> pendingVotes = new ArrayList<>();
 		for (Participant participant : participants) {
-			commitMessages.add(participant.commit());
+			pendingVotes.add(votes.submit(() -> participant.voteBatch(firstTransactionId, batch)));
+		}
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(prepareTimeoutMillis);
+		try {
+			for (int i = 0; i < participants.size() && committing > 0; i++) {
+				Future<boolean[]> vote = votes.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+				boolean[] answer = vote == null ? null : getVotesQuietly(vote);
+				for (int j = 0; j < size; j++) {
+					if (decisions[j] && (answer == null || answer.length != size || !answer[j])) {
+						decisions[j] = false;
+						committing--;
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			Arrays.fill(decisions, false);
+			committing = 0;
+		}
+
+		// Step 2: Log the decisions, then send them to all the participants at once,
+		// each once its vote is in, so a late vote does not keep its keys locked.
+		committing = logCommits(firstTransactionId, decisions);
+		List<Future<Result[]>> outcomes = new ArrayList<>();
+		for (int i = 0; i < participants.size(); i++) {
+			Participant participant = participants.get(i);
+			Future<boolean[]> vote = pendingVotes.get(i);
+			outcomes.add(executor.submit(() -> {
+				getVotesQuietly(vote);
+				return participant.commitBatch(firstTransactionId, decisions);
+			}));
+		}
+
+		// Step 3: The writes being committed succeed once all the participants
+		// committed them, and the others were aborted.
+		Result[] results = new Result[size];
+		Arrays.fill(results, Result.aborted());
+		if (committing > 0) {
+			deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(commitTimeoutMillis);
+			try {
+				Result[] committed = null;
+				for (Future<Result[]> outcome : outcomes) {
+					Result[] answer = outcome.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+					committed = committed == null ? answer : committed;
+				}
+				for (int j = 0; j < size; j++) {
+					if (decisions[j]) {
+						results[j] = committed[j];
+					}
+				}
+				endCommits(firstTransactionId, decisions);
+			} catch (InterruptedException | ExecutionException | TimeoutException e) {
+				if (e instanceof InterruptedException) {
+					Thread.currentThread().interrupt();
+				}
+				for (int j = 0; j < size; j++) {
+					if (decisions[j]) {
+						results[j] = Result.failed();
+					}
+				}
+			}
+		}
+		for (int j = 0; j < size; j++) {
+			writes.get(j).result.complete(results[j]);
+		}
+	}
+
+	/**
+	 * Private method to abort a transaction on every participant, in the
+	 * background. Each abort waits for the vote of its participant, so a late yes
+	 * vote does not keep its key locked.
+	 *
+	 * @param transactionId ID of the transaction.
+	 * @param votes         votes of the participants, in the order of the list.
+	 */
+	private void abort(long transactionId, List<Future<Boolean>> votes) {
+		settleDecisions(transactionId, new boolean[1]);
+		for (int i = 0; i < participants.size(); i++) {
+			Participant participant = participants.get(i);
+			Future<Boolean> vote = votes.get(i);
+			executor.execute(() -> {
+				try {
+					vote.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				} catch (ExecutionException e) {
+					// The participant did not vote yes, nothing is locked.
+					return;
+				}
+				try {
+					participant.abort(transactionId);
+				} catch (IOException e) {
+					System.err.println("Unable to abort transaction " + transactionId + " : " + e.getMessage());
+				}
+			});
+		}
+	}
+
+	/**
+	 * Private method to get a completed vote, a failed one counting as a no.
+	 *
+	 * @param vote completed vote.
+	 * @return the vote, or false if it failed.
+	 */
+	private static boolean getQuietly(Future<Boolean> vote) throws InterruptedException {
+		try {
+			return vote.get();
+		} catch (ExecutionException e) {
+			return false;
 		}
-		// Step 5:If all the participants gave a response then all were committed.
-		if (commitMessages.size() == participants.size()) {
-			return commitMessages.get(0);
+	}
+
+	/**
+	 * Private method to get the completed votes of a participant on a batch.
+	 *
+	 * @param vote completed votes.
+	 * @return the votes, or null if they failed.
+	 */
+	private static boolean[] getVotesQuietly(Future<boolean[]> vote) throws InterruptedException {
+		try {
+			return vote.get();
+		} catch (ExecutionException e) {
+			return null;
 		}
+	}
 
-		return "Unable to commit to one or more servers! Try again!";
+	/**
+	 * State of a write of this run not decided yet.
+	 */
+	private enum Decision {
+		VOTING, COMMITTING, ABORTED
+	}
+
+	/**
+	 * Class that holds a write waiting for its round of the group commit.
+	 */
+	private static final class PendingWrite {
 
+		final String command;
+		final String key;
+		final String value;
+		final CompletableFuture<Result> result = new CompletableFuture<>();
+
+		PendingWrite(String command, String key, String value) {
+			this.command = command;
+			this.key = key;
+			this.value = value;
+		}
 	}
 
 }
@@ -0,0 +1,375 @@
+package project3;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import common.AsyncLogWriter;
+import common.DurabilityPolicy;
+import common.Result;
+import common.WriteAheadLog;
+
+class CoordinatorImplTest {
+
+	private static final long DELAY_MILLIS = 100;
+
+	@Test
+	void testPhasesCallParticipantsInParallel() throws Exception {
+		List<Participant> participants = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			participants.add(new SlowParticipant(true, DELAY_MILLIS));
+		}
+		CoordinatorImpl coordinator = new CoordinatorImpl(participants);
+		try {
+			long start = System.nanoTime();
+			assertTrue(coordinator.prepareTransaction("PUT", "A", "Apple").isOk());
+			long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+			// Two round trips, not ten.
+			assertTrue(elapsedMillis < 4 * DELAY_MILLIS, "Transaction took " + elapsedMillis + " ms");
+			for (Participant participant : participants) {
+				assertEquals(1, ((SlowParticipant) participant).commits.get());
+			}
+		} finally {
+			UnicastRemoteObject.unexportObject(coordinator, true);
+		}
+	}
+
+	@Test
+	void testNoVoteAbortsWithoutWaitingForTheOthers() throws Exception {
+		List<Participant> participants = new ArrayList<>();
+		participants.add(new SlowParticipant(false, 0));
+		for (int i = 0; i < 4; i++) {
+			participants.add(new SlowParticipant(true, 10 * DELAY_MILLIS));
+		}
+		CoordinatorImpl coordinator = new CoordinatorImpl(participants);
+		try {
+			long start = System.nanoTime();
+			assertEquals(Result.Status.ABORTED, coordinator.prepareTransaction("PUT", "A", "Apple").getStatus());
+			assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5 * DELAY_MILLIS);
+
+			// Every participant is told to abort once its vote is in.
+			Thread.sleep(15 * DELAY_MILLIS);
+			for (Participant participant : participants) {
+				assertEquals(0, ((SlowParticipant) participant).commits.get());
+				assertEquals(1, ((SlowParticipant) participant).aborts.get());
+			}
+		} finally {
+			UnicastRemoteObject.unexportObject(coordinator, true);
+		}
+	}
+
+	@Test
+	void testUnansweredVoteAbortsAfterTimeout() throws Exception {
+		List<Participant> participants = new ArrayList<>();
+		participants.add(new SlowParticipant(true, 0));
+		participants.add(new SlowParticipant(true, 60000));
+		CoordinatorImpl coordinator = new CoordinatorImpl(participants);
+		try {
+			assertEquals(Result.Status.ABORTED, coordinator.prepareTransaction("DELETE", "A", null).getStatus());
+		} finally {
+			UnicastRemoteObject.unexportObject(coordinator, true);
+		}
+	}
+
+	@Test
+	void testConcurrentWritesShareRounds() throws Exception {
+		List<Participant> participants = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			participants.add(new SlowParticipant(true, DELAY_MILLIS));
+		}
+		((SlowParticipant) participants.get(2)).refusedKey = "K7";
+		CoordinatorImpl coordinator = new CoordinatorImpl(participants);
+		ExecutorService clients = Executors.newFixedThreadPool(20);
+		try {
+			List<Future<Result>> results = new ArrayList<>();
+			for (int i = 0; i < 20; i++) {
+				String key = "K" + i;
+				results.add(clients.submit(() -> coordinator.prepareTransaction("PUT", key, "Value")));
+			}
+			// Only the write refused by a participant is aborted.
+			for (int i = 0; i < 20; i++) {
+				Result.Status expected = i == 7 ? Result.Status.ABORTED : Result.Status.OK;
+				assertEquals(expected, results.get(i).get().getStatus());
+			}
+			SlowParticipant participant = (SlowParticipant) participants.get(0);
+			assertTrue(participant.rounds.get() < 20, participant.rounds.get() + " rounds");
+			assertEquals(19, participant.commits.get());
+			assertEquals(1, participant.aborts.get());
+		} finally {
+			clients.shutdown();
+			UnicastRemoteObject.unexportObject(coordinator, true);
+		}
+	}
+
+	@Test
+	void testRestartedCoordinatorPresumesAbort(@TempDir File directory) throws Exception {
+		File walFile = new File(directory, "coordinator.wal");
+		List<Participant> participants = new ArrayList<>();
+		participants.add(new SlowParticipant(true, 0));
+		SlowParticipant refusing = new SlowParticipant(true, 0);
+		refusing.refusedKey = "B";
+		participants.add(refusing);
+		// Never acknowledges the commit, so the coordinator keeps it.
+		participants.add(new CrashingParticipant(new SlowParticipant(true, 0)));
+
+		WriteAheadLog writeAheadLog = new WriteAheadLog(walFile, true);
+		CoordinatorImpl coordinator = new CoordinatorImpl(participants, writeAheadLog);
+		assertEquals(Result.Status.FAILED, coordinator.prepareTransaction("PUT", "A", "Apple").getStatus());
+		assertEquals(Result.Status.ABORTED, coordinator.prepareTransaction("PUT", "B", "Ball").getStatus());
+		UnicastRemoteObject.unexportObject(coordinator, true);
+		writeAheadLog.close();
+
+		writeAheadLog = new WriteAheadLog(walFile, true);
+		CoordinatorImpl restarted = new CoordinatorImpl(participants, writeAheadLog);
+		try {
+			int committed = 0;
+			for (long id : refusing.votedTransactionIds) {
+				committed += restarted.isCommitted(id) ? 1 : 0;
+			}
+			assertEquals(2, refusing.votedTransactionIds.size());
+			assertEquals(1, committed);
+			assertFalse(restarted.isCommitted(-1));
+		} finally {
+			UnicastRemoteObject.unexportObject(restarted, true);
+			writeAheadLog.close();
+		}
+	}
+
+	@Test
+	void testAcknowledgedCommitsAreForgotten(@TempDir File directory) throws Exception {
+		File walFile = new File(directory, "coordinator.wal");
+		List<Participant> participants = new ArrayList<>();
+		SlowParticipant participant = new SlowParticipant(true, 0);
+		participants.add(participant);
+		participants.add(new SlowParticipant(true, 0));
+
+		WriteAheadLog writeAheadLog = new WriteAheadLog(walFile, true);
+		CoordinatorImpl coordinator = new CoordinatorImpl(participants, writeAheadLog);
+		for (int i = 0; i < 10; i++) {
+			assertTrue(coordinator.prepareTransaction("PUT", "K" + i, "Value").isOk());
+		}
+		for (long id : participant.votedTransactionIds) {
+			assertFalse(coordinator.isCommitted(id));
+		}
+		UnicastRemoteObject.unexportObject(coordinator, true);
+		writeAheadLog.close();
+		assertTrue(walFile.length() > 0);
+
+		// Nothing is left for the participants to ask about, so the log is emptied.
+		writeAheadLog = new WriteAheadLog(walFile, true);
+		CoordinatorImpl restarted = new CoordinatorImpl(participants, writeAheadLog);
+		try {
+			assertEquals(0, walFile.length());
+		} finally {
+			UnicastRemoteObject.unexportObject(restarted, true);
+			writeAheadLog.close();
+		}
+	}
+
+	@Test
+	void testRestartedParticipantRecoversWriteCommittedInThisRun(@TempDir File directory) throws Exception {
+		AsyncLogWriter serverLog = new AsyncLogWriter(new File(directory, "2PCServerLog.txt"), DurabilityPolicy.NONE);
+		File walFile = new File(directory, "participant.wal");
+		WriteAheadLog writeAheadLog = new WriteAheadLog(walFile, true);
+		ParticipantImpl healthy = new ParticipantImpl(serverLog, null, 0);
+		ParticipantImpl crashing = new ParticipantImpl(serverLog, null, 1, writeAheadLog);
+		List<Participant> participants = new ArrayList<>();
+		participants.add(healthy);
+		participants.add(new CrashingParticipant(crashing));
+		CoordinatorImpl coordinator = new CoordinatorImpl(participants);
+		ParticipantImpl restarted = null;
+		try {
+			// The participant voted yes and crashed before being told to commit.
+			assertEquals(Result.Status.FAILED, coordinator.prepareTransaction("PUT", "A", "Apple").getStatus());
+			assertEquals("Apple", healthy.executeGet("A").getValue());
+			UnicastRemoteObject.unexportObject(crashing, true);
+			writeAheadLog.close();
+
+			writeAheadLog = new WriteAheadLog(walFile, true);
+			restarted = new ParticipantImpl(serverLog, null, 1, writeAheadLog);
+			assertEquals(1, restarted.transactions.size());
+			restarted.resolveInDoubt(coordinator);
+			assertEquals("Apple", restarted.executeGet("A").getValue());
+			assertTrue(restarted.keyLocks.isEmpty());
+		} finally {
+			UnicastRemoteObject.unexportObject(coordinator, true);
+			UnicastRemoteObject.unexportObject(healthy, true);
+			if (restarted != null) {
+				UnicastRemoteObject.unexportObject(restarted, true);
+			}
+			writeAheadLog.close();
+			serverLog.close();
+		}
+	}
+
+	@Test
+	void testQuorumReadOutvotesStaleParticipant() throws Exception {
+		List<Participant> participants = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			SlowParticipant participant = new SlowParticipant(true, i * DELAY_MILLIS);
+			participant.value = i == 0 ? null : "Apple";
+			participants.add(participant);
+		}
+		// The slowest replica is left out once a majority answered.
+		participants.add(new SlowParticipant(true, 60000));
+		CoordinatorImpl coordinator = new CoordinatorImpl(participants);
+		try {
+			long start = System.nanoTime();
+			Result result = coordinator.read("A");
+			assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 10 * DELAY_MILLIS);
+			assertEquals("Apple", result.getValue());
+		} finally {
+			UnicastRemoteObject.unexportObject(coordinator, true);
+		}
+	}
+
+	/**
+	 * Participant that votes, then crashes before the commit phase.
+	 */
+	private static class CrashingParticipant implements Participant {
+
+		private final Participant participant;
+
+		CrashingParticipant(Participant participant) {
+			this.participant = participant;
+		}
+
+		@Override
+		public boolean vote(long transactionId, String command, String key, String value) throws IOException {
+			return participant.vote(transactionId, command, key, value);
+		}
+
+		@Override
+		public Result commit(long transactionId) throws IOException {
+			throw new IOException("Crashed");
+		}
+
+		@Override
+		public void abort(long transactionId) throws IOException {
+			throw new IOException("Crashed");
+		}
+
+		@Override
+		public boolean[] voteBatch(long firstTransactionId, Batch batch) throws IOException {
+			return participant.voteBatch(firstTransactionId, batch);
+		}
+
+		@Override
+		public Result[] commitBatch(long firstTransactionId, boolean[] decisions) throws IOException {
+			throw new IOException("Crashed");
+		}
+
+		@Override
+		public Result read(String key) throws IOException {
+			return participant.read(key);
+		}
+
+		@Override
+		public void setCoordinator(String coordinatorHost, int coordinatorPort) {
+		}
+	}
+
+	/**
+	 * Participant that answers after a delay, as if far away.
+	 */
+	private static class SlowParticipant implements Participant {
+
+		private final boolean voteYes;
+		private final long delayMillis;
+		final AtomicInteger commits = new AtomicInteger();
+		final AtomicInteger aborts = new AtomicInteger();
+		final AtomicInteger rounds = new AtomicInteger();
+		volatile String value;
+		volatile String refusedKey;
+		final List<Long> votedTransactionIds = new CopyOnWriteArrayList<>();
+
+		SlowParticipant(boolean voteYes, long delayMillis) {
+			this.voteYes = voteYes;
+			this.delayMillis = delayMillis;
+		}
+
+		@Override
+		public boolean vote(long transactionId, String command, String key, String value) {
+			sleep();
+			return voteYes;
+		}
+
+		@Override
+		public Result commit(long transactionId) {
+			sleep();
+			commits.incrementAndGet();
+			return Result.ok();
+		}
+
+		@Override
+		public void abort(long transactionId) {
+			aborts.incrementAndGet();
+		}
+
+		@Override
+		public boolean[] voteBatch(long firstTransactionId, Batch batch) {
+			sleep();
+			rounds.incrementAndGet();
+			boolean[] votes = new boolean[batch.size()];
+			for (int i = 0; i < votes.length; i++) {
+				votedTransactionIds.add(firstTransactionId + i);
+				votes[i] = voteYes && !batch.getKey(i).equals(refusedKey);
+			}
+			return votes;
+		}
+
+		@Override
+		public Result[] commitBatch(long firstTransactionId, boolean[] decisions) {
+			// Like commit and abort, only a round with a commit is slow.
+			for (boolean decision : decisions) {
+				if (decision) {
+					sleep();
+					break;
+				}
+			}
+			Result[] results = new Result[decisions.length];
+			for (int i = 0; i < decisions.length; i++) {
+				if (decisions[i]) {
+					commits.incrementAndGet();
+					results[i] = Result.ok();
+				} else {
+					aborts.incrementAndGet();
+					results[i] = Result.aborted();
+				}
+			}
+			return results;
+		}
+
+		@Override
+		public Result read(String key) {
+			sleep();
+			return Result.of(value);
+		}
+
+		@Override
+		public void setCoordinator(String coordinatorHost, int coordinatorPort) {
+		}
+
+		private void sleep() {
+			try {
+				Thread.sleep(delayMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
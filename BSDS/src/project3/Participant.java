@@ -4,36 +4,95 @@ import java.io.IOException;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
 
+import common.Result;
+
 /**
- * Interface that represents operations on a participant/server.
+ * Interface that represents operations on a participant/server. Every
+ * transaction carries an ID given by the coordinator, so a participant can
+ * prepare many transactions at once.
  */
 public interface Participant extends Remote {
 
 	/**
-	 * Function that represents the logic for voting phase for the participant.
+	 * Function that represents the logic for voting phase for the participant. A
+	 * yes vote locks the key until the transaction is committed or aborted.
 	 * 
-	 * @param command user input command.
-	 * @param key     user input key.
-	 * @param value   user input value.
+	 * @param transactionId ID of the transaction.
+	 * @param command       user input command.
+	 * @param key           user input key.
+	 * @param value         user input value.
 	 * @return true if there are no issues, false if aborting.
 	 * @throws RemoteException for exceptions that may occur during the execution of
 	 *                         a remote method call.
 	 * @throws IOException     for exceptions that may occur during writing to
 	 *                         server log.
 	 */
-	boolean vote(String command, String key, String value) throws RemoteException, IOException;
+	boolean vote(long transactionId, String command, String key, String value) throws RemoteException, IOException;
 
 	/**
 	 * Function that represents the logic for commit phase. Involves operations on
 	 * the key-value map.
 	 * 
-	 * @return response message from the server for each operation.
+	 * @param transactionId ID of a transaction this participant voted yes to.
+	 * @return result of the operation, or a failure if the transaction is unknown.
+	 * @throws RemoteException for exceptions that may occur during the execution of
+	 *                         a remote method call.
+	 * @throws IOException     for exceptions that may occur during writing to
+	 *                         server log.
+	 */
+	Result commit(long transactionId) throws RemoteException, IOException;
+
+	/**
+	 * Function that represents aborting a transaction, releasing its key. Does
+	 * nothing if this participant voted no or does not know the transaction.
+	 * 
+	 * @param transactionId ID of the transaction.
+	 * @throws RemoteException for exceptions that may occur during the execution of
+	 *                         a remote method call.
+	 * @throws IOException     for exceptions that may occur during writing to
+	 *                         server log.
+	 */
+	void abort(long transactionId) throws RemoteException, IOException;
+
+	/**
+	 * Function that votes on every write of a batch, each as a transaction of its
+	 * own.
+	 * 
+	 * @param firstTransactionId ID of the first write, the others following it.
+	 * @param batch              writes to vote on.
+	 * @return vote on each write, in the order of the batch.
+	 * @throws RemoteException for exceptions that may occur during the execution of
+	 *                         a remote method call.
+	 * @throws IOException     for exceptions that may occur during writing to
+	 *                         server log.
+	 */
+	boolean[] voteBatch(long firstTransactionId, Batch batch) throws RemoteException, IOException;
+
+	/**
+	 * Function that commits or aborts every write of a batch.
+	 * 
+	 * @param firstTransactionId ID of the first write, the others following it.
+	 * @param decisions          true to commit a write, false to abort it.
+	 * @return result of each write, ABORTED for the aborted ones.
+	 * @throws RemoteException for exceptions that may occur during the execution of
+	 *                         a remote method call.
+	 * @throws IOException     for exceptions that may occur during writing to
+	 *                         server log.
+	 */
+	Result[] commitBatch(long firstTransactionId, boolean[] decisions) throws RemoteException, IOException;
+
+	/**
+	 * Function that reads a key from this participant only, outside of any
+	 * transaction.
+	 * 
+	 * @param key key to be read.
+	 * @return result of the GET.
 	 * @throws RemoteException for exceptions that may occur during the execution of
 	 *                         a remote method call.
 	 * @throws IOException     for exceptions that may occur during writing to
 	 *                         server log.
 	 */
-	String commit() throws RemoteException, IOException;
+	Result read(String key) throws RemoteException, IOException;
 
 	/**
 	 * Function that supports linking the servers to the coordinator.
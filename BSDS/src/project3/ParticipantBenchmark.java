@@ -0,0 +1,39 @@
+package project3;
+
+import java.rmi.server.UnicastRemoteObject;
+
+import common.Result;
+import common.StoreBenchmark;
+
+/**
+ * Benchmark of the store of a 2PC participant, calling the commit phase
+ * operations directly. See {@link StoreBenchmark} for the system properties
+ * configuring the run.
+ */
+public class ParticipantBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		ParticipantImpl participant = new ParticipantImpl(null, null, 0);
+		try {
+			StoreBenchmark.run("ParticipantImpl", new StoreBenchmark.Store() {
+
+				@Override
+				public Result put(String key, String value) {
+					return participant.executePut(key, value);
+				}
+
+				@Override
+				public Result get(String key) {
+					return participant.executeGet(key);
+				}
+
+				@Override
+				public Result delete(String key) {
+					return participant.executeDelete(key);
+				}
+			});
+		} finally {
+			UnicastRemoteObject.unexportObject(participant, true);
+		}
+	}
+}
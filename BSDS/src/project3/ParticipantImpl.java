@@ -1,132 +1,363 @@
 package project3;
 
-import java.io.FileWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
-import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import common.AsyncLogWriter;
+import common.BinaryCodec;
+import common.EventLog;
+import common.Result;
+import common.StoreEngine;
+import common.Transport;
+import common.TunedSocketFactory;
+import common.WriteAheadLog;
 
 /**
- * Class that represents a participant/server. 
+ * Class that represents a participant/server. Prepared transactions are kept by
+ * ID until committed or aborted, and each holds the lock of its key, so
+ * transactions on different keys proceed in parallel. A vote does not wait for a
+ * lock held by another transaction but votes no, so two transactions can never
+ * wait on each other across participants.
+ *
+ * With a write-ahead log, a yes vote on a write is on the disk before it is
+ * sent, and so is a commit before it is acknowledged, so the coordinator can
+ * forget it. An abort is logged without waiting, as the coordinator presumes it.
+ * On restart the store is rebuilt from the committed writes of the log, and the
+ * writes prepared but neither committed nor aborted are in doubt: they keep
+ * their keys locked until the coordinator tells whether they committed. The log
+ * is then replaced with a snapshot of the store and the writes in doubt, so the
+ * next recovery does not replay the same history again.
  */
 public class ParticipantImpl extends UnicastRemoteObject implements Participant, RMIInterface2 {
 
 	private static final long serialVersionUID = -5823802982940282436L;
+
+	// System property to choose how a GET is served : local, the default, from
+	// this participant only, quorum, from a quorum of the participants, or 2pc, as
+	// a transaction like the writes.
+	public static final String READ_PROPERTY = "kv.read";
+
+	// System property to choose the consistency of the local reads : linearizable,
+	// the default, waits for a write on the key that this participant voted for,
+	// which may already be committed elsewhere, and eventual does not.
+	public static final String READ_CONSISTENCY_PROPERTY = "kv.read.consistency";
+
+	// Longest time a linearizable read waits for a write on its key.
+	private static final long READ_WAIT_MILLIS = 2000;
+
+	// Types of the write-ahead log records, each followed by the transaction ID,
+	// and for a prepared write by its command, key and value. A snapshot record is
+	// a key and its value in the store when the log was last rewritten.
+	private static final byte WAL_PREPARED = 1;
+	private static final byte WAL_COMMITTED = 2;
+	private static final byte WAL_ABORTED = 3;
+	private static final byte WAL_SNAPSHOT = 4;
+
 	// ID to identify different participants/servers.
 	private UUID id;
 
-	// Step 1 : Create a hashmap to store the key value.
-	ConcurrentHashMap<String, String> keyValueMap;
+	// Step 1 : Create a store engine to store the key value.
+	StoreEngine keyValueMap;
 
 	// Step 2 : Each participant created has access to the coordinator.
 	private Coordinator coordinator;
 
-	// Step 3: Assign the command and keys
-	String command;
-	String key;
-	String value;
+	// Step 3: Keep the command and key of every prepared transaction by ID.
+	final Map<Long, Transaction> transactions = new ConcurrentHashMap<>();
+
+	// Step 4: Lock the key of every prepared PUT or DELETE, mapping it to the ID of
+	// the transaction holding it. A GET reads the committed value and takes no lock.
+	final Map<String, Long> keyLocks = new ConcurrentHashMap<>();
+
+	// Linearizable reads waiting for a key to be released, notified on this monitor.
+	private final AtomicInteger waitingReads = new AtomicInteger();
+	private final Object keyReleased = new Object();
+
+	private final String readMode = System.getProperty(READ_PROPERTY, "local");
+	private final boolean linearizableReads = !"eventual".equalsIgnoreCase(
+			System.getProperty(READ_CONSISTENCY_PROPERTY, "linearizable"));
+
+	AsyncLogWriter serverLog;
 
-	// Step 4: Initialize 2 types of lock. Write and Read reentrant lock - provides
-	// synchronization to methods while accessing shared resources
-	ReadWriteLock lock;
+	// Binary log of the voting and commit phases, or null to log them as text.
+	EventLog eventLog;
 
-	// If no threads are reading or writing, only one thread can acquire the write
-	// lock
-	Lock writeLock;
+	// Node ID of the participant in the binary log.
+	int nodeId;
 
-	// If no thread acquired the write lock or requested for it, multiple threads
-	// can acquire the read lock
-	Lock readLock;
+	// Log of the prepared writes and their outcome, or null to keep nothing.
+	private final WriteAheadLog writeAheadLog;
 
-	FileWriter fileWriter;
+	/**
+	 * Constructor to create a participant.
+	 *
+	 * @param serverLog server log.
+	 * @param eventLog  binary log of the voting and commit phases, or null to log
+	 *                  them as text.
+	 * @param nodeId    node ID of the participant in the binary log.
+	 * @throws RemoteException if unable to export the participant.
+	 */
+	public ParticipantImpl(AsyncLogWriter serverLog, EventLog eventLog, int nodeId) throws RemoteException {
+		this(serverLog, eventLog, nodeId, null);
+	}
 
-	public ParticipantImpl(FileWriter fileWriter) throws RemoteException {
-		super();
+	/**
+	 * Constructor to create a participant that recovers from, and appends to, a
+	 * write-ahead log.
+	 *
+	 * @param serverLog     server log.
+	 * @param eventLog      binary log of the voting and commit phases, or null to
+	 *                      log them as text.
+	 * @param nodeId        node ID of the participant in the binary log.
+	 * @param writeAheadLog log of the prepared writes, or null to keep nothing.
+	 * @throws RemoteException if unable to export the participant or read the log.
+	 */
+	public ParticipantImpl(AsyncLogWriter serverLog, EventLog eventLog, int nodeId, WriteAheadLog writeAheadLog)
+			throws RemoteException {
+		super(0, TunedSocketFactory.getDefault(), TunedSocketFactory.getDefault());
 		this.id = UUID.randomUUID();
-		this.keyValueMap = new ConcurrentHashMap<>();
-		this.lock = new ReentrantReadWriteLock();
-		this.writeLock = lock.writeLock();
-		this.readLock = lock.readLock();
-		this.fileWriter = fileWriter;
+		this.keyValueMap = StoreEngine.fromSystemProperties();
+		this.serverLog = serverLog;
+		this.eventLog = eventLog;
+		this.nodeId = nodeId;
+		this.writeAheadLog = writeAheadLog;
+		if (writeAheadLog != null) {
+			try {
+				recover();
+			} catch (IOException e) {
+				throw new RemoteException("Unable to recover from the write-ahead log", e);
+			}
+		}
 	}
 
 	@Override
 	public void setCoordinator(String coordinatorHost, int coordinatorPort) throws RemoteException {
 
 		try {
-			//1. Get the RMI registry of the coordinator.
-			Registry registry = LocateRegistry.getRegistry(coordinatorHost, coordinatorPort);
-			coordinator = (Coordinator) registry.lookup("Coordinator");
+			//1. Get the coordinator over the chosen transport.
+			coordinator = Transport.connect(coordinatorHost, coordinatorPort, "Coordinator", Coordinator.class);
 
 		} catch (Exception e) {
 			throw new RemoteException("Unable to connect to coordinator", e);
 		}
 
+		//2. Ask it about the transactions left in doubt by a restart.
+		resolveInDoubt(coordinator);
+
 	}
 	
 	@Override
-	public boolean vote(String command, String key, String value) throws IOException {
+	public boolean vote(long transactionId, String command, String key, String value) throws IOException {
+		long position = prepare(transactionId, command, key, value);
+		if (position < 0) {
+			return false;
+		}
+		if (writeAheadLog != null) {
+			writeAheadLog.sync(position);
+		}
+		return true;
+	}
 
-		this.command = command;
-		this.key = key;
-		this.value = value;
+	/**
+	 * Private method to vote on a transaction without waiting for the write-ahead
+	 * log, so the votes of a batch share a single sync.
+	 * 
+	 * @param transactionId ID of the transaction.
+	 * @param command       user input command.
+	 * @param key           user input key.
+	 * @param value         user input value.
+	 * @return position of the prepared record in the write-ahead log, 0 if none
+	 *         was logged, or -1 if voting no.
+	 * @throws IOException if unable to write the write-ahead log.
+	 */
+	private long prepare(long transactionId, String command, String key, String value) throws IOException {
+
+		long start = System.nanoTime();
+		if (eventLog == null) {
+			printToServerLog(": Voting Phase - Participant " + this.id + " Transaction " + transactionId);
+		}
 
-		printToServerLog(": Voting Phase - Participant " + this.id);
+		boolean write = "PUT".equalsIgnoreCase(command) || "DELETE".equalsIgnoreCase(command);
 
-		// 1. If key for PUT already, exists abort
+		// 1. If the key is locked by another transaction, abort rather than wait.
+		if (write && keyLocks.putIfAbsent(key, transactionId) != null) {
+			logEvent(EventLog.EVENT_ABORT, key, start,
+					": Aborting! Key is locked by another transaction : " + key);
+			return -1;
+		}
+		// 2. If key for PUT already, exists abort
 		if ("PUT".equalsIgnoreCase(command)) {
 			if (keyValueMap.containsKey(key)) {
-				printToServerLog(": Aborting! Key-value store already contains the given key : " + key);
-				return false;
+				releaseKey(key, transactionId);
+				logEvent(EventLog.EVENT_ABORT, key, start,
+						": Aborting! Key-value store already contains the given key : " + key);
+				return -1;
 			}
 		}
-		// 2. If key for DELETE does NOT exists, abort
+		// 3. If key for DELETE does NOT exists, abort
 		if ("DELETE".equalsIgnoreCase(command)) {
 			if (!keyValueMap.containsKey(key)) {
-				printToServerLog(": Aborting! Key-value store does NOT contain the given key : " + key);
-				return false;
+				releaseKey(key, transactionId);
+				logEvent(EventLog.EVENT_ABORT, key, start,
+						": Aborting! Key-value store does NOT contain the given key : " + key);
+				return -1;
 			}
 		}
-		// 3. All ok.
-		return true;
+		// 4. All ok, log the write and keep the transaction until it is committed or
+		// aborted.
+		long position = 0;
+		if (write && writeAheadLog != null) {
+			try {
+				position = writeAheadLog.append(walRecord(WAL_PREPARED, transactionId, command, key, value));
+			} catch (IOException e) {
+				releaseKey(key, transactionId);
+				throw e;
+			}
+		}
+		transactions.put(transactionId, new Transaction(command, key, value));
+		recordEvent(EventLog.EVENT_VOTE, key, start);
+		return position;
 	}
 
 	@Override
-	public String commit() throws IOException {
+	public Result commit(long transactionId) throws IOException {
+		return commit(transactionId, true);
+	}
+
+	/**
+	 * Private method to commit a transaction, logging its outcome.
+	 * 
+	 * @param transactionId ID of the transaction.
+	 * @param sync          true to wait for the outcome to be on the disk, false
+	 *                      for the caller to sync the write-ahead log.
+	 * @return result of the transaction.
+	 * @throws IOException if unable to write the write-ahead log.
+	 */
+	private Result commit(long transactionId, boolean sync) throws IOException {
 
-		printToServerLog(": Commit Phase - Participant " + this.id + " Command : " + this.command);
+		long start = System.nanoTime();
+		Transaction transaction = transactions.remove(transactionId);
+		if (transaction == null) {
+			printToServerLog(": Commit Phase - Participant " + this.id + " Unknown transaction " + transactionId);
+			return Result.failed();
+		}
+		if (eventLog == null) {
+			printToServerLog(": Commit Phase - Participant " + this.id + " Transaction " + transactionId
+					+ " Command : " + transaction.command);
+		}
+
+		Result result = apply(transaction);
+		// Logged before the key is released, so the log holds the writes of a key in
+		// the order they were applied, and synced once released.
+		long position = logOutcome(WAL_COMMITTED, transactionId, transaction);
+		releaseKey(transaction.key, transactionId);
+		if (sync && position > 0) {
+			writeAheadLog.sync(position);
+		}
+		recordEvent(EventLog.EVENT_COMMIT, transaction.key, start);
+		return result;
+	}
+
+	@Override
+	public void abort(long transactionId) throws IOException {
+
+		long start = System.nanoTime();
+		Transaction transaction = transactions.remove(transactionId);
+		if (transaction != null) {
+			logOutcome(WAL_ABORTED, transactionId, transaction);
+			releaseKey(transaction.key, transactionId);
+			logEvent(EventLog.EVENT_ABORT, transaction.key, start, ": Abort - Participant " + this.id
+					+ " Transaction " + transactionId);
+		}
+	}
 
-		if ("PUT".equalsIgnoreCase(this.command)) {
-			return executePut(this.key, this.value);
+	@Override
+	public boolean[] voteBatch(long firstTransactionId, Batch batch) throws IOException {
+		boolean[] votes = new boolean[batch.size()];
+		long lastPosition = 0;
+		for (int i = 0; i < votes.length; i++) {
+			long position = prepare(firstTransactionId + i, batch.getCommand(i), batch.getKey(i), batch.getValue(i));
+			votes[i] = position >= 0;
+			lastPosition = Math.max(lastPosition, position);
 		}
-		if ("GET".equalsIgnoreCase(this.command)) {
-			return executeGet(this.key);
+		if (writeAheadLog != null) {
+			writeAheadLog.sync(lastPosition);
 		}
-		if ("DELETE".equalsIgnoreCase(this.command)) {
-			return executeDelete(this.key);
+		return votes;
+	}
+
+	@Override
+	public Result[] commitBatch(long firstTransactionId, boolean[] decisions) throws IOException {
+		Result[] results = new Result[decisions.length];
+		boolean committed = false;
+		for (int i = 0; i < decisions.length; i++) {
+			if (decisions[i]) {
+				results[i] = commit(firstTransactionId + i, false);
+				committed = true;
+			} else {
+				abort(firstTransactionId + i);
+				results[i] = Result.aborted();
+			}
+		}
+		// The commits of the batch share a single sync.
+		if (committed && writeAheadLog != null) {
+			writeAheadLog.sync(writeAheadLog.appendedPosition());
 		}
-		return null;
+		return results;
 	}
 
 	@Override
-	public String put(String key, String value) throws IOException {
+	public Result put(String key, String value) throws IOException {
 		return coordinator.prepareTransaction("PUT", key, value);
 	}
 
 	@Override
-	public String get(String key) throws IOException {
-		return coordinator.prepareTransaction("GET", key, null);
+	public Result get(String key) throws IOException {
+		if ("2pc".equalsIgnoreCase(readMode)) {
+			return coordinator.prepareTransaction("GET", key, null);
+		}
+		if ("quorum".equalsIgnoreCase(readMode)) {
+			return coordinator.read(key);
+		}
+		return read(key);
 	}
 
 	@Override
-	public String delete(String key) throws IOException {
+	public Result read(String key) throws IOException {
+
+		long start = System.nanoTime();
+		// A write this participant voted for may be committed on the others already,
+		// and read there, so wait for it rather than return the older value. A write it
+		// did not vote for yet is committed nowhere.
+		if (linearizableReads) {
+			Long transactionId = keyLocks.get(key);
+			if (transactionId != null) {
+				awaitRelease(key, transactionId);
+			}
+		}
+		Result result = executeGet(key);
+		recordEvent(EventLog.EVENT_GET, key, start);
+		return result;
+	}
+
+	@Override
+	public Result delete(String key) throws IOException {
 		return coordinator.prepareTransaction("DELETE", key, null);
 	}
 
@@ -136,95 +367,297 @@ public class ParticipantImpl extends UnicastRemoteObject implements Participant,
 	}
 
 	/**
-	 * Private method to insert key and value into the map.
+	 * Method to insert key and value into the map.
 	 * 
 	 * @param key   key to be inserted.
 	 * @param value of the key to be inserted.
-	 * @return response from the server.
+	 * @return result of the operation.
 	 */
-	private String executePut(String key, String value) {
-		writeLock.lock();
-
-		StringBuffer sb = new StringBuffer();
-		try {
-
-			keyValueMap.put(key, value);
-			sb.append("Key " + key + " value " + value + " inserted");
-
-		} catch (ArrayIndexOutOfBoundsException ae) {
-			sb.append("Invalid PUT command. It must be in the format PUT-Key-Value");
-		} finally {
-			writeLock.unlock();
-		}
-		return sb.toString();
+	Result executePut(String key, String value) {
+		keyValueMap.put(key, value);
+		return Result.ok();
 	}
 
 	/**
-	 * Private method to get the value for the key from the hash map, if exists.
+	 * Method to get the value for the key from the hash map, if exists.
 	 * 
 	 * @param key key to be inserted.
-	 * @return response from the server.
+	 * @return result of the operation, with the value if found.
 	 */
-	private String executeGet(String key) {
-		readLock.lock();
+	Result executeGet(String key) {
+		return Result.of(keyValueMap.get(key));
+	}
 
-		StringBuffer sb = new StringBuffer();
-		try {
+	/**
+	 * Method to delete the key and value from the hash map, if exists.
+	 * 
+	 * @param key key to be inserted.
+	 * @return result of the operation.
+	 */
+	Result executeDelete(String key) {
+		return keyValueMap.remove(key) ? Result.ok() : Result.notFound();
+	}
+	
+	/**
+	 * Method to ask the coordinator about every transaction in doubt after a
+	 * restart, and commit or abort it. Transactions the coordinator cannot be
+	 * asked about stay in doubt.
+	 * 
+	 * @param coordinator coordinator of the transactions.
+	 */
+	void resolveInDoubt(Coordinator coordinator) {
+		for (Long transactionId : transactions.keySet()) {
+			try {
+				if (coordinator.isCommitted(transactionId)) {
+					commit(transactionId);
+				} else {
+					abort(transactionId);
+				}
+				printToServerLog(": Recovery - Participant " + this.id + " Resolved transaction " + transactionId);
+			} catch (IOException e) {
+				printToServerLog(": Recovery - Participant " + this.id + " Unable to resolve transaction "
+						+ transactionId + " : " + e.getMessage());
+			}
+		}
+	}
 
-			if (keyValueMap != null && !keyValueMap.isEmpty() && keyValueMap.containsKey(key)) {
-				sb.append("Value for key " + key + " is :" + keyValueMap.get(key));
+	/**
+	 * Private method to rebuild the store from the write-ahead log, applying the
+	 * snapshot and the committed writes in order, and to lock the keys of the
+	 * writes in doubt. The log is then rewritten with only what recovery needs.
+	 * 
+	 * @throws IOException if a record cannot be decoded, or the log rewritten.
+	 */
+	private void recover() throws IOException {
+		Map<Long, Transaction> prepared = new LinkedHashMap<>();
+		int committed = 0;
+		List<byte[]> records = writeAheadLog.takeRecoveredRecords();
+		for (byte[] record : records) {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+			byte type = in.readByte();
+			if (type == WAL_SNAPSHOT) {
+				executePut(BinaryCodec.readString(in), BinaryCodec.readString(in));
+				continue;
+			}
+			long transactionId = in.readLong();
+			if (type == WAL_PREPARED) {
+				prepared.put(transactionId, new Transaction(BinaryCodec.readString(in), BinaryCodec.readString(in),
+						BinaryCodec.readString(in)));
+			} else if (type == WAL_COMMITTED) {
+				Transaction transaction = prepared.remove(transactionId);
+				if (transaction != null) {
+					apply(transaction);
+					committed++;
+				}
 			} else {
-				sb.append("Key-value store does not contain the given key");
+				prepared.remove(transactionId);
 			}
-		} catch (ArrayIndexOutOfBoundsException ae) {
-			sb.append("Invalid GET command. It must be in the format GET-Key");
-		} finally {
-			readLock.unlock();
 		}
-		return sb.toString();
+		for (Map.Entry<Long, Transaction> entry : prepared.entrySet()) {
+			transactions.put(entry.getKey(), entry.getValue());
+			keyLocks.put(entry.getValue().key, entry.getKey());
+		}
+		printToServerLog(": Recovery - Participant " + this.id + " Replayed " + committed
+				+ " committed writes, " + prepared.size() + " in doubt");
+
+		// Checkpoint : keep a snapshot of the store and the writes in doubt only.
+		if (records.size() > keyValueMap.size() + prepared.size()) {
+			List<byte[]> checkpoint = new ArrayList<>(keyValueMap.size() + prepared.size());
+			try {
+				keyValueMap.forEach((key, value) -> {
+					try {
+						checkpoint.add(snapshotRecord(key, value));
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			for (Map.Entry<Long, Transaction> entry : prepared.entrySet()) {
+				Transaction transaction = entry.getValue();
+				checkpoint.add(walRecord(WAL_PREPARED, entry.getKey(), transaction.command, transaction.key,
+						transaction.value));
+			}
+			writeAheadLog.rewrite(checkpoint);
+			printToServerLog(": Recovery - Participant " + this.id + " Rewrote the write-ahead log from "
+					+ records.size() + " to " + checkpoint.size() + " records");
+		}
 	}
 
 	/**
-	 * Private method to delete the key and value from the hash map, if exists.
+	 * Private method to run the operation of a transaction on the store.
 	 * 
-	 * @param key key to be inserted.
-	 * @return response from the server.
+	 * @param transaction transaction.
+	 * @return result of the operation.
 	 */
-	private String executeDelete(String key) {
+	private Result apply(Transaction transaction) {
+		if ("PUT".equalsIgnoreCase(transaction.command)) {
+			return executePut(transaction.key, transaction.value);
+		}
+		if ("DELETE".equalsIgnoreCase(transaction.command)) {
+			return executeDelete(transaction.key);
+		}
+		return executeGet(transaction.key);
+	}
 
-		writeLock.lock();
+	/**
+	 * Private method to log the outcome of a write, without waiting for the disk.
+	 * 
+	 * @param type          WAL_COMMITTED or WAL_ABORTED.
+	 * @param transactionId ID of the transaction.
+	 * @param transaction   transaction.
+	 * @return position of the record in the write-ahead log, or 0 if none was
+	 *         logged.
+	 * @throws IOException if unable to write the write-ahead log.
+	 */
+	private long logOutcome(byte type, long transactionId, Transaction transaction) throws IOException {
+		if (writeAheadLog != null && !"GET".equalsIgnoreCase(transaction.command)) {
+			return writeAheadLog.append(walRecord(type, transactionId, null, null, null));
+		}
+		return 0;
+	}
 
-		StringBuffer sb = new StringBuffer();
-		try {
+	/**
+	 * Private method to encode a snapshot record of the write-ahead log.
+	 * 
+	 * @param key   key in the store.
+	 * @param value value of the key.
+	 * @return record bytes.
+	 * @throws IOException never, written to memory.
+	 */
+	private static byte[] snapshotRecord(String key, String value) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(WAL_SNAPSHOT);
+		BinaryCodec.writeString(out, key);
+		BinaryCodec.writeString(out, value);
+		return bytes.toByteArray();
+	}
 
-			if (keyValueMap != null && !keyValueMap.isEmpty() && keyValueMap.containsKey(key)) {
+	/**
+	 * Private method to encode a write-ahead log record.
+	 * 
+	 * @param type          type of the record.
+	 * @param transactionId ID of the transaction.
+	 * @param command       command of a prepared write, or null.
+	 * @param key           key of a prepared write, or null.
+	 * @param value         value of a prepared write, or null.
+	 * @return record bytes.
+	 * @throws IOException never, written to memory.
+	 */
+	private static byte[] walRecord(byte type, long transactionId, String command, String key, String value)
+			throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(type);
+		out.writeLong(transactionId);
+		if (type == WAL_PREPARED) {
+			BinaryCodec.writeString(out, command);
+			BinaryCodec.writeString(out, key);
+			BinaryCodec.writeString(out, value);
+		}
+		return bytes.toByteArray();
+	}
 
-				keyValueMap.remove(key);
-				sb.append("Deleted key : " + key);
+	/**
+	 * Private method to release the lock of a key held by a transaction, waking up
+	 * the reads waiting for it.
+	 * 
+	 * @param key           locked key.
+	 * @param transactionId ID of the transaction holding the lock.
+	 */
+	private void releaseKey(String key, long transactionId) {
+		keyLocks.remove(key, transactionId);
+		if (waitingReads.get() > 0) {
+			synchronized (keyReleased) {
+				keyReleased.notifyAll();
+			}
+		}
+	}
 
-			} else {
-				sb.append("Unnable to delete. Key-value store does not contain the given key");
+	/**
+	 * Private method to wait, for a bounded time, until a transaction releases the
+	 * lock of a key.
+	 * 
+	 * @param key           locked key.
+	 * @param transactionId ID of the transaction holding the lock.
+	 * @throws InterruptedIOException if interrupted while waiting.
+	 */
+	private void awaitRelease(String key, long transactionId) throws InterruptedIOException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(READ_WAIT_MILLIS);
+		waitingReads.incrementAndGet();
+		try {
+			synchronized (keyReleased) {
+				while (Objects.equals(keyLocks.get(key), transactionId)) {
+					long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+					if (remaining <= 0) {
+						return;
+					}
+					keyReleased.wait(remaining);
+				}
 			}
-		} catch (ArrayIndexOutOfBoundsException ae) {
-			sb.append("Invalid DELETE command. It must be in the format DELETE-Key");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for key " + key);
 		} finally {
-			writeLock.unlock();
+			waitingReads.decrementAndGet();
 		}
-		return sb.toString();
 	}
-	
+
 	/**
 	 * Private method to print message to server log.
 	 * 
 	 * @param message message to be printed.
-	 * @throws IOException for exceptions that may occur during writing to server
-	 *                     log.
-	 */
-	private void printToServerLog(String message) throws IOException {
-		Timestamp timestamp = new Timestamp(System.currentTimeMillis());
-		String voting = timestamp + message;
-		fileWriter.write(voting + "\n");
-		fileWriter.flush();
+	 */
+	private void printToServerLog(String message) {
+		serverLog.log(message);
+	}
+
+	/**
+	 * Private method to append an event to the binary log, or print its message to
+	 * the server log if there is no binary log.
+	 * 
+	 * @param eventType type of the event.
+	 * @param key       key of the transaction.
+	 * @param start     time the event started at, in nanoseconds.
+	 * @param message   message printed to the server log instead.
+	 */
+	private void logEvent(short eventType, String key, long start, String message) {
+		if (eventLog == null) {
+			printToServerLog(message);
+		} else {
+			recordEvent(eventType, key, start);
+		}
+	}
+
+	/**
+	 * Private method to append an event to the binary log, if any.
+	 * 
+	 * @param eventType type of the event.
+	 * @param key       key of the transaction.
+	 * @param start     time the event started at, in nanoseconds.
+	 */
+	private void recordEvent(short eventType, String key, long start) {
+		if (eventLog != null) {
+			eventLog.record(eventType, nodeId, key == null ? 0 : key.hashCode(), System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Class that holds a prepared transaction.
+	 */
+	static final class Transaction {
+
+		final String command;
+		final String key;
+		final String value;
+
+		Transaction(String command, String key, String value) {
+			this.command = command;
+			this.key = key;
+			this.value = value;
+		}
 	}
 
 }
@@ -0,0 +1,190 @@
+package project3;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.rmi.server.UnicastRemoteObject;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import common.AsyncLogWriter;
+import common.DurabilityPolicy;
+import common.Result;
+import common.WriteAheadLog;
+
+class ParticipantImplTest {
+
+	@TempDir
+	File directory;
+
+	private AsyncLogWriter serverLog;
+
+	private ParticipantImpl participant;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		serverLog = new AsyncLogWriter(new File(directory, "2PCServerLog.txt"), DurabilityPolicy.NONE);
+		participant = new ParticipantImpl(serverLog, null, 0);
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		UnicastRemoteObject.unexportObject(participant, true);
+		serverLog.close();
+	}
+
+	@Test
+	void testTransactionsOnDifferentKeysInterleave() throws Exception {
+		assertTrue(participant.vote(1, "PUT", "A", "Apple"));
+		assertTrue(participant.vote(2, "PUT", "B", "Ball"));
+
+		assertTrue(participant.commit(2).isOk());
+		assertTrue(participant.commit(1).isOk());
+		assertEquals("Apple", participant.executeGet("A").getValue());
+		assertEquals("Ball", participant.executeGet("B").getValue());
+		assertTrue(participant.transactions.isEmpty());
+		assertTrue(participant.keyLocks.isEmpty());
+	}
+
+	@Test
+	void testLockedKeyVotesNo() throws Exception {
+		assertTrue(participant.vote(1, "PUT", "A", "Apple"));
+		assertFalse(participant.vote(2, "PUT", "A", "Avocado"));
+		// A GET takes no lock and reads the committed value.
+		assertTrue(participant.vote(3, "GET", "A", null));
+		assertEquals(Result.Status.NOT_FOUND, participant.commit(3).getStatus());
+
+		// The failed vote kept nothing, and the lock is released once aborted.
+		participant.abort(2);
+		assertFalse(participant.vote(4, "DELETE", "A", null));
+		participant.abort(1);
+		assertTrue(participant.vote(5, "PUT", "A", "Avocado"));
+		assertTrue(participant.commit(5).isOk());
+		assertEquals("Avocado", participant.executeGet("A").getValue());
+	}
+
+	@Test
+	void testLocalReadWaitsForPreparedWrite() throws Exception {
+		assertTrue(participant.vote(1, "PUT", "A", "Apple"));
+		Thread committer = new Thread(() -> {
+			try {
+				Thread.sleep(200);
+				participant.commit(1);
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		committer.start();
+		// The write may be committed on the other participants already.
+		assertEquals("Apple", participant.read("A").getValue());
+		committer.join();
+	}
+
+	@Test
+	void testRestartReplaysCommittedWritesAndResolvesInDoubt() throws Exception {
+		File walFile = new File(directory, "participant.wal");
+		WriteAheadLog writeAheadLog = new WriteAheadLog(walFile, true);
+		ParticipantImpl crashed = new ParticipantImpl(serverLog, null, 0, writeAheadLog);
+		assertTrue(crashed.vote(1, "PUT", "A", "Apple"));
+		assertTrue(crashed.commit(1).isOk());
+		assertTrue(crashed.vote(2, "PUT", "B", "Ball"));
+		assertTrue(crashed.vote(3, "PUT", "C", "Cat"));
+		assertTrue(crashed.vote(4, "PUT", "D", "Dog"));
+		crashed.abort(4);
+		UnicastRemoteObject.unexportObject(crashed, true);
+		writeAheadLog.close();
+
+		writeAheadLog = new WriteAheadLog(walFile, true);
+		ParticipantImpl restarted = new ParticipantImpl(serverLog, null, 0, writeAheadLog);
+		try {
+			assertEquals("Apple", restarted.executeGet("A").getValue());
+			assertEquals(1, restarted.getMapSize());
+			// The writes in doubt keep their keys locked until resolved.
+			assertFalse(restarted.vote(5, "DELETE", "B", null));
+			assertEquals(2, restarted.transactions.size());
+
+			restarted.resolveInDoubt(new DecidedCoordinator(2));
+			assertEquals("Ball", restarted.executeGet("B").getValue());
+			assertEquals(Result.Status.NOT_FOUND, restarted.executeGet("C").getStatus());
+			assertTrue(restarted.keyLocks.isEmpty());
+		} finally {
+			UnicastRemoteObject.unexportObject(restarted, true);
+			writeAheadLog.close();
+		}
+	}
+
+	@Test
+	void testRestartRewritesLogAsSnapshot() throws Exception {
+		File walFile = new File(directory, "participant.wal");
+		WriteAheadLog writeAheadLog = new WriteAheadLog(walFile, true);
+		ParticipantImpl crashed = new ParticipantImpl(serverLog, null, 0, writeAheadLog);
+		for (int i = 1; i <= 100; i++) {
+			assertTrue(crashed.vote(i, i % 2 == 0 ? "DELETE" : "PUT", "A", "Apple"));
+			assertTrue(crashed.commit(i).isOk());
+		}
+		assertTrue(crashed.vote(101, "PUT", "B", "Ball"));
+		assertTrue(crashed.vote(102, "PUT", "C", "Cat"));
+		assertTrue(crashed.commit(102).isOk());
+		UnicastRemoteObject.unexportObject(crashed, true);
+		writeAheadLog.close();
+		long length = walFile.length();
+
+		// The history of A is gone, the write in doubt is kept.
+		writeAheadLog = new WriteAheadLog(walFile, true);
+		ParticipantImpl restarted = new ParticipantImpl(serverLog, null, 0, writeAheadLog);
+		UnicastRemoteObject.unexportObject(restarted, true);
+		writeAheadLog.close();
+		assertTrue(walFile.length() < length / 10, walFile.length() + " bytes");
+
+		writeAheadLog = new WriteAheadLog(walFile, true);
+		restarted = new ParticipantImpl(serverLog, null, 0, writeAheadLog);
+		try {
+			assertEquals(1, restarted.getMapSize());
+			assertEquals("Cat", restarted.executeGet("C").getValue());
+			assertEquals(1, restarted.transactions.size());
+			restarted.resolveInDoubt(new DecidedCoordinator(101));
+			assertEquals("Ball", restarted.executeGet("B").getValue());
+		} finally {
+			UnicastRemoteObject.unexportObject(restarted, true);
+			writeAheadLog.close();
+		}
+	}
+
+	@Test
+	void testUnknownTransactionFailsToCommit() throws Exception {
+		assertTrue(participant.vote(1, "PUT", "A", "Apple"));
+		participant.abort(1);
+		assertEquals(Result.Status.FAILED, participant.commit(1).getStatus());
+		assertEquals(0, participant.getMapSize());
+	}
+
+	/**
+	 * Coordinator that committed a single transaction.
+	 */
+	private static class DecidedCoordinator implements Coordinator {
+
+		private final long committedTransactionId;
+
+		DecidedCoordinator(long committedTransactionId) {
+			this.committedTransactionId = committedTransactionId;
+		}
+
+		@Override
+		public Result prepareTransaction(String command, String key, String value) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Result read(String key) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean isCommitted(long transactionId) {
+			return transactionId == committedTransactionId;
+		}
+	}
+}
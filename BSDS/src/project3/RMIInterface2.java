@@ -1,46 +1,48 @@
 package project3;
 
 import java.io.IOException;
-import java.rmi.Remote;
 import java.rmi.RemoteException;
 
+import common.KeyValueService;
+import common.Result;
+
 /**
  * Interface class that declares a set of methods that may be invoked from a
  * remote client. Contains methods to put, get and delete from the key value
  * map.
  */
-public interface RMIInterface2 extends Remote {
+public interface RMIInterface2 extends KeyValueService {
 
 	/**
 	 * Method to insert key and value into the hash map.
 	 * 
 	 * @param key   key to be inserted.
 	 * @param value value of the key to be inserted.
-	 * @return response from the server.
+	 * @return result of the operation.
 	 * @throws RemoteException for exceptions that may occur during the execution of
 	 *                         a remote method call
 	 */
-	public String put(String key, String value) throws RemoteException, IOException;
+	public Result put(String key, String value) throws RemoteException, IOException;
 
 	/**
 	 * Method to get the value for the key from the hash map, if exists.
 	 * 
 	 * @param key key to be inserted.
-	 * @return response from the server.
+	 * @return result of the operation.
 	 * @throws RemoteException for exceptions that may occur during the execution of
 	 *                         a remote method call
 	 */
-	public String get(String key) throws RemoteException, IOException;
+	public Result get(String key) throws RemoteException, IOException;
 
 	/**
 	 * Method to delete the key and value from the hash map, if exists.
 	 * 
 	 * @param key key to be inserted.
-	 * @return response from the server.
+	 * @return result of the operation.
 	 * @throws RemoteException for exceptions that may occur during the execution of
 	 *                         a remote method call
 	 */
-	public String delete(String key) throws RemoteException, IOException;
+	public Result delete(String key) throws RemoteException, IOException;
 
 	/**
 	 * Method to get the size of the hash map.
@@ -1,7 +1,5 @@
 package project3;
 
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
@@ -9,15 +7,24 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import common.AsyncLogWriter;
+import common.BinaryRpcServer;
+import common.EventLog;
+import common.Transport;
+import common.WriteAheadLog;
+
 public class StartServer {
 
 	public static void main(String[] args) throws IOException {
 
-		FileWriter fileWriter = null;
+		AsyncLogWriter serverLog = null;
 
 		try {
-			// Step 1 : Create new file or use the existing server log file.
-			fileWriter = createFileWriter();
+			// Step 1 : Create new file or use the existing server log file, and the binary
+			// log of the voting and commit phases if chosen. Each node also recovers from
+			// its own write-ahead log, unless disabled.
+			serverLog = AsyncLogWriter.open("2PCServerLog.txt", "2PC Server");
+			EventLog eventLog = EventLog.open("2PCServerEvents");
 
 			// Step 2 : Get the 5 port numbers from user and add it to a list.
 			if (args.length < 5) {
@@ -46,27 +53,46 @@ public class StartServer {
 			List<Participant> participantsList = new ArrayList<>();
 			for (int i = 0; i < args.length; i++) {
 
-				ParticipantImpl participant = new ParticipantImpl(fileWriter);
-
-				// Create an RMI registry on each participant port given by the user.
-				Registry participantRegistry = LocateRegistry.createRegistry(serverPortList.get(i));
-				// Bind the participants.
-				participantRegistry.bind("MyKeyValueMap", participant);
+				ParticipantImpl participant = new ParticipantImpl(serverLog, eventLog, serverPortList.get(i),
+						WriteAheadLog.open("2PCParticipant-" + serverPortList.get(i)));
+
+				if (Transport.isBinary()) {
+					// Serve the participant to the clients and the coordinator on the binary
+					// transport instead.
+					BinaryRpcServer participantServer = new BinaryRpcServer(serverPortList.get(i));
+					participantServer.export(RMIInterface2.class, participant);
+					participantServer.export(Participant.class, participant);
+					participantServer.start();
+				} else {
+					// Create an RMI registry on each participant port given by the user.
+					Registry participantRegistry = LocateRegistry.createRegistry(serverPortList.get(i));
+					// Bind the participants.
+					participantRegistry.bind("MyKeyValueMap", participant);
+				}
 
 				participantsList.add(participant);
 			}
 
 			// Step 5 : Send the list of participants/servers to the coordinator.
 			CoordinatorImpl coordinator = new CoordinatorImpl(
-					Arrays.asList("localhost", "localhost", "localhost", "localhost", "localhost"), serverPortList);
-
-			// Step 6 : Create an RMI registry on coordinator port(default port).
-			Registry coordinatorRegistry = LocateRegistry.createRegistry(9000);
+					Arrays.asList("localhost", "localhost", "localhost", "localhost", "localhost"), serverPortList,
+					WriteAheadLog.open("2PCCoordinator"));
+
+			if (Transport.isBinary()) {
+				// Step 6 : Serve the coordinator on the binary transport on its port.
+				BinaryRpcServer coordinatorServer = new BinaryRpcServer(9000);
+				coordinatorServer.export(Coordinator.class, coordinator);
+				coordinatorServer.start();
+			} else {
+				// Step 6 : Create an RMI registry on coordinator port(default port).
+				Registry coordinatorRegistry = LocateRegistry.createRegistry(9000);
 
-			// Step 7 : Bind the coordinator.
-			coordinatorRegistry.bind("Coordinator", coordinator);
+				// Step 7 : Bind the coordinator.
+				coordinatorRegistry.bind("Coordinator", coordinator);
+			}
 
-			// Step 8 : For each of participant, set the created coordinator, on a specific port.
+			// Step 8 : For each of participant, set the created coordinator, on a specific port,
+			// which resolves the transactions a restart left in doubt.
 			for (int i = 0; i < participantsList.size(); i++) {
 				participantsList.get(i).setCoordinator("localhost", 9000);
 			}
@@ -78,33 +104,4 @@ public class StartServer {
 					"Error while starting the partcipants/servers or coordinator. Please try again. " + e.getMessage());
 		}
 	}
-
-	/**
-	 * A utility method to create log file and provide the ability to write into it.
-	 * Created new file if not present, uses existing file if present.
-	 * 
-	 * @return file write of client log file.
-	 */
-	private static FileWriter createFileWriter() {
-		FileWriter fileWriter = null;
-		try {
-			// Get the current directory where the Java file is located
-			String currentDirectory = System.getProperty("user.dir");
-
-			// Define the file name and content to write
-			String fileName = currentDirectory + "\\2PCServerLog.txt";
-			File serverLogFile = new File(fileName);
-			if (!serverLogFile.exists()) {
-				serverLogFile.createNewFile();
-				System.out.println("2PC server log file created: " + fileName);
-			} else {
-				System.out.println("Using 2PC Server log file already exists at : " + fileName);
-			}
-			fileWriter = new FileWriter(serverLogFile, true);
-
-		} catch (IOException e) {
-			System.err.println("Error creating 2PC server log file!");
-		}
-		return fileWriter;
-	}
 }
@@ -3,11 +3,12 @@ package project4;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.rmi.Naming;
 import java.rmi.NotBoundException;
 import java.sql.Timestamp;
 import java.util.Scanner;
 
+import common.Transport;
+
 public class Client {
 
 	private static IMap rmiInterface;
@@ -35,8 +36,7 @@ public class Client {
 				System.exit(0);
 			}
 
-			rmiInterface = (IMap) Naming
-					.lookup("rmi://" + inputIPAddress + ":" + serverPort + "/MyKeyValueMap" + serverPort);
+			rmiInterface = Transport.connect(inputIPAddress, serverPort, "MyKeyValueMap" + serverPort, IMap.class);
 
 			// Step 4: Pre populate data
 			String prepopulatedInput = prepopulate();
@@ -92,7 +92,8 @@ public class Client {
 				if (commands.length != 3) {
 					serverResponse = "Please enter key and value for PUT";
 				} else {
-					serverResponse = rmiInterface.put(commands[1], commands[2]);
+					serverResponse = rmiInterface.put(commands[1], commands[2]).render(commands[0], commands[1],
+							commands[2]);
 				}
 
 			} else if ("GET".equalsIgnoreCase(commands[0])) {
@@ -100,7 +101,7 @@ public class Client {
 				if (commands.length != 2) {
 					serverResponse = "Please enter key for GET";
 				} else {
-					serverResponse = rmiInterface.get(commands[1]);
+					serverResponse = rmiInterface.get(commands[1]).render(commands[0], commands[1], null);
 				}
 
 			} else if ("DELETE".equalsIgnoreCase(commands[0])) {
@@ -108,7 +109,7 @@ public class Client {
 				if (commands.length != 2) {
 					serverResponse = "Please enter key to DELETE";
 				} else {
-					serverResponse = rmiInterface.delete(commands[1]);
+					serverResponse = rmiInterface.delete(commands[1]).render(commands[0], commands[1], null);
 				}
 
 			} else {
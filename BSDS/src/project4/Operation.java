@@ -1,9 +1,16 @@
 package project4;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import common.BinaryCodec;
+import common.BinaryEncodable;
+
 /**
  * Class that represents an key value operation on the map.
  */
-public class Operation {
+public class Operation implements BinaryEncodable {
 
 	private String operationType;
 	private String key;
@@ -15,6 +22,23 @@ public class Operation {
 		this.value = value;
 	}
 
+	/**
+	 * Constructor to read an operation sent through the binary transport.
+	 *
+	 * @param in input to read from.
+	 * @throws IOException if unable to read.
+	 */
+	public Operation(DataInput in) throws IOException {
+		this(BinaryCodec.readString(in), BinaryCodec.readString(in), BinaryCodec.readString(in));
+	}
+
+	@Override
+	public void writeTo(DataOutput out) throws IOException {
+		BinaryCodec.writeString(out, operationType);
+		BinaryCodec.writeString(out, key);
+		BinaryCodec.writeString(out, value);
+	}
+
 	public String getOperationType() {
 		return operationType;
 	}
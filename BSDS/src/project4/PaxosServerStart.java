@@ -1,22 +1,27 @@
 package project4;
 
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.util.ArrayList;
 import java.util.List;
 
+import common.AsyncLogWriter;
+import common.BinaryRpcServer;
+import common.EventLog;
+import common.Transport;
+
 public class PaxosServerStart {
 
 	public static void main(String[] args) throws IOException {
 
-		FileWriter fileWriter = null;
+		AsyncLogWriter serverLog = null;
 
 		try {
-			// Step 1 : Create new file or use the existing server log file.
-			fileWriter = createFileWriter();
+			// Step 1 : Create new file or use the existing server log file, and the binary
+			// log of the requests if chosen.
+			serverLog = AsyncLogWriter.open("PaxosServerLog.txt", "Paxos Server");
+			EventLog eventLog = EventLog.open("PaxosServerEvents");
 
 			// Step 2 : Get the 5 port numbers from user and add it to a list.
 			if (args.length < 5) {
@@ -41,14 +46,23 @@ public class PaxosServerStart {
 			for (int serverId = 0; serverId < numServers; serverId++) {
 
 				// Create server instance
-				servers[serverId] = new Server(serverId, serverId, fileWriter);
+				servers[serverId] = new Server(serverId, serverId, serverLog, eventLog);
 
-				// Create an RMI registry on each participant port given by the user.
 				int port = serverPortList.get(serverId);
-				Registry registry = LocateRegistry.createRegistry(port);
-
-				// Bind the servers.
-				registry.rebind("MyKeyValueMap" + serverPortList.get(serverId), servers[serverId]);
+				if (Transport.isBinary()) {
+					// Serve the clients and the other servers on the binary transport instead.
+					BinaryRpcServer binaryServer = new BinaryRpcServer(port);
+					binaryServer.export(IMap.class, servers[serverId]);
+					binaryServer.export(IAcceptor.class, servers[serverId]);
+					binaryServer.export(ILearner.class, servers[serverId]);
+					binaryServer.start();
+				} else {
+					// Create an RMI registry on each participant port given by the user.
+					Registry registry = LocateRegistry.createRegistry(port);
+
+					// Bind the servers.
+					registry.rebind("MyKeyValueMap" + serverPortList.get(serverId), servers[serverId]);
+				}
 
 				System.out.println("Server " + serverId + " is ready at port " + port);
 			}
@@ -60,7 +74,12 @@ public class PaxosServerStart {
 				ILearner[] learners = new ILearner[numServers];
 				
 				for (int i = 0; i < numServers; i++) {
-					if (i != serverId) {
+					if (i != serverId && Transport.isBinary()) {
+						// Reach the other servers through the binary transport, as if they ran on
+						// other hosts.
+						acceptors[i] = Transport.connect("localhost", serverPortList.get(i), null, IAcceptor.class);
+						learners[i] = Transport.connect("localhost", serverPortList.get(i), null, ILearner.class);
+					} else if (i != serverId) {
 						acceptors[i] = servers[i];
 						learners[i] = servers[i];
 					}
@@ -77,33 +96,4 @@ public class PaxosServerStart {
 
 	}
 
-	/**
-	 * A utility method to create log file and provide the ability to write into it.
-	 * Created new file if not present, uses existing file if present.
-	 * 
-	 * @return file write of client log file.
-	 */
-	private static FileWriter createFileWriter() {
-		FileWriter fileWriter = null;
-		try {
-			// Get the current directory where the Java file is located
-			String currentDirectory = System.getProperty("user.dir");
-
-			// Define the file name and content to write
-			String fileName = currentDirectory + "\\PaxosServerLog.txt";
-			File serverLogFile = new File(fileName);
-			if (!serverLogFile.exists()) {
-				serverLogFile.createNewFile();
-				System.out.println("Paxos server log file created: " + fileName);
-			} else {
-				System.out.println("Using Paxos Server log file already exists at : " + fileName);
-			}
-			fileWriter = new FileWriter(serverLogFile, true);
-
-		} catch (IOException e) {
-			System.err.println("Error creating Paxos server log file!");
-		}
-		return fileWriter;
-	}
-
 }
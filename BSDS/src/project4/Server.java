@@ -1,6 +1,5 @@
 package project4;
 
-import java.io.FileWriter;
 import java.io.IOException;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
@@ -9,7 +8,6 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -20,12 +18,18 @@ import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import common.AsyncLogWriter;
+import common.EventLog;
+import common.Result;
+import common.StoreEngine;
+import common.TunedSocketFactory;
+
 public class Server extends UnicastRemoteObject implements IProposer, IAcceptor, ILearner, IMap {
 
 	private static final long serialVersionUID = -8674360608560961289L;
 
-	// Create a hashmap to store the key value.
-	private ConcurrentHashMap<String, String> keyValueMap;
+	// Create a store engine to store the key value.
+	private StoreEngine keyValueMap;
 
 	// Store a list of acceptors and learners.
 	private IAcceptor[] acceptors;
@@ -57,26 +61,34 @@ public class Server extends UnicastRemoteObject implements IProposer, IAcceptor,
 	// can acquire the read lock
 	Lock readLock;
 
-	FileWriter fileWriter;
+	AsyncLogWriter serverLog;
+
+	// Binary log of the requests and accepted values, or null to log them as text.
+	EventLog eventLog;
 
 	/**
 	 * Constructor to create a Server instance.
 	 * 
 	 * @param serverId   The unique ID of this server.
 	 * @param proposalId The starting proposal ID of this server.
-	 * @param fileWriter
+	 * @param serverLog  server log shared by all the servers.
+	 * @param eventLog   binary log of the requests and accepted values shared by all
+	 *                   the servers, or null to log them as text.
 	 * @throws RemoteException for exceptions that may occur during the execution of
 	 *                         a remote method call.
 	 */
-	protected Server(int serverId, int proposalId, FileWriter fileWriter) throws RemoteException {
-		this.keyValueMap = new ConcurrentHashMap<>();
+	protected Server(int serverId, int proposalId, AsyncLogWriter serverLog, EventLog eventLog)
+			throws RemoteException {
+		super(0, TunedSocketFactory.getDefault(), TunedSocketFactory.getDefault());
+		this.keyValueMap = StoreEngine.fromSystemProperties();
 		this.serverId = serverId;
 		this.proposalId = CONST_INCREASE + proposalId;
 		this.promisedId = 0;
 		this.lock = new ReentrantReadWriteLock();
 		this.writeLock = lock.writeLock();
 		this.readLock = lock.readLock();
-		this.fileWriter = fileWriter;
+		this.serverLog = serverLog;
+		this.eventLog = eventLog;
 	}
 
 	/**
@@ -328,15 +340,19 @@ public class Server extends UnicastRemoteObject implements IProposer, IAcceptor,
 		}
 		// Accept
 		if (this.promisedId <= proposalId) {
+			long start = System.nanoTime();
 			applyOperation(proposalValue);
 
 			printToConsoleLog(
 					"ACCEPT: " + "operation : " + proposalValue.getOperationType() + "\t key: " + proposalValue.getKey()
 							+ "\t value:" + proposalValue.getValue());
 
-			printToServerLog(
-					"ACCEPT: " + "operation : " + proposalValue.getOperationType() + "\t key: " + proposalValue.getKey()
-							+ "\t value:" + proposalValue.getValue());
+			if (eventLog == null) {
+				printToServerLog("ACCEPT: " + "operation : " + proposalValue.getOperationType() + "\t key: "
+						+ proposalValue.getKey() + "\t value:" + proposalValue.getValue());
+			} else {
+				recordEvent(EventLog.EVENT_ACCEPT, proposalValue.getKey(), start);
+			}
 
 			return true;
 		}
@@ -352,13 +368,18 @@ public class Server extends UnicastRemoteObject implements IProposer, IAcceptor,
 	public synchronized void learn(int proposalId, Operation acceptedValue) throws RemoteException, IOException {
 		this.promisedId = proposalId;
 
+		long start = System.nanoTime();
 		applyOperation(acceptedValue);
 
 		printToConsoleLog("LEARN: " + "operation : " + acceptedValue.getOperationType() + "\t key: "
 				+ acceptedValue.getKey() + "\t value:" + acceptedValue.getValue());
 
-		printToServerLog("LEARN: " + "operation : " + acceptedValue.getOperationType() + "\t key: "
-				+ acceptedValue.getKey() + "\t value:" + acceptedValue.getValue());
+		if (eventLog == null) {
+			printToServerLog("LEARN: " + "operation : " + acceptedValue.getOperationType() + "\t key: "
+					+ acceptedValue.getKey() + "\t value:" + acceptedValue.getValue());
+		} else {
+			recordEvent(EventLog.EVENT_LEARN, acceptedValue.getKey(), start);
+		}
 	}
 
 	/**
@@ -377,10 +398,11 @@ public class Server extends UnicastRemoteObject implements IProposer, IAcceptor,
 	 * Apply the given operation to the key-value store.
 	 * 
 	 * @param operation The operation to apply.
+	 * @return result of the operation.
 	 */
-	private String applyOperation(Operation operation) {
+	Result applyOperation(Operation operation) {
 		if (operation == null)
-			return "";
+			return Result.failed();
 
 		switch (operation.getOperationType()) {
 		case "PUT":
@@ -390,25 +412,34 @@ public class Server extends UnicastRemoteObject implements IProposer, IAcceptor,
 		case "DELETE":
 			return executeDelete(operation.getKey());
 		default:
-			return "Received unsolicited response acknowledging unknown PUT/GET/DELETE with an invalid KEY";
+			return Result.failed();
 		}
 	}
 
 	@Override
-	public String put(String key, String value) throws RemoteException, IOException {
+	public Result put(String key, String value) throws RemoteException, IOException {
+		long start = System.nanoTime();
 		proposeOperation(new Operation("PUT", key, value));
-		return "Key " + key + " value " + value + " inserted";
+		recordEvent(EventLog.EVENT_PUT, key, start);
+		return Result.ok();
 	}
 
 	@Override
-	public String get(String key) throws RemoteException, IOException {
-		return applyOperation(new Operation("GET", key, null));
+	public Result get(String key) throws RemoteException, IOException {
+		long start = System.nanoTime();
+		Result result = applyOperation(new Operation("GET", key, null));
+		recordEvent(EventLog.EVENT_GET, key, start);
+		return result;
 	}
 
 	@Override
-	public String delete(String key) throws RemoteException, IOException {
+	public Result delete(String key) throws RemoteException, IOException {
+		long start = System.nanoTime();
 		proposeOperation(new Operation("DELETE", key, null));
-		return "DELETE operation successful - please check using GET";
+		recordEvent(EventLog.EVENT_DELETE, key, start);
+		// The delete is applied by consensus, without telling whether the key was
+		// there.
+		return Result.accepted();
 	}
 
 	@Override
@@ -421,91 +452,68 @@ public class Server extends UnicastRemoteObject implements IProposer, IAcceptor,
 	 * 
 	 * @param key   key to be inserted.
 	 * @param value of the key to be inserted.
-	 * @return response from the server.
+	 * @return result of the operation.
 	 */
-	private String executePut(String key, String value) {
+	private Result executePut(String key, String value) {
 		writeLock.lock();
-
-		StringBuffer sb = new StringBuffer();
 		try {
-
 			keyValueMap.put(key, value);
-			sb.append("Key " + key + " value " + value + " inserted");
-
-		} catch (ArrayIndexOutOfBoundsException ae) {
-			sb.append("Invalid PUT command. It must be in the format PUT-Key-Value");
 		} finally {
 			writeLock.unlock();
 		}
-		return sb.toString();
+		return Result.ok();
 	}
 
 	/**
 	 * Private method to get the value for the key from the hash map, if exists.
 	 * 
 	 * @param key key to be inserted.
-	 * @return response from the server.
+	 * @return result of the operation, with the value if found.
 	 */
-	private String executeGet(String key) {
+	private Result executeGet(String key) {
 		readLock.lock();
-
-		StringBuffer sb = new StringBuffer();
 		try {
-
-			if (keyValueMap != null && !keyValueMap.isEmpty() && keyValueMap.containsKey(key)) {
-				sb.append("Value for key " + key + " is :" + keyValueMap.get(key));
-			} else {
-				sb.append("Key-value store does not contain the given key");
-			}
-		} catch (ArrayIndexOutOfBoundsException ae) {
-			sb.append("Invalid GET command. It must be in the format GET-Key");
+			return Result.of(keyValueMap.get(key));
 		} finally {
 			readLock.unlock();
 		}
-		return sb.toString();
 	}
 
 	/**
 	 * Private method to delete the key and value from the hash map, if exists.
 	 * 
 	 * @param key key to be inserted.
-	 * @return response from the server.
+	 * @return result of the operation.
 	 */
-	private String executeDelete(String key) {
-
+	private Result executeDelete(String key) {
 		writeLock.lock();
-
-		StringBuffer sb = new StringBuffer();
 		try {
-
-			if (keyValueMap != null && !keyValueMap.isEmpty() && keyValueMap.containsKey(key)) {
-
-				keyValueMap.remove(key);
-				sb.append("Deleted key : " + key);
-
-			} else {
-				sb.append("Unnable to delete. Key-value store does not contain the given key");
-			}
-		} catch (ArrayIndexOutOfBoundsException ae) {
-			sb.append("Invalid DELETE command. It must be in the format DELETE-Key");
+			return keyValueMap.remove(key) ? Result.ok() : Result.notFound();
 		} finally {
 			writeLock.unlock();
 		}
-		return sb.toString();
 	}
 
 	/**
 	 * Private method to print message to server log.
 	 * 
 	 * @param message message to be printed.
-	 * @throws IOException for exceptions that may occur during writing to server
-	 *                     log.
 	 */
-	private void printToServerLog(String message) throws IOException {
-		Timestamp timestamp = new Timestamp(System.currentTimeMillis());
-		String fullMsg = timestamp + ": " +message;
-		fileWriter.write(fullMsg + "\n");
-		fileWriter.flush();
+	private void printToServerLog(String message) {
+		serverLog.log(": " + message);
+	}
+
+	/**
+	 * Private method to append an event to the binary log, if any.
+	 * 
+	 * @param eventType type of the event.
+	 * @param key       key of the operation.
+	 * @param start     time the event started at, in nanoseconds.
+	 */
+	private void recordEvent(short eventType, String key, long start) {
+		if (eventLog != null) {
+			eventLog.record(eventType, serverId, key == null ? 0 : key.hashCode(), System.nanoTime() - start);
+		}
 	}
 
 	/**
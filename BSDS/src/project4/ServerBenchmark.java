@@ -0,0 +1,39 @@
+package project4;
+
+import java.rmi.server.UnicastRemoteObject;
+
+import common.Result;
+import common.StoreBenchmark;
+
+/**
+ * Benchmark of the store of a Paxos server, applying the operations as the
+ * learners do once they are chosen. See {@link StoreBenchmark} for the system
+ * properties configuring the run.
+ */
+public class ServerBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		Server server = new Server(0, 0, null, null);
+		try {
+			StoreBenchmark.run("Server", new StoreBenchmark.Store() {
+
+				@Override
+				public Result put(String key, String value) {
+					return server.applyOperation(new Operation("PUT", key, value));
+				}
+
+				@Override
+				public Result get(String key) {
+					return server.applyOperation(new Operation("GET", key, null));
+				}
+
+				@Override
+				public Result delete(String key) {
+					return server.applyOperation(new Operation("DELETE", key, null));
+				}
+			});
+		} finally {
+			UnicastRemoteObject.unexportObject(server, true);
+		}
+	}
+}